@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.tmapi.core.TopicMap;
+import org.tmapix.io.CXTMTopicMapWriter;
+
+/**
+ * Measures the canonicalization of topic maps by the {@link CXTMTopicMapWriter}.
+ * <p>
+ * To compare the results against a previous release, run the benchmark
+ * with <tt>-Dtmapix-io.version=&lt;version&gt;</tt>.
+ * </p>
+ * <p>
+ * The {@link MapGenerator.Shape#TEXT_HEAVY} shape measures mainly the
+ * escaping and encoding of the values.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value=1, jvmArgsAppend="-Xmx4g")
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+public class CXTMTopicMapWriterBenchmark {
+
+    /**
+     * The number of associations, the topic map contains a topic per five
+     * associations.
+     */
+    @Param({"10000", "100000", "1000000"})
+    public int associations;
+
+    @Param({"DEFAULT", "TEXT_HEAVY"})
+    public MapGenerator.Shape shape;
+
+    private TopicMap _topicMap;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        _topicMap = MapGenerator.generate(associations / 5, associations, shape, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _topicMap.close();
+        _topicMap = null;
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        new CXTMTopicMapWriter(new NullOutputStream(), "http://www.example.org/map/").write(_topicMap);
+    }
+
+
+    /**
+     * Output stream which discards all bytes.
+     */
+    static final class NullOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) {
+            // noop.
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            // noop.
+        }
+
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.tmapi.core.TopicMap;
+import org.tmapix.io.BinaryTopicMapWriter;
+import org.tmapix.io.CTMTopicMapWriter;
+import org.tmapix.io.CXTMTopicMapWriter;
+import org.tmapix.io.EventStreamRecorder;
+import org.tmapix.io.JTMTopicMapWriter;
+import org.tmapix.io.LTMTopicMapWriter;
+import org.tmapix.io.TMXMLTopicMapWriter;
+import org.tmapix.io.TopicMapWriter;
+import org.tmapix.io.XTM10TopicMapWriter;
+import org.tmapix.io.XTM2TopicMapWriter;
+import org.tmapix.io.XTMVersion;
+
+import com.semagia.mio.DeserializerRegistry;
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.Syntax;
+
+/**
+ * The syntaxes which are covered by the benchmarks.
+ * <p>
+ * The Topic Maps syntaxes are serialized by the TMAPIX writers, the RDF 
+ * syntaxes are generated by the {@link RDFGenerator}. {@link #EVENTS} is
+ * the event stream of the XTM 2.1 serialization which was recorded by the 
+ * {@link EventStreamRecorder}.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public enum Format {
+
+    XTM_10(Syntax.XTM_10),
+    XTM_20(Syntax.XTM_20),
+    XTM_21(Syntax.XTM),
+    CTM(Syntax.CTM),
+    LTM(Syntax.LTM),
+    JTM(Syntax.JTM),
+    TMXML(Syntax.TMXML),
+    CXTM(Syntax.CXTM),
+    BINARY(null),
+    EVENTS(null),
+    NTRIPLES(Syntax.NTRIPLES),
+    TURTLE(Syntax.TURTLE),
+    N3(Syntax.N3),
+    RDFXML(Syntax.RDFXML);
+
+    private final Syntax _syntax;
+
+    private Format(final Syntax syntax) {
+        _syntax = syntax;
+    }
+
+    /**
+     * Returns the MIO syntax of this format.
+     *
+     * @return The syntax or {@code null} if the format cannot be read by
+     *          MIO.
+     */
+    public Syntax getSyntax() {
+        return _syntax;
+    }
+
+    /**
+     * Returns if this format is a RDF syntax.
+     *
+     * @return {@code true} if the format is a RDF syntax, otherwise {@code false}.
+     */
+    public boolean isRDF() {
+        return this == NTRIPLES || this == TURTLE || this == N3 || this == RDFXML;
+    }
+
+    /**
+     * Creates a writer for this format.
+     *
+     * @param out The stream to write to.
+     * @param baseIRI The base IRI.
+     * @return A topic map writer.
+     * @throws IOException In case of an error.
+     * @throws UnsupportedOperationException If no writer is available for 
+     *          this format.
+     */
+    public TopicMapWriter createWriter(final OutputStream out, final String baseIRI) throws IOException {
+        switch (this) {
+            case XTM_10: return new XTM10TopicMapWriter(out, baseIRI);
+            case XTM_20: return new XTM2TopicMapWriter(out, baseIRI, XTMVersion.XTM_2_0);
+            case XTM_21: return new XTM2TopicMapWriter(out, baseIRI, XTMVersion.XTM_2_1);
+            case CTM: return new CTMTopicMapWriter(out, baseIRI);
+            case LTM: return new LTMTopicMapWriter(out, baseIRI);
+            case JTM: return new JTMTopicMapWriter(out, baseIRI);
+            case TMXML: return new TMXMLTopicMapWriter(out, baseIRI);
+            case CXTM: return new CXTMTopicMapWriter(out, baseIRI);
+            case BINARY: return new BinaryTopicMapWriter(out, baseIRI);
+            default:
+                throw new UnsupportedOperationException("No writer available for " + this);
+        }
+    }
+
+    /**
+     * Serializes the topic map in this format.
+     *
+     * @param topicMap The topic map to serialize.
+     * @param out The stream to write to.
+     * @param baseIRI The base IRI.
+     * @throws IOException In case of an error.
+     */
+    public void write(final TopicMap topicMap, final OutputStream out, final String baseIRI) throws IOException {
+        if (this == EVENTS) {
+            _record(topicMap, out, baseIRI);
+            return;
+        }
+        if (!isRDF()) {
+            createWriter(out, baseIRI).write(topicMap);
+            return;
+        }
+        final Writer writer = new OutputStreamWriter(out, "utf-8");
+        if (this == RDFXML) {
+            RDFGenerator.writeRDFXML(topicMap, writer);
+        }
+        else {
+            // N-Triples is a subset of Turtle and N3
+            RDFGenerator.writeNTriples(topicMap, writer);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the events of the XTM 2.1 serialization of the topic map.
+     */
+    private static void _record(final TopicMap topicMap, final OutputStream out, final String baseIRI) throws IOException {
+        final ByteArrayOutputStream xtm = new ByteArrayOutputStream();
+        XTM_21.write(topicMap, xtm, baseIRI);
+        final EventStreamRecorder recorder = new EventStreamRecorder(out);
+        final IDeserializer deserializer = DeserializerRegistry.getInstance().createDeserializer(Syntax.XTM);
+        deserializer.setProperty(Property.VALIDATE, Boolean.FALSE);
+        deserializer.setMapHandler(recorder);
+        try {
+            deserializer.parse(new Source(new ByteArrayInputStream(xtm.toByteArray()), baseIRI));
+        }
+        catch (MIOException ex) {
+            throw new IOException("Cannot record the events: " + ex.getMessage(), ex);
+        }
+        recorder.flush();
+    }
+
+}
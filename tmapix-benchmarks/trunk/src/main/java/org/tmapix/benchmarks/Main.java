@@ -0,0 +1,52 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the benchmarks and writes the results as JSON for trend tracking.
+ * <p>
+ * Accepts the same options as <tt>org.openjdk.jmh.Main</tt>. If no result
+ * format (<tt>-rf</tt>) or result file (<tt>-rff</tt>) is provided, the
+ * results are written to <tt>tmapix-benchmarks.json</tt>.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class Main {
+
+    private Main() {
+        // noop.
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+        if (!arguments.contains("-rf")) {
+            arguments.add("-rf");
+            arguments.add("json");
+        }
+        if (!arguments.contains("-rff")) {
+            arguments.add("-rff");
+            arguments.add("tmapix-benchmarks.json");
+        }
+        org.openjdk.jmh.Main.main(arguments.toArray(new String[arguments.size()]));
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.benchmarks;
+
+import java.util.Random;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Locator;
+import org.tmapi.core.Name;
+import org.tmapi.core.TMAPIException;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.TopicMapSystem;
+import org.tmapi.core.TopicMapSystemFactory;
+
+import org.tmapix.voc.XSD;
+
+/**
+ * Generates synthetic topic maps.
+ * <p>
+ * The generated topic maps are deterministic: The same parameters produce
+ * the same topic map.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class MapGenerator {
+
+    private static final String _BASE = "http://www.example.org/map/";
+
+    private MapGenerator() {
+        // noop.
+    }
+
+    /**
+     * The shape of the generated topic maps.
+     */
+    public static enum Shape {
+
+        /**
+         * Topics with one name and one occurrence.
+         */
+        DEFAULT(0, 0),
+
+        /**
+         * Topics with several names and occurrences.
+         */
+        RICH(2, 4),
+
+        /**
+         * Topics with many occurrences.
+         */
+        OCCURRENCE_HEAVY(0, 15),
+
+        /**
+         * Topics with several names and occurrences with long values which
+         * contain markup, line breaks and non-ASCII characters.
+         */
+        TEXT_HEAVY(2, 4, true);
+
+        private final int _names;
+        private final int _occurrences;
+        private final boolean _text;
+
+        private Shape(final int names, final int occurrences) {
+            this(names, occurrences, false);
+        }
+
+        private Shape(final int names, final int occurrences, final boolean text) {
+            _names = names;
+            _occurrences = occurrences;
+            _text = text;
+        }
+
+        /**
+         * Returns the number of additional names per topic.
+         *
+         * @return The number of additional names.
+         */
+        public int getAdditionalNames() {
+            return _names;
+        }
+
+        /**
+         * Returns the number of additional occurrences per topic.
+         *
+         * @return The number of additional occurrences.
+         */
+        public int getAdditionalOccurrences() {
+            return _occurrences;
+        }
+
+        /**
+         * Returns if the additional names and occurrences have long values
+         * which must be escaped.
+         *
+         * @return {@code true} if the values contain markup.
+         */
+        public boolean isTextHeavy() {
+            return _text;
+        }
+    }
+
+    /**
+     * Creates a topic map.
+     * <p>
+     * Each topic has a subject identifier, a name and an occurrence. Some
+     * topics have an additional item identifier, a type, a name variant or
+     * a scoped name. Each association has a type and two or three roles,
+     * some associations are scoped.
+     * </p>
+     *
+     * @param topicCount The number of topics (at least <tt>1</tt>).
+     * @param associationCount The number of associations.
+     * @param seed The seed of the random number generator.
+     * @return A topic map.
+     * @throws TMAPIException If the topic map cannot be created.
+     */
+    public static TopicMap generate(final int topicCount,
+            final int associationCount, final long seed) throws TMAPIException {
+        return generate(topicCount, associationCount, Shape.DEFAULT, seed);
+    }
+
+    /**
+     * Creates a topic map with the provided shape.
+     * <p>
+     * The {@link Shape#DEFAULT} shape creates the same topic map as 
+     * {@link #generate(int, int, long)}, the other shapes add names and
+     * occurrences to each topic.
+     * </p>
+     *
+     * @param topicCount The number of topics (at least <tt>1</tt>).
+     * @param associationCount The number of associations.
+     * @param shape The shape of the topic map.
+     * @param seed The seed of the random number generator.
+     * @return A topic map.
+     * @throws TMAPIException If the topic map cannot be created.
+     */
+    public static TopicMap generate(final int topicCount,
+            final int associationCount, final Shape shape, final long seed) throws TMAPIException {
+        if (topicCount < 1) {
+            throw new IllegalArgumentException("The number of topics must be greater than zero");
+        }
+        final TopicMapSystem sys = TopicMapSystemFactory.newInstance().newTopicMapSystem();
+        final TopicMap tm = sys.createTopicMap(_BASE + seed);
+        final Random rnd = new Random(seed);
+        final Locator string = tm.createLocator(XSD.STRING);
+        final Topic[] topics = new Topic[topicCount];
+        for (int i=0; i < topicCount; i++) {
+            topics[i] = tm.createTopicBySubjectIdentifier(tm.createLocator(_BASE + "topic-" + i));
+        }
+        final int typeCount = Math.max(1, topicCount / 100);
+        for (int i=0; i < topicCount; i++) {
+            final Topic topic = topics[i];
+            if (rnd.nextInt(4) == 0) {
+                topic.addItemIdentifier(tm.createLocator(_BASE + "iid-" + i));
+            }
+            if (rnd.nextInt(3) == 0) {
+                topic.addType(topics[rnd.nextInt(typeCount)]);
+            }
+            if (rnd.nextInt(5) == 0) {
+                topic.createName("Topic " + i, topics[rnd.nextInt(typeCount)]);
+            }
+            else {
+                final Name name = topic.createName("Topic " + i);
+                if (rnd.nextInt(10) == 0) {
+                    name.createVariant("topic-" + i, topics[rnd.nextInt(typeCount)]);
+                }
+            }
+            topic.createOccurrence(topics[rnd.nextInt(typeCount)], "Value " + rnd.nextInt(1000), string);
+            for (int j=0; j < shape.getAdditionalNames(); j++) {
+                final Topic type = topics[rnd.nextInt(typeCount)];
+                final String value = "Name " + j + " of topic " + i;
+                topic.createName(type, shape.isTextHeavy() ? _text(value, rnd) : value);
+            }
+            for (int j=0; j < shape.getAdditionalOccurrences(); j++) {
+                final Topic type = topics[rnd.nextInt(typeCount)];
+                final String value = "Value " + rnd.nextInt(1000);
+                topic.createOccurrence(type, shape.isTextHeavy() ? _text(value, rnd) : value, string);
+            }
+        }
+        for (int i=0; i < associationCount; i++) {
+            final Association assoc = rnd.nextInt(5) == 0
+                                        ? tm.createAssociation(topics[rnd.nextInt(typeCount)], topics[rnd.nextInt(typeCount)])
+                                        : tm.createAssociation(topics[rnd.nextInt(typeCount)]);
+            final int roles = 2 + rnd.nextInt(2);
+            for (int j=0; j < roles; j++) {
+                assoc.createRole(topics[rnd.nextInt(typeCount)], topics[rnd.nextInt(topicCount)]);
+            }
+        }
+        return tm;
+    }
+
+    /**
+     * Returns a value of about 300 characters which contains characters that
+     * must be escaped in XML and non-ASCII characters.
+     */
+    private static String _text(final String value, final Random rnd) {
+        final StringBuilder sb = new StringBuilder(320);
+        sb.append("<p class=\"description\">").append(value).append("</p>\r\n");
+        while (sb.length() < 300) {
+            switch (rnd.nextInt(4)) {
+                case 0: sb.append("Gr\u00F6\u00DFe & Gewicht \u2013 "); break;
+                case 1: sb.append("\u6771\u4EAC \"quoted\" "); break;
+                case 2: sb.append("a < b > c\t"); break;
+                default: sb.append("plain ASCII text ");
+            }
+        }
+        return sb.toString();
+    }
+
+}
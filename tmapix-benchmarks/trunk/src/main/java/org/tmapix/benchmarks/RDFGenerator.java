@@ -0,0 +1,286 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Locator;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Role;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+
+/**
+ * Generates RDF from a topic map which can be read by the RDF readers.
+ * <p>
+ * The RDF contains the RDF2TM mapping of the used predicates, the 
+ * document can be used as data source and as mapping source. Only topics
+ * with a subject identifier and binary associations (the first two roles)
+ * are converted, the scope and the type of the names are lost.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class RDFGenerator {
+
+    private static final String _RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    private static final String _RTM = "http://psi.ontopia.net/rdf2tm/#";
+    private static final String _VOC = "http://www.example.org/rdf/vocab/";
+    private static final String _OCC = "http://www.example.org/rdf/occurrence/";
+    private static final String _ASSOC = "http://www.example.org/rdf/association/";
+
+    private final Sink _sink;
+    private final Map<Topic, String> _localNames;
+    private final Set<String> _occurrencePredicates;
+    private final Set<String> _associationPredicates;
+
+    private RDFGenerator(final Sink sink) {
+        _sink = sink;
+        _localNames = new IdentityHashMap<Topic, String>();
+        _occurrencePredicates = new LinkedHashSet<String>();
+        _associationPredicates = new LinkedHashSet<String>();
+    }
+
+    /**
+     * Writes the topic map as N-Triples. N-Triples is a subset of Turtle and
+     * N3, the output can be read by these readers as well.
+     *
+     * @param topicMap The topic map.
+     * @param out The writer to write to.
+     * @throws IOException In case of an error.
+     */
+    public static void writeNTriples(final TopicMap topicMap, final Writer out) throws IOException {
+        new RDFGenerator(new NTriplesSink(out))._write(topicMap);
+    }
+
+    /**
+     * Writes the topic map as RDF/XML.
+     *
+     * @param topicMap The topic map.
+     * @param out The writer to write to.
+     * @throws IOException In case of an error.
+     */
+    public static void writeRDFXML(final TopicMap topicMap, final Writer out) throws IOException {
+        final RDFXMLSink sink = new RDFXMLSink(out);
+        sink.start();
+        new RDFGenerator(sink)._write(topicMap);
+        sink.end();
+    }
+
+    private void _write(final TopicMap topicMap) throws IOException {
+        for (Topic topic: topicMap.getTopics()) {
+            final String subject = _iri(topic);
+            if (subject == null) {
+                continue;
+            }
+            for (Topic type: topic.getTypes()) {
+                final String typeIRI = _iri(type);
+                if (typeIRI != null) {
+                    _sink.resource(subject, _RDF + "type", typeIRI);
+                }
+            }
+            for (Name name: topic.getNames()) {
+                _sink.literal(subject, _VOC + "name", name.getValue());
+            }
+            for (Occurrence occ: topic.getOccurrences()) {
+                final String predicate = _OCC + _localName(occ.getType());
+                _occurrencePredicates.add(predicate);
+                _sink.literal(subject, predicate, occ.getValue());
+            }
+        }
+        for (Association assoc: topicMap.getAssociations()) {
+            if (assoc.getRoles().size() < 2) {
+                continue;
+            }
+            final Role[] roles = assoc.getRoles().toArray(new Role[assoc.getRoles().size()]);
+            final String subject = _iri(roles[0].getPlayer());
+            final String object = _iri(roles[1].getPlayer());
+            if (subject == null || object == null) {
+                continue;
+            }
+            final String predicate = _ASSOC + _localName(assoc.getType());
+            _associationPredicates.add(predicate);
+            _sink.resource(subject, predicate, object);
+        }
+        _sink.resource(_RDF + "type", _RTM + "maps-to", _RTM + "instance-of");
+        _sink.resource(_VOC + "name", _RTM + "maps-to", _RTM + "basename");
+        for (String predicate: _occurrencePredicates) {
+            _sink.resource(predicate, _RTM + "maps-to", _RTM + "occurrence");
+        }
+        for (String predicate: _associationPredicates) {
+            _sink.resource(predicate, _RTM + "maps-to", _RTM + "association");
+            _sink.resource(predicate, _RTM + "subject-role", _VOC + "subject");
+            _sink.resource(predicate, _RTM + "object-role", _VOC + "object");
+        }
+    }
+
+    private static String _iri(final Topic topic) {
+        final Set<Locator> sids = topic.getSubjectIdentifiers();
+        return sids.isEmpty() ? null : sids.iterator().next().getReference();
+    }
+
+    /**
+     * Returns a NCName for the type.
+     */
+    private String _localName(final Topic type) {
+        String name = _localNames.get(type);
+        if (name == null) {
+            name = "t" + _localNames.size();
+            _localNames.put(type, name);
+        }
+        return name;
+    }
+
+
+    /**
+     * Receives the statements.
+     */
+    private static interface Sink {
+
+        public void resource(String subject, String predicate, String object) throws IOException;
+
+        public void literal(String subject, String predicate, String value) throws IOException;
+
+    }
+
+
+    /**
+     * Writes N-Triples.
+     */
+    private static final class NTriplesSink implements Sink {
+
+        private final Writer _out;
+
+        NTriplesSink(final Writer out) {
+            _out = out;
+        }
+
+        @Override
+        public void resource(final String subject, final String predicate, final String object) throws IOException {
+            _out.write('<');
+            _out.write(subject);
+            _out.write("> <");
+            _out.write(predicate);
+            _out.write("> <");
+            _out.write(object);
+            _out.write("> .\n");
+        }
+
+        @Override
+        public void literal(final String subject, final String predicate, final String value) throws IOException {
+            _out.write('<');
+            _out.write(subject);
+            _out.write("> <");
+            _out.write(predicate);
+            _out.write("> \"");
+            for (int i=0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                switch (c) {
+                    case '\\': _out.write("\\\\"); break;
+                    case '"': _out.write("\\\""); break;
+                    case '\n': _out.write("\\n"); break;
+                    case '\r': _out.write("\\r"); break;
+                    case '\t': _out.write("\\t"); break;
+                    default:
+                        if (c < 0x20 || c > 0x7E) {
+                            _out.write(String.format("\\u%04X", Integer.valueOf(c)));
+                        }
+                        else {
+                            _out.write(c);
+                        }
+                }
+            }
+            _out.write("\" .\n");
+        }
+    }
+
+
+    /**
+     * Writes RDF/XML, each statement is written as own description.
+     */
+    private static final class RDFXMLSink implements Sink {
+
+        private final Writer _out;
+
+        RDFXMLSink(final Writer out) {
+            _out = out;
+        }
+
+        void start() throws IOException {
+            _out.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+            _out.write("<rdf:RDF xmlns:rdf=\"" + _RDF + "\">\n");
+        }
+
+        void end() throws IOException {
+            _out.write("</rdf:RDF>\n");
+        }
+
+        @Override
+        public void resource(final String subject, final String predicate, final String object) throws IOException {
+            _startStatement(subject, predicate);
+            _out.write(" rdf:resource=\"");
+            _escape(object);
+            _out.write("\"/></rdf:Description>\n");
+        }
+
+        @Override
+        public void literal(final String subject, final String predicate, final String value) throws IOException {
+            _startStatement(subject, predicate);
+            _out.write('>');
+            _escape(value);
+            _out.write("</p:");
+            _out.write(_localName(predicate));
+            _out.write("></rdf:Description>\n");
+        }
+
+        private void _startStatement(final String subject, final String predicate) throws IOException {
+            final String localName = _localName(predicate);
+            _out.write("<rdf:Description rdf:about=\"");
+            _escape(subject);
+            _out.write("\"><p:");
+            _out.write(localName);
+            _out.write(" xmlns:p=\"");
+            _escape(predicate.substring(0, predicate.length() - localName.length()));
+            _out.write('"');
+        }
+
+        private static String _localName(final String iri) {
+            return iri.substring(Math.max(iri.lastIndexOf('#'), iri.lastIndexOf('/')) + 1);
+        }
+
+        private void _escape(final String value) throws IOException {
+            for (int i=0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                switch (c) {
+                    case '&': _out.write("&amp;"); break;
+                    case '<': _out.write("&lt;"); break;
+                    case '>': _out.write("&gt;"); break;
+                    case '"': _out.write("&quot;"); break;
+                    default: _out.write(c);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Reifiable;
+import org.tmapi.core.Role;
+import org.tmapi.core.Scoped;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.Variant;
+import org.tmapix.io.internal.utils.Signature;
+import org.tmapix.io.internal.utils.SignatureGenerator;
+
+/**
+ * Measures the signature-keyed indexes which are used to detect duplicates
+ * while merging imported constructs.
+ * <p>
+ * The topic map contains few topics and many associations, so most roles
+ * are duplicates. The {@link #strings()} benchmark uses the string
+ * concatenation of the type, the sorted scope and the value which was used
+ * by previous releases and serves as baseline.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value=1, jvmArgsAppend="-Xmx4g")
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+public class SignatureGeneratorBenchmark {
+
+    /**
+     * The number of associations, the topic map contains a topic per fifty
+     * associations.
+     */
+    @Param({"10000", "100000", "1000000"})
+    public int associations;
+
+    private TopicMap _topicMap;
+    private List<Reifiable> _constructs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        _topicMap = MapGenerator.generate(associations / 50, associations, 42);
+        _constructs = new ArrayList<Reifiable>();
+        for (Topic topic: _topicMap.getTopics()) {
+            for (Name name: topic.getNames()) {
+                _constructs.add(name);
+                _constructs.addAll(name.getVariants());
+            }
+            _constructs.addAll(topic.getOccurrences());
+        }
+        for (Association assoc: _topicMap.getAssociations()) {
+            _constructs.add(assoc);
+            _constructs.addAll(assoc.getRoles());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _topicMap.close();
+        _topicMap = null;
+        _constructs = null;
+    }
+
+    @Benchmark
+    public int signatures() {
+        final Map<Signature, Reifiable> index = new HashMap<Signature, Reifiable>();
+        for (Reifiable reifiable: _constructs) {
+            index.put(SignatureGenerator.signature(reifiable), reifiable);
+        }
+        return index.size();
+    }
+
+    @Benchmark
+    public int strings() {
+        final Map<String, Reifiable> index = new HashMap<String, Reifiable>();
+        for (Reifiable reifiable: _constructs) {
+            index.put(_stringSignature(reifiable), reifiable);
+        }
+        return index.size();
+    }
+
+    private static String _stringSignature(final Reifiable reifiable) {
+        final StringBuilder sb = new StringBuilder();
+        if (reifiable instanceof Association) {
+            final Association assoc = (Association) reifiable;
+            sb.append(assoc.getType().getId()).append('.')
+                .append(_scopeSignature(assoc)).append('.');
+            final Collection<Role> roles = assoc.getRoles();
+            final String[] keys = new String[roles.size()];
+            int i = 0;
+            for (Role role: roles) {
+                keys[i++] = _stringSignature(role);
+            }
+            Arrays.sort(keys);
+            for (String key: keys) {
+                sb.append(key);
+            }
+        }
+        else if (reifiable instanceof Role) {
+            final Role role = (Role) reifiable;
+            sb.append(role.getType().getId()).append('.').append(role.getPlayer().getId());
+        }
+        else if (reifiable instanceof Occurrence) {
+            final Occurrence occ = (Occurrence) reifiable;
+            sb.append(occ.getType().getId()).append('.')
+                .append(_scopeSignature(occ)).append('.')
+                .append(occ.getValue()).append('.')
+                .append(occ.getDatatype().toExternalForm());
+        }
+        else if (reifiable instanceof Name) {
+            final Name name = (Name) reifiable;
+            sb.append(name.getType().getId()).append('.')
+                .append(_scopeSignature(name)).append('.')
+                .append(name.getValue());
+        }
+        else {
+            final Variant variant = (Variant) reifiable;
+            sb.append(_scopeSignature(variant)).append('.')
+                .append(variant.getValue()).append('.')
+                .append(variant.getDatatype().toExternalForm());
+        }
+        return sb.toString();
+    }
+
+    private static String _scopeSignature(final Scoped scoped) {
+        final Collection<Topic> scope = scoped.getScope();
+        final String[] keys = new String[scope.size()];
+        int i = 0;
+        for (Topic theme: scope) {
+            keys[i++] = theme.getId();
+        }
+        Arrays.sort(keys);
+        final StringBuilder sb = new StringBuilder();
+        for (String key: keys) {
+            sb.append(key);
+        }
+        return sb.toString();
+    }
+
+}
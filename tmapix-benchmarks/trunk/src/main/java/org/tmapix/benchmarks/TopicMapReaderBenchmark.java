@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.TopicMapSystem;
+import org.tmapi.core.TopicMapSystemFactory;
+import org.tmapix.io.BinaryTopicMapReader;
+import org.tmapix.io.EventStreamTopicMapReader;
+import org.tmapix.io.MapHandlerFactory;
+
+import com.semagia.mio.DeserializerRegistry;
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+
+/**
+ * Measures the parsing of topic maps.
+ * <p>
+ * The topic map is either created by the map handler of the Topic Maps 
+ * engine (<tt>native</tt>, i.e. tinyTiM's map handler) or by the generic 
+ * TMAPI map handler (<tt>generic</tt>), see {@link MapHandlerFactory}.
+ * </p>
+ * <p>
+ * {@link Format#BINARY} is read by the {@link BinaryTopicMapReader} which
+ * always uses the native map handler, {@link Format#EVENTS} is replayed by
+ * the {@link EventStreamTopicMapReader}.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value=1, jvmArgsAppend="-Xmx4g")
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+public class TopicMapReaderBenchmark {
+
+    @Param({"XTM_10", "XTM_20", "XTM_21", "CTM", "LTM", "JTM", "TMXML", "BINARY", "EVENTS", "NTRIPLES", "TURTLE", "N3", "RDFXML"})
+    public Format format;
+
+    @Param({"native", "generic"})
+    public String handler;
+
+    @Param({"DEFAULT", "RICH"})
+    public MapGenerator.Shape shape;
+
+    /**
+     * The number of associations, the topic map contains a topic per five
+     * associations.
+     */
+    @Param({"10000", "100000"})
+    public int associations;
+
+    private File _file;
+    private String _docIRI;
+    private TopicMapSystem _sys;
+    private TopicMap _topicMap;
+    private int _count;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final TopicMap topicMap = MapGenerator.generate(associations / 5, associations, shape, 42);
+        _file = File.createTempFile("tmapix-benchmark", "." + format.name().toLowerCase());
+        _docIRI = _file.toURI().toURL().toExternalForm();
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(_file));
+        try {
+            format.write(topicMap, out, _docIRI);
+        }
+        finally {
+            out.close();
+        }
+        topicMap.close();
+        _sys = TopicMapSystemFactory.newInstance().newTopicMapSystem();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _sys.close();
+        _file.delete();
+    }
+
+    @TearDown(Level.Invocation)
+    public void removeTopicMap() {
+        if (_topicMap != null) {
+            _topicMap.remove();
+            _topicMap = null;
+        }
+    }
+
+    @Benchmark
+    public TopicMap read() throws Exception {
+        _topicMap = _sys.createTopicMap("http://www.example.org/map/" + _count++);
+        final IMapHandler mapHandler = "generic".equals(handler) ? MapHandlerFactory.createTMAPIMapHandler(_topicMap)
+                                                                 : MapHandlerFactory.createMapHandler(_topicMap);
+        final InputStream in = new BufferedInputStream(new FileInputStream(_file));
+        try {
+            if (format == Format.BINARY) {
+                new BinaryTopicMapReader(_topicMap, in).read();
+            }
+            else if (format == Format.EVENTS) {
+                EventStreamTopicMapReader.replay(in, mapHandler);
+            }
+            else {
+                final IDeserializer deserializer = DeserializerRegistry.getInstance().createDeserializer(format.getSyntax());
+                deserializer.setProperty(Property.VALIDATE, Boolean.FALSE);
+                if (format.isRDF()) {
+                    deserializer.setProperty(Property.RDF2TM_MAPPING_IRI, _docIRI);
+                    deserializer.setProperty(Property.RDF2TM_MAPPING_SYNTAX, format.getSyntax());
+                }
+                deserializer.setMapHandler(mapHandler);
+                deserializer.parse(new Source(in, _docIRI));
+            }
+        }
+        finally {
+            in.close();
+        }
+        return _topicMap;
+    }
+
+}
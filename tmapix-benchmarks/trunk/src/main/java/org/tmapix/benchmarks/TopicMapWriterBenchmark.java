@@ -0,0 +1,82 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.tmapi.core.TopicMap;
+
+/**
+ * Measures the serialization of topic maps by the writers.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value=1, jvmArgsAppend="-Xmx4g")
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+public class TopicMapWriterBenchmark {
+
+    @Param({"XTM_10", "XTM_20", "XTM_21", "CTM", "LTM", "JTM", "TMXML", "CXTM", "BINARY"})
+    public Format format;
+
+    @Param({"DEFAULT", "RICH"})
+    public MapGenerator.Shape shape;
+
+    /**
+     * The number of associations, the topic map contains a topic per five
+     * associations.
+     */
+    @Param({"10000", "100000"})
+    public int associations;
+
+    private TopicMap _topicMap;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        _topicMap = MapGenerator.generate(associations / 5, associations, shape, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _topicMap.close();
+        _topicMap = null;
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        format.write(_topicMap, new CXTMTopicMapWriterBenchmark.NullOutputStream(), "http://www.example.org/map/");
+    }
+
+}
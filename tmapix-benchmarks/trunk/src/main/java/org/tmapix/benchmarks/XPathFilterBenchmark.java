@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.tmapi.core.TopicMap;
+
+import com.semagia.tmapix.filter.IFilter;
+import com.semagia.tmapix.filter.xpath.XPathFilter;
+
+/**
+ * Measures the evaluation of representative {@link XPathFilter} expressions
+ * against the topic map.
+ * <p>
+ * The <tt>match*</tt> benchmarks compare the filters evaluated by Jaxen
+ * ({@link XPathFilter#create(String)}) with the filters evaluated by the
+ * native path engine ({@link XPathFilter#createNative(String)}).
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value=1, jvmArgsAppend="-Xmx4g")
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+public class XPathFilterBenchmark {
+
+    @Param({
+        "topic",
+        "sid('http://www.example.org/map/topic-7')",
+        "topic[name/value='Topic 42']",
+        "topic/name[default-name(.)]/value",
+        "topic/occurrence[datatype=xsd:string]/value",
+        "association[type=sid('http://www.example.org/map/topic-0')]",
+        "association/role[type=sid('http://www.example.org/map/topic-1')]/player"
+    })
+    public String expression;
+
+    /**
+     * The number of associations, the topic map contains a topic per five
+     * associations.
+     */
+    @Param({"10000", "100000"})
+    public int associations;
+
+    private TopicMap _topicMap;
+    private IFilter<Object> _filter;
+    private IFilter<Object> _nativeFilter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        _topicMap = MapGenerator.generate(associations / 5, associations, 42);
+        _filter = XPathFilter.create(expression);
+        _nativeFilter = XPathFilter.createNative(expression);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _topicMap.close();
+        _topicMap = null;
+    }
+
+    @Benchmark
+    public IFilter<Object> compile() {
+        // Measures the compilation and not the cache lookup
+        XPathFilter.clearCache();
+        return XPathFilter.create(expression);
+    }
+
+    @Benchmark
+    public IFilter<Object> compileCached() {
+        return XPathFilter.create(expression);
+    }
+
+    @Benchmark
+    public void match(final Blackhole blackhole) {
+        for (Object result: _filter.match(_topicMap)) {
+            blackhole.consume(result);
+        }
+    }
+
+    @Benchmark
+    public void matchNative(final Blackhole blackhole) {
+        for (Object result: _nativeFilter.match(_topicMap)) {
+            blackhole.consume(result);
+        }
+    }
+
+    @Benchmark
+    public Object matchOne() {
+        return _filter.matchOne(_topicMap);
+    }
+
+    @Benchmark
+    public Object matchOneNative() {
+        return _nativeFilter.matchOne(_topicMap);
+    }
+
+}
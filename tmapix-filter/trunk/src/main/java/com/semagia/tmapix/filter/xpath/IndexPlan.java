@@ -0,0 +1,345 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import static com.semagia.tmapix.filter.xpath.ChildAxis.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jaxen.ContextSupport;
+import org.jaxen.expr.BinaryExpr;
+import org.jaxen.expr.Expr;
+import org.jaxen.expr.FunctionCallExpr;
+import org.jaxen.expr.LiteralExpr;
+import org.jaxen.expr.LocationPath;
+import org.jaxen.expr.NameStep;
+import org.jaxen.expr.Predicate;
+import org.jaxen.expr.UnaryExpr;
+import org.jaxen.saxpath.Axis;
+import org.tmapi.core.Construct;
+import org.tmapi.core.Locator;
+import org.tmapi.core.Name;
+import org.tmapi.core.Role;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.index.LiteralIndex;
+import org.tmapi.index.ScopedIndex;
+import org.tmapi.index.TypeInstanceIndex;
+
+/**
+ * Plan which retrieves the candidates of a <tt>topic</tt> or 
+ * <tt>association</tt> step by an index lookup instead of iterating over 
+ * all topics / associations of the topic map.
+ * <p>
+ * The plan is derived from the first predicate of the step. The following
+ * patterns are recognized (<tt>$id</tt> is either <tt>sid('...')</tt>,
+ * <tt>iid('...')</tt> or <tt>slo('...')</tt>, the <tt>type = $id</tt> 
+ * pattern may be written as <tt>type/sid = '...'</tt> as well):
+ * </p>
+ * <ul>
+ *   <li><tt>topic[sid = '...']</tt> (<tt>iid</tt>, <tt>slo</tt>): identity lookup</li>
+ *   <li><tt>topic[type = $id]</tt>, <tt>association[type = $id]</tt>: 
+ *       {@link TypeInstanceIndex}</li>
+ *   <li><tt>topic[name/value = '...']</tt>: {@link LiteralIndex}</li>
+ *   <li><tt>association[scope = $id]</tt>: {@link ScopedIndex}</li>
+ *   <li><tt>association[role/player = $id]</tt>: the roles played by the topic</li>
+ * </ul>
+ * <p>
+ * The plan does not change the result: The candidates are a superset of the
+ * result and all predicates (including the one the plan was derived from) 
+ * are applied to them.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+final class IndexPlan {
+
+    private static final int _IDENTITY = 0;
+    private static final int _TYPE = 1;
+    private static final int _SCOPE = 2;
+    private static final int _PLAYER = 3;
+    private static final int _NAME_VALUE = 4;
+
+    private final boolean _topics;
+    private final int _kind;
+    private final String _identity;
+    private final String _key;
+
+    private IndexPlan(final boolean topics, final int kind, final String identity, final String key) {
+        _topics = topics;
+        _kind = kind;
+        _identity = identity;
+        _key = key;
+    }
+
+    /**
+     * Returns a plan for the step or <tt>null</tt> if the step must be 
+     * evaluated by navigation.
+     *
+     * @param step The step.
+     * @return A plan or <tt>null</tt>.
+     */
+    static IndexPlan create(final NameStep step) {
+        if (step.getAxis() != Axis.CHILD
+                || step.getPredicates().isEmpty()
+                || !"".equals(step.getPrefix())) {
+            return null;
+        }
+        final boolean topics = isTopicAxis(step.getLocalName());
+        if (!topics && !isAssociationAxis(step.getLocalName())) {
+            return null;
+        }
+        // Only the first predicate is taken into account, a preceding 
+        // predicate may depend on the position of the nodes.
+        final Expr expr = ((Predicate) step.getPredicates().get(0)).getExpr();
+        if (!(expr instanceof BinaryExpr) || isPositional(expr)) {
+            return null;
+        }
+        return _create(topics, (BinaryExpr) expr);
+    }
+
+    private static IndexPlan _create(final boolean topics, final BinaryExpr expr) {
+        final String op = expr.getOperator();
+        if ("and".equals(op)) {
+            IndexPlan plan = null;
+            if (expr.getLHS() instanceof BinaryExpr) {
+                plan = _create(topics, (BinaryExpr) expr.getLHS());
+            }
+            if (plan == null && expr.getRHS() instanceof BinaryExpr) {
+                plan = _create(topics, (BinaryExpr) expr.getRHS());
+            }
+            return plan;
+        }
+        if (!"=".equals(op)) {
+            return null;
+        }
+        final IndexPlan plan = _create(topics, expr.getLHS(), expr.getRHS());
+        return plan != null ? plan : _create(topics, expr.getRHS(), expr.getLHS());
+    }
+
+    private static IndexPlan _create(final boolean topics, final Expr pathExpr, final Expr keyExpr) {
+        List<String> path = _path(pathExpr);
+        if (path == null) {
+            return null;
+        }
+        String identity = null;
+        String key = null;
+        if (keyExpr instanceof LiteralExpr) {
+            key = ((LiteralExpr) keyExpr).getLiteral();
+            final String last = path.isEmpty() ? null : path.get(path.size() - 1);
+            if (last != null && _isIdentity(last)) {
+                identity = last;
+                path = path.subList(0, path.size() - 1);
+            }
+            else if (topics && path.size() == 2 && isNameAxis(path.get(0)) && isValueAxis(path.get(1))) {
+                return new IndexPlan(topics, _NAME_VALUE, null, key);
+            }
+            else {
+                return null;
+            }
+        }
+        else if (keyExpr instanceof FunctionCallExpr) {
+            final FunctionCallExpr fun = (FunctionCallExpr) keyExpr;
+            if (!_isIdentity(fun.getFunctionName())
+                    || fun.getPrefix() != null && fun.getPrefix().length() > 0
+                    || fun.getParameters().size() != 1
+                    || !(fun.getParameters().get(0) instanceof LiteralExpr)) {
+                return null;
+            }
+            identity = fun.getFunctionName();
+            key = ((LiteralExpr) fun.getParameters().get(0)).getLiteral();
+        }
+        else {
+            return null;
+        }
+        if (path.isEmpty()) {
+            return topics ? new IndexPlan(topics, _IDENTITY, identity, key) : null;
+        }
+        if (path.size() == 1 && isTypeAxis(path.get(0))) {
+            return new IndexPlan(topics, _TYPE, identity, key);
+        }
+        if (!topics && path.size() == 1 && isScopeAxis(path.get(0))) {
+            return new IndexPlan(topics, _SCOPE, identity, key);
+        }
+        if (!topics && path.size() == 2 && isRoleAxis(path.get(0)) && isPlayerAxis(path.get(1))) {
+            return new IndexPlan(topics, _PLAYER, identity, key);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the names of the steps of a relative path which consists of 
+     * child steps without predicates or <tt>null</tt> if the expression
+     * is not such a path.
+     */
+    private static List<String> _path(final Expr expr) {
+        if (!(expr instanceof LocationPath) || ((LocationPath) expr).isAbsolute()) {
+            return null;
+        }
+        final List<?> steps = ((LocationPath) expr).getSteps();
+        final List<String> path = new ArrayList<String>(steps.size());
+        for (Object obj: steps) {
+            if (!(obj instanceof NameStep)) {
+                return null;
+            }
+            final NameStep step = (NameStep) obj;
+            if (step.getAxis() != Axis.CHILD
+                    || !step.getPredicates().isEmpty()
+                    || !"".equals(step.getPrefix())
+                    || "*".equals(step.getLocalName())) {
+                return null;
+            }
+            path.add(step.getLocalName());
+        }
+        return path;
+    }
+
+    private static boolean _isIdentity(final String name) {
+        return isSubjectIdentifierAxis(name) 
+                || isItemIdentifierAxis(name) 
+                || isSubjectLocatorAxis(name);
+    }
+
+    /**
+     * Returns if the expression depends on the position of the context node.
+     * <p>
+     * Location paths are not inspected since their predicates are evaluated
+     * against their own context.
+     * </p>
+     *
+     * @param expr The expression to inspect.
+     * @return <tt>true</tt> if the expression calls <tt>position()</tt> or
+     *          <tt>last()</tt>, otherwise <tt>false</tt>.
+     */
+    static boolean isPositional(final Expr expr) {
+        if (expr instanceof BinaryExpr) {
+            return isPositional(((BinaryExpr) expr).getLHS()) 
+                    || isPositional(((BinaryExpr) expr).getRHS());
+        }
+        if (expr instanceof UnaryExpr) {
+            return isPositional(((UnaryExpr) expr).getExpr());
+        }
+        if (expr instanceof FunctionCallExpr) {
+            final FunctionCallExpr fun = (FunctionCallExpr) expr;
+            if ("position".equals(fun.getFunctionName()) || "last".equals(fun.getFunctionName())) {
+                return true;
+            }
+            for (Object param: fun.getParameters()) {
+                if (isPositional((Expr) param)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the candidates of the step.
+     *
+     * @param tm The topic map.
+     * @param support The context support which provides the indexes.
+     * @return The candidates or <tt>null</tt> if the index lookup is not 
+     *          possible.
+     */
+    List<?> getCandidates(final TopicMap tm, final ContextSupport support) {
+        return getCandidates(tm, support instanceof MapContextSupport 
+                                    ? ((MapContextSupport) support).getIndexSession()
+                                    : new IndexSession());
+    }
+
+    /**
+     * Returns the candidates of the step.
+     *
+     * @param tm The topic map.
+     * @param session The index session of the evaluation.
+     * @return The candidates or <tt>null</tt> if the index lookup is not 
+     *          possible.
+     */
+    List<?> getCandidates(final TopicMap tm, final IndexSession session) {
+        if (_kind == _NAME_VALUE) {
+            final Set<Topic> result = new LinkedHashSet<Topic>();
+            for (Name name: session.getIndex(tm, LiteralIndex.class).getNames(_key)) {
+                result.add(name.getParent());
+            }
+            return new ArrayList<Topic>(result);
+        }
+        final Topic topic;
+        try {
+            topic = _resolve(tm);
+        }
+        catch (RuntimeException ex) {
+            // Invalid IRI, let the navigator handle it
+            return null;
+        }
+        if (topic == null) {
+            return Collections.emptyList();
+        }
+        switch (_kind) {
+            case _IDENTITY:
+                return Collections.singletonList(topic);
+            case _TYPE:
+                final TypeInstanceIndex typeInstanceIdx = session.getIndex(tm, TypeInstanceIndex.class);
+                return new ArrayList<Construct>(_topics ? typeInstanceIdx.getTopics(topic)
+                                                        : typeInstanceIdx.getAssociations(topic));
+            case _SCOPE:
+                return new ArrayList<Construct>(session.getIndex(tm, ScopedIndex.class).getAssociations(topic));
+            case _PLAYER:
+                final Set<Construct> result = new LinkedHashSet<Construct>();
+                for (Role role: topic.getRolesPlayed()) {
+                    result.add(role.getParent());
+                }
+                return new ArrayList<Construct>(result);
+            default:
+                throw new IllegalStateException("Unknown plan " + _kind);
+        }
+    }
+
+    /**
+     * Returns the topic which is identified by the key.
+     */
+    private Topic _resolve(final TopicMap tm) {
+        final Locator loc = tm.createLocator(_key);
+        if (isSubjectIdentifierAxis(_identity)) {
+            return tm.getTopicBySubjectIdentifier(loc);
+        }
+        if (isSubjectLocatorAxis(_identity)) {
+            return tm.getTopicBySubjectLocator(loc);
+        }
+        final Construct construct = tm.getConstructByItemIdentifier(loc);
+        return construct instanceof Topic ? (Topic) construct : null;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        final String[] kinds = {"identity", "type", "scope", "player", "name-value"};
+        return "IndexPlan[" + (_topics ? "topic" : "association") + ", " + kinds[_kind] 
+                + ", " + (_identity != null ? _identity + "(" + _key + ")" : _key) + "]";
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.jaxen.ContextSupport;
+import org.tmapi.core.TopicMap;
+import org.tmapi.index.Index;
+
+/**
+ * Keeps the indexes which were opened during the evaluation of a filter.
+ * <p>
+ * An index is opened and, if it is not updated automatically, reindexed 
+ * once per session and topic map and shared by all steps of the evaluation.
+ * The session is thread-safe, the partitions of a parallel evaluation share
+ * one session.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+final class IndexSession {
+
+    private final Map<TopicMap, Map<Class<?>, Index>> _indexes;
+
+    IndexSession() {
+        _indexes = new IdentityHashMap<TopicMap, Map<Class<?>, Index>>(2);
+    }
+
+    /**
+     * Returns an open and up to date index of the provided topic map.
+     *
+     * @param tm The topic map.
+     * @param indexClass The index type.
+     * @return The index.
+     */
+    synchronized <I extends Index> I getIndex(final TopicMap tm, final Class<I> indexClass) {
+        Map<Class<?>, Index> indexes = _indexes.get(tm);
+        if (indexes == null) {
+            indexes = new HashMap<Class<?>, Index>(4);
+            _indexes.put(tm, indexes);
+        }
+        I idx = indexClass.cast(indexes.get(indexClass));
+        if (idx == null) {
+            idx = openIndex(tm, indexClass);
+            indexes.put(indexClass, idx);
+        }
+        return idx;
+    }
+
+    /**
+     * Returns an open and up to date index of the provided topic map.
+     * <p>
+     * If the context support provides an {@link IndexSession}, the index is
+     * taken from the session, otherwise the index is opened.
+     * </p>
+     *
+     * @param support The context support of the evaluation.
+     * @param tm The topic map.
+     * @param indexClass The index type.
+     * @return The index.
+     */
+    static <I extends Index> I getIndex(final ContextSupport support, final TopicMap tm, final Class<I> indexClass) {
+        return support instanceof MapContextSupport 
+                ? ((MapContextSupport) support).getIndexSession().getIndex(tm, indexClass)
+                : openIndex(tm, indexClass);
+    }
+
+    /**
+     * Opens the index and reindexes it if it is not updated automatically.
+     *
+     * @param tm The topic map.
+     * @param indexClass The index type.
+     * @return The index.
+     */
+    static <I extends Index> I openIndex(final TopicMap tm, final Class<I> indexClass) {
+        final I idx = tm.getIndex(indexClass);
+        idx.open();
+        if (!idx.isAutoUpdated()) {
+            idx.reindex();
+        }
+        return idx;
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import static com.semagia.tmapix.filter.utils.TMAPIUtils.isTopic;
+import static com.semagia.tmapix.filter.xpath.ChildAxis.isInstanceAxis;
+
+import java.util.Iterator;
+
+import org.jaxen.ContextSupport;
+import org.jaxen.UnsupportedAxisException;
+import org.jaxen.expr.iter.IterableChildAxis;
+import org.tmapi.core.Topic;
+import org.tmapi.index.TypeInstanceIndex;
+
+/**
+ * Child axis which takes the {@link TypeInstanceIndex} for the 
+ * <tt>instance</tt> axis from the {@link IndexSession} of the evaluation.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+@SuppressWarnings("serial")
+final class IndexedChildAxis extends IterableChildAxis {
+
+    IndexedChildAxis(int value) {
+        super(value);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jaxen.expr.iter.IterableChildAxis#namedAccessIterator(java.lang.Object, org.jaxen.ContextSupport, java.lang.String, java.lang.String, java.lang.String)
+     */
+    @Override
+    public Iterator<?> namedAccessIterator(Object contextNode, ContextSupport support, 
+            String localName, String namespacePrefix, String namespaceURI) 
+            throws UnsupportedAxisException {
+        if (isInstanceAxis(localName) && isTopic(contextNode)) {
+            final Topic type = (Topic) contextNode;
+            return IndexSession.getIndex(support, type.getTopicMap(), TypeInstanceIndex.class)
+                        .getTopics(type).iterator();
+        }
+        return super.namedAccessIterator(contextNode, support, localName, namespacePrefix, namespaceURI);
+    }
+
+}
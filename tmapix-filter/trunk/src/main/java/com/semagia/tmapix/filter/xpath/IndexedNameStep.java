@@ -0,0 +1,148 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jaxen.Context;
+import org.jaxen.ContextSupport;
+import org.jaxen.JaxenException;
+import org.jaxen.UnresolvableException;
+import org.jaxen.expr.Predicate;
+import org.jaxen.expr.PredicateSet;
+import org.jaxen.expr.iter.IterableAxis;
+import org.tmapi.core.TopicMap;
+
+import com.semagia.tmapix.filter.utils.TMAPIUtils;
+
+/**
+ * Name step which retrieves its nodes by an {@link IndexPlan} if the 
+ * context node is a topic map and a plan is available.
+ * <p>
+ * Jaxen deprecates {@link org.jaxen.expr.DefaultNameStep} since it will become 
+ * package-private, but it is the only implementation of the node test and
+ * the named access of a name step. All access to it is kept in this class, 
+ * the other classes use the {@link org.jaxen.expr.NameStep} interface.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+@SuppressWarnings({"serial", "deprecation"})
+final class IndexedNameStep extends org.jaxen.expr.DefaultNameStep {
+
+    private volatile boolean _planned;
+    private volatile IndexPlan _plan;
+
+    IndexedNameStep(IterableAxis axis, String prefix, String localName,
+            PredicateSet predicateSet) {
+        super(axis, prefix, localName, predicateSet);
+    }
+
+    /**
+     * Returns the plan of this step or <tt>null</tt> if this step is 
+     * evaluated by navigation.
+     * <p>
+     * The plan is created lazily since the predicates are added after the 
+     * step was created.
+     * </p>
+     *
+     * @return The plan or <tt>null</tt>.
+     */
+    IndexPlan getPlan() {
+        if (!_planned) {
+            _plan = IndexPlan.create(this);
+            _planned = true;
+        }
+        return _plan;
+    }
+
+    /**
+     * Returns the candidates of this step for the provided context node.
+     *
+     * @param contextNode The context node.
+     * @param support The context support of the evaluation.
+     * @return The candidates or <tt>null</tt> if the step has to be evaluated
+     *          by navigation.
+     */
+    List<?> getCandidates(final Object contextNode, final ContextSupport support) {
+        if (!TMAPIUtils.isTopicMap(contextNode)) {
+            return null;
+        }
+        final IndexPlan plan = getPlan();
+        return plan != null ? plan.getCandidates((TopicMap) contextNode, support) : null;
+    }
+
+    /**
+     * Returns the nodes of the axis with the name of this step if the axis
+     * supports named access.
+     * <p>
+     * Like Jaxen, the nodes which are returned by a named access iterator
+     * are not tested.
+     * </p>
+     *
+     * @param contextNode The context node.
+     * @param support The context support of the evaluation.
+     * @return An iterator over the nodes or <tt>null</tt> if the axis does
+     *          not support named access or if this step matches any name.
+     * @throws JaxenException If the prefix of this step is not bound.
+     */
+    Iterator<?> namedAccessIterator(final Object contextNode, final ContextSupport support) throws JaxenException {
+        final IterableAxis axis = getIterableAxis();
+        if (isMatchesAnyName() || !axis.supportsNamedAccess(support)) {
+            return null;
+        }
+        final String prefix = getPrefix();
+        String uri = null;
+        if (prefix != null && prefix.length() > 0) {
+            uri = support.translateNamespacePrefixToUri(prefix);
+            if (uri == null) {
+                throw new UnresolvableException("XPath expression uses unbound namespace prefix " + prefix);
+            }
+        }
+        final Iterator<?> iter = axis.namedAccessIterator(contextNode, support, getLocalName(), prefix, uri);
+        return iter != null ? iter : Collections.emptyList().iterator();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jaxen.expr.DefaultNameStep#evaluate(org.jaxen.Context)
+     */
+    @Override
+    public List<?> evaluate(Context context) throws JaxenException {
+        final List<?> contextNodes = context.getNodeSet();
+        final ContextSupport support = context.getContextSupport();
+        final List<?> candidates = contextNodes.size() == 1 ? getCandidates(contextNodes.get(0), support) : null;
+        if (candidates != null) {
+            final PredicateSet predicates = getPredicateSet();
+            List<?> nodes = candidates;
+            for (Object predicate: predicates.getPredicates()) {
+                if (nodes.isEmpty()) {
+                    break;
+                }
+                nodes = predicates.applyPredicate((Predicate) predicate, nodes, support);
+            }
+            return nodes;
+        }
+        return super.evaluate(context);
+    }
+
+}
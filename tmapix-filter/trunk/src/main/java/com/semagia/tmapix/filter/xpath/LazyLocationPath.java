@@ -0,0 +1,312 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.jaxen.ContextSupport;
+import org.jaxen.JaxenException;
+import org.jaxen.expr.BinaryExpr;
+import org.jaxen.expr.Expr;
+import org.jaxen.expr.FunctionCallExpr;
+import org.jaxen.expr.LocationPath;
+import org.jaxen.expr.Predicate;
+import org.jaxen.expr.PredicateSet;
+import org.jaxen.expr.Step;
+import org.jaxen.util.SingleObjectIterator;
+import org.jaxen.util.SingletonList;
+
+import com.semagia.tmapix.filter.FilterMatchException;
+
+/**
+ * Evaluates a relative location path lazily: The nodes are pulled through 
+ * the steps and predicates one by one instead of creating the complete node 
+ * set of each step.
+ * <p>
+ * A location path can be evaluated lazily if none of its predicates depends
+ * on the position of the node (i.e. <tt>topic[1]</tt> or 
+ * <tt>topic[position() = last()]</tt>), see {@link #isLazy(Expr)}.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+final class LazyLocationPath {
+
+    private static final String[] _BOOLEAN_OPERATORS = {"=", "!=", "<", ">", "<=", ">=", "and", "or"};
+    private static final String[] _BOOLEAN_FUNCTIONS = {"boolean", "not", "true", "false", "contains", 
+                                                        "starts-with", "ends-with", "lang", "in-ucs"};
+
+    private LazyLocationPath() {
+        // noop.
+    }
+
+    /**
+     * Returns if the provided expression can be evaluated lazily.
+     *
+     * @param expr The expression.
+     * @return <tt>true</tt> if the expression is a relative location path
+     *          without positional predicates, otherwise <tt>false</tt>.
+     */
+    static boolean isLazy(final Expr expr) {
+        if (!(expr instanceof LocationPath) || ((LocationPath) expr).isAbsolute()) {
+            return false;
+        }
+        for (Object step: ((LocationPath) expr).getSteps()) {
+            if (!(step instanceof Step)) {
+                return false;
+            }
+            for (Object predicate: ((Step) step).getPredicates()) {
+                if (!isBoolean(((Predicate) predicate).getExpr())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns if the predicate expression evaluates to a boolean or a node 
+     * set independent of the position of the context node.
+     *
+     * @param expr The predicate expression.
+     * @return <tt>true</tt> if the predicate can be applied to each node
+     *          separately, otherwise <tt>false</tt>.
+     */
+    static boolean isBoolean(final Expr expr) {
+        if (IndexPlan.isPositional(expr)) {
+            return false;
+        }
+        if (expr instanceof LocationPath) {
+            return true;
+        }
+        if (expr instanceof BinaryExpr) {
+            return _contains(_BOOLEAN_OPERATORS, ((BinaryExpr) expr).getOperator());
+        }
+        if (expr instanceof FunctionCallExpr) {
+            final FunctionCallExpr fun = (FunctionCallExpr) expr;
+            return (fun.getPrefix() == null || fun.getPrefix().length() == 0)
+                    && _contains(_BOOLEAN_FUNCTIONS, fun.getFunctionName());
+        }
+        return false;
+    }
+
+    private static boolean _contains(final String[] values, final String value) {
+        for (String val: values) {
+            if (val.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns an iterator over the result of the location path.
+     * <p>
+     * The iterator throws a {@link FilterMatchException} if an error occurs
+     * during the evaluation.
+     * </p>
+     *
+     * @param path A location path which can be evaluated lazily.
+     * @param contextNode The context node.
+     * @param support The context support.
+     * @return An iterator over the nodes.
+     */
+    @SuppressWarnings("unchecked")
+    static Iterator<Object> iterator(final Expr path, final Object contextNode, final ContextSupport support) {
+        Iterator<Object> nodes = new SingleObjectIterator(contextNode);
+        final List<?> steps = ((LocationPath) path).getSteps();
+        for (int i=0; i < steps.size(); i++) {
+            // The nodes of the first step are unique since there is one 
+            // context node, the following steps may reach a node more than once
+            nodes = new StepIterator((Step) steps.get(i), nodes, support, i > 0);
+        }
+        return nodes;
+    }
+
+
+    /**
+     * Iterator which returns the nodes of one step for the nodes of the 
+     * previous step.
+     */
+    private static final class StepIterator implements Iterator<Object> {
+
+        private final Step _step;
+        private final Iterator<?> _contextNodes;
+        private final ContextSupport _support;
+        private final Set<Object> _seen;
+        private Iterator<?> _nodes;
+        private Object _next;
+        private boolean _ready;
+
+        StepIterator(final Step step, final Iterator<?> contextNodes, 
+                final ContextSupport support, final boolean distinct) {
+            _step = step;
+            _contextNodes = contextNodes;
+            _support = support;
+            _seen = distinct ? Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()) : null;
+            _nodes = Collections.emptyList().iterator();
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#hasNext()
+         */
+        public boolean hasNext() {
+            try {
+                while (!_ready) {
+                    if (_nodes.hasNext()) {
+                        final Object node = _nodes.next();
+                        if ((_seen == null || _seen.add(node)) && _accept(node)) {
+                            _next = node;
+                            _ready = true;
+                        }
+                    }
+                    else if (_contextNodes.hasNext()) {
+                        _nodes = _axisIterator(_contextNodes.next());
+                    }
+                    else {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            catch (JaxenException ex) {
+                throw new FilterMatchException(ex);
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#next()
+         */
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            _ready = false;
+            final Object next = _next;
+            _next = null;
+            return next;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#remove()
+         */
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Returns the nodes of the axis which match the node test.
+         */
+        private Iterator<?> _axisIterator(final Object contextNode) throws JaxenException {
+            if (_step instanceof IndexedNameStep) {
+                final IndexedNameStep step = (IndexedNameStep) _step;
+                final List<?> candidates = step.getCandidates(contextNode, _support);
+                if (candidates != null) {
+                    return candidates.iterator();
+                }
+                final Iterator<?> iter = step.namedAccessIterator(contextNode, _support);
+                if (iter != null) {
+                    return iter;
+                }
+            }
+            return new MatchingIterator(_step, _step.axisIterator(contextNode, _support), _support);
+        }
+
+        /**
+         * Returns if the node satisfies all predicates.
+         */
+        @SuppressWarnings("unchecked")
+        private boolean _accept(final Object node) throws JaxenException {
+            final PredicateSet predicates = _step.getPredicateSet();
+            final List<Object> nodes = new SingletonList(node);
+            for (Object predicate: predicates.getPredicates()) {
+                if (predicates.applyPredicate((Predicate) predicate, nodes, _support).isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+
+    /**
+     * Iterator which returns the nodes which match the node test of a step.
+     */
+    private static final class MatchingIterator implements Iterator<Object> {
+
+        private final Step _step;
+        private final Iterator<?> _nodes;
+        private final ContextSupport _support;
+        private Object _next;
+        private boolean _ready;
+
+        MatchingIterator(final Step step, final Iterator<?> nodes, final ContextSupport support) {
+            _step = step;
+            _nodes = nodes != null ? nodes : Collections.emptyList().iterator();
+            _support = support;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#hasNext()
+         */
+        public boolean hasNext() {
+            try {
+                while (!_ready && _nodes.hasNext()) {
+                    final Object node = _nodes.next();
+                    if (_step.matches(node, _support)) {
+                        _next = node;
+                        _ready = true;
+                    }
+                }
+                return _ready;
+            }
+            catch (JaxenException ex) {
+                throw new FilterMatchException(ex);
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#next()
+         */
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            _ready = false;
+            final Object next = _next;
+            _next = null;
+            return next;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#remove()
+         */
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import org.jaxen.ContextSupport;
+import org.jaxen.FunctionContext;
+import org.jaxen.NamespaceContext;
+import org.jaxen.Navigator;
+import org.jaxen.VariableContext;
+
+/**
+ * {@link ContextSupport} which is created per evaluation and provides
+ * an {@link IndexSession}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+final class MapContextSupport extends ContextSupport {
+
+    private static final long serialVersionUID = -1398523190530582457L;
+
+    private transient IndexSession _session;
+
+    MapContextSupport(NamespaceContext nsContext, FunctionContext funContext,
+            VariableContext varContext, Navigator navigator) {
+        super(nsContext, funContext, varContext, navigator);
+    }
+
+    /**
+     * Returns the index session of this evaluation.
+     *
+     * @return The index session.
+     */
+    synchronized IndexSession getIndexSession() {
+        if (_session == null) {
+            _session = new IndexSession();
+        }
+        return _session;
+    }
+
+}
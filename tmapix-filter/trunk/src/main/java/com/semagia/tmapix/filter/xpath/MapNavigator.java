@@ -296,12 +296,10 @@ final class MapNavigator extends DefaultNavigator
                 return topic.getTypes().iterator();
             }
             if (isInstanceAxis(localName)) {
-                TypeInstanceIndex typeInstanceIdx = topic.getTopicMap().getIndex(TypeInstanceIndex.class);
-                typeInstanceIdx.open();
-                if (!typeInstanceIdx.isAutoUpdated()) {
-                    typeInstanceIdx.reindex();
-                }
-                return typeInstanceIdx.getTopics(topic).iterator();
+                // The XPath filters use the index session of the evaluation, 
+                // see IndexedChildAxis
+                return IndexSession.openIndex(topic.getTopicMap(), TypeInstanceIndex.class)
+                            .getTopics(topic).iterator();
             }
         }
         if (isAssociation(ctxNode)) {
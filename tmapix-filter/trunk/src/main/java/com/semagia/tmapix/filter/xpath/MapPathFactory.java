@@ -19,14 +19,36 @@
  */
 package com.semagia.tmapix.filter.xpath;
 
+import org.jaxen.JaxenException;
 import org.jaxen.expr.DefaultXPathFactory;
+import org.jaxen.expr.Step;
+import org.jaxen.expr.iter.IterableAxis;
+import org.jaxen.saxpath.Axis;
 
 /**
- * 
+ * {@link DefaultXPathFactory} which creates {@link IndexedNameStep}s and
+ * uses the {@link IndexedChildAxis}.
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  * @version $Rev:$ - $Date:$
  */
 final class MapPathFactory extends DefaultXPathFactory {
 
+    /* (non-Javadoc)
+     * @see org.jaxen.expr.DefaultXPathFactory#createNameStep(int, java.lang.String, java.lang.String)
+     */
+    @Override
+    public Step createNameStep(int axis, String prefix, String localName)
+            throws JaxenException {
+        return new IndexedNameStep(getIterableAxis(axis), prefix, localName, createPredicateSet());
+    }
+
+    /* (non-Javadoc)
+     * @see org.jaxen.expr.DefaultXPathFactory#getIterableAxis(int)
+     */
+    @Override
+    protected IterableAxis getIterableAxis(int axis) throws JaxenException {
+        return axis == Axis.CHILD ? new IndexedChildAxis(axis) : super.getIterableAxis(axis);
+    }
+
 }
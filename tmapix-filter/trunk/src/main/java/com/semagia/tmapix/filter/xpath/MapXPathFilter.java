@@ -19,7 +19,13 @@
  */
 package com.semagia.tmapix.filter.xpath;
 
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import org.jaxen.Context;
 import org.jaxen.ContextSupport;
@@ -29,8 +35,7 @@ import org.jaxen.JaxenHandler;
 import org.jaxen.NamedAccessNavigator;
 import org.jaxen.NamespaceContext;
 import org.jaxen.Navigator;
-import org.jaxen.SimpleNamespaceContext;
-import org.jaxen.SimpleVariableContext;
+import org.jaxen.UnresolvableException;
 import org.jaxen.VariableContext;
 import org.jaxen.XPath;
 import org.jaxen.XPathFunctionContext;
@@ -40,12 +45,18 @@ import org.jaxen.saxpath.XPathReader;
 import org.jaxen.saxpath.helpers.XPathReaderFactory;
 import org.jaxen.util.SingletonList;
 import org.tmapi.core.Construct;
+import org.tmapi.core.TopicMap;
 
 import com.semagia.tmapix.filter.FilterMatchException;
 import com.semagia.tmapix.filter.IFilter;
 
 /**
- * 
+ * XPath filter.
+ * <p>
+ * Instances are immutable and can be shared between threads: The namespace 
+ * bindings are fixed at construction time and each evaluation uses its own
+ * {@link Context} and {@link IndexSession}.
+ * </p>
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  * @version $Rev:$ - $Date:$
@@ -54,14 +65,38 @@ final class MapXPathFilter<T> implements IFilter<T>, XPath {
 
     private static final long serialVersionUID = 2094579141495856043L;
 
-    private ContextSupport _support;
-    private NamedAccessNavigator _navigator;
-    private XPathExpr _xpathExpr;
-    private NamespaceContext _nsContext;
-    private VariableContext _varContext;
-    
+    private static final String _XSD = "http://www.w3.org/2001/XMLSchema#";
+
+    private final NamedAccessNavigator _navigator;
+    private final XPathExpr _xpathExpr;
+    private final NamespaceContext _nsContext;
+    private final VariableContext _varContext;
+    private final boolean _lazy;
+    private final boolean _lazyEvaluation;
+    private final boolean _parallel;
 
     MapXPathFilter(final String xpath, final NamedAccessNavigator navigator) throws JaxenException {
+        this(xpath, navigator, false);
+    }
+
+    MapXPathFilter(final String xpath, final NamedAccessNavigator navigator, final boolean lazy) throws JaxenException {
+        this(xpath, navigator, Collections.<String, String>emptyMap(), lazy);
+    }
+
+    /**
+     * Creates a filter.
+     *
+     * @param xpath The XPath expression.
+     * @param navigator The navigator.
+     * @param namespaces The namespace bindings (prefix -&gt; IRI). The prefix
+     *          <tt>xsd</tt> is bound to the XML Schema namespace unless
+     *          it is provided.
+     * @param lazy <tt>true</tt> to return the nodes of {@link #match(Construct)}
+     *          on demand if the expression permits it, otherwise <tt>false</tt>.
+     * @throws JaxenException In case of an error.
+     */
+    MapXPathFilter(final String xpath, final NamedAccessNavigator navigator, 
+            final Map<String, String> namespaces, final boolean lazy) throws JaxenException {
         XPathReader reader;
         try {
             reader = XPathReaderFactory.createReader();
@@ -80,22 +115,63 @@ final class MapXPathFilter<T> implements IFilter<T>, XPath {
         }
         _xpathExpr = handler.getXPathExpr();
         _navigator = navigator;
-        _nsContext = new SimpleNamespaceContext();
-        _varContext = new SimpleVariableContext();
-        _support = new ContextSupport(
-                _nsContext,
-                getFunctionContext(), 
-                _varContext,
-                _navigator);
-        addNamespace("xsd", "http://www.w3.org/2001/XMLSchema#");
+        final Map<String, String> bindings = new HashMap<String, String>();
+        bindings.put("xsd", _XSD);
+        bindings.putAll(namespaces);
+        _nsContext = new ImmutableNamespaceContext(bindings);
+        _varContext = new EmptyVariableContext();
+        _lazyEvaluation = LazyLocationPath.isLazy(_xpathExpr.getRootExpr());
+        _lazy = lazy && _lazyEvaluation;
+        _parallel = ParallelLocationPath.isParallel(_xpathExpr.getRootExpr());
+    }
+
+    /**
+     * Returns if the XPath can be evaluated in parallel.
+     *
+     * @see ParallelLocationPath#isParallel(org.jaxen.expr.Expr)
+     * @return <tt>true</tt> if the XPath can be evaluated in parallel, 
+     *          otherwise <tt>false</tt>.
+     */
+    boolean isParallel() {
+        return _parallel;
     }
 
     /* (non-Javadoc)
      * @see com.semagia.tmapix.filter.IFilter#match(org.tmapi.core.Construct)
      */
-    @SuppressWarnings("unchecked")
     public Iterable<T> match(final Construct context) throws FilterMatchException {
+        return match(context, null);
+    }
+
+    /**
+     * Applies this filter to the provided <tt>context</tt> and evaluates 
+     * the partitions of the topics / associations by the provided executor.
+     *
+     * @see #isParallel()
+     * @param context The starting point for the filter.
+     * @param executor The executor which evaluates the partitions or 
+     *          <tt>null</tt> to evaluate the XPath sequentially.
+     * @return A (maybe empty) iterable, never <tt>null</tt>.
+     * @throws FilterMatchException In case of an error.
+     */
+    @SuppressWarnings("unchecked")
+    Iterable<T> match(final Construct context, final ExecutorService executor) throws FilterMatchException {
+        if (_lazy) {
+            return new Iterable<T>() {
+                public Iterator<T> iterator() {
+                    return (Iterator<T>) LazyLocationPath.iterator(_xpathExpr.getRootExpr(), context, createSupport());
+                }
+            };
+        }
         try {
+            if (_parallel && executor != null && context instanceof TopicMap 
+                    && XPathFilter.isThreadSafe((TopicMap) context)) {
+                final List<?> result = ParallelLocationPath.evaluate(_xpathExpr.getRootExpr(), 
+                        (TopicMap) context, this, executor);
+                if (result != null) {
+                    return (Iterable<T>) result;
+                }
+            }
             return (Iterable<T>) selectList(context);
         }
         catch (JaxenException ex) {
@@ -117,13 +193,11 @@ final class MapXPathFilter<T> implements IFilter<T>, XPath {
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.jaxen.XPath#addNamespace(java.lang.String, java.lang.String)
+     */
     public void addNamespace(String prefix, String uri) throws JaxenException {
-        NamespaceContext nsContext = _nsContext;
-        if (nsContext instanceof SimpleNamespaceContext) {
-            ((SimpleNamespaceContext) nsContext).addNamespace(prefix, uri );
-            return;
-        }
-        throw new JaxenException("Operation not permitted while using a non-simple namespace context.");
+        throw new JaxenException("The namespace bindings of the filter are immutable, use XPathFilter.create(String, Map)");
     }
 
     public boolean booleanValueOf(Object arg0) throws JaxenException {
@@ -162,6 +236,18 @@ final class MapXPathFilter<T> implements IFilter<T>, XPath {
      * @see org.jaxen.XPath#selectSingleNode(java.lang.Object)
      */
     public Object selectSingleNode(Object ctxNode) throws JaxenException {
+        if (_lazyEvaluation && !(ctxNode instanceof Context) && !(ctxNode instanceof List)) {
+            try {
+                final Iterator<?> iter = LazyLocationPath.iterator(_xpathExpr.getRootExpr(), ctxNode, createSupport());
+                return iter.hasNext() ? iter.next() : null;
+            }
+            catch (FilterMatchException ex) {
+                if (ex.getCause() instanceof JaxenException) {
+                    throw (JaxenException) ex.getCause();
+                }
+                throw ex;
+            }
+        }
         for(Object obj: selectList(ctxNode)) {
             return obj;
         }
@@ -173,12 +259,26 @@ final class MapXPathFilter<T> implements IFilter<T>, XPath {
         return _xpathExpr.asList(getContext(ctxNode));
     }
 
+    /**
+     * Returns a new context support for an evaluation. Each evaluation 
+     * gets its own {@link IndexSession}.
+     *
+     * @return A new context support.
+     */
+    ContextSupport createSupport() {
+        return new MapContextSupport(
+                _nsContext,
+                getFunctionContext(), 
+                _varContext,
+                _navigator);
+    }
+
     @SuppressWarnings("unchecked")
     private Context getContext(Object node) {
         if (node instanceof Context) {
             return (Context) node;
         }
-        Context fullContext = new Context(_support);
+        Context fullContext = new Context(createSupport());
         if (node instanceof List) {
             fullContext.setNodeSet((List) node);
         }
@@ -230,4 +330,44 @@ final class MapXPathFilter<T> implements IFilter<T>, XPath {
     public String valueOf(Object arg0) throws JaxenException {
         throw new UnsupportedOperationException();
     }
+
+
+    /**
+     * {@link NamespaceContext} with fixed namespace bindings.
+     */
+    private static final class ImmutableNamespaceContext implements NamespaceContext, Serializable {
+
+        private static final long serialVersionUID = -3163915440826520961L;
+
+        private final Map<String, String> _bindings;
+
+        ImmutableNamespaceContext(final Map<String, String> bindings) {
+            _bindings = Collections.unmodifiableMap(new HashMap<String, String>(bindings));
+        }
+
+        /* (non-Javadoc)
+         * @see org.jaxen.NamespaceContext#translateNamespacePrefixToUri(java.lang.String)
+         */
+        public String translateNamespacePrefixToUri(String prefix) {
+            return _bindings.get(prefix);
+        }
+    }
+
+
+    /**
+     * {@link VariableContext} without any variable.
+     */
+    private static final class EmptyVariableContext implements VariableContext, Serializable {
+
+        private static final long serialVersionUID = 4934711327493385270L;
+
+        /* (non-Javadoc)
+         * @see org.jaxen.VariableContext#getVariableValue(java.lang.String, java.lang.String, java.lang.String)
+         */
+        public Object getVariableValue(String namespaceURI, String prefix,
+                String localName) throws UnresolvableException {
+            throw new UnresolvableException("Variable " + localName);
+        }
+    }
+
 }
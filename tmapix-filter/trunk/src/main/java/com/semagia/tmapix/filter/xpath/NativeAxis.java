@@ -0,0 +1,309 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Construct;
+import org.tmapi.core.DatatypeAware;
+import org.tmapi.core.Name;
+import org.tmapi.core.Reifiable;
+import org.tmapi.core.Role;
+import org.tmapi.core.Scoped;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.Typed;
+import org.tmapi.index.TypeInstanceIndex;
+
+import com.semagia.tmapix.filter.FilterMatchException;
+import com.semagia.tmapix.filter.xpath.NativePath.Evaluation;
+import com.semagia.tmapix.filter.xpath.NativePath.Visitor;
+
+/**
+ * The axes of the native path engine, see <tt>wiki/XPathAxes.wiki</tt>.
+ * <p>
+ * Each axis passes the nodes it reaches from a context node directly from
+ * the TMAPI collections to a {@link Visitor}. The named axes return the 
+ * same nodes as the named access of the {@link MapNavigator}, including 
+ * <tt>null</tt> for an absent reifier, reified construct or player.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+enum NativeAxis {
+
+    TOPIC("topic") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            return !(node instanceof TopicMap) || _traverse(((TopicMap) node).getTopics(), visitor);
+        }
+    },
+
+    ASSOCIATION("association") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            return !(node instanceof TopicMap) || _traverse(((TopicMap) node).getAssociations(), visitor);
+        }
+    },
+
+    ROLE("role") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            if (node instanceof Topic) {
+                return _traverse(((Topic) node).getRolesPlayed(), visitor);
+            }
+            return !(node instanceof Association) || _traverse(((Association) node).getRoles(), visitor);
+        }
+    },
+
+    NAME("name") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            return !(node instanceof Topic) || _traverse(((Topic) node).getNames(), visitor);
+        }
+    },
+
+    OCCURRENCE("occurrence") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            return !(node instanceof Topic) || _traverse(((Topic) node).getOccurrences(), visitor);
+        }
+    },
+
+    SUBJECT_IDENTIFIER("sid") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            return !(node instanceof Topic) || _traverse(((Topic) node).getSubjectIdentifiers(), visitor);
+        }
+    },
+
+    SUBJECT_LOCATOR("slo") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            return !(node instanceof Topic) || _traverse(((Topic) node).getSubjectLocators(), visitor);
+        }
+    },
+
+    ITEM_IDENTIFIER("iid") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            return !(node instanceof Construct) || _traverse(((Construct) node).getItemIdentifiers(), visitor);
+        }
+    },
+
+    REIFIED("reified") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            return !(node instanceof Topic) || visitor.visit(((Topic) node).getReified());
+        }
+    },
+
+    TYPE("type") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            if (node instanceof Topic) {
+                return _traverse(((Topic) node).getTypes(), visitor);
+            }
+            return !(node instanceof Typed) || visitor.visit(((Typed) node).getType());
+        }
+    },
+
+    INSTANCE("instance") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            if (!(node instanceof Topic)) {
+                return true;
+            }
+            final Topic topic = (Topic) node;
+            return _traverse(eval.getIndexSession().getIndex(topic.getTopicMap(), TypeInstanceIndex.class)
+                                .getTopics(topic), visitor);
+        }
+    },
+
+    PLAYER("player") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            return !(node instanceof Role) || visitor.visit(((Role) node).getPlayer());
+        }
+    },
+
+    REIFIER("reifier") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            return !(node instanceof Reifiable) || visitor.visit(((Reifiable) node).getReifier());
+        }
+    },
+
+    SCOPE("scope") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            return !(node instanceof Scoped) || _traverse(((Scoped) node).getScope(), visitor);
+        }
+    },
+
+    VALUE("value") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            if (node instanceof Name) {
+                return visitor.visit(((Name) node).getValue());
+            }
+            return !(node instanceof DatatypeAware) || visitor.visit(((DatatypeAware) node).getValue());
+        }
+    },
+
+    VARIANT("variant") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            return !(node instanceof Name) || _traverse(((Name) node).getVariants(), visitor);
+        }
+    },
+
+    DATATYPE("datatype") {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            return !(node instanceof DatatypeAware) || visitor.visit(((DatatypeAware) node).getDatatype());
+        }
+    },
+
+    /**
+     * Named axis which is not provided by any construct.
+     */
+    NONE(null) {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            return true;
+        }
+    },
+
+    /**
+     * <tt>child::*</tt> / <tt>child::node()</tt>
+     */
+    CHILD(null) {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            if (node instanceof Topic) {
+                final Topic topic = (Topic) node;
+                return _traverse(topic.getOccurrences(), visitor) && _traverse(topic.getNames(), visitor);
+            }
+            if (node instanceof Association) {
+                return _traverse(((Association) node).getRoles(), visitor);
+            }
+            if (node instanceof TopicMap) {
+                final TopicMap tm = (TopicMap) node;
+                return _traverse(tm.getTopics(), visitor) && _traverse(tm.getAssociations(), visitor);
+            }
+            return !(node instanceof Name) || _traverse(((Name) node).getVariants(), visitor);
+        }
+    },
+
+    /**
+     * <tt>..</tt> / <tt>parent::node()</tt>
+     */
+    PARENT(null) {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            return visitor.visit(_parent(node));
+        }
+    },
+
+    /**
+     * <tt>parent::*</tt>
+     */
+    PARENT_CONSTRUCT(null) {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            final Construct parent = _parent(node);
+            return parent == null || visitor.visit(parent);
+        }
+    },
+
+    /**
+     * <tt>.</tt> / <tt>self::node()</tt>
+     */
+    SELF(null) {
+        @Override
+        boolean traverse(Object node, Evaluation eval, Visitor visitor) {
+            return visitor.visit(node);
+        }
+    };
+
+    private static final Map<String, NativeAxis> _AXES = new HashMap<String, NativeAxis>();
+
+    static {
+        for (NativeAxis axis: values()) {
+            if (axis._name != null) {
+                _AXES.put(axis._name, axis);
+            }
+        }
+    }
+
+    private final String _name;
+
+    private NativeAxis(final String name) {
+        _name = name;
+    }
+
+    /**
+     * Returns the named child axis.
+     *
+     * @param localName The local name of the step.
+     * @return The axis, {@link #NONE} if no construct provides the axis.
+     */
+    static NativeAxis forName(final String localName) {
+        final NativeAxis axis = _AXES.get(localName);
+        return axis != null ? axis : NONE;
+    }
+
+    /**
+     * Passes the nodes of this axis to the visitor.
+     *
+     * @param node The context node.
+     * @param eval The evaluation.
+     * @param visitor The visitor which receives the nodes.
+     * @return <tt>false</tt> if the visitor stopped the traversal, otherwise
+     *          <tt>true</tt>.
+     */
+    abstract boolean traverse(Object node, Evaluation eval, Visitor visitor);
+
+    /**
+     * Returns the parent of a construct, locators, strings and <tt>null</tt> 
+     * have no parent axis.
+     */
+    private static Construct _parent(final Object node) {
+        if (!(node instanceof Construct)) {
+            throw new FilterMatchException("Unsupported parent axis for " + node);
+        }
+        return ((Construct) node).getParent();
+    }
+
+    private static boolean _traverse(final Collection<?> nodes, final Visitor visitor) {
+        for (Object node: nodes) {
+            if (!visitor.visit(node)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
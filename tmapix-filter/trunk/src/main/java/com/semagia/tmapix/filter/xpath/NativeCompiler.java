@@ -0,0 +1,341 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jaxen.JaxenException;
+import org.jaxen.JaxenHandler;
+import org.jaxen.expr.AllNodeStep;
+import org.jaxen.expr.BinaryExpr;
+import org.jaxen.expr.Expr;
+import org.jaxen.expr.FilterExpr;
+import org.jaxen.expr.FunctionCallExpr;
+import org.jaxen.expr.LiteralExpr;
+import org.jaxen.expr.LocationPath;
+import org.jaxen.expr.NameStep;
+import org.jaxen.expr.NumberExpr;
+import org.jaxen.expr.PathExpr;
+import org.jaxen.expr.Predicate;
+import org.jaxen.expr.Step;
+import org.jaxen.saxpath.Axis;
+import org.jaxen.saxpath.SAXPathException;
+import org.jaxen.saxpath.XPathReader;
+import org.jaxen.saxpath.helpers.XPathReaderFactory;
+
+import com.semagia.tmapix.filter.xpath.NativePath.Lookup;
+import com.semagia.tmapix.filter.xpath.NativePredicate.Operand;
+import com.semagia.tmapix.filter.xpath.NativePredicate.Operator;
+
+/**
+ * Compiles an XPath into a {@link NativePathFilter}.
+ * <p>
+ * Only the parser of Jaxen is used, the expression tree is translated into 
+ * {@link NativePath}s and {@link NativePredicate}s. The following subset 
+ * of XPath is supported:
+ * </p>
+ * <ul>
+ *   <li>Relative and absolute location paths with the named child axes, 
+ *       <tt>*</tt>, <tt>.</tt>, <tt>..</tt> and <tt>parent::*</tt></li>
+ *   <li><tt>sid('...')</tt>, <tt>slo('...')</tt>, <tt>iid('...')</tt>, 
+ *       optionally followed by a relative location path</li>
+ *   <li><tt>in-ucs(...)</tt>, <tt>default-name(...)</tt> and 
+ *       <tt>atomify(...)</tt></li>
+ *   <li>Predicates which consist of location paths, <tt>and</tt>, 
+ *       <tt>or</tt>, <tt>not()</tt>, <tt>boolean()</tt>, <tt>true()</tt>, 
+ *       <tt>false()</tt>, <tt>in-ucs()</tt>, <tt>default-name()</tt> and 
+ *       comparisons between location paths, literals, numbers, 
+ *       <tt>count()</tt> and the functions above</li>
+ * </ul>
+ * <p>
+ * Other expressions, i.e. positional predicates like <tt>topic[1]</tt>, 
+ * are not supported and have to be evaluated by Jaxen.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+final class NativeCompiler {
+
+    private static final String _XSD = "http://www.w3.org/2001/XMLSchema#";
+
+    private final Map<String, String> _namespaces;
+
+    private NativeCompiler(final Map<String, String> namespaces) {
+        _namespaces = namespaces;
+    }
+
+    /**
+     * Compiles the XPath.
+     *
+     * @param xpath The XPath.
+     * @param namespaces The namespace bindings (prefix -&gt; IRI). The prefix
+     *          <tt>xsd</tt> is bound to the XML Schema namespace unless
+     *          it is provided.
+     * @return A filter or <tt>null</tt> if the XPath is not supported by 
+     *          the native path engine.
+     * @throws JaxenException In case of a syntax error.
+     */
+    static <T> NativePathFilter<T> compile(final String xpath, final Map<String, String> namespaces) throws JaxenException {
+        final JaxenHandler handler = new JaxenHandler();
+        try {
+            final XPathReader reader = XPathReaderFactory.createReader();
+            reader.setXPathHandler(handler);
+            reader.parse(xpath);
+        }
+        catch (SAXPathException ex) {
+            throw new JaxenException(ex);
+        }
+        try {
+            return new NativeCompiler(namespaces)._filter(handler.getXPathExpr().getRootExpr());
+        }
+        catch (UnsupportedExpressionException ex) {
+            return null;
+        }
+    }
+
+    private <T> NativePathFilter<T> _filter(final Expr expr) throws UnsupportedExpressionException {
+        if (expr instanceof FunctionCallExpr) {
+            final FunctionCallExpr fun = (FunctionCallExpr) expr;
+            final String name = _functionName(fun);
+            if (NativePathFilter.isFunction(name)) {
+                return new NativePathFilter<T>(_path(_argument(fun)), name);
+            }
+        }
+        return new NativePathFilter<T>(_path(expr), null);
+    }
+
+    private NativePath _path(final Expr expr) throws UnsupportedExpressionException {
+        if (expr instanceof LocationPath) {
+            final LocationPath path = (LocationPath) expr;
+            return path.isAbsolute() ? NativePath.absolute(_steps(path)) 
+                                     : NativePath.relative(_steps(path));
+        }
+        if (expr instanceof FunctionCallExpr) {
+            return NativePath.lookup(_lookup((FunctionCallExpr) expr), new ArrayList<NativePath.Step>(0));
+        }
+        if (expr instanceof PathExpr) {
+            final PathExpr pathExpr = (PathExpr) expr;
+            Expr filter = pathExpr.getFilterExpr();
+            if (filter instanceof FilterExpr && ((FilterExpr) filter).getPredicates().isEmpty()) {
+                filter = ((FilterExpr) filter).getExpr();
+            }
+            final LocationPath path = pathExpr.getLocationPath();
+            if (filter instanceof FunctionCallExpr && path != null && !path.isAbsolute()) {
+                return NativePath.lookup(_lookup((FunctionCallExpr) filter), _steps(path));
+            }
+        }
+        throw new UnsupportedExpressionException();
+    }
+
+    private List<NativePath.Step> _steps(final LocationPath path) throws UnsupportedExpressionException {
+        final List<NativePath.Step> steps = new ArrayList<NativePath.Step>();
+        for (Object obj: path.getSteps()) {
+            final Step step = (Step) obj;
+            final List<NativePredicate> predicates = new ArrayList<NativePredicate>();
+            for (Object predicate: step.getPredicates()) {
+                predicates.add(_predicate(((Predicate) predicate).getExpr()));
+            }
+            if (step instanceof AllNodeStep) {
+                steps.add(new NativePath.Step(_axis(step.getAxis()), null, null, predicates));
+            }
+            else if (step instanceof NameStep) {
+                steps.add(_step((NameStep) step, predicates));
+            }
+            else {
+                throw new UnsupportedExpressionException();
+            }
+        }
+        return steps;
+    }
+
+    private static NativeAxis _axis(final int axis) throws UnsupportedExpressionException {
+        switch (axis) {
+            case Axis.SELF: return NativeAxis.SELF;
+            case Axis.PARENT: return NativeAxis.PARENT;
+            case Axis.CHILD: return NativeAxis.CHILD;
+            default: throw new UnsupportedExpressionException();
+        }
+    }
+
+    private NativePath.Step _step(final NameStep step, final List<NativePredicate> predicates) 
+            throws UnsupportedExpressionException {
+        final String prefix = step.getPrefix();
+        final boolean prefixed = prefix != null && prefix.length() > 0;
+        final String localName = step.getLocalName();
+        if ("*".equals(localName)) {
+            if (prefixed) {
+                throw new UnsupportedExpressionException();
+            }
+            if (step.getAxis() == Axis.CHILD) {
+                return new NativePath.Step(NativeAxis.CHILD, null, null, predicates);
+            }
+            if (step.getAxis() == Axis.PARENT) {
+                return new NativePath.Step(NativeAxis.PARENT_CONSTRUCT, null, null, predicates);
+            }
+            throw new UnsupportedExpressionException();
+        }
+        if (step.getAxis() != Axis.CHILD) {
+            throw new UnsupportedExpressionException();
+        }
+        String datatype = null;
+        if (prefixed) {
+            String uri = _namespaces.get(prefix);
+            if (uri == null && "xsd".equals(prefix)) {
+                uri = _XSD;
+            }
+            if (uri == null) {
+                // Jaxen reports the unbound prefix
+                throw new UnsupportedExpressionException();
+            }
+            if (_XSD.equals(uri)) {
+                datatype = uri + localName;
+            }
+        }
+        return new NativePath.Step(NativeAxis.forName(localName), datatype, IndexPlan.create(step), predicates);
+    }
+
+    private NativePredicate _predicate(final Expr expr) throws UnsupportedExpressionException {
+        if (expr instanceof LocationPath || expr instanceof PathExpr) {
+            return NativePredicate.exists(_path(expr));
+        }
+        if (expr instanceof BinaryExpr) {
+            final BinaryExpr binary = (BinaryExpr) expr;
+            final String op = binary.getOperator();
+            if ("and".equals(op)) {
+                return NativePredicate.and(_predicate(binary.getLHS()), _predicate(binary.getRHS()));
+            }
+            if ("or".equals(op)) {
+                return NativePredicate.or(_predicate(binary.getLHS()), _predicate(binary.getRHS()));
+            }
+            final Operator operator = Operator.forSymbol(op);
+            if (operator == null) {
+                throw new UnsupportedExpressionException();
+            }
+            return NativePredicate.compare(operator, 
+                                            _operand(operator, binary.getLHS()), 
+                                            _operand(operator, binary.getRHS()));
+        }
+        if (expr instanceof FunctionCallExpr) {
+            final FunctionCallExpr fun = (FunctionCallExpr) expr;
+            final String name = _functionName(fun);
+            final int arity = fun.getParameters().size();
+            if (_isLookup(name)) {
+                return NativePredicate.exists(_path(fun));
+            }
+            if ("not".equals(name) && arity == 1) {
+                return NativePredicate.not(_predicate(_argument(fun)));
+            }
+            if ("boolean".equals(name) && arity == 1) {
+                return _predicate(_argument(fun));
+            }
+            if ("true".equals(name) && arity == 0) {
+                return NativePredicate.TRUE;
+            }
+            if ("false".equals(name) && arity == 0) {
+                return NativePredicate.FALSE;
+            }
+            if ("in-ucs".equals(name)) {
+                return NativePredicate.inUCS(_path(_argument(fun)));
+            }
+            if ("default-name".equals(name)) {
+                return NativePredicate.defaultName(_path(_argument(fun)));
+            }
+        }
+        // Numbers, position(), last() etc.
+        throw new UnsupportedExpressionException();
+    }
+
+    private Operand _operand(final Operator operator, final Expr expr) throws UnsupportedExpressionException {
+        if (expr instanceof LiteralExpr) {
+            final String literal = ((LiteralExpr) expr).getLiteral();
+            // A relational expression converts the literal into a number
+            return operator.isRelational() ? Operand.value(Double.valueOf(NativePredicate.toNumber(literal)))
+                                           : Operand.value(literal);
+        }
+        if (expr instanceof NumberExpr) {
+            return Operand.value(Double.valueOf(((NumberExpr) expr).getNumber().doubleValue()));
+        }
+        if (expr instanceof LocationPath || expr instanceof PathExpr) {
+            return Operand.path(_path(expr));
+        }
+        if (expr instanceof FunctionCallExpr) {
+            final FunctionCallExpr fun = (FunctionCallExpr) expr;
+            final String name = _functionName(fun);
+            if (_isLookup(name)) {
+                return Operand.lookup(_lookup(fun));
+            }
+            if ("count".equals(name)) {
+                final Expr arg = _argument(fun);
+                if (arg instanceof LocationPath || arg instanceof PathExpr) {
+                    return Operand.count(_path(arg));
+                }
+            }
+        }
+        throw new UnsupportedExpressionException();
+    }
+
+    private static Lookup _lookup(final FunctionCallExpr fun) throws UnsupportedExpressionException {
+        final String name = _functionName(fun);
+        final Expr arg = _argument(fun);
+        if (!_isLookup(name) || !(arg instanceof LiteralExpr)) {
+            throw new UnsupportedExpressionException();
+        }
+        return new Lookup(name, ((LiteralExpr) arg).getLiteral());
+    }
+
+    private static boolean _isLookup(final String name) {
+        return ChildAxis.isSubjectIdentifierAxis(name) 
+                || ChildAxis.isSubjectLocatorAxis(name) 
+                || ChildAxis.isItemIdentifierAxis(name);
+    }
+
+    /**
+     * Returns the name of a function without a prefix.
+     */
+    private static String _functionName(final FunctionCallExpr fun) throws UnsupportedExpressionException {
+        if (fun.getPrefix() != null && fun.getPrefix().length() > 0) {
+            throw new UnsupportedExpressionException();
+        }
+        return fun.getFunctionName();
+    }
+
+    /**
+     * Returns the argument of a unary function.
+     */
+    private static Expr _argument(final FunctionCallExpr fun) throws UnsupportedExpressionException {
+        if (fun.getParameters().size() != 1) {
+            throw new UnsupportedExpressionException();
+        }
+        return (Expr) fun.getParameters().get(0);
+    }
+
+
+    /**
+     * Signals that an expression is not supported by the native path engine.
+     */
+    @SuppressWarnings("serial")
+    private static final class UnsupportedExpressionException extends Exception {
+        // noop.
+    }
+
+}
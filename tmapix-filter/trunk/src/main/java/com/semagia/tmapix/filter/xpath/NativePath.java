@@ -0,0 +1,384 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.tmapi.core.Construct;
+import org.tmapi.core.DatatypeAware;
+import org.tmapi.core.Locator;
+import org.tmapi.core.TopicMap;
+
+import com.semagia.tmapix.filter.FilterMatchException;
+
+/**
+ * Location path of the native path engine.
+ * <p>
+ * A path starts at the context node, at the topic map of the context node
+ * (absolute path) or at the construct which is returned by 
+ * <tt>sid('...')</tt>, <tt>slo('...')</tt> or <tt>iid('...')</tt>. The 
+ * steps are evaluated depth-first: Each node which passes the predicates 
+ * of a step is handed to the next step immediately, so the evaluation 
+ * stops as soon as the consumer has seen enough nodes. The order of the 
+ * nodes is the same as the order of the step by step evaluation.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+final class NativePath {
+
+    private static final int _CONTEXT = 0;
+    private static final int _ROOT = 1;
+    private static final int _LOOKUP = 2;
+
+    private static final Step[] _NO_STEPS = new Step[0];
+
+    private final int _start;
+    private final Lookup _lookup;
+    private final Step[] _steps;
+
+    private NativePath(final int start, final Lookup lookup, final Step[] steps) {
+        _start = start;
+        _lookup = lookup;
+        _steps = steps;
+    }
+
+    /**
+     * Returns a path which starts at the context node.
+     */
+    static NativePath relative(final List<Step> steps) {
+        return new NativePath(_CONTEXT, null, steps.toArray(_NO_STEPS));
+    }
+
+    /**
+     * Returns a path which starts at the topic map of the context node.
+     */
+    static NativePath absolute(final List<Step> steps) {
+        return new NativePath(_ROOT, null, steps.toArray(_NO_STEPS));
+    }
+
+    /**
+     * Returns a path which starts at the construct returned by the lookup.
+     */
+    static NativePath lookup(final Lookup lookup, final List<Step> steps) {
+        return new NativePath(_LOOKUP, lookup, steps.toArray(_NO_STEPS));
+    }
+
+    /**
+     * Passes the nodes of this path to the visitor.
+     *
+     * @param context The context node.
+     * @param eval The evaluation.
+     * @param visitor The visitor which receives the nodes.
+     * @param distinct <tt>true</tt> to pass each node once, <tt>false</tt>
+     *          if the visitor does not care about duplicates.
+     * @return <tt>false</tt> if the visitor stopped the evaluation, 
+     *          otherwise <tt>true</tt>.
+     */
+    boolean evaluate(final Object context, final Evaluation eval, final Visitor visitor, final boolean distinct) {
+        final Object start;
+        switch (_start) {
+            case _CONTEXT:
+                start = context;
+                break;
+            case _ROOT:
+                if (!(context instanceof Construct)) {
+                    return true;
+                }
+                start = ((Construct) context).getTopicMap();
+                break;
+            default:
+                start = _lookup.resolve(context, eval);
+        }
+        if (_steps.length == 0) {
+            return visitor.visit(start);
+        }
+        Visitor next = visitor;
+        for (int i=_steps.length-1; i >= 0; i--) {
+            // The nodes of the first step are unique since there is one 
+            // context node, the following steps may reach a node more than once
+            next = new StepVisitor(_steps[i], i+1 < _steps.length ? _steps[i+1] : null, 
+                                    next, eval, distinct && i > 0);
+        }
+        return _steps[0].traverse(start, eval, next);
+    }
+
+    /**
+     * Returns the nodes of this path.
+     *
+     * @param context The context node.
+     * @param eval The evaluation.
+     * @param distinct <tt>true</tt> to return each node once.
+     * @return A (maybe empty) list of nodes.
+     */
+    List<Object> select(final Object context, final Evaluation eval, final boolean distinct) {
+        final List<Object> result = new ArrayList<Object>();
+        evaluate(context, eval, new Visitor() {
+            public boolean visit(Object node) {
+                result.add(node);
+                return true;
+            }
+        }, distinct);
+        return result;
+    }
+
+    /**
+     * Returns the first node of this path.
+     *
+     * @param context The context node.
+     * @param eval The evaluation.
+     * @return The first node or <tt>null</tt> if the path yields no node.
+     */
+    Object selectFirst(final Object context, final Evaluation eval) {
+        final FirstVisitor visitor = new FirstVisitor();
+        evaluate(context, eval, visitor, false);
+        return visitor.node;
+    }
+
+    /**
+     * Returns the boolean value of the node set, that is the boolean value
+     * of the first node.
+     *
+     * @param context The context node.
+     * @param eval The evaluation.
+     * @return <tt>true</tt> if the first node is <tt>true</tt>, otherwise 
+     *          <tt>false</tt>.
+     */
+    boolean isTrue(final Object context, final Evaluation eval) {
+        final FirstVisitor visitor = new FirstVisitor();
+        evaluate(context, eval, visitor, false);
+        return visitor.found && NativePredicate.toBoolean(visitor.node);
+    }
+
+
+    /**
+     * Receives the nodes of an axis or a path.
+     */
+    interface Visitor {
+
+        /**
+         * Receives a node.
+         *
+         * @param node The node, may be <tt>null</tt>.
+         * @return <tt>true</tt> to continue the evaluation, <tt>false</tt> 
+         *          to stop it.
+         */
+        boolean visit(Object node);
+    }
+
+
+    /**
+     * State of one evaluation: The opened indexes and the constructs which 
+     * were resolved by the lookups.
+     * <p>
+     * Instances are not thread-safe, each evaluation uses its own instance.
+     * </p>
+     */
+    static final class Evaluation {
+
+        private IndexSession _session;
+        private Map<Lookup, Object[]> _resolved;
+
+        IndexSession getIndexSession() {
+            if (_session == null) {
+                _session = new IndexSession();
+            }
+            return _session;
+        }
+
+        Object resolve(final Lookup lookup, final TopicMap tm) {
+            if (_resolved == null) {
+                _resolved = new IdentityHashMap<Lookup, Object[]>(4);
+            }
+            Object[] entry = _resolved.get(lookup);
+            if (entry == null || entry[0] != tm) {
+                entry = new Object[] {tm, lookup.lookup(tm)};
+                _resolved.put(lookup, entry);
+            }
+            return entry[1];
+        }
+    }
+
+
+    /**
+     * Step of a path: An axis, an optional index plan and the predicates.
+     */
+    static final class Step {
+
+        private final NativeAxis _axis;
+        private final String _datatype;
+        private final IndexPlan _plan;
+        private final NativePredicate[] _predicates;
+
+        /**
+         * Creates a step.
+         *
+         * @param axis The axis.
+         * @param datatype The datatype IRI of a step like <tt>xsd:string</tt>
+         *          or <tt>null</tt>.
+         * @param plan The index plan for a <tt>topic</tt> / <tt>association</tt>
+         *          step or <tt>null</tt>.
+         * @param predicates The predicates.
+         */
+        Step(final NativeAxis axis, final String datatype, final IndexPlan plan, 
+                final List<NativePredicate> predicates) {
+            _axis = axis;
+            _datatype = datatype;
+            _plan = plan;
+            _predicates = predicates.toArray(new NativePredicate[predicates.size()]);
+        }
+
+        /**
+         * Passes the nodes of the axis to the visitor, the predicates are
+         * not applied.
+         */
+        boolean traverse(final Object node, final Evaluation eval, final Visitor visitor) {
+            if (_plan != null && node instanceof TopicMap) {
+                final List<?> candidates = _plan.getCandidates((TopicMap) node, eval.getIndexSession());
+                if (candidates != null) {
+                    for (Object candidate: candidates) {
+                        if (!visitor.visit(candidate)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            }
+            if (_datatype != null && node instanceof DatatypeAware) {
+                final Locator datatype = ((DatatypeAware) node).getDatatype();
+                if (_datatype.equals(datatype.getReference())) {
+                    return visitor.visit(datatype);
+                }
+            }
+            return _axis.traverse(node, eval, visitor);
+        }
+
+        /**
+         * Returns if the node satisfies all predicates.
+         */
+        boolean accept(final Object node, final Evaluation eval) {
+            for (NativePredicate predicate: _predicates) {
+                if (!predicate.accept(node, eval)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+
+    /**
+     * <tt>sid('...')</tt>, <tt>slo('...')</tt> or <tt>iid('...')</tt>.
+     */
+    static final class Lookup {
+
+        private final String _function;
+        private final String _iri;
+
+        Lookup(final String function, final String iri) {
+            _function = function;
+            _iri = iri;
+        }
+
+        /**
+         * Returns the construct of the topic map of the context node or 
+         * <tt>null</tt> if the topic map contains no such construct.
+         */
+        Object resolve(final Object context, final Evaluation eval) {
+            if (!(context instanceof Construct)) {
+                throw new FilterMatchException("No topic map in the context available");
+            }
+            return eval.resolve(this, ((Construct) context).getTopicMap());
+        }
+
+        Object lookup(final TopicMap tm) {
+            final Locator loc = tm.createLocator(_iri);
+            if (ChildAxis.isSubjectIdentifierAxis(_function)) {
+                return tm.getTopicBySubjectIdentifier(loc);
+            }
+            if (ChildAxis.isSubjectLocatorAxis(_function)) {
+                return tm.getTopicBySubjectLocator(loc);
+            }
+            return tm.getConstructByItemIdentifier(loc);
+        }
+    }
+
+
+    /**
+     * Applies the predicates of a step and hands the accepted nodes to the
+     * next step.
+     */
+    private static final class StepVisitor implements Visitor {
+
+        private final Step _step;
+        private final Step _next;
+        private final Visitor _visitor;
+        private final Evaluation _eval;
+        private final Set<Object> _seen;
+
+        StepVisitor(final Step step, final Step next, final Visitor visitor, 
+                final Evaluation eval, final boolean distinct) {
+            _step = step;
+            _next = next;
+            _visitor = visitor;
+            _eval = eval;
+            _seen = distinct ? Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()) : null;
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.tmapix.filter.xpath.NativePath.Visitor#visit(java.lang.Object)
+         */
+        public boolean visit(final Object node) {
+            if (_seen != null && !_seen.add(node)) {
+                return true;
+            }
+            if (!_step.accept(node, _eval)) {
+                return true;
+            }
+            return _next == null ? _visitor.visit(node) : _next.traverse(node, _eval, _visitor);
+        }
+    }
+
+
+    /**
+     * Keeps the first node and stops the evaluation.
+     */
+    private static final class FirstVisitor implements Visitor {
+
+        Object node;
+        boolean found;
+
+        /* (non-Javadoc)
+         * @see com.semagia.tmapix.filter.xpath.NativePath.Visitor#visit(java.lang.Object)
+         */
+        public boolean visit(final Object node) {
+            this.node = node;
+            found = true;
+            return false;
+        }
+    }
+
+}
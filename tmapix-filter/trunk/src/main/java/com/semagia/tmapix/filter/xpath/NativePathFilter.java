@@ -0,0 +1,113 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import java.util.List;
+
+import org.jaxen.FunctionCallException;
+import org.tmapi.core.Construct;
+
+import com.semagia.tmapix.filter.FilterMatchException;
+import com.semagia.tmapix.filter.IFilter;
+import com.semagia.tmapix.filter.xpath.fun.AtomifyFunction;
+import com.semagia.tmapix.filter.xpath.fun.DefaultNameFunction;
+import com.semagia.tmapix.filter.xpath.fun.InUCSFunction;
+
+/**
+ * {@link IFilter} which is evaluated by the native path engine.
+ * <p>
+ * Instances are immutable and can be shared between threads, each 
+ * evaluation uses its own {@link NativePath.Evaluation}.
+ * </p>
+ * 
+ * @see NativeCompiler
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+final class NativePathFilter<T> implements IFilter<T> {
+
+    private static final String _IN_UCS = "in-ucs";
+    private static final String _DEFAULT_NAME = "default-name";
+    private static final String _ATOMIFY = "atomify";
+
+    private final NativePath _path;
+    private final String _function;
+
+    /**
+     * Creates a filter.
+     *
+     * @param path The path.
+     * @param function The name of the function which is applied to the 
+     *          nodes of the path or <tt>null</tt>.
+     */
+    NativePathFilter(final NativePath path, final String function) {
+        _path = path;
+        _function = function;
+    }
+
+    /**
+     * Returns if the function can be applied to the result of a path.
+     *
+     * @param name The function name.
+     * @return <tt>true</tt> for <tt>in-ucs</tt>, <tt>default-name</tt> and
+     *          <tt>atomify</tt>, otherwise <tt>false</tt>.
+     */
+    static boolean isFunction(final String name) {
+        return _IN_UCS.equals(name) || _DEFAULT_NAME.equals(name) || _ATOMIFY.equals(name);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.tmapix.filter.IFilter#match(org.tmapi.core.Construct)
+     */
+    @SuppressWarnings("unchecked")
+    public Iterable<T> match(final Construct context) throws FilterMatchException {
+        final List<Object> nodes = _path.select(context, new NativePath.Evaluation(), true);
+        if (_function == null) {
+            return (Iterable<T>) nodes;
+        }
+        try {
+            if (_IN_UCS.equals(_function)) {
+                return (Iterable<T>) InUCSFunction.evaluate(nodes);
+            }
+            if (_DEFAULT_NAME.equals(_function)) {
+                return (Iterable<T>) DefaultNameFunction.evaluate(nodes);
+            }
+            return (Iterable<T>) AtomifyFunction.evaluate(nodes);
+        }
+        catch (FunctionCallException ex) {
+            throw new FilterMatchException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.tmapix.filter.IFilter#matchOne(org.tmapi.core.Construct)
+     */
+    @SuppressWarnings("unchecked")
+    public T matchOne(final Construct context) throws FilterMatchException {
+        if (_function == null) {
+            return (T) _path.selectFirst(context, new NativePath.Evaluation());
+        }
+        for (T obj: match(context)) {
+            return obj;
+        }
+        return null;
+    }
+
+}
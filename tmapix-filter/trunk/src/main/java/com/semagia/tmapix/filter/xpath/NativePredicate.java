@@ -0,0 +1,570 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jaxen.FunctionCallException;
+import org.tmapi.core.Construct;
+import org.tmapi.core.Locator;
+import org.tmapi.core.Name;
+import org.tmapi.core.Scoped;
+
+import com.semagia.tmapix.filter.FilterMatchException;
+import com.semagia.tmapix.filter.voc.TMDM;
+import com.semagia.tmapix.filter.xpath.NativePath.Evaluation;
+import com.semagia.tmapix.filter.xpath.NativePath.Lookup;
+import com.semagia.tmapix.filter.xpath.NativePath.Visitor;
+
+/**
+ * Predicate of the native path engine.
+ * <p>
+ * The predicates follow the XPath 1.0 conversion rules: A node set is 
+ * <tt>true</tt> if its first node is <tt>true</tt>, the string value of 
+ * a construct is its id, the string value of a locator is its reference.
+ * A comparison between a node set and a value is <tt>true</tt> if one of
+ * the nodes satisfies the comparison, the nodes are compared one by one 
+ * until a node satisfies the comparison.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+abstract class NativePredicate {
+
+    static final NativePredicate TRUE = new Constant(true);
+    static final NativePredicate FALSE = new Constant(false);
+
+    /**
+     * Returns if the node satisfies this predicate.
+     *
+     * @param node The node.
+     * @param eval The evaluation.
+     * @return <tt>true</tt> if the node is accepted, otherwise <tt>false</tt>.
+     */
+    abstract boolean accept(Object node, Evaluation eval);
+
+    static NativePredicate exists(final NativePath path) {
+        return new Exists(path);
+    }
+
+    static NativePredicate and(final NativePredicate lhs, final NativePredicate rhs) {
+        return new And(lhs, rhs);
+    }
+
+    static NativePredicate or(final NativePredicate lhs, final NativePredicate rhs) {
+        return new Or(lhs, rhs);
+    }
+
+    static NativePredicate not(final NativePredicate predicate) {
+        return new Not(predicate);
+    }
+
+    static NativePredicate inUCS(final NativePath path) {
+        return new InUCS(path);
+    }
+
+    static NativePredicate defaultName(final NativePath path) {
+        return new DefaultName(path);
+    }
+
+    static NativePredicate compare(final Operator operator, final Operand lhs, final Operand rhs) {
+        return new Comparison(operator, lhs, rhs);
+    }
+
+    /**
+     * Returns the boolean value of a node.
+     */
+    static boolean toBoolean(final Object obj) {
+        if (obj instanceof Boolean) {
+            return ((Boolean) obj).booleanValue();
+        }
+        if (obj instanceof Number) {
+            final double value = ((Number) obj).doubleValue();
+            return value != 0 && !Double.isNaN(value);
+        }
+        if (obj instanceof String) {
+            return ((String) obj).length() > 0;
+        }
+        return obj != null;
+    }
+
+    /**
+     * Returns the string value of a node.
+     */
+    static String toString(final Object obj) {
+        if (obj instanceof String) {
+            return (String) obj;
+        }
+        if (obj instanceof Locator) {
+            return ((Locator) obj).getReference();
+        }
+        if (obj instanceof Construct) {
+            return ((Construct) obj).getId();
+        }
+        return obj == null ? "" : obj.toString();
+    }
+
+    /**
+     * Returns the number value of a node.
+     */
+    static double toNumber(final Object obj) {
+        if (obj instanceof Double) {
+            return ((Double) obj).doubleValue();
+        }
+        if (obj instanceof String) {
+            return _parse((String) obj);
+        }
+        if (obj instanceof Construct) {
+            return _parse(((Construct) obj).getId());
+        }
+        return Double.NaN;
+    }
+
+    private static double _parse(final String value) {
+        try {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+
+
+    /**
+     * Comparison operators.
+     */
+    enum Operator {
+
+        EQUALS("=") {
+            @Override
+            boolean compare(Object lhs, Object rhs) {
+                if (lhs == rhs && lhs instanceof Construct) {
+                    return true;
+                }
+                if (lhs instanceof Double || rhs instanceof Double) {
+                    final double lhsValue = toNumber(lhs);
+                    final double rhsValue = toNumber(rhs);
+                    return !Double.isNaN(lhsValue) && !Double.isNaN(rhsValue)
+                            && Double.doubleToLongBits(lhsValue) == Double.doubleToLongBits(rhsValue);
+                }
+                return NativePredicate.toString(lhs).equals(NativePredicate.toString(rhs));
+            }
+        },
+
+        NOT_EQUALS("!=") {
+            @Override
+            boolean compare(Object lhs, Object rhs) {
+                if (lhs instanceof Double || rhs instanceof Double) {
+                    final double lhsValue = toNumber(lhs);
+                    final double rhsValue = toNumber(rhs);
+                    return Double.isNaN(lhsValue) || Double.isNaN(rhsValue)
+                            || Double.doubleToLongBits(lhsValue) != Double.doubleToLongBits(rhsValue);
+                }
+                return !NativePredicate.toString(lhs).equals(NativePredicate.toString(rhs));
+            }
+        },
+
+        LESS_THAN("<") {
+            @Override
+            boolean compare(double lhs, double rhs) {
+                return lhs < rhs;
+            }
+        },
+
+        LESS_THAN_EQUALS("<=") {
+            @Override
+            boolean compare(double lhs, double rhs) {
+                return lhs <= rhs;
+            }
+        },
+
+        GREATER_THAN(">") {
+            @Override
+            boolean compare(double lhs, double rhs) {
+                return lhs > rhs;
+            }
+        },
+
+        GREATER_THAN_EQUALS(">=") {
+            @Override
+            boolean compare(double lhs, double rhs) {
+                return lhs >= rhs;
+            }
+        };
+
+        private static final Map<String, Operator> _OPERATORS = new HashMap<String, Operator>();
+
+        static {
+            for (Operator op: values()) {
+                _OPERATORS.put(op._symbol, op);
+            }
+        }
+
+        private final String _symbol;
+
+        private Operator(final String symbol) {
+            _symbol = symbol;
+        }
+
+        /**
+         * Returns the operator or <tt>null</tt> if the symbol is not a
+         * comparison operator.
+         */
+        static Operator forSymbol(final String symbol) {
+            return _OPERATORS.get(symbol);
+        }
+
+        boolean isRelational() {
+            return this != EQUALS && this != NOT_EQUALS;
+        }
+
+        /**
+         * Compares two values, <tt>null</tt> is never equal / not equal to 
+         * another value.
+         */
+        boolean compare(final Object lhs, final Object rhs) {
+            if (lhs == null || rhs == null) {
+                return false;
+            }
+            final double lhsValue = toNumber(lhs);
+            final double rhsValue = toNumber(rhs);
+            return !Double.isNaN(lhsValue) && !Double.isNaN(rhsValue) && compare(lhsValue, rhsValue);
+        }
+
+        boolean compare(final double lhs, final double rhs) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+
+    /**
+     * Operand of a comparison.
+     */
+    abstract static class Operand {
+
+        /**
+         * Returns the path if this operand is a node set, otherwise 
+         * <tt>null</tt>.
+         */
+        NativePath getPath() {
+            return null;
+        }
+
+        /**
+         * Returns the value of this operand.
+         */
+        abstract Object value(Object node, Evaluation eval);
+
+        static Operand path(final NativePath path) {
+            return new PathOperand(path);
+        }
+
+        static Operand value(final Object value) {
+            return new ConstantOperand(value);
+        }
+
+        static Operand lookup(final Lookup lookup) {
+            return new LookupOperand(lookup);
+        }
+
+        static Operand count(final NativePath path) {
+            return new CountOperand(path);
+        }
+    }
+
+    private static final class PathOperand extends Operand {
+
+        private final NativePath _path;
+
+        PathOperand(final NativePath path) {
+            _path = path;
+        }
+
+        @Override
+        NativePath getPath() {
+            return _path;
+        }
+
+        @Override
+        Object value(Object node, Evaluation eval) {
+            return _path.select(node, eval, false);
+        }
+    }
+
+    private static final class ConstantOperand extends Operand {
+
+        private final Object _value;
+
+        ConstantOperand(final Object value) {
+            _value = value;
+        }
+
+        @Override
+        Object value(Object node, Evaluation eval) {
+            return _value;
+        }
+    }
+
+    private static final class LookupOperand extends Operand {
+
+        private final Lookup _lookup;
+
+        LookupOperand(final Lookup lookup) {
+            _lookup = lookup;
+        }
+
+        @Override
+        Object value(Object node, Evaluation eval) {
+            return _lookup.resolve(node, eval);
+        }
+    }
+
+    private static final class CountOperand extends Operand {
+
+        private final NativePath _path;
+
+        CountOperand(final NativePath path) {
+            _path = path;
+        }
+
+        @Override
+        Object value(Object node, Evaluation eval) {
+            return Double.valueOf(_path.select(node, eval, true).size());
+        }
+    }
+
+
+    private static final class Constant extends NativePredicate {
+
+        private final boolean _value;
+
+        Constant(final boolean value) {
+            _value = value;
+        }
+
+        @Override
+        boolean accept(Object node, Evaluation eval) {
+            return _value;
+        }
+    }
+
+    private static final class Exists extends NativePredicate {
+
+        private final NativePath _path;
+
+        Exists(final NativePath path) {
+            _path = path;
+        }
+
+        @Override
+        boolean accept(Object node, Evaluation eval) {
+            return _path.isTrue(node, eval);
+        }
+    }
+
+    private static final class And extends NativePredicate {
+
+        private final NativePredicate _lhs;
+        private final NativePredicate _rhs;
+
+        And(final NativePredicate lhs, final NativePredicate rhs) {
+            _lhs = lhs;
+            _rhs = rhs;
+        }
+
+        @Override
+        boolean accept(Object node, Evaluation eval) {
+            return _lhs.accept(node, eval) && _rhs.accept(node, eval);
+        }
+    }
+
+    private static final class Or extends NativePredicate {
+
+        private final NativePredicate _lhs;
+        private final NativePredicate _rhs;
+
+        Or(final NativePredicate lhs, final NativePredicate rhs) {
+            _lhs = lhs;
+            _rhs = rhs;
+        }
+
+        @Override
+        boolean accept(Object node, Evaluation eval) {
+            return _lhs.accept(node, eval) || _rhs.accept(node, eval);
+        }
+    }
+
+    private static final class Not extends NativePredicate {
+
+        private final NativePredicate _predicate;
+
+        Not(final NativePredicate predicate) {
+            _predicate = predicate;
+        }
+
+        @Override
+        boolean accept(Object node, Evaluation eval) {
+            return !_predicate.accept(node, eval);
+        }
+    }
+
+    /**
+     * <tt>in-ucs(...)</tt>, see {@link com.semagia.tmapix.filter.xpath.fun.InUCSFunction}.
+     */
+    private static final class InUCS extends NativePredicate {
+
+        private final NativePath _path;
+
+        InUCS(final NativePath path) {
+            _path = path;
+        }
+
+        @Override
+        boolean accept(Object node, Evaluation eval) {
+            final List<Object> nodes = _path.select(node, eval, false);
+            for (Object obj: nodes) {
+                if (!(obj instanceof Scoped)) {
+                    throw new FilterMatchException(new FunctionCallException("Expected scoped statements"));
+                }
+            }
+            return !nodes.isEmpty() && ((Scoped) nodes.get(0)).getScope().isEmpty();
+        }
+    }
+
+    /**
+     * <tt>default-name(...)</tt>, see {@link com.semagia.tmapix.filter.xpath.fun.DefaultNameFunction}.
+     */
+    private static final class DefaultName extends NativePredicate {
+
+        private final NativePath _path;
+
+        DefaultName(final NativePath path) {
+            _path = path;
+        }
+
+        @Override
+        boolean accept(Object node, Evaluation eval) {
+            final List<Object> nodes = _path.select(node, eval, false);
+            for (Object obj: nodes) {
+                if (!(obj instanceof Name)) {
+                    throw new FilterMatchException(new FunctionCallException("Expected name statements"));
+                }
+            }
+            if (nodes.isEmpty()) {
+                return false;
+            }
+            for (Locator sid: ((Name) nodes.get(0)).getType().getSubjectIdentifiers()) {
+                if (TMDM.TOPIC_NAME.equals(sid.getReference())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Comparison of two operands.
+     * <p>
+     * If one operand is a node set and the other one is a value, the nodes
+     * are streamed and compared against the value which is computed once. 
+     * Two node sets are compared by a hash lookup if the operator is 
+     * <tt>=</tt>.
+     * </p>
+     */
+    private static final class Comparison extends NativePredicate {
+
+        private final Operator _operator;
+        private final Operand _lhs;
+        private final Operand _rhs;
+
+        Comparison(final Operator operator, final Operand lhs, final Operand rhs) {
+            _operator = operator;
+            _lhs = lhs;
+            _rhs = rhs;
+        }
+
+        @Override
+        boolean accept(final Object node, final Evaluation eval) {
+            final NativePath lhsPath = _lhs.getPath();
+            final NativePath rhsPath = _rhs.getPath();
+            if (lhsPath != null && rhsPath != null) {
+                return _compareNodeSets(lhsPath, rhsPath, node, eval);
+            }
+            if (lhsPath != null) {
+                final Object value = _rhs.value(node, eval);
+                return value != null && !lhsPath.evaluate(node, eval, new Visitor() {
+                    public boolean visit(Object lhs) {
+                        return !_operator.compare(lhs, value);
+                    }
+                }, false);
+            }
+            if (rhsPath != null) {
+                final Object value = _lhs.value(node, eval);
+                return value != null && !rhsPath.evaluate(node, eval, new Visitor() {
+                    public boolean visit(Object rhs) {
+                        return !_operator.compare(value, rhs);
+                    }
+                }, false);
+            }
+            final Object lhs = _lhs.value(node, eval);
+            final Object rhs = _rhs.value(node, eval);
+            return lhs != null && rhs != null && _operator.compare(lhs, rhs);
+        }
+
+        private boolean _compareNodeSets(final NativePath lhsPath, final NativePath rhsPath, 
+                final Object node, final Evaluation eval) {
+            final List<Object> rhsNodes = rhsPath.select(node, eval, false);
+            if (rhsNodes.isEmpty()) {
+                return false;
+            }
+            final Visitor visitor;
+            if (_operator == Operator.EQUALS) {
+                final Set<String> values = new HashSet<String>(rhsNodes.size());
+                for (Object rhs: rhsNodes) {
+                    values.add(NativePredicate.toString(rhs));
+                }
+                visitor = new Visitor() {
+                    public boolean visit(Object lhs) {
+                        return !values.contains(NativePredicate.toString(lhs));
+                    }
+                };
+            }
+            else {
+                visitor = new Visitor() {
+                    public boolean visit(Object lhs) {
+                        for (Object rhs: rhsNodes) {
+                            if (_operator.compare(lhs, rhs)) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                };
+            }
+            return !lhsPath.evaluate(node, eval, visitor, false);
+        }
+    }
+
+}
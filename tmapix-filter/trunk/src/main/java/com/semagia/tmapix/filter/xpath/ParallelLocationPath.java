@@ -0,0 +1,221 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import static com.semagia.tmapix.filter.xpath.ChildAxis.isAssociationAxis;
+import static com.semagia.tmapix.filter.xpath.ChildAxis.isTopicAxis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jaxen.Context;
+import org.jaxen.ContextSupport;
+import org.jaxen.JaxenException;
+import org.jaxen.expr.Expr;
+import org.jaxen.expr.LocationPath;
+import org.jaxen.expr.NameStep;
+import org.jaxen.expr.Predicate;
+import org.jaxen.expr.PredicateSet;
+import org.jaxen.expr.Step;
+import org.jaxen.saxpath.Axis;
+import org.tmapi.core.TopicMap;
+
+/**
+ * Evaluates a relative location path which starts with a <tt>topic</tt> or 
+ * <tt>association</tt> step in parallel.
+ * <p>
+ * The topics / associations of the topic map are partitioned, each partition
+ * is filtered by the predicates of the first step and the remaining steps 
+ * are applied to it by a task of an {@link ExecutorService}. The results of 
+ * the partitions are merged in the order of the partitions, so the result 
+ * has the same order as the sequential evaluation.
+ * </p>
+ * <p>
+ * The predicates of the first step must not depend on the position of the 
+ * node, see {@link #isParallel(Expr)}.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+final class ParallelLocationPath {
+
+    /**
+     * The minimum number of nodes per partition.
+     */
+    static final int MIN_PARTITION_SIZE = 1024;
+
+    private ParallelLocationPath() {
+        // noop.
+    }
+
+    /**
+     * Returns if the provided expression can be evaluated in parallel.
+     *
+     * @param expr The expression.
+     * @return <tt>true</tt> if the expression is a relative location path 
+     *          which starts with a <tt>topic</tt> or <tt>association</tt>
+     *          step without positional predicates, otherwise <tt>false</tt>.
+     */
+    static boolean isParallel(final Expr expr) {
+        if (!(expr instanceof LocationPath) || ((LocationPath) expr).isAbsolute()) {
+            return false;
+        }
+        final Object first = ((LocationPath) expr).getSteps().get(0);
+        if (!(first instanceof NameStep)) {
+            return false;
+        }
+        final NameStep step = (NameStep) first;
+        if (step.getAxis() != Axis.CHILD
+                || !"".equals(step.getPrefix())
+                || !(isTopicAxis(step.getLocalName()) || isAssociationAxis(step.getLocalName()))) {
+            return false;
+        }
+        for (Object predicate: step.getPredicates()) {
+            if (!LazyLocationPath.isBoolean(((Predicate) predicate).getExpr())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evaluates the location path in parallel.
+     *
+     * @param path A location path which can be evaluated in parallel.
+     * @param tm The context node.
+     * @param filter The filter which provides the context support which is 
+     *          shared by all tasks.
+     * @param executor The executor which runs the tasks.
+     * @return The result or <tt>null</tt> if the path should be evaluated 
+     *          sequentially since the topic map contains too few nodes.
+     * @throws JaxenException In case of an error.
+     */
+    static List<Object> evaluate(final Expr path, final TopicMap tm, 
+            final MapXPathFilter<?> filter, final ExecutorService executor) throws JaxenException {
+        final List<?> steps = ((LocationPath) path).getSteps();
+        final NameStep first = (NameStep) steps.get(0);
+        // One support per evaluation, the partitions share its index session
+        final ContextSupport support = filter.createSupport();
+        List<?> candidates = first instanceof IndexedNameStep 
+                ? ((IndexedNameStep) first).getCandidates(tm, support)
+                : null;
+        if (candidates == null) {
+            candidates = isTopicAxis(first.getLocalName()) 
+                            ? new ArrayList<Object>(tm.getTopics())
+                            : new ArrayList<Object>(tm.getAssociations());
+        }
+        final int size = candidates.size();
+        if (size < 2 * MIN_PARTITION_SIZE) {
+            return null;
+        }
+        final int partitionSize = Math.max(MIN_PARTITION_SIZE, 
+                size / (4 * Runtime.getRuntime().availableProcessors()) + 1);
+        final List<Future<List<?>>> results = new ArrayList<Future<List<?>>>();
+        try {
+            for (int i=0; i < size; i += partitionSize) {
+                results.add(executor.submit(new Partition(steps, 
+                        candidates.subList(i, Math.min(size, i + partitionSize)), 
+                        support)));
+            }
+            final List<Object> result = new ArrayList<Object>();
+            // The nodes of the first step are unique
+            final Set<Object> seen = steps.size() > 1 
+                    ? Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()) 
+                    : null;
+            for (Future<List<?>> partition: results) {
+                for (Object node: partition.get()) {
+                    if (seen == null || seen.add(node)) {
+                        result.add(node);
+                    }
+                }
+            }
+            return result;
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new JaxenException(ex);
+        }
+        catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof JaxenException) {
+                throw (JaxenException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new JaxenException(cause);
+        }
+        finally {
+            for (Future<List<?>> partition: results) {
+                partition.cancel(true);
+            }
+        }
+    }
+
+
+    /**
+     * Task which evaluates the location path for a partition of the nodes of 
+     * the first step.
+     */
+    private static final class Partition implements Callable<List<?>> {
+
+        private final List<?> _steps;
+        private final List<?> _nodes;
+        private final ContextSupport _support;
+
+        Partition(final List<?> steps, final List<?> nodes, final ContextSupport support) {
+            _steps = steps;
+            _nodes = nodes;
+            _support = support;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.Callable#call()
+         */
+        public List<?> call() throws JaxenException {
+            final PredicateSet predicates = ((Step) _steps.get(0)).getPredicateSet();
+            List<?> nodes = _nodes;
+            for (Object predicate: predicates.getPredicates()) {
+                if (nodes.isEmpty()) {
+                    return nodes;
+                }
+                nodes = predicates.applyPredicate((Predicate) predicate, nodes, _support);
+            }
+            for (int i=1; i < _steps.size() && !nodes.isEmpty(); i++) {
+                final Context context = new Context(_support);
+                context.setNodeSet(nodes);
+                nodes = ((Step) _steps.get(i)).evaluate(context);
+            }
+            return nodes;
+        }
+    }
+
+}
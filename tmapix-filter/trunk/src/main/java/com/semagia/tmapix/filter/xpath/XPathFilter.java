@@ -19,11 +19,24 @@
  */
 package com.semagia.tmapix.filter.xpath;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.jaxen.JaxenException;
 import org.jaxen.SimpleFunctionContext;
 import org.jaxen.XPathFunctionContext;
+import org.tmapi.core.Construct;
 import org.tmapi.core.TMAPIRuntimeException;
+import org.tmapi.core.TopicMap;
 
+import com.semagia.tmapix.filter.FilterMatchException;
 import com.semagia.tmapix.filter.IFilter;
 import com.semagia.tmapix.filter.xpath.fun.AtomifyFunction;
 import com.semagia.tmapix.filter.xpath.fun.DefaultNameFunction;
@@ -35,12 +48,55 @@ import com.semagia.tmapix.filter.xpath.fun.SloFunction;
 /**
  * {@link IFilter} factory that uses <a href="http://www.w3.org/TR/xpath">XPath 1.0</a>
  * expressions.
+ * <p>
+ * The filters are immutable and can be shared between threads. Compiled 
+ * filters are kept in a bounded LRU cache which is keyed by the expression, 
+ * the namespace bindings and the evaluation mode; use 
+ * {@link #setCacheSize(int)} to change the size of the cache. Parallel 
+ * filters share the compiled filter, the executor is bound by a wrapper 
+ * which is not cached.
+ * </p>
+ * <p>
+ * Filters which are created by {@link #createParallel(String, ExecutorService)}
+ * evaluate the predicates of a leading <tt>topic</tt> / <tt>association</tt> 
+ * step in parallel if the topic map implementation was declared to be 
+ * thread-safe for concurrent reads, see {@link #setThreadSafe(Class, boolean)}.
+ * </p>
+ * <p>
+ * Filters which are created by {@link #createNative(String)} are evaluated 
+ * by a path engine which navigates the TMAPI constructs directly instead of
+ * using Jaxen, see <tt>wiki/XPathAxes.wiki</tt> for the supported axes.
+ * </p>
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  * @version $Rev$ - $Date$
  */
 public final class XPathFilter {
 
+    /**
+     * The default size of the filter cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private static final Map<String, String> _NO_NAMESPACES = Collections.emptyMap();
+
+    private static final int _EAGER = 0;
+    private static final int _LAZY = 1;
+    private static final int _NATIVE = 2;
+
+    private static final Map<Key, IFilter<?>> _CACHE = new LinkedHashMap<Key, IFilter<?>>(16, 0.75f, true) {
+        private static final long serialVersionUID = -7024913218620640719L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, IFilter<?>> eldest) {
+            return size() > _cacheSize;
+        }
+    };
+    private static final AtomicLong _HITS = new AtomicLong();
+    private static final AtomicLong _MISSES = new AtomicLong();
+    private static volatile int _cacheSize = DEFAULT_CACHE_SIZE;
+    private static final Set<Class<?>> _THREAD_SAFE = new CopyOnWriteArraySet<Class<?>>();
+
     static {
         SimpleFunctionContext ctx = (SimpleFunctionContext) XPathFunctionContext.getInstance();
         ctx.registerFunction("", "sid", new SidFunction());
@@ -59,12 +115,366 @@ public final class XPathFilter {
      * @throws TMAPIRuntimeException In case of an error (i.e. syntax error).
      */
     public static <T> IFilter<T> create(final String xpath) throws TMAPIRuntimeException {
+        return create(xpath, _NO_NAMESPACES);
+    }
+
+    /**
+     * Creates a new {@link IFilter} instance with the provided namespace 
+     * bindings.
+     *
+     * @param xpath The XPath which should be evaluated.
+     * @param namespaces The namespace bindings (prefix -&gt; IRI).
+     * @return A {@link IFilter} instance.
+     * @throws TMAPIRuntimeException In case of an error (i.e. syntax error).
+     */
+    public static <T> IFilter<T> create(final String xpath, final Map<String, String> namespaces) throws TMAPIRuntimeException {
+        return _create(xpath, namespaces, _EAGER);
+    }
+
+    /**
+     * Creates a new {@link IFilter} instance which evaluates the XPath lazily.
+     * <p>
+     * The {@link IFilter#match(org.tmapi.core.Construct)} method returns 
+     * an iterable which pulls the items on demand through the location steps 
+     * and predicates if the XPath is a relative location path without 
+     * positional predicates (i.e. <tt>topic[1]</tt>); otherwise the result 
+     * is computed eagerly. Each iteration re-evaluates the XPath against the 
+     * context, modifications of the topic map during an iteration are not 
+     * permitted.
+     * </p>
+     *
+     * @param xpath The XPath which should be evaluated.
+     * @return A {@link IFilter} instance.
+     * @throws TMAPIRuntimeException In case of an error (i.e. syntax error).
+     */
+    public static <T> IFilter<T> createLazy(final String xpath) throws TMAPIRuntimeException {
+        return createLazy(xpath, _NO_NAMESPACES);
+    }
+
+    /**
+     * Creates a new {@link IFilter} instance with the provided namespace 
+     * bindings which evaluates the XPath lazily.
+     *
+     * @see #createLazy(String)
+     * @param xpath The XPath which should be evaluated.
+     * @param namespaces The namespace bindings (prefix -&gt; IRI).
+     * @return A {@link IFilter} instance.
+     * @throws TMAPIRuntimeException In case of an error (i.e. syntax error).
+     */
+    public static <T> IFilter<T> createLazy(final String xpath, final Map<String, String> namespaces) throws TMAPIRuntimeException {
+        return _create(xpath, namespaces, _LAZY);
+    }
+
+    /**
+     * Creates a new {@link IFilter} instance which evaluates the XPath in 
+     * parallel.
+     * <p>
+     * If the XPath is a relative location path which starts with a 
+     * <tt>topic</tt> or <tt>association</tt> step without positional 
+     * predicates (i.e. <tt>topic[occurrence[value &gt; 1000]]/name</tt>)
+     * and the filter is applied to a topic map with many topics / associations,
+     * the topics / associations are partitioned and each partition is 
+     * evaluated by a task of the provided executor. The result has the same
+     * order as the result of the sequential evaluation.
+     * </p>
+     * <p>
+     * The XPath is evaluated sequentially if the topic map implementation 
+     * was not declared to be thread-safe, see 
+     * {@link #setThreadSafe(Class, boolean)}.
+     * </p>
+     *
+     * @param xpath The XPath which should be evaluated.
+     * @param executor The executor which evaluates the partitions, the 
+     *          executor is not shut down by the filter.
+     * @return A {@link IFilter} instance.
+     * @throws TMAPIRuntimeException In case of an error (i.e. syntax error).
+     */
+    public static <T> IFilter<T> createParallel(final String xpath, final ExecutorService executor) throws TMAPIRuntimeException {
+        return createParallel(xpath, _NO_NAMESPACES, executor);
+    }
+
+    /**
+     * Creates a new {@link IFilter} instance with the provided namespace 
+     * bindings which evaluates the XPath in parallel.
+     *
+     * @see #createParallel(String, ExecutorService)
+     * @param xpath The XPath which should be evaluated.
+     * @param namespaces The namespace bindings (prefix -&gt; IRI).
+     * @param executor The executor which evaluates the partitions, the 
+     *          executor is not shut down by the filter.
+     * @return A {@link IFilter} instance.
+     * @throws TMAPIRuntimeException In case of an error (i.e. syntax error).
+     */
+    public static <T> IFilter<T> createParallel(final String xpath, final Map<String, String> namespaces, 
+            final ExecutorService executor) throws TMAPIRuntimeException {
+        if (executor == null) {
+            throw new IllegalArgumentException("The executor must not be null");
+        }
+        final IFilter<T> filter = _create(xpath, namespaces, _EAGER);
+        return filter instanceof MapXPathFilter<?> && ((MapXPathFilter<T>) filter).isParallel()
+                ? new ParallelFilter<T>((MapXPathFilter<T>) filter, executor)
+                : filter;
+    }
+
+    /**
+     * Creates a new {@link IFilter} instance which is evaluated by the 
+     * native path engine.
+     * <p>
+     * The native path engine evaluates location paths, the functions 
+     * <tt>sid</tt>, <tt>slo</tt>, <tt>iid</tt>, <tt>in-ucs</tt>, 
+     * <tt>default-name</tt>, <tt>atomify</tt> and predicates which do not 
+     * depend on the position of the node (i.e. <tt>topic[name/value = 'Alice']</tt>
+     * or <tt>occurrence[value &gt; 1000 and not(in-ucs(.))]</tt>) without 
+     * Jaxen. The nodes are passed from step to step without creating the
+     * intermediate node sets. The result contains the same nodes as the 
+     * result of a filter created by {@link #create(String)}, the nodes of 
+     * a path with more than one step are returned in the order of the 
+     * evaluation.
+     * </p>
+     * <p>
+     * If the XPath uses other features of XPath 1.0 (i.e. <tt>topic[1]</tt>),
+     * a filter which is evaluated by Jaxen is returned.
+     * </p>
+     *
+     * @param xpath The XPath which should be evaluated.
+     * @return A {@link IFilter} instance.
+     * @throws TMAPIRuntimeException In case of an error (i.e. syntax error).
+     */
+    public static <T> IFilter<T> createNative(final String xpath) throws TMAPIRuntimeException {
+        return createNative(xpath, _NO_NAMESPACES);
+    }
+
+    /**
+     * Creates a new {@link IFilter} instance with the provided namespace 
+     * bindings which is evaluated by the native path engine.
+     *
+     * @see #createNative(String)
+     * @param xpath The XPath which should be evaluated.
+     * @param namespaces The namespace bindings (prefix -&gt; IRI).
+     * @return A {@link IFilter} instance.
+     * @throws TMAPIRuntimeException In case of an error (i.e. syntax error).
+     */
+    public static <T> IFilter<T> createNative(final String xpath, final Map<String, String> namespaces) throws TMAPIRuntimeException {
+        return _create(xpath, namespaces, _NATIVE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> IFilter<T> _create(final String xpath, final Map<String, String> namespaces, 
+            final int mode) {
+        if (xpath == null) {
+            throw new IllegalArgumentException("The XPath must not be null");
+        }
+        if (namespaces == null) {
+            throw new IllegalArgumentException("The namespace bindings must not be null");
+        }
+        final Key key = new Key(xpath, namespaces, mode);
+        IFilter<T> filter;
+        synchronized (_CACHE) {
+            filter = (IFilter<T>) _CACHE.get(key);
+        }
+        if (filter != null) {
+            _HITS.incrementAndGet();
+            return filter;
+        }
+        _MISSES.incrementAndGet();
         try {
-            return new MapXPathFilter<T>(xpath, MapNavigator.getInstance());
+            if (mode == _NATIVE) {
+                filter = NativeCompiler.compile(xpath, key.namespaces);
+            }
+            if (filter == null) {
+                filter = new MapXPathFilter<T>(xpath, MapNavigator.getInstance(), key.namespaces, 
+                                                mode == _LAZY);
+            }
         }
         catch (JaxenException ex) {
             throw new TMAPIRuntimeException(ex);
         }
+        if (_cacheSize > 0) {
+            synchronized (_CACHE) {
+                _CACHE.put(key, filter);
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Sets the maximum number of compiled filters which are kept in the cache.
+     *
+     * @param size The size of the cache, <tt>0</tt> disables the cache.
+     */
+    public static void setCacheSize(final int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The cache size must not be negative");
+        }
+        _cacheSize = size;
+        synchronized (_CACHE) {
+            final Iterator<Key> iter = _CACHE.keySet().iterator();
+            for (int i=_CACHE.size(); i > size; i--) {
+                iter.next();
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of compiled filters which are kept in the 
+     * cache.
+     *
+     * @return The size of the cache.
+     */
+    public static int getCacheSize() {
+        return _cacheSize;
+    }
+
+    /**
+     * Returns the number of requests which were answered by the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public static long getCacheHits() {
+        return _HITS.get();
+    }
+
+    /**
+     * Returns the number of requests which required the compilation of 
+     * the XPath.
+     *
+     * @return The number of cache misses.
+     */
+    public static long getCacheMisses() {
+        return _MISSES.get();
+    }
+
+    /**
+     * Removes all filters from the cache and resets the hit and miss counters.
+     */
+    public static void clearCache() {
+        synchronized (_CACHE) {
+            _CACHE.clear();
+        }
+        _HITS.set(0);
+        _MISSES.set(0);
+    }
+
+
+    /**
+     * Declares if the provided topic map implementation supports concurrent
+     * reads.
+     * <p>
+     * Filters created by {@link #createParallel(String, ExecutorService)} 
+     * evaluate the XPath in parallel only if the topic map is an instance of 
+     * a class which was declared to be thread-safe. The implementation must
+     * support concurrent reads of topics, associations, their 
+     * characteristics and the indexes; the topic map must not be modified 
+     * during the evaluation.
+     * </p>
+     *
+     * @param topicMapClass The topic map implementation.
+     * @param threadSafe <tt>true</tt> if the implementation supports 
+     *          concurrent reads, otherwise <tt>false</tt>.
+     */
+    public static void setThreadSafe(final Class<? extends TopicMap> topicMapClass, final boolean threadSafe) {
+        if (topicMapClass == null) {
+            throw new IllegalArgumentException("The topic map class must not be null");
+        }
+        if (threadSafe) {
+            _THREAD_SAFE.add(topicMapClass);
+        }
+        else {
+            _THREAD_SAFE.remove(topicMapClass);
+        }
+    }
+
+    /**
+     * Returns if the implementation of the provided topic map was declared to 
+     * support concurrent reads.
+     *
+     * @see #setThreadSafe(Class, boolean)
+     * @param tm The topic map.
+     * @return <tt>true</tt> if the topic map can be read concurrently, 
+     *          otherwise <tt>false</tt>.
+     */
+    public static boolean isThreadSafe(final TopicMap tm) {
+        for (Class<?> cls: _THREAD_SAFE) {
+            if (cls.isInstance(tm)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Filter which binds a cached filter to an executor.
+     */
+    private static final class ParallelFilter<T> implements IFilter<T> {
+
+        private final MapXPathFilter<T> _filter;
+        private final ExecutorService _executor;
+
+        ParallelFilter(final MapXPathFilter<T> filter, final ExecutorService executor) {
+            _filter = filter;
+            _executor = executor;
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.tmapix.filter.IFilter#match(org.tmapi.core.Construct)
+         */
+        public Iterable<T> match(final Construct context) throws FilterMatchException {
+            return _filter.match(context, _executor);
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.tmapix.filter.IFilter#matchOne(org.tmapi.core.Construct)
+         */
+        public T matchOne(final Construct context) throws FilterMatchException {
+            return _filter.matchOne(context);
+        }
+    }
+
+
+    /**
+     * Cache key.
+     */
+    private static final class Key {
+
+        final String xpath;
+        final Map<String, String> namespaces;
+        final int mode;
+        private final int _hashCode;
+
+        Key(final String xpath, final Map<String, String> namespaces, final int mode) {
+            this.xpath = xpath;
+            this.namespaces = namespaces.isEmpty() ? _NO_NAMESPACES 
+                                : Collections.unmodifiableMap(new HashMap<String, String>(namespaces));
+            this.mode = mode;
+            _hashCode = (xpath.hashCode() * 31 + this.namespaces.hashCode()) * 31 + mode;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return mode == other.mode
+                    && xpath.equals(other.xpath)
+                    && namespaces.equals(other.namespaces);
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode() {
+            return _hashCode;
+        }
     }
 
 }
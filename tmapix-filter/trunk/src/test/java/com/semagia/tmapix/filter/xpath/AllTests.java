@@ -44,6 +44,12 @@ public class AllTests extends TestSuite {
         suite.addTestSuite(TestTyped.class);
         suite.addTestSuite(TestScoped.class);
         suite.addTestSuite(TestName.class);
+        suite.addTestSuite(TestIndexPlan.class);
+        suite.addTestSuite(TestLazyLocationPath.class);
+        suite.addTestSuite(TestXPathFilter.class);
+        suite.addTestSuite(TestIndexSession.class);
+        suite.addTestSuite(TestParallelLocationPath.class);
+        suite.addTest(TestNativePathFilter.suite());
         return suite;
     }
 }
@@ -0,0 +1,163 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jaxen.JaxenHandler;
+import org.jaxen.expr.LocationPath;
+import org.jaxen.saxpath.XPathReader;
+import org.jaxen.saxpath.helpers.XPathReaderFactory;
+import org.tmapi.core.Association;
+import org.tmapi.core.Construct;
+import org.tmapi.core.Topic;
+
+/**
+ * Tests against the {@link IndexPlan}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestIndexPlan extends XPathTestCase {
+
+    private Topic _person;
+    private Topic _alice;
+    private Topic _bob;
+    private Topic _knows;
+    private Topic _theme;
+    private Association _assoc;
+
+    public TestIndexPlan(String name) {
+        super(name);
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapi.core.TMAPITestCase#setUp()
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _person = _topic("person");
+        _alice = _topic("alice");
+        _alice.addType(_person);
+        _alice.addSubjectLocator(createLocator("http://www.example.org/alice"));
+        _alice.addItemIdentifier(createLocator("http://www.example.org/map#alice"));
+        _alice.createName("Alice");
+        _bob = _topic("bob");
+        _bob.addType(_person);
+        _bob.createName("Bob");
+        _knows = _topic("knows");
+        _theme = _topic("theme");
+        _assoc = _tm.createAssociation(_knows, _theme);
+        _assoc.createRole(_topic("knower"), _alice);
+        _assoc.createRole(_topic("known"), _bob);
+        _tm.createAssociation(_topic("likes")).createRole(_topic("liker"), _bob);
+        for (int i=0; i < 10; i++) {
+            createTopic().createName("Alice");
+        }
+    }
+
+    private Topic _topic(final String id) {
+        return _tm.createTopicBySubjectIdentifier(createLocator("http://www.example.org/" + id));
+    }
+
+    private static IndexPlan _plan(final String path) throws Exception {
+        final XPathReader reader = XPathReaderFactory.createReader();
+        final JaxenHandler handler = new JaxenHandler();
+        handler.setXPathFactory(new MapPathFactory());
+        reader.setXPathHandler(handler);
+        reader.parse(path);
+        final Object step = ((LocationPath) handler.getXPathExpr().getRootExpr()).getSteps().get(0);
+        return ((IndexedNameStep) step).getPlan();
+    }
+
+    private void _assertResult(final Set<? extends Construct> expected, final String path) {
+        assertEquals(expected, asSet(xpath(path), _tm));
+    }
+
+    private static Set<Construct> _set(final Construct... constructs) {
+        final Set<Construct> result = new HashSet<Construct>();
+        Collections.addAll(result, constructs);
+        return result;
+    }
+
+    public void testPlans() throws Exception {
+        assertNotNull(_plan("topic[sid = 'http://www.example.org/alice']"));
+        assertNotNull(_plan("topic[type = sid('http://www.example.org/person')]"));
+        assertNotNull(_plan("topic[type/iid = 'http://www.example.org/map#person']"));
+        assertNotNull(_plan("topic[name/value = 'Alice']"));
+        assertNotNull(_plan("association[type = sid('http://www.example.org/knows')]"));
+        assertNotNull(_plan("association[scope = slo('http://www.example.org/theme')]"));
+        assertNotNull(_plan("association[role/player = sid('http://www.example.org/bob')]"));
+        assertNotNull(_plan("topic[name and type = sid('http://www.example.org/person')]"));
+    }
+
+    public void testNoPlans() throws Exception {
+        assertNull(_plan("topic"));
+        assertNull(_plan("topic[1]"));
+        assertNull(_plan("topic[name]"));
+        assertNull(_plan("topic[type != sid('http://www.example.org/person')]"));
+        assertNull(_plan("topic[type = sid('http://www.example.org/person') or name]"));
+        assertNull(_plan("topic[type = sid('http://www.example.org/person') and position() = 1]"));
+        assertNull(_plan("topic[name][type = sid('http://www.example.org/person')]"));
+        assertNull(_plan("topic[scope = sid('http://www.example.org/theme')]"));
+        assertNull(_plan("association[name/value = 'Alice']"));
+        assertNull(_plan("name[type = sid('http://www.example.org/person')]"));
+    }
+
+    public void testIdentity() {
+        _assertResult(_set(_alice), "topic[sid = 'http://www.example.org/alice']");
+        _assertResult(_set(_alice), "topic[slo = 'http://www.example.org/alice']");
+        _assertResult(_set(_alice), "topic['http://www.example.org/map#alice' = iid]");
+        _assertResult(_set(), "topic[sid = 'http://www.example.org/unknown']");
+    }
+
+    public void testType() {
+        _assertResult(_set(_alice, _bob), "topic[type = sid('http://www.example.org/person')]");
+        _assertResult(_set(_alice, _bob), "topic[type/sid = 'http://www.example.org/person']");
+        _assertResult(_set(_bob), "topic[type = sid('http://www.example.org/person')][name/value = 'Bob']");
+        assertEquals(1, asSet(xpath("topic[type = sid('http://www.example.org/person')][1]"), _tm).size());
+        _assertResult(_set(), "topic[type = sid('http://www.example.org/unknown')]");
+        _assertResult(_set(_assoc), "association[type = sid('http://www.example.org/knows')]");
+    }
+
+    public void testNameValue() {
+        assertEquals(11, asSet(xpath("topic[name/value = 'Alice']"), _tm).size());
+        _assertResult(_set(_alice), "topic[name/value = 'Alice' and type = sid('http://www.example.org/person')]");
+    }
+
+    public void testScope() {
+        _assertResult(_set(_assoc), "association[scope = sid('http://www.example.org/theme')]");
+        _assertResult(_set(), "association[scope = sid('http://www.example.org/knows')]");
+    }
+
+    public void testPlayer() {
+        _assertResult(_set(_assoc), "association[role/player = sid('http://www.example.org/alice')]");
+        assertEquals(2, asSet(xpath("association[role/player = sid('http://www.example.org/bob')]"), _tm).size());
+    }
+
+    public void testNonTopicMapContext() {
+        assertEquals(Collections.singleton(_person), 
+                asSet(xpath("type[sid = 'http://www.example.org/person']"), _alice));
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Set;
+
+import org.jaxen.ContextSupport;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.index.Index;
+import org.tmapi.index.TypeInstanceIndex;
+
+/**
+ * Tests against the {@link IndexSession}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestIndexSession extends XPathTestCase {
+
+    private int _opened;
+    private int _reindexed;
+
+    public TestIndexSession(String name) {
+        super(name);
+    }
+
+    /**
+     * Returns a topic map which provides an index that is not updated 
+     * automatically and counts the invocations of open() and reindex().
+     */
+    private TopicMap _countingTopicMap() {
+        final Index index = (Index) Proxy.newProxyInstance(getClass().getClassLoader(), 
+                new Class<?>[] {TypeInstanceIndex.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                final String name = method.getName();
+                if ("open".equals(name)) {
+                    _opened++;
+                }
+                else if ("reindex".equals(name)) {
+                    _reindexed++;
+                }
+                else if ("isAutoUpdated".equals(name)) {
+                    return Boolean.FALSE;
+                }
+                return null;
+            }
+        });
+        return (TopicMap) Proxy.newProxyInstance(getClass().getClassLoader(), 
+                new Class<?>[] {TopicMap.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("getIndex".equals(method.getName())) {
+                    return index;
+                }
+                return method.invoke(_tm, args);
+            }
+        });
+    }
+
+    public void testSession() {
+        final TopicMap tm = _countingTopicMap();
+        final IndexSession session = new IndexSession();
+        final TypeInstanceIndex idx = session.getIndex(tm, TypeInstanceIndex.class);
+        assertSame(idx, session.getIndex(tm, TypeInstanceIndex.class));
+        assertSame(idx, session.getIndex(tm, TypeInstanceIndex.class));
+        assertEquals(1, _opened);
+        assertEquals(1, _reindexed);
+        new IndexSession().getIndex(tm, TypeInstanceIndex.class);
+        assertEquals(2, _opened);
+        assertEquals(2, _reindexed);
+    }
+
+    public void testContextSupport() {
+        final TopicMap tm = _countingTopicMap();
+        final ContextSupport support = new MapContextSupport(null, null, null, MapNavigator.getInstance());
+        IndexSession.getIndex(support, tm, TypeInstanceIndex.class);
+        IndexSession.getIndex(support, tm, TypeInstanceIndex.class);
+        assertEquals(1, _reindexed);
+        // Without a session, the index is opened on each request
+        final ContextSupport plainSupport = new ContextSupport();
+        IndexSession.getIndex(plainSupport, tm, TypeInstanceIndex.class);
+        IndexSession.getIndex(plainSupport, tm, TypeInstanceIndex.class);
+        assertEquals(3, _reindexed);
+    }
+
+    public void testInstanceAxis() {
+        final Topic type = createTopic();
+        final Topic type2 = createTopic();
+        final Topic instance = createTopic();
+        instance.addType(type);
+        instance.addType(type2);
+        final Set<Topic> expected = Collections.singleton(instance);
+        assertEquals(expected, asSet(xpath("instance"), type));
+        assertEquals(expected, asSet(XPathFilter.createLazy("topic/instance"), _tm));
+        assertEquals(expected, asSet(xpath("topic/instance"), _tm));
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.jaxen.JaxenHandler;
+import org.jaxen.saxpath.XPathReader;
+import org.jaxen.saxpath.helpers.XPathReaderFactory;
+import org.tmapi.core.Association;
+import org.tmapi.core.Topic;
+
+import com.semagia.tmapix.filter.IFilter;
+
+/**
+ * Tests against the {@link LazyLocationPath} and 
+ * {@link XPathFilter#createLazy(String)}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestLazyLocationPath extends XPathTestCase {
+
+    private static final String[] _PATHS = {
+        "topic",
+        "association",
+        "topic[name]",
+        "topic/type",
+        "topic/type/instance",
+        "topic[type = sid('http://www.example.org/person')]",
+        "topic[name/value = 'Alice' or name/value = 'Bob']",
+        "topic[not(name)]",
+        "association/role/player",
+        "association[scope]/role[type = sid('http://www.example.org/knower')]/player",
+        "topic/name/..",
+        "topic[1]",
+        "topic[last()]",
+    };
+
+    public TestLazyLocationPath(String name) {
+        super(name);
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapi.core.TMAPITestCase#setUp()
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final Topic person = _topic("person");
+        final Topic alice = _topic("alice");
+        alice.addType(person);
+        alice.createName("Alice");
+        final Topic bob = _topic("bob");
+        bob.addType(person);
+        bob.createName("Bob");
+        final Association assoc = _tm.createAssociation(_topic("knows"), _topic("theme"));
+        assoc.createRole(_topic("knower"), alice);
+        assoc.createRole(_topic("known"), bob);
+        _tm.createAssociation(_topic("likes")).createRole(_topic("liker"), bob);
+    }
+
+    private Topic _topic(final String id) {
+        return _tm.createTopicBySubjectIdentifier(createLocator("http://www.example.org/" + id));
+    }
+
+    private static boolean _isLazy(final String path) throws Exception {
+        final XPathReader reader = XPathReaderFactory.createReader();
+        final JaxenHandler handler = new JaxenHandler();
+        handler.setXPathFactory(new MapPathFactory());
+        reader.setXPathHandler(handler);
+        reader.parse(path);
+        return LazyLocationPath.isLazy(handler.getXPathExpr().getRootExpr());
+    }
+
+    public void testIsLazy() throws Exception {
+        assertTrue(_isLazy("topic"));
+        assertTrue(_isLazy("topic/name[value = 'Alice']"));
+        assertTrue(_isLazy("topic[name and not(occurrence)]"));
+        assertTrue(_isLazy("association[role/player[1]]"));
+        assertFalse(_isLazy("topic[1]"));
+        assertFalse(_isLazy("topic[position() < 3]"));
+        assertFalse(_isLazy("topic[count(name)]"));
+        assertFalse(_isLazy("topic[name][last()]"));
+        assertFalse(_isLazy("/topic"));
+        assertFalse(_isLazy("topic | association"));
+        assertFalse(_isLazy("count(topic)"));
+    }
+
+    public void testResult() {
+        for (String path: _PATHS) {
+            final IFilter<Object> eager = xpath(path);
+            final IFilter<Object> lazy = XPathFilter.createLazy(path);
+            assertEquals(path, asSet(eager, _tm), asSet(lazy, _tm));
+            assertEquals(path, asList(eager, _tm).size(), asList(lazy, _tm).size());
+            assertEquals(path, eager.matchOne(_tm) == null, lazy.matchOne(_tm) == null);
+        }
+    }
+
+    public void testMatchIsLazy() {
+        final Iterable<Topic> result = XPathFilter.<Topic>createLazy("topic").match(_tm);
+        assertFalse(result instanceof List<?>);
+        final Iterator<Topic> iter = result.iterator();
+        assertTrue(iter.hasNext());
+        assertTrue(_tm.getTopics().contains(iter.next()));
+        // The iterable can be iterated more than once
+        assertEquals(_tm.getTopics(), asSet(result));
+        assertTrue(XPathFilter.createLazy("topic[1]").match(_tm) instanceof List<?>);
+    }
+
+    public void testMatchOne() {
+        assertNull(xpath("topic[sid = 'http://www.example.org/unknown']").matchOne(_tm));
+        final IFilter<Topic> filter = xpath("topic[name/value = 'Bob']");
+        assertEquals(_topic("bob"), filter.matchOne(_tm));
+    }
+
+}
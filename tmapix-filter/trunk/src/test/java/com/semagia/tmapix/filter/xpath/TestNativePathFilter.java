@@ -0,0 +1,278 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.extensions.TestSetup;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Construct;
+import org.tmapi.core.Name;
+import org.tmapi.core.Topic;
+
+import com.semagia.tmapix.filter.FilterMatchException;
+import com.semagia.tmapix.filter.IFilter;
+
+/**
+ * Tests against the native path engine and {@link XPathFilter#createNative(String)}.
+ * <p>
+ * The {@link #suite()} runs the construct tests with filters which are 
+ * evaluated by the native path engine as well.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestNativePathFilter extends XPathTestCase {
+
+    private static final String _BASE = "http://www.example.org/";
+    private static final String _XSD_INTEGER = "http://www.w3.org/2001/XMLSchema#integer";
+
+    private static final String[] _PATHS = {
+        ".", "..", "/", "parent::*", "*", "child::*", "child::node()", "self::node()",
+        "topic", "association", "/topic", "/association/role",
+        "iid", "sid", "slo", "reifier", "reified", "type", "instance", "scope", 
+        "name", "occurrence", "role", "player", "value", "datatype", "variant",
+        "unknown", "xsd:string", "topic/unknown",
+        "topic/name", "topic/name/value", "topic/name/variant", "topic/name/variant/scope", 
+        "topic/name/type", "topic/name/scope", "topic/name/reifier", "topic/name/..", 
+        "topic/name/parent::*", "topic/name/*", "topic/occurrence/datatype", 
+        "topic/occurrence/type/sid", "topic/occurrence/xsd:integer", "topic/sid", "topic/slo", 
+        "topic/iid", "topic/type", "topic/type/instance", "topic/type/instance/name", 
+        "topic/reified", "topic/role/..", "topic/*", "topic/*/..", "topic/name/value/..", "topic/sid/..", "topic/reified/..",
+        "association/type", "association/scope", "association/reifier", "association/iid", 
+        "association/role", "association/role/type", "association/role/iid", 
+        "association/role/player", "association/role/..",
+        "topic[name]", "topic[not(name)]", "topic[name and occurrence]", "topic[name or slo]",
+        "topic[true()]", "topic[false()]", "topic[boolean(name)]", "topic[role]", "topic[instance]",
+        "topic[reifier]", "topic[reified]", "topic[/association]", "topic[iid]",
+        "topic[name/value = 'Alice']", "topic[name/value != 'Alice']", "topic['Alice' = name/value]",
+        "topic[name/value = 'Alice' or name/value = 'Bob']",
+        "topic[type = sid('http://www.example.org/person')]",
+        "topic[type != sid('http://www.example.org/person')]",
+        "topic[type = sid('http://www.example.org/unknown')]",
+        "topic[type != sid('http://www.example.org/unknown')]",
+        "topic[type/sid = 'http://www.example.org/person']",
+        "topic[sid = 'http://www.example.org/alice']",
+        "topic[iid = 'http://www.example.org/#alice']",
+        "topic[slo = 'http://www.example.org/alice.html']",
+        "topic[. = sid('http://www.example.org/alice')]",
+        "topic[. != sid('http://www.example.org/alice')]",
+        "topic[sid('http://www.example.org/alice')]",
+        "topic[sid('http://www.example.org/unknown')]",
+        "topic[name/value = sid('http://www.example.org/alice')/name/value]",
+        "topic[name/value = 'Bob']/role/../role/player",
+        "topic[occurrence[value > 100]]", "topic[occurrence/value > 'abc']",
+        "topic/occurrence[value >= '42']", "topic/occurrence[value < 42]", 
+        "topic/occurrence[value <= 42.0]", "topic/occurrence[value = 42]", 
+        "topic/occurrence[value != 42]", "topic/occurrence[42 = value]", "topic/occurrence[42 > value]",
+        "topic/occurrence[value = '42' and datatype = xsd:integer]",
+        "topic/occurrence[datatype = xsd:integer]", 
+        "topic/occurrence[datatype = 'http://www.w3.org/2001/XMLSchema#anyURI']",
+        "topic/occurrence[xsd:string]", "topic/occurrence[xsd:anyURI]/value", 
+        "topic/occurrence[not(xsd:string)]",
+        "topic/name/variant[datatype = xsd:string]", "topic[name/variant/value = 'alice']",
+        "topic/name[in-ucs(.)]", "topic/name[not(in-ucs(.))]", "topic[in-ucs(name)]",
+        "topic/name[default-name(.)]", "topic/name[not(default-name(.))]/value",
+        "topic/name[count(variant) = 0]", "topic[count(name) > 1]", 
+        "topic[count(name) = count(occurrence)]", "topic[count(type/instance) = 2]",
+        "topic[name/value = occurrence/value]", "topic[name/value != occurrence/value]",
+        "topic[name/value < occurrence/value]", "topic[occurrence/value >= occurrence/value]",
+        "topic/name[reifier]", "topic/name[reifier = sid('http://www.example.org/name-reifier')]",
+        "topic/name/value[. = 'Alice']", "topic/name[value = ../name/value]",
+        "association[role/player = sid('http://www.example.org/alice')]",
+        "association[scope = sid('http://www.example.org/theme')]",
+        "association[type = sid('http://www.example.org/knows')]/role[type = sid('http://www.example.org/knower')]/player",
+        "association[role/player/name/value = 'Bob']/role/player",
+        "association[reifier]/role[player[name]]",
+        "sid('http://www.example.org/alice')", "sid('http://www.example.org/unknown')",
+        "slo('http://www.example.org/alice.html')", "iid('http://www.example.org/#alice')",
+        "iid('http://www.example.org/#unknown')",
+        "sid('http://www.example.org/alice')/name/value", "sid('http://www.example.org/unknown')/name",
+        "in-ucs(topic/name)", "in-ucs(.)", "default-name(topic/name)", "default-name(name)", 
+        "atomify(topic)", "atomify(topic/occurrence)", "atomify(topic/sid)", "atomify(.)",
+        "topic[1]", "topic[name][last()]", "topic | association", "count(topic)",
+    };
+
+    private Topic _alice;
+    private Name _name;
+    private Association _assoc;
+
+    public TestNativePathFilter(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        final TestSuite suite = new TestSuite(TestNativePathFilter.class);
+        final TestSuite constructTests = new TestSuite("Native path engine");
+        constructTests.addTestSuite(TestConstruct.class);
+        constructTests.addTestSuite(TestReifiable.class);
+        constructTests.addTestSuite(TestTopicMap.class);
+        constructTests.addTestSuite(TestTopic.class);
+        constructTests.addTestSuite(TestAssociation.class);
+        constructTests.addTestSuite(TestTyped.class);
+        constructTests.addTestSuite(TestScoped.class);
+        constructTests.addTestSuite(TestName.class);
+        suite.addTest(new TestSetup(constructTests) {
+            @Override
+            protected void setUp() throws Exception {
+                XPathTestCase.setNative(true);
+            }
+
+            @Override
+            protected void tearDown() throws Exception {
+                XPathTestCase.setNative(false);
+            }
+        });
+        return suite;
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapi.core.TMAPITestCase#setUp()
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final Topic person = _topic("person");
+        _alice = _topic("alice");
+        _alice.addType(person);
+        _alice.addItemIdentifier(createLocator(_BASE + "#alice"));
+        _alice.addSubjectLocator(createLocator(_BASE + "alice.html"));
+        _name = _alice.createName("Alice");
+        _name.setReifier(_topic("name-reifier"));
+        _name.createVariant("alice", _topic("sort"));
+        _alice.createName(_topic("nickname"), "Ali", _topic("theme"));
+        _alice.createOccurrence(_topic("age"), "42", createLocator(_XSD_INTEGER));
+        _alice.createOccurrence(_topic("homepage"), createLocator(_BASE + "alice"));
+        final Topic bob = _topic("bob");
+        bob.addType(person);
+        bob.createName("Bob");
+        bob.createOccurrence(_topic("age"), "1000", createLocator(_XSD_INTEGER));
+        bob.createOccurrence(_topic("note"), "Bob");
+        _assoc = _tm.createAssociation(_topic("knows"), _topic("theme"));
+        _assoc.setReifier(_topic("assoc-reifier"));
+        _assoc.createRole(_topic("knower"), _alice);
+        _assoc.createRole(_topic("known"), bob);
+        _tm.createAssociation(_topic("likes")).createRole(_topic("liker"), bob);
+    }
+
+    private Topic _topic(final String id) {
+        return _tm.createTopicBySubjectIdentifier(createLocator(_BASE + id));
+    }
+
+    private static boolean _isNative(final String path) {
+        return XPathFilter.createNative(path) instanceof NativePathFilter<?>;
+    }
+
+    /**
+     * Returns the result of the filter (node -&gt; number of occurrences) or 
+     * the class of the exception.
+     * <p>
+     * The order of the nodes is not compared since Jaxen sorts the result 
+     * of a location path with more than one step.
+     * </p>
+     */
+    private static Object _match(final IFilter<Object> filter, final Construct context) {
+        try {
+            final Map<Object, Integer> result = new HashMap<Object, Integer>();
+            for (Object node: filter.match(context)) {
+                final Integer count = result.get(node);
+                result.put(node, count == null ? 1 : count + 1);
+            }
+            return result;
+        }
+        catch (FilterMatchException ex) {
+            return ex.getClass();
+        }
+    }
+
+    public void testIsNative() {
+        assertTrue(_isNative("topic"));
+        assertTrue(_isNative("/topic/name[value = 'Alice']/.."));
+        assertTrue(_isNative("sid('http://www.example.org/alice')/name"));
+        assertTrue(_isNative("topic[name and not(occurrence[value > 1000])]"));
+        assertTrue(_isNative("topic/occurrence[xsd:string]"));
+        assertTrue(_isNative("topic/name[count(variant) = 0]"));
+        assertTrue(_isNative("atomify(topic/name)"));
+        assertFalse(_isNative("topic[1]"));
+        assertFalse(_isNative("topic[position() < 3]"));
+        assertFalse(_isNative("topic[count(name)]"));
+        assertFalse(_isNative("topic | association"));
+        assertFalse(_isNative("count(topic)"));
+        assertFalse(_isNative("topic[string-length(name/value) > 3]"));
+        assertFalse(_isNative("topic/foo:name"));
+        assertFalse(_isNative("topic//name"));
+    }
+
+    public void testSameResult() {
+        final List<Construct> contexts = new ArrayList<Construct>();
+        contexts.add(_tm);
+        contexts.add(_alice);
+        contexts.add(_name);
+        contexts.add(_assoc);
+        for (String path: _PATHS) {
+            final IFilter<Object> jaxen = XPathFilter.create(path);
+            final IFilter<Object> nativeFilter = XPathFilter.createNative(path);
+            for (Construct context: contexts) {
+                final String msg = path + " applied to " + context;
+                final Object expected = _match(jaxen, context);
+                assertEquals(msg, expected, _match(nativeFilter, context));
+                if (expected instanceof Map<?, ?>) {
+                    final Object node = nativeFilter.matchOne(context);
+                    assertTrue(msg, node != null || ((Map<?, ?>) expected).containsKey(null) 
+                                        || jaxen.matchOne(context) == null);
+                    assertTrue(msg, ((Map<?, ?>) expected).isEmpty() || ((Map<?, ?>) expected).containsKey(node));
+                }
+            }
+        }
+    }
+
+    public void testNullNodes() {
+        final IFilter<Object> filter = XPathFilter.createNative("topic/reifier");
+        final List<Object> result = asList(filter, _tm);
+        assertTrue(result.isEmpty());
+        assertEquals(1, asList(XPathFilter.createNative("reifier"), _alice.getOccurrences().iterator().next()).size());
+        assertNull(XPathFilter.createNative("sid('http://www.example.org/unknown')").matchOne(_tm));
+    }
+
+    public void testFunctionError() {
+        try {
+            XPathFilter.createNative("topic[in-ucs(.)]").match(_tm);
+            fail("Expected an exception since topics are not scoped");
+        }
+        catch (FilterMatchException ex) {
+            // noop.
+        }
+    }
+
+    public void testCache() {
+        final IFilter<Object> filter = XPathFilter.createNative("topic");
+        assertSame(filter, XPathFilter.createNative("topic"));
+        assertNotSame(filter, XPathFilter.create("topic"));
+        assertFalse(XPathFilter.create("topic") instanceof NativePathFilter<?>);
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jaxen.JaxenHandler;
+import org.jaxen.saxpath.XPathReader;
+import org.jaxen.saxpath.helpers.XPathReaderFactory;
+import org.tmapi.core.Topic;
+
+import com.semagia.tmapix.filter.IFilter;
+
+/**
+ * Tests against the {@link ParallelLocationPath} and 
+ * {@link XPathFilter#createParallel(String, ExecutorService)}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestParallelLocationPath extends XPathTestCase {
+
+    private static final int _TOPICS = 5 * ParallelLocationPath.MIN_PARTITION_SIZE;
+
+    private static final String[] _PATHS = {
+        "topic",
+        "topic[occurrence[type = sid('http://www.example.org/age')][value > 50]]",
+        "topic[occurrence[value > 90]]/name/value",
+        "topic[type = sid('http://www.example.org/person')]",
+        "topic/type",
+        "association[role/player = sid('http://www.example.org/person')]",
+        "topic[1]",
+    };
+
+    private final AtomicInteger _tasks = new AtomicInteger();
+    private ExecutorService _executor;
+
+    public TestParallelLocationPath(String name) {
+        super(name);
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapi.core.TMAPITestCase#setUp()
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _executor = new ThreadPoolExecutor(4, 4, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            public <V> Future<V> submit(Callable<V> task) {
+                _tasks.incrementAndGet();
+                return super.submit(task);
+            }
+        };
+        final Topic person = _topic("person");
+        final Topic age = _topic("age");
+        for (int i=0; i < _TOPICS; i++) {
+            final Topic topic = createTopic();
+            topic.createName("Topic " + i);
+            topic.createOccurrence(age, String.valueOf(i % 100));
+            if (i % 3 == 0) {
+                topic.addType(person);
+            }
+        }
+        _tm.createAssociation(createTopic()).createRole(createTopic(), person);
+        XPathFilter.setThreadSafe(_tm.getClass(), true);
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapi.core.TMAPITestCase#tearDown()
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        XPathFilter.setThreadSafe(_tm.getClass(), false);
+        _executor.shutdown();
+        super.tearDown();
+    }
+
+    private Topic _topic(final String id) {
+        return _tm.createTopicBySubjectIdentifier(createLocator("http://www.example.org/" + id));
+    }
+
+    private static boolean _isParallel(final String path) throws Exception {
+        final XPathReader reader = XPathReaderFactory.createReader();
+        final JaxenHandler handler = new JaxenHandler();
+        handler.setXPathFactory(new MapPathFactory());
+        reader.setXPathHandler(handler);
+        reader.parse(path);
+        return ParallelLocationPath.isParallel(handler.getXPathExpr().getRootExpr());
+    }
+
+    public void testIsParallel() throws Exception {
+        assertTrue(_isParallel("topic"));
+        assertTrue(_isParallel("topic[name]/occurrence[1]"));
+        assertTrue(_isParallel("association[scope]"));
+        assertFalse(_isParallel("topic[1]"));
+        assertFalse(_isParallel("topic[last()]/name"));
+        assertFalse(_isParallel("name"));
+        assertFalse(_isParallel("/topic"));
+        assertFalse(_isParallel("count(topic)"));
+    }
+
+    public void testResult() {
+        for (String path: _PATHS) {
+            final List<Object> expected = asList(xpath(path), _tm);
+            final IFilter<Object> filter = XPathFilter.createParallel(path, _executor);
+            assertEquals(path, expected, asList(filter, _tm));
+        }
+        assertTrue(_tasks.get() > 0);
+    }
+
+    public void testPartitions() {
+        asList(XPathFilter.createParallel("topic[name]", _executor), _tm);
+        assertTrue(_tasks.get() > 1);
+        _tasks.set(0);
+        // The first step of the path is evaluated sequentially
+        asList(XPathFilter.createParallel("topic[1]", _executor), _tm);
+        assertEquals(0, _tasks.get());
+        // Too few nodes
+        asList(XPathFilter.createParallel("association[role]", _executor), _tm);
+        assertEquals(0, _tasks.get());
+    }
+
+    public void testNotThreadSafe() {
+        XPathFilter.setThreadSafe(_tm.getClass(), false);
+        assertFalse(XPathFilter.isThreadSafe(_tm));
+        final List<Topic> result = asList(XPathFilter.<Topic>createParallel("topic[name]", _executor), _tm);
+        assertEquals(_TOPICS, result.size());
+        assertEquals(0, _tasks.get());
+    }
+
+    public void testCacheIgnoresExecutor() {
+        XPathFilter.clearCache();
+        final AtomicInteger otherTasks = new AtomicInteger();
+        final ExecutorService other = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            public <V> Future<V> submit(Callable<V> task) {
+                otherTasks.incrementAndGet();
+                return super.submit(task);
+            }
+        };
+        try {
+            final IFilter<Topic> filter = XPathFilter.createParallel("topic[name]", _executor);
+            final IFilter<Topic> otherFilter = XPathFilter.createParallel("topic[name]", other);
+            assertEquals(1, XPathFilter.getCacheMisses());
+            assertEquals(1, XPathFilter.getCacheHits());
+            assertEquals(asList(filter, _tm), asList(otherFilter, _tm));
+            assertTrue(_tasks.get() > 0);
+            assertTrue(otherTasks.get() > 0);
+        }
+        finally {
+            other.shutdown();
+        }
+        // The executor does not keep the compiled filter alive
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            XPathFilter.createParallel("topic[name]", executor);
+            assertEquals(2, XPathFilter.getCacheHits());
+            assertEquals(1, XPathFilter.getCacheMisses());
+        }
+        finally {
+            executor.shutdown();
+            XPathFilter.clearCache();
+        }
+    }
+
+    public void testMatchOne() {
+        assertNotNull(XPathFilter.createParallel("topic[name/value = 'Topic 7']", _executor).matchOne(_tm));
+        assertEquals(0, _tasks.get());
+    }
+
+}
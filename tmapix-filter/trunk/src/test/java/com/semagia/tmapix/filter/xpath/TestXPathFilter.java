@@ -0,0 +1,154 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ * 
+ * The Original Code is Semagia TMAPIX.
+ * 
+ * The Initial Developer of the Original Code is Semagia <http://www.semagia.com/>.
+ * All Rights Reserved.
+ * 
+ * Contributer(s): Lars Heuer <heuer[at]semagia.com>
+ *
+ */
+package com.semagia.tmapix.filter.xpath;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jaxen.JaxenException;
+import org.jaxen.XPath;
+import org.tmapi.core.Topic;
+
+import com.semagia.tmapix.filter.IFilter;
+
+/**
+ * Tests against the {@link XPathFilter} factory and its cache.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestXPathFilter extends XPathTestCase {
+
+    public TestXPathFilter(String name) {
+        super(name);
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapi.core.TMAPITestCase#setUp()
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        XPathFilter.setCacheSize(XPathFilter.DEFAULT_CACHE_SIZE);
+        XPathFilter.clearCache();
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapi.core.TMAPITestCase#tearDown()
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        XPathFilter.setCacheSize(XPathFilter.DEFAULT_CACHE_SIZE);
+        XPathFilter.clearCache();
+        super.tearDown();
+    }
+
+    public void testCache() {
+        final IFilter<Topic> filter = XPathFilter.create("topic");
+        assertEquals(0, XPathFilter.getCacheHits());
+        assertEquals(1, XPathFilter.getCacheMisses());
+        assertSame(filter, XPathFilter.create("topic"));
+        assertEquals(1, XPathFilter.getCacheHits());
+        assertNotSame(filter, XPathFilter.createLazy("topic"));
+        assertNotSame(filter, XPathFilter.create("association"));
+        assertEquals(3, XPathFilter.getCacheMisses());
+        XPathFilter.clearCache();
+        assertEquals(0, XPathFilter.getCacheHits());
+        assertNotSame(filter, XPathFilter.create("topic"));
+    }
+
+    public void testCacheNamespaces() {
+        final Map<String, String> ns1 = Collections.singletonMap("ex", "http://www.example.org/1");
+        final Map<String, String> ns2 = Collections.singletonMap("ex", "http://www.example.org/2");
+        final IFilter<Topic> filter = XPathFilter.create("topic", ns1);
+        assertSame(filter, XPathFilter.create("topic", Collections.singletonMap("ex", "http://www.example.org/1")));
+        assertNotSame(filter, XPathFilter.create("topic", ns2));
+        assertNotSame(filter, XPathFilter.create("topic"));
+    }
+
+    public void testCacheSize() {
+        XPathFilter.setCacheSize(2);
+        final IFilter<Topic> filter = XPathFilter.create("topic");
+        XPathFilter.create("association");
+        assertSame(filter, XPathFilter.create("topic"));
+        XPathFilter.create("topic/name");
+        // "association" was the least recently used filter
+        assertSame(filter, XPathFilter.create("topic"));
+        final long misses = XPathFilter.getCacheMisses();
+        XPathFilter.create("association");
+        assertEquals(misses + 1, XPathFilter.getCacheMisses());
+        XPathFilter.setCacheSize(0);
+        assertNotSame(XPathFilter.create("topic"), XPathFilter.create("topic"));
+    }
+
+    public void testIllegalCacheSize() {
+        try {
+            XPathFilter.setCacheSize(-1);
+            fail("Expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+    public void testImmutableNamespaces() {
+        final IFilter<Topic> filter = XPathFilter.create("topic");
+        try {
+            ((XPath) filter).addNamespace("ex", "http://www.example.org/");
+            fail("Expected an exception, the filter is immutable");
+        }
+        catch (JaxenException ex) {
+            // noop.
+        }
+    }
+
+    public void testConcurrentEvaluation() throws Exception {
+        for (int i=0; i < 100; i++) {
+            createTopic().createName("Name " + i);
+        }
+        final IFilter<Topic> filter = XPathFilter.create("topic[name]");
+        final int expected = asList(filter, _tm).size();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i=0; i < 20; i++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        return asList(XPathFilter.<Topic>create("topic[name]"), _tm).size();
+                    }
+                }));
+            }
+            for (Future<Integer> result: results) {
+                assertEquals(expected, result.get().intValue());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        assertEquals(100, expected);
+    }
+
+}
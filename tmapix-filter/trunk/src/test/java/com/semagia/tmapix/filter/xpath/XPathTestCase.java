@@ -40,12 +40,24 @@ import com.semagia.tmapix.filter.IFilter;
 @Ignore
 public class XPathTestCase extends TMAPITestCase {
 
+    private static volatile boolean _native;
+
     public XPathTestCase(String name) {
         super(name);
     }
 
+    /**
+     * Sets if {@link #xpath(String)} returns filters which are evaluated 
+     * by the native path engine.
+     *
+     * @param nativeEngine <tt>true</tt> to use the native path engine.
+     */
+    static void setNative(final boolean nativeEngine) {
+        _native = nativeEngine;
+    }
+
     protected <T> IFilter<T> xpath(final String path) {
-        return XPathFilter.create(path);
+        return _native ? XPathFilter.<T>createNative(path) : XPathFilter.<T>create(path);
     }
 
     protected static <T> Set<T> asSet(final IFilter<T> filter, final Construct c) {
@@ -15,6 +15,7 @@
  */
 package org.tmapix.io;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -57,6 +58,7 @@ abstract class AbstractBaseTextualTopicMapWriter extends
     private Topic _typeInstance;
     private Topic _type;
     private Topic _instance;
+    private IndexSnapshot _indexSnapshot;
 
     /**
      * 
@@ -80,7 +82,7 @@ abstract class AbstractBaseTextualTopicMapWriter extends
      */
     protected AbstractBaseTextualTopicMapWriter(final OutputStream stream,
             final String baseIRI, final String encoding) throws IOException {
-        this(new OutputStreamWriter(stream, encoding), baseIRI, encoding);
+        this(new BufferedWriter(new OutputStreamWriter(stream, encoding)), baseIRI, encoding);
     }
 
     /**
@@ -104,6 +106,29 @@ abstract class AbstractBaseTextualTopicMapWriter extends
         _locatorComparator = new LocatorComparator();
     }
 
+    /**
+     * Sets the index snapshot which provides the type-instance and scope
+     * information of the topic map.
+     * <p>
+     * The snapshot is used if it belongs to the topic map which is written,
+     * otherwise the writer creates a snapshot for each written topic map.
+     * </p>
+     *
+     * @param snapshot The snapshot or {@code null}.
+     */
+    public void setIndexSnapshot(final IndexSnapshot snapshot) {
+        _indexSnapshot = snapshot;
+    }
+
+    /**
+     * Returns the index snapshot.
+     *
+     * @return The index snapshot or {@code null} if no snapshot was set.
+     */
+    public IndexSnapshot getIndexSnapshot() {
+        return _indexSnapshot;
+    }
+
     /**
      * This method must be called to initialize this class.
      * 
@@ -118,6 +143,17 @@ abstract class AbstractBaseTextualTopicMapWriter extends
         _instance = topicMap.getTopicBySubjectIdentifier(topicMap.createLocator(TMDM.INSTANCE));
     }
 
+    /**
+     * Returns the index snapshot for the provided topic map.
+     *
+     * @param topicMap The topic map.
+     * @return The snapshot which was set if it belongs to the topic map, 
+     *          otherwise a new snapshot.
+     */
+    protected IndexSnapshot getIndexSnapshot(final TopicMap topicMap) {
+        return IndexSnapshot.get(_indexSnapshot, topicMap);
+    }
+
     /**
      * Returns if the provided association represents a type-instance relationship.
      *
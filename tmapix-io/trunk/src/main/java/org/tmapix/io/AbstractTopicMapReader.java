@@ -37,6 +37,9 @@ import com.semagia.mio.Syntax;
  * This class provides a layer to <tt>com.semagia.mio</tt> and handles
  * the discovery of an appropriate deserializer transparently.
  * </p>
+ * <p>
+ * Gzip compressed input is detected and decompressed automatically.
+ * </p>
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  * @version $Rev$ - $Date$
@@ -128,7 +131,7 @@ abstract class AbstractTopicMapReader implements TopicMapReader  {
     @Override
     public void read() throws IOException {
         try {
-            _deserializer.parse(_source);
+            _deserializer.parse(Compression.decompress(_source));
             postProcess();
         }
         catch (MIOException ex) {
@@ -15,8 +15,11 @@
  */
 package org.tmapix.io;
 
+import java.io.OutputStream;
+
 import org.tmapi.core.Locator;
 import org.tmapi.core.Topic;
+import org.tmapix.io.internal.utils.CompressibleOutputStream;
 
 /**
  * Common, abstract superclass for {@link TopicMapWriter} implementations.
@@ -28,6 +31,8 @@ abstract class AbstractTopicMapWriter implements TopicMapWriter {
 
     protected final String _baseIRI;
 
+    private CompressibleOutputStream _stream;
+
     protected AbstractTopicMapWriter(final String baseIRI) {
         if (baseIRI == null) {
             throw new IllegalArgumentException("The base IRI must not be null");
@@ -35,6 +40,51 @@ abstract class AbstractTopicMapWriter implements TopicMapWriter {
         _baseIRI = baseIRI;
     }
 
+    /**
+     * Returns a stream which writes onto the provided stream and which 
+     * compresses the data if the compression is enabled.
+     * <p>
+     * Subclasses must write onto the returned stream and must flush it 
+     * once the topic map was written.
+     * </p>
+     *
+     * @param out The stream to write onto.
+     * @return A stream which supports {@link #setCompression(int)}.
+     */
+    protected final OutputStream compressible(final OutputStream out) {
+        _stream = new CompressibleOutputStream(out);
+        return _stream;
+    }
+
+    /**
+     * Enables / disables the gzip compression (disabled by default).
+     * <p>
+     * The data is compressed like a {@link Compression#gzip(OutputStream, int)}
+     * stream, but the stream does not need to be finished: Each written 
+     * topic map is a complete gzip stream. The setting takes effect with 
+     * the next written topic map.
+     * </p>
+     *
+     * @param parallelism The number of threads which compress the data,
+     *          <tt>0</tt> disables the compression.
+     */
+    public void setCompression(final int parallelism) {
+        if (_stream == null) {
+            throw new UnsupportedOperationException("The writer does not support compression");
+        }
+        _stream.setParallelism(parallelism);
+    }
+
+    /**
+     * Returns the number of threads which compress the data.
+     *
+     * @return The number of threads or <tt>0</tt> if the compression is 
+     *          disabled.
+     */
+    public int getCompression() {
+        return _stream == null ? 0 : _stream.getParallelism();
+    }
+
     /**
      * Returns an identifier for the topic.
      * <p>
@@ -77,7 +77,7 @@ abstract class AbstractXMLTopicMapWriter extends AbstractTopicMapWriter {
         if (encoding == null) {
             throw new IOException("The encoding must not be null");
         }
-        _out = new XMLWriter(out, encoding);
+        _out = new XMLWriter(compressible(out), encoding);
         _out.setPrettify(false);
         _attrs = new AttributesImpl();
     }
@@ -112,6 +112,13 @@ abstract class AbstractXMLTopicMapWriter extends AbstractTopicMapWriter {
     }
 
     protected void init(final TopicMap topicMap) {
+        if (topicMap == null) {
+            // No type-instance associations are detected
+            _typeInstance = null;
+            _type = null;
+            _instance = null;
+            return;
+        }
         _typeInstance = topicMap.getTopicBySubjectIdentifier(topicMap.createLocator(TMDM.TYPE_INSTANCE));
         _type = topicMap.getTopicBySubjectIdentifier(topicMap.createLocator(TMDM.TYPE));
         _instance = topicMap.getTopicBySubjectIdentifier(topicMap.createLocator(TMDM.INSTANCE));
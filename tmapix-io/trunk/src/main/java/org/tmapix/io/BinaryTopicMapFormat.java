@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.nio.charset.Charset;
+
+/**
+ * Constants of the binary topic map format which is written by the
+ * {@link BinaryTopicMapWriter} and read by the {@link BinaryTopicMapReader}.
+ * <p>
+ * A binary topic map starts with the bytes <tt>TMXB</tt> and a version byte.
+ * The rest of the file consists of sections. Each section starts with a
+ * section code (one byte) and the length of the section (four bytes, big
+ * endian). The last section is {@link #END}. Unknown sections are skipped
+ * by the reader.
+ * </p>
+ * <p>
+ * Numbers within a section are varints (7 bits per byte, least significant
+ * group first). Locators, strings and topics are referenced by their index
+ * in the {@link #LOCATORS} table, the {@link #STRINGS} table and in the
+ * {@link #TOPICS} section. Reifiers are written as topic index + 1,
+ * <tt>0</tt> means "no reifier".
+ * </p>
+ * <ul>
+ *   <li>{@link #LOCATORS} / {@link #STRINGS}: count, (UTF-8 length, UTF-8 bytes)*</li>
+ *   <li>{@link #TOPICS}: count, (item identifiers, subject identifiers,
+ *        subject locators)* where each set is written as count, locator*</li>
+ *   <li>{@link #TOPIC_MAP}: reifier, item identifiers</li>
+ *   <li>{@link #CHARACTERISTICS}: one record per topic in the order of the
+ *        {@link #TOPICS} section: types, names, occurrences</li>
+ *   <li>{@link #ASSOCIATIONS}: count, (reifier, item identifiers, type,
+ *        scope, roles)*</li>
+ * </ul>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+final class BinaryTopicMapFormat {
+
+    static final byte[] MAGIC = new byte[] {'T', 'M', 'X', 'B'};
+    static final byte VERSION = 1;
+
+    static final Charset UTF_8 = Charset.forName("utf-8");
+
+    /**
+     * Section codes.
+     */
+    static final int END = 0;
+    static final int LOCATORS = 1;
+    static final int STRINGS = 2;
+    static final int TOPICS = 3;
+    static final int TOPIC_MAP = 4;
+    static final int CHARACTERISTICS = 5;
+    static final int ASSOCIATIONS = 6;
+
+    /**
+     * Sections which are written in indexed mode. These sections consist of
+     * fixed-width integers (four bytes, big endian).
+     * <ul>
+     *   <li>{@link #LOCATOR_OFFSETS} / {@link #STRING_OFFSETS}: the offset of
+     *        each entry within the table section</li>
+     *   <li>{@link #TOPIC_OFFSETS}: the offset of each topic within the
+     *        {@link #TOPICS} section and within the {@link #CHARACTERISTICS}
+     *        section</li>
+     *   <li>{@link #ASSOCIATION_OFFSETS}: the offset of each association
+     *        within the {@link #ASSOCIATIONS} section</li>
+     *   <li>{@link #ITEM_IDENTIFIER_INDEX}, {@link #SUBJECT_IDENTIFIER_INDEX},
+     *        {@link #SUBJECT_LOCATOR_INDEX}: (locator, owner) pairs sorted by
+     *        the locators. The owner is a topic index or
+     *        <tt>-(association index + 1)</tt></li>
+     *   <li>{@link #ROLES_PLAYED}: the start offset of each topic plus the end
+     *        offset followed by the indexes of the played associations</li>
+     * </ul>
+     */
+    static final int LOCATOR_OFFSETS = 16;
+    static final int STRING_OFFSETS = 17;
+    static final int TOPIC_OFFSETS = 18;
+    static final int ASSOCIATION_OFFSETS = 19;
+    static final int ITEM_IDENTIFIER_INDEX = 20;
+    static final int SUBJECT_IDENTIFIER_INDEX = 21;
+    static final int SUBJECT_LOCATOR_INDEX = 22;
+    static final int ROLES_PLAYED = 23;
+
+    private BinaryTopicMapFormat() {
+        // noop.
+    }
+
+}
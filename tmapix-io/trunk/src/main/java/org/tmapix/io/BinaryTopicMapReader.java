@@ -0,0 +1,414 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import org.tmapi.core.TopicMap;
+
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.Source;
+import com.semagia.mio.helpers.Ref;
+
+/**
+ * {@link TopicMapReader} implementation which reads topic maps serialized
+ * by the {@link BinaryTopicMapWriter}.
+ * <p>
+ * Gzip compressed input is detected and decompressed automatically.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class BinaryTopicMapReader implements TopicMapReader {
+
+    private final TopicMap _topicMap;
+    private final File _file;
+    private final InputStream _in;
+    private final Source _source;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param topicMap The topic map to which the content is added to.
+     * @param source The file to read the topic map from.
+     */
+    public BinaryTopicMapReader(final TopicMap topicMap, final File source) {
+        this(topicMap, source, null, null);
+    }
+
+    /**
+     * Constructs a new instance.
+     * <p>
+     * The stream is not closed by {@link #read()}.
+     * </p>
+     *
+     * @param topicMap The topic map to which the content is added to.
+     * @param source The stream to read the topic map from.
+     */
+    public BinaryTopicMapReader(final TopicMap topicMap, final InputStream source) {
+        this(topicMap, null, source, null);
+    }
+
+    /**
+     * Constructs a new instance.
+     * <p>
+     * If the source provides no byte stream, the topic map is read from the
+     * IRI of the source. A source which provides a character stream only is
+     * not supported.
+     * </p>
+     *
+     * @param topicMap The topic map to which the content is added to.
+     * @param source The source to read the topic map from.
+     */
+    public BinaryTopicMapReader(final TopicMap topicMap, final Source source) {
+        this(topicMap, null, null, source);
+    }
+
+    private BinaryTopicMapReader(final TopicMap topicMap, final File file,
+            final InputStream in, final Source source) {
+        if (topicMap == null) {
+            throw new IllegalArgumentException("The topic map must not be null");
+        }
+        if (file == null && in == null && source == null) {
+            throw new IllegalArgumentException("The source must not be null");
+        }
+        if (source != null && source.getByteStream() == null && source.getIRI() == null) {
+            throw new IllegalArgumentException("The source must provide a byte stream or an IRI");
+        }
+        _topicMap = topicMap;
+        _file = file;
+        _in = in != null ? in : source != null ? source.getByteStream() : null;
+        _source = source;
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapix.io.TopicMapReader#read()
+     */
+    @Override
+    public void read() throws IOException {
+        final boolean close = _in == null;
+        final InputStream in = _in != null ? _in
+                                : _file != null ? new FileInputStream(_file)
+                                : new URL(_source.getIRI()).openStream();
+        try {
+            new Decoder(Compression.decompress(in), MapHandlerFactory.createMapHandler(_topicMap)).read();
+        }
+        catch (MIOException ex) {
+            if (ex.getException() instanceof IOException) {
+                throw (IOException) ex.getException();
+            }
+            throw new TMAPIXParseException(ex);
+        }
+        finally {
+            if (close) {
+                in.close();
+            }
+        }
+    }
+
+
+    /**
+     * Decodes the sections and sends the events to the map handler.
+     */
+    private static final class Decoder {
+
+        private static final int[] _EMPTY = new int[0];
+
+        private final DataInputStream _in;
+        private final IMapHandler _handler;
+        private byte[] _data;
+        private int _pos;
+        private String[] _locators;
+        private String[] _strings;
+        private int[][] _iids;
+        private int[][] _sids;
+        private int[][] _slos;
+        private IRef[] _refs;
+        private boolean _started;
+
+        Decoder(final InputStream in, final IMapHandler handler) {
+            _in = new DataInputStream(new BufferedInputStream(in));
+            _handler = handler;
+            _locators = new String[0];
+            _strings = new String[0];
+            _refs = new IRef[0];
+        }
+
+        void read() throws IOException, MIOException {
+            final byte[] magic = new byte[BinaryTopicMapFormat.MAGIC.length];
+            try {
+                _in.readFully(magic);
+                for (int i=0; i < magic.length; i++) {
+                    if (magic[i] != BinaryTopicMapFormat.MAGIC[i]) {
+                        throw new IOException("The stream is not a binary topic map");
+                    }
+                }
+                if (_in.readByte() != BinaryTopicMapFormat.VERSION) {
+                    throw new IOException("Unsupported binary topic map version");
+                }
+                while (_readSection()) {
+                    // noop.
+                }
+            }
+            catch (EOFException ex) {
+                throw new IOException("Unexpected end of the binary topic map", ex);
+            }
+        }
+
+        /**
+         * Reads the next section.
+         *
+         * @return {@code false} if the end section was read.
+         */
+        private boolean _readSection() throws IOException, MIOException {
+            final int code = _in.readUnsignedByte();
+            final int length = _in.readInt();
+            if (length < 0) {
+                throw new IOException("Illegal section length " + length);
+            }
+            _data = new byte[length];
+            _in.readFully(_data);
+            _pos = 0;
+            try {
+                switch (code) {
+                    case BinaryTopicMapFormat.END:
+                        _startTopicMap();
+                        _handler.endTopicMap();
+                        return false;
+                    case BinaryTopicMapFormat.LOCATORS: _locators = _readTable(); break;
+                    case BinaryTopicMapFormat.STRINGS: _strings = _readTable(); break;
+                    case BinaryTopicMapFormat.TOPICS: _readTopics(); break;
+                    case BinaryTopicMapFormat.TOPIC_MAP: _readTopicMap(); break;
+                    case BinaryTopicMapFormat.CHARACTERISTICS: _readCharacteristics(); break;
+                    case BinaryTopicMapFormat.ASSOCIATIONS: _readAssociations(); break;
+                    default:
+                        // Unknown section, ignore it
+                        return true;
+                }
+            }
+            catch (ArrayIndexOutOfBoundsException ex) {
+                throw new IOException("Malformed section " + code);
+            }
+            if (_pos != length) {
+                throw new IOException("Malformed section " + code);
+            }
+            return true;
+        }
+
+        private void _startTopicMap() throws MIOException {
+            if (!_started) {
+                _started = true;
+                _handler.startTopicMap();
+            }
+        }
+
+        private String[] _readTable() {
+            final String[] table = new String[_readInt()];
+            for (int i=0; i < table.length; i++) {
+                final int length = _readInt();
+                if (_pos + length > _data.length) {
+                    throw new ArrayIndexOutOfBoundsException(_pos + length);
+                }
+                table[i] = new String(_data, _pos, length, BinaryTopicMapFormat.UTF_8);
+                _pos += length;
+            }
+            return table;
+        }
+
+        private void _readTopics() {
+            final int count = _readInt();
+            _iids = new int[count][];
+            _sids = new int[count][];
+            _slos = new int[count][];
+            _refs = new IRef[count];
+            for (int i=0; i < count; i++) {
+                _iids[i] = _readInts();
+                _sids[i] = _readInts();
+                _slos[i] = _readInts();
+                if (_sids[i].length > 0) {
+                    _refs[i] = Ref.createSubjectIdentifier(_locators[_sids[i][0]]);
+                }
+                else if (_slos[i].length > 0) {
+                    _refs[i] = Ref.createSubjectLocator(_locators[_slos[i][0]]);
+                }
+                else {
+                    _refs[i] = Ref.createItemIdentifier(_locators[_iids[i][0]]);
+                }
+            }
+        }
+
+        private void _readTopicMap() throws MIOException {
+            _startTopicMap();
+            _readReifier();
+            _readItemIdentifiers();
+        }
+
+        private void _readCharacteristics() throws MIOException {
+            _startTopicMap();
+            for (int i=0; i < _refs.length; i++) {
+                _handler.startTopic(_refs[i]);
+                for (int iid: _iids[i]) {
+                    _handler.itemIdentifier(_locators[iid]);
+                }
+                for (int sid: _sids[i]) {
+                    _handler.subjectIdentifier(_locators[sid]);
+                }
+                for (int slo: _slos[i]) {
+                    _handler.subjectLocator(_locators[slo]);
+                }
+                for (int j=_readInt(); j > 0; j--) {
+                    _handler.startIsa();
+                    _readTopicRef();
+                    _handler.endIsa();
+                }
+                for (int j=_readInt(); j > 0; j--) {
+                    _handler.startName();
+                    _readReifier();
+                    _readItemIdentifiers();
+                    _readType();
+                    _readScope();
+                    _handler.value(_strings[_readInt()]);
+                    for (int k=_readInt(); k > 0; k--) {
+                        _handler.startVariant();
+                        _readReifier();
+                        _readItemIdentifiers();
+                        _readScope();
+                        _readValue();
+                        _handler.endVariant();
+                    }
+                    _handler.endName();
+                }
+                for (int j=_readInt(); j > 0; j--) {
+                    _handler.startOccurrence();
+                    _readReifier();
+                    _readItemIdentifiers();
+                    _readType();
+                    _readScope();
+                    _readValue();
+                    _handler.endOccurrence();
+                }
+                _handler.endTopic();
+            }
+        }
+
+        private void _readAssociations() throws MIOException {
+            _startTopicMap();
+            for (int i=_readInt(); i > 0; i--) {
+                _handler.startAssociation();
+                _readReifier();
+                _readItemIdentifiers();
+                _readType();
+                _readScope();
+                for (int j=_readInt(); j > 0; j--) {
+                    _handler.startRole();
+                    _readReifier();
+                    _readItemIdentifiers();
+                    _readType();
+                    _handler.startPlayer();
+                    _readTopicRef();
+                    _handler.endPlayer();
+                    _handler.endRole();
+                }
+                _handler.endAssociation();
+            }
+        }
+
+        private void _readValue() throws MIOException {
+            final String value = _strings[_readInt()];
+            _handler.value(value, _locators[_readInt()]);
+        }
+
+        private void _readReifier() throws MIOException {
+            final int reifier = _readInt();
+            if (reifier > 0) {
+                _handler.startReifier();
+                _handler.topicRef(_refs[reifier - 1]);
+                _handler.endReifier();
+            }
+        }
+
+        private void _readItemIdentifiers() throws MIOException {
+            for (int i=_readInt(); i > 0; i--) {
+                _handler.itemIdentifier(_locators[_readInt()]);
+            }
+        }
+
+        private void _readType() throws MIOException {
+            _handler.startType();
+            _readTopicRef();
+            _handler.endType();
+        }
+
+        private void _readScope() throws MIOException {
+            final int count = _readInt();
+            if (count == 0) {
+                return;
+            }
+            _handler.startScope();
+            for (int i=0; i < count; i++) {
+                _handler.startTheme();
+                _readTopicRef();
+                _handler.endTheme();
+            }
+            _handler.endScope();
+        }
+
+        private void _readTopicRef() throws MIOException {
+            _handler.topicRef(_refs[_readInt()]);
+        }
+
+        private int[] _readInts() {
+            final int count = _readInt();
+            if (count == 0) {
+                return _EMPTY;
+            }
+            final int[] result = new int[count];
+            for (int i=0; i < count; i++) {
+                result[i] = _readInt();
+            }
+            return result;
+        }
+
+        /**
+         * Reads a varint.
+         */
+        private int _readInt() {
+            int result = 0;
+            for (int shift=0; shift < 32; shift += 7) {
+                final byte b = _data[_pos++];
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (result < 0) {
+                        throw new ArrayIndexOutOfBoundsException(result);
+                    }
+                    return result;
+                }
+            }
+            throw new ArrayIndexOutOfBoundsException("Malformed varint");
+        }
+    }
+
+}
@@ -0,0 +1,614 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Construct;
+import org.tmapi.core.DatatypeAware;
+import org.tmapi.core.Locator;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Reifiable;
+import org.tmapi.core.Role;
+import org.tmapi.core.Scoped;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.Typed;
+import org.tmapi.core.Variant;
+import org.tmapix.io.internal.utils.TopicMapFragment;
+import org.tmapix.voc.XSD;
+
+/**
+ * {@link TopicMapWriter} implementation which serializes a topic map into
+ * a compact binary representation.
+ * <p>
+ * Locators and strings are written once into deduplicated tables, topics
+ * are referenced by integers. See {@link BinaryTopicMapFormat} for a
+ * description of the format. The binary representation can be read by
+ * the {@link BinaryTopicMapReader}.
+ * </p>
+ * <p>
+ * If the indexed mode is enabled, the writer adds offset tables and sorted
+ * identity indexes which allow random access by the
+ * {@link MappedTopicMapStore}. The indexes are ignored by the
+ * {@link BinaryTopicMapReader}.
+ * </p>
+ * <p>
+ * The serialization is created in memory and written onto the output
+ * stream at the end of the <tt>write</tt> operation. The output stream
+ * is not closed.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class BinaryTopicMapWriter extends AbstractTopicMapWriter {
+
+    /**
+     * Indicates that the locators which are written do not belong to a topic
+     * or an association (i.e. the item identifiers of the topic map).
+     */
+    private static final int _NO_OWNER = Integer.MIN_VALUE;
+
+    private final OutputStream _out;
+    private boolean _indexed;
+    private Map<String, Integer> _locators;
+    private Map<String, Integer> _strings;
+    private Map<Topic, Integer> _topic2Index;
+    private List<Topic> _topics;
+    // The following fields are used in indexed mode only
+    private int _owner;
+    private IntList _iidIndex;
+    private IntList _sidIndex;
+    private IntList _sloIndex;
+    private IntList _rolesPlayed;
+
+    /**
+     * Creates a binary writer.
+     * <p>
+     * The base IRI is used to create item identifiers for topics without
+     * any identity.
+     * </p>
+     *
+     * @param out The stream to write onto.
+     * @param baseIRI The base IRI.
+     */
+    public BinaryTopicMapWriter(final OutputStream out, final String baseIRI) {
+        super(baseIRI);
+        if (out == null) {
+            throw new IllegalArgumentException("The output stream must not be null");
+        }
+        _out = compressible(out);
+    }
+
+    /**
+     * Enables / disables the indexed mode (disabled by default).
+     * <p>
+     * In indexed mode, the writer adds offset tables and identity indexes
+     * which are required by the {@link MappedTopicMapStore}.
+     * </p>
+     *
+     * @param indexed {@code true} to enable the indexed mode, otherwise {@code false}.
+     */
+    public void setIndexed(final boolean indexed) {
+        _indexed = indexed;
+    }
+
+    /**
+     * Returns if the indexed mode is enabled.
+     *
+     * @return {@code true} if the indexed mode is enabled, otherwise {@code false}.
+     */
+    public boolean isIndexed() {
+        return _indexed;
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapix.io.TopicMapWriter#write(org.tmapi.core.TopicMap)
+     */
+    @Override
+    public void write(final TopicMap topicMap) throws IOException {
+        _write(topicMap, topicMap.getTopics(), null, topicMap.getAssociations());
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapix.io.TopicMapWriter#write(java.lang.Iterable)
+     */
+    @Override
+    public void write(final Iterable<Topic> topics) throws IOException {
+        final List<Topic> topicList = new ArrayList<Topic>();
+        for (Topic topic: topics) {
+            topicList.add(topic);
+        }
+        write(topicList.toArray(new Topic[topicList.size()]));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The fragment contains the provided topics and the associations played
+     * by these topics. The topics which are referenced by the fragment are
+     * written with their identities only. The reifier and the item identifiers
+     * of the topic map are not written.
+     * </p>
+     */
+    @Override
+    public void write(final Topic... topics) throws IOException {
+        final TopicMapFragment fragment = new TopicMapFragment(false);
+        for (Topic topic: topics) {
+            fragment.addTopic(topic);
+        }
+        _write(null, fragment.getTopics(), fragment.getRequestedTopics(), fragment.getAssociations());
+    }
+
+    /**
+     * Writes the topic map.
+     *
+     * @param topicMap The topic map or {@code null} if the reifier and the
+     *          item identifiers of the topic map should not be written.
+     * @param topics The topics to write.
+     * @param requested The topics which should be written with their
+     *          characteristics, {@code null} indicates all topics.
+     * @param assocs The associations to write.
+     * @throws IOException In case of an error.
+     */
+    private void _write(final TopicMap topicMap, final Collection<Topic> topics,
+            final Set<Topic> requested, final Collection<Association> assocs) throws IOException {
+        _locators = new LinkedHashMap<String, Integer>();
+        _strings = new LinkedHashMap<String, Integer>();
+        _topic2Index = new HashMap<Topic, Integer>(topics.size());
+        _topics = new ArrayList<Topic>(topics.size());
+        if (_indexed) {
+            _iidIndex = new IntList();
+            _sidIndex = new IntList();
+            _sloIndex = new IntList();
+            _rolesPlayed = new IntList();
+        }
+        try {
+            for (Topic topic: topics) {
+                _topicIndex(topic);
+            }
+            // The topics section is written last since the other sections
+            // may add further (referenced) topics.
+            final Section tmSection = new Section(BinaryTopicMapFormat.TOPIC_MAP);
+            _owner = _NO_OWNER;
+            if (topicMap != null) {
+                _writeReifier(tmSection, topicMap);
+                _writeItemIdentifiers(tmSection, topicMap);
+            }
+            else {
+                tmSection.writeInt(0);
+                tmSection.writeInt(0);
+            }
+            final Section assocSection = new Section(BinaryTopicMapFormat.ASSOCIATIONS);
+            final IntList assocOffsets = new IntList();
+            assocSection.writeInt(assocs.size());
+            for (Association assoc: assocs) {
+                _owner = -(assocOffsets.size() + 1);
+                assocOffsets.add(assocSection.size());
+                _writeAssociation(assocSection, assoc);
+            }
+            final Section charSection = new Section(BinaryTopicMapFormat.CHARACTERISTICS);
+            final IntList topicOffsets = new IntList();
+            for (int i=0; i < _topics.size(); i++) {
+                final Topic topic = _topics.get(i);
+                _owner = i;
+                topicOffsets.add(charSection.size());
+                if (requested == null || requested.contains(topic)) {
+                    _writeCharacteristics(charSection, topic);
+                }
+                else {
+                    charSection.writeInt(0);
+                    charSection.writeInt(0);
+                    charSection.writeInt(0);
+                }
+            }
+            final Section topicSection = new Section(BinaryTopicMapFormat.TOPICS);
+            topicSection.writeInt(_topics.size());
+            for (int i=0; i < _topics.size(); i++) {
+                _owner = i;
+                topicOffsets.add(topicSection.size());
+                _writeIdentities(topicSection, _topics.get(i));
+            }
+            _out.write(BinaryTopicMapFormat.MAGIC);
+            _out.write(BinaryTopicMapFormat.VERSION);
+            final IntList locatorOffsets = _writeTable(BinaryTopicMapFormat.LOCATORS, _locators.keySet());
+            final IntList stringOffsets = _writeTable(BinaryTopicMapFormat.STRINGS, _strings.keySet());
+            topicSection.writeTo(_out);
+            tmSection.writeTo(_out);
+            charSection.writeTo(_out);
+            assocSection.writeTo(_out);
+            if (_indexed) {
+                _writeIntSection(BinaryTopicMapFormat.LOCATOR_OFFSETS, locatorOffsets);
+                _writeIntSection(BinaryTopicMapFormat.STRING_OFFSETS, stringOffsets);
+                // The offsets of the characteristics were recorded first
+                final int topicCount = _topics.size();
+                final IntList offsets = new IntList();
+                for (int i=0; i < topicCount; i++) {
+                    offsets.add(topicOffsets.get(topicCount + i));
+                    offsets.add(topicOffsets.get(i));
+                }
+                _writeIntSection(BinaryTopicMapFormat.TOPIC_OFFSETS, offsets);
+                _writeIntSection(BinaryTopicMapFormat.ASSOCIATION_OFFSETS, assocOffsets);
+                _writeIntSection(BinaryTopicMapFormat.ITEM_IDENTIFIER_INDEX, _sortIndex(_iidIndex));
+                _writeIntSection(BinaryTopicMapFormat.SUBJECT_IDENTIFIER_INDEX, _sortIndex(_sidIndex));
+                _writeIntSection(BinaryTopicMapFormat.SUBJECT_LOCATOR_INDEX, _sortIndex(_sloIndex));
+                _writeIntSection(BinaryTopicMapFormat.ROLES_PLAYED, _createRolesPlayed(topicCount));
+            }
+            new Section(BinaryTopicMapFormat.END).writeTo(_out);
+            _out.flush();
+        }
+        finally {
+            _locators = null;
+            _strings = null;
+            _topic2Index = null;
+            _topics = null;
+            _iidIndex = null;
+            _sidIndex = null;
+            _sloIndex = null;
+            _rolesPlayed = null;
+        }
+    }
+
+    /**
+     * Writes a locator or string table and returns the offsets of the entries.
+     */
+    private IntList _writeTable(final int code, final Collection<String> entries) throws IOException {
+        final IntList offsets = new IntList();
+        final Section section = new Section(code);
+        section.writeInt(entries.size());
+        for (String entry: entries) {
+            offsets.add(section.size());
+            final byte[] bytes = entry.getBytes(BinaryTopicMapFormat.UTF_8);
+            section.writeInt(bytes.length);
+            section.write(bytes);
+        }
+        section.writeTo(_out);
+        return offsets;
+    }
+
+    /**
+     * Writes a section which consists of fixed-width integers.
+     */
+    private void _writeIntSection(final int code, final IntList values) throws IOException {
+        final Section section = new Section(code);
+        for (int i=0; i < values.size(); i++) {
+            section.writeFixedInt(values.get(i));
+        }
+        section.writeTo(_out);
+    }
+
+    /**
+     * Sorts the (locator, target) pairs of an identity index by the locators.
+     */
+    private IntList _sortIndex(final IntList index) {
+        final String[] locators = _locators.keySet().toArray(new String[_locators.size()]);
+        final Integer[] entries = new Integer[index.size() / 2];
+        for (int i=0; i < entries.length; i++) {
+            entries[i] = Integer.valueOf(i * 2);
+        }
+        Arrays.sort(entries, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer o1, final Integer o2) {
+                return locators[index.get(o1.intValue())].compareTo(locators[index.get(o2.intValue())]);
+            }
+        });
+        final IntList result = new IntList();
+        for (Integer entry: entries) {
+            result.add(index.get(entry.intValue()));
+            result.add(index.get(entry.intValue() + 1));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the start offsets (one per topic plus the end offset) followed
+     * by the association indexes of the associations played by the topics.
+     */
+    private IntList _createRolesPlayed(final int topicCount) {
+        final int[] starts = new int[topicCount + 1];
+        for (int i=0; i < _rolesPlayed.size(); i += 2) {
+            starts[_rolesPlayed.get(i) + 1]++;
+        }
+        for (int i=0; i < topicCount; i++) {
+            starts[i + 1] += starts[i];
+        }
+        final int[] assocs = new int[starts[topicCount]];
+        final int[] next = new int[topicCount];
+        System.arraycopy(starts, 0, next, 0, topicCount);
+        for (int i=0; i < _rolesPlayed.size(); i += 2) {
+            assocs[next[_rolesPlayed.get(i)]++] = _rolesPlayed.get(i + 1);
+        }
+        final IntList result = new IntList();
+        for (int start: starts) {
+            result.add(start);
+        }
+        for (int assoc: assocs) {
+            result.add(assoc);
+        }
+        return result;
+    }
+
+    private void _writeIdentities(final Section out, final Topic topic) {
+        final Set<Locator> iids = topic.getItemIdentifiers();
+        final Set<Locator> sids = topic.getSubjectIdentifiers();
+        final Set<Locator> slos = topic.getSubjectLocators();
+        if (iids.isEmpty() && sids.isEmpty() && slos.isEmpty()) {
+            final int idx = _locatorIndex(_baseIRI + "#" + getId(topic));
+            out.writeInt(1);
+            out.writeInt(idx);
+            _addIndexEntry(_iidIndex, idx);
+        }
+        else {
+            _writeLocators(out, iids, _iidIndex);
+        }
+        _writeLocators(out, sids, _sidIndex);
+        _writeLocators(out, slos, _sloIndex);
+    }
+
+    private void _writeCharacteristics(final Section out, final Topic topic) {
+        _writeTopics(out, topic.getTypes());
+        final Set<Name> names = topic.getNames();
+        out.writeInt(names.size());
+        for (Name name: names) {
+            _writeReifier(out, name);
+            _writeItemIdentifiers(out, name);
+            _writeType(out, name);
+            _writeScope(out, name);
+            out.writeInt(_stringIndex(name.getValue()));
+            final Set<Variant> variants = name.getVariants();
+            out.writeInt(variants.size());
+            for (Variant variant: variants) {
+                _writeReifier(out, variant);
+                _writeItemIdentifiers(out, variant);
+                _writeScope(out, variant);
+                _writeDatatypeAware(out, variant);
+            }
+        }
+        final Set<Occurrence> occs = topic.getOccurrences();
+        out.writeInt(occs.size());
+        for (Occurrence occ: occs) {
+            _writeReifier(out, occ);
+            _writeItemIdentifiers(out, occ);
+            _writeType(out, occ);
+            _writeScope(out, occ);
+            _writeDatatypeAware(out, occ);
+        }
+    }
+
+    private void _writeAssociation(final Section out, final Association assoc) {
+        _writeReifier(out, assoc);
+        _writeItemIdentifiers(out, assoc);
+        _writeType(out, assoc);
+        _writeScope(out, assoc);
+        final Set<Role> roles = assoc.getRoles();
+        out.writeInt(roles.size());
+        // Avoid duplicates if the topic plays several roles
+        final Set<Integer> players = _rolesPlayed != null ? new HashSet<Integer>(roles.size()) : null;
+        for (Role role: roles) {
+            _writeReifier(out, role);
+            _writeItemIdentifiers(out, role);
+            _writeType(out, role);
+            final int player = _topicIndex(role.getPlayer());
+            out.writeInt(player);
+            if (players != null && players.add(player)) {
+                _rolesPlayed.add(player);
+                _rolesPlayed.add(-(_owner + 1));
+            }
+        }
+    }
+
+    private void _writeDatatypeAware(final Section out, final DatatypeAware datatyped) {
+        final Locator datatype = datatyped.getDatatype();
+        final String value = XSD.ANY_URI.equals(datatype.getReference())
+                                ? datatyped.locatorValue().toExternalForm()
+                                : datatyped.getValue();
+        out.writeInt(_stringIndex(value));
+        out.writeInt(_locatorIndex(datatype.toExternalForm()));
+    }
+
+    private void _writeReifier(final Section out, final Reifiable reifiable) {
+        final Topic reifier = reifiable.getReifier();
+        out.writeInt(reifier == null ? 0 : _topicIndex(reifier) + 1);
+    }
+
+    private void _writeItemIdentifiers(final Section out, final Construct construct) {
+        _writeLocators(out, construct.getItemIdentifiers(), _iidIndex);
+    }
+
+    private void _writeType(final Section out, final Typed typed) {
+        out.writeInt(_topicIndex(typed.getType()));
+    }
+
+    private void _writeScope(final Section out, final Scoped scoped) {
+        _writeTopics(out, scoped.getScope());
+    }
+
+    private void _writeTopics(final Section out, final Set<Topic> topics) {
+        out.writeInt(topics.size());
+        for (Topic topic: topics) {
+            out.writeInt(_topicIndex(topic));
+        }
+    }
+
+    /**
+     * Writes the locators and adds them to the provided identity index.
+     *
+     * @param index The index or {@code null} if the indexed mode is disabled.
+     */
+    private void _writeLocators(final Section out, final Set<Locator> locators, final IntList index) {
+        out.writeInt(locators.size());
+        for (Locator loc: locators) {
+            final int idx = _locatorIndex(loc.toExternalForm());
+            out.writeInt(idx);
+            _addIndexEntry(index, idx);
+        }
+    }
+
+    private void _addIndexEntry(final IntList index, final int locator) {
+        if (index != null && _owner != _NO_OWNER) {
+            index.add(locator);
+            index.add(_owner);
+        }
+    }
+
+    /**
+     * Returns the index of the provided topic. If the topic is unknown, it
+     * is added to the topics to write.
+     */
+    private int _topicIndex(final Topic topic) {
+        final Integer idx = _topic2Index.get(topic);
+        if (idx != null) {
+            return idx.intValue();
+        }
+        final int newIdx = _topics.size();
+        _topics.add(topic);
+        _topic2Index.put(topic, Integer.valueOf(newIdx));
+        return newIdx;
+    }
+
+    private int _locatorIndex(final String reference) {
+        return _index(_locators, reference);
+    }
+
+    private int _stringIndex(final String value) {
+        return _index(_strings, value);
+    }
+
+    private static int _index(final Map<String, Integer> table, final String value) {
+        final Integer idx = table.get(value);
+        if (idx != null) {
+            return idx.intValue();
+        }
+        final int newIdx = table.size();
+        table.put(value, Integer.valueOf(newIdx));
+        return newIdx;
+    }
+
+
+    /**
+     * Growable buffer which represents a section.
+     */
+    private static final class Section {
+
+        private final int _code;
+        private byte[] _buf;
+        private int _count;
+
+        Section(final int code) {
+            _code = code;
+            _buf = new byte[256];
+        }
+
+        /**
+         * Writes a varint.
+         */
+        void writeInt(int value) {
+            _ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                _buf[_count++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            _buf[_count++] = (byte) value;
+        }
+
+        /**
+         * Writes a four byte integer (big endian).
+         */
+        void writeFixedInt(final int value) {
+            _ensureCapacity(4);
+            _buf[_count++] = (byte) (value >>> 24);
+            _buf[_count++] = (byte) (value >>> 16);
+            _buf[_count++] = (byte) (value >>> 8);
+            _buf[_count++] = (byte) value;
+        }
+
+        void write(final byte[] bytes) {
+            _ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, _buf, _count, bytes.length);
+            _count += bytes.length;
+        }
+
+        int size() {
+            return _count;
+        }
+
+        /**
+         * Writes the section code, the length of the section and the content.
+         */
+        void writeTo(final OutputStream out) throws IOException {
+            out.write(_code);
+            out.write(_count >>> 24);
+            out.write(_count >>> 16);
+            out.write(_count >>> 8);
+            out.write(_count);
+            out.write(_buf, 0, _count);
+        }
+
+        private void _ensureCapacity(final int n) {
+            if (_count + n > _buf.length) {
+                final byte[] buf = new byte[Math.max(_buf.length * 2, _count + n)];
+                System.arraycopy(_buf, 0, buf, 0, _count);
+                _buf = buf;
+            }
+        }
+    }
+
+
+    /**
+     * Growable list of ints.
+     */
+    private static final class IntList {
+
+        private int[] _values;
+        private int _size;
+
+        IntList() {
+            _values = new int[64];
+        }
+
+        void add(final int value) {
+            if (_size == _values.length) {
+                final int[] values = new int[_size * 2];
+                System.arraycopy(_values, 0, values, 0, _size);
+                _values = values;
+            }
+            _values[_size++] = value;
+        }
+
+        int get(final int idx) {
+            return _values[idx];
+        }
+
+        int size() {
+            return _size;
+        }
+    }
+
+}
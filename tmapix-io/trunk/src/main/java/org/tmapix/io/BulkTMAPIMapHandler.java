@@ -0,0 +1,411 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.tmapi.core.Construct;
+import org.tmapi.core.IdentityConstraintException;
+import org.tmapi.core.Locator;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+
+import com.semagia.mio.MIOException;
+
+/**
+ * {@link TMAPIMapHandler} which is optimized for bulk imports.
+ * <p>
+ * Instead of looking up each item identifier, subject identifier and subject
+ * locator in the topic map and merging topics as soon as an identity clash
+ * is detected, this handler collects the identities into an in-memory
+ * identity table. Merges are resolved in one pass when the topic map
+ * ends, each topic is merged at most once.
+ * </p>
+ * <p>
+ * Until {@link #endTopicMap()} was called, the topic map may contain
+ * topics which represent the same subject.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+final class BulkTMAPIMapHandler extends TMAPIMapHandler {
+
+    private static final byte
+        _ITEM_IDENTIFIER = 1,
+        _SUBJECT_IDENTIFIER = 2,
+        _SUBJECT_LOCATOR = 3;
+
+    private final Map<String, Topic> _iids;
+    private final Map<String, Topic> _sids;
+    private final Map<String, Topic> _slos;
+    /**
+     * Maps a topic to the topic it should be merged into.
+     */
+    private final Map<Topic, Topic> _merges;
+    /**
+     * Topics which were merged while parsing, i.e. reifiers of merged
+     * constructs.
+     */
+    private final Set<Topic> _removed;
+    private final List<DelayedIdentity> _delayedIdentities;
+    private boolean _checkExisting;
+
+    public BulkTMAPIMapHandler(TopicMap topicMap) {
+        super(topicMap);
+        _iids = new HashMap<String, Topic>();
+        _sids = new HashMap<String, Topic>();
+        _slos = new HashMap<String, Topic>();
+        _merges = new HashMap<Topic, Topic>();
+        _removed = new HashSet<Topic>();
+        _delayedIdentities = new ArrayList<DelayedIdentity>();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractHamsterMapHandler#startTopicMap()
+     */
+    @Override
+    public void startTopicMap() throws MIOException {
+        super.startTopicMap();
+        // If the topic map is empty, the identity table knows all identities
+        _checkExisting = !_tm.getTopics().isEmpty();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractHamsterMapHandler#endTopicMap()
+     */
+    @Override
+    public void endTopicMap() throws MIOException {
+        super.endTopicMap();
+        try {
+            if (_checkExisting) {
+                _resolveExisting();
+            }
+            _resolveMerges();
+            _applyIdentities();
+        }
+        finally {
+            _iids.clear();
+            _sids.clear();
+            _slos.clear();
+            _merges.clear();
+            _removed.clear();
+            _delayedIdentities.clear();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapix.io.TMAPIMapHandler#createTopicByItemIdentifier(java.lang.String)
+     */
+    @Override
+    protected Topic createTopicByItemIdentifier(String iri) {
+        Topic topic = _lookup(iri, _ITEM_IDENTIFIER);
+        if (topic != null) {
+            _register(topic, iri, _ITEM_IDENTIFIER);
+            return topic;
+        }
+        topic = super.createTopicByItemIdentifier(iri);
+        _iids.put(iri, topic);
+        return topic;
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapix.io.TMAPIMapHandler#createTopicBySubjectIdentifier(java.lang.String)
+     */
+    @Override
+    protected Topic createTopicBySubjectIdentifier(String iri) {
+        Topic topic = _lookup(iri, _SUBJECT_IDENTIFIER);
+        if (topic != null) {
+            _register(topic, iri, _SUBJECT_IDENTIFIER);
+            return topic;
+        }
+        topic = super.createTopicBySubjectIdentifier(iri);
+        _sids.put(iri, topic);
+        return topic;
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapix.io.TMAPIMapHandler#createTopicBySubjectLocator(java.lang.String)
+     */
+    @Override
+    protected Topic createTopicBySubjectLocator(String iri) {
+        Topic topic = _lookup(iri, _SUBJECT_LOCATOR);
+        if (topic != null) {
+            return topic;
+        }
+        topic = super.createTopicBySubjectLocator(iri);
+        _slos.put(iri, topic);
+        return topic;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractHamsterMapHandler#notifyMerge(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public void notifyMerge(Topic source, Topic target) {
+        super.notifyMerge(source, target);
+        // The source has been removed from the topic map: Redirect the 
+        // identities which are registered for the source to the target
+        _removed.add(source);
+        if (_find(target).equals(source)) {
+            // The source must not represent the subject anymore
+            _merges.remove(target);
+            _merges.put(source, target);
+        }
+        else {
+            _union(source, target);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapix.io.TMAPIMapHandler#handleItemIdentifier(org.tmapi.core.Topic, java.lang.String)
+     */
+    @Override
+    protected void handleItemIdentifier(Topic topic, String iri) throws MIOException {
+        _handleIdentity(topic, iri, _ITEM_IDENTIFIER);
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapix.io.TMAPIMapHandler#handleSubjectIdentifier(org.tmapi.core.Topic, java.lang.String)
+     */
+    @Override
+    protected void handleSubjectIdentifier(Topic topic, String iri) throws MIOException {
+        _handleIdentity(topic, iri, _SUBJECT_IDENTIFIER);
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapix.io.TMAPIMapHandler#handleSubjectLocator(org.tmapi.core.Topic, java.lang.String)
+     */
+    @Override
+    protected void handleSubjectLocator(Topic topic, String iri) throws MIOException {
+        _handleIdentity(topic, iri, _SUBJECT_LOCATOR);
+    }
+
+    /**
+     * Records the identity of the provided topic. If another topic has
+     * already been registered with an equal identity, the topics are
+     * scheduled for merging.
+     *
+     * @param topic The topic.
+     * @param iri The IRI of the identity.
+     * @param kind The kind of the identity.
+     */
+    private void _handleIdentity(Topic topic, String iri, byte kind) {
+        final Topic existing = _lookup(iri, kind);
+        if (existing != null) {
+            _union(topic, existing);
+            _register(existing, iri, kind);
+        }
+        else {
+            _register(topic, iri, kind);
+        }
+    }
+
+    /**
+     * Returns the topic which is registered with the provided identity.
+     * <p>
+     * Subject identifiers and item identifiers share the same value space.
+     * </p>
+     *
+     * @param iri The IRI of the identity.
+     * @param kind The kind of the identity.
+     * @return The topic which should be used for the identity or {@code null}
+     *          if no topic has been registered.
+     */
+    private Topic _lookup(String iri, byte kind) {
+        Topic topic = null;
+        switch (kind) {
+            case _ITEM_IDENTIFIER:
+                topic = _iids.get(iri);
+                if (topic == null) {
+                    topic = _sids.get(iri);
+                }
+                break;
+            case _SUBJECT_IDENTIFIER:
+                topic = _sids.get(iri);
+                if (topic == null) {
+                    topic = _iids.get(iri);
+                }
+                break;
+            case _SUBJECT_LOCATOR:
+                topic = _slos.get(iri);
+                break;
+            default:
+                throw new RuntimeException("Internal error: Unknown identity kind " + kind);
+        }
+        return topic != null ? _find(topic) : null;
+    }
+
+    /**
+     * Registers the identity for the provided topic and schedules the
+     * assignment of the identity iff the identity is not known yet.
+     *
+     * @param topic The topic.
+     * @param iri The IRI of the identity.
+     * @param kind The kind of the identity.
+     */
+    private void _register(Topic topic, String iri, byte kind) {
+        final Map<String, Topic> identities = kind == _ITEM_IDENTIFIER ? _iids
+                                            : kind == _SUBJECT_IDENTIFIER ? _sids
+                                            : _slos;
+        if (!identities.containsKey(iri)) {
+            identities.put(iri, topic);
+            _delayedIdentities.add(new DelayedIdentity(topic, _createLocator(iri), kind));
+        }
+    }
+
+    /**
+     * Returns the topic the provided topic will be merged into.
+     *
+     * @param topic The topic.
+     * @return The topic which represents the subject of <tt>topic</tt>.
+     */
+    private Topic _find(Topic topic) {
+        Topic root = topic;
+        Topic parent = _merges.get(root);
+        while (parent != null) {
+            root = parent;
+            parent = _merges.get(root);
+        }
+        // Path compression
+        while (!topic.equals(root)) {
+            parent = _merges.get(topic);
+            _merges.put(topic, root);
+            topic = parent;
+        }
+        return root;
+    }
+
+    /**
+     * Schedules the merging of <tt>source</tt> into <tt>target</tt>.
+     *
+     * @param source The source topic.
+     * @param target The target topic.
+     */
+    private void _union(Topic source, Topic target) {
+        final Topic sourceRoot = _find(source);
+        final Topic targetRoot = _find(target);
+        if (!sourceRoot.equals(targetRoot)) {
+            _merges.put(sourceRoot, targetRoot);
+        }
+    }
+
+    /**
+     * Detects identity clashes between the scheduled identities and the
+     * topics which existed before the import started.
+     *
+     * @throws MIOException If an item identifier is assigned to a construct
+     *          which is not a topic.
+     */
+    private void _resolveExisting() throws MIOException {
+        for (DelayedIdentity identity: _delayedIdentities) {
+            final Topic topic = identity.getTopic();
+            final Locator loc = identity.getLocator();
+            Topic existing = null;
+            switch (identity.getKind()) {
+                case _ITEM_IDENTIFIER:
+                    final Construct construct = _tm.getConstructByItemIdentifier(loc);
+                    if (construct != null && !(construct instanceof Topic)) {
+                        throw new MIOException("The item identifier '" + loc.getReference() + "' is already assigned to another construct");
+                    }
+                    _unionExisting(topic, (Topic) construct);
+                    existing = _tm.getTopicBySubjectIdentifier(loc);
+                    break;
+                case _SUBJECT_IDENTIFIER:
+                    existing = _tm.getTopicBySubjectIdentifier(loc);
+                    _unionExisting(topic, existing);
+                    final Construct iidConstruct = _tm.getConstructByItemIdentifier(loc);
+                    existing = iidConstruct instanceof Topic ? (Topic) iidConstruct : null;
+                    break;
+                case _SUBJECT_LOCATOR:
+                    existing = _tm.getTopicBySubjectLocator(loc);
+                    break;
+            }
+            _unionExisting(topic, existing);
+        }
+    }
+
+    private void _unionExisting(Topic topic, Topic existing) {
+        if (existing != null) {
+            _union(topic, existing);
+        }
+    }
+
+    /**
+     * Merges all topics into the topic which represents their subject.
+     */
+    private void _resolveMerges() {
+        for (Topic topic: new ArrayList<Topic>(_merges.keySet())) {
+            if (!_removed.contains(topic)) {
+                _find(topic).mergeIn(topic);
+            }
+        }
+    }
+
+    /**
+     * Assigns the scheduled identities to the topics.
+     *
+     * @throws MIOException If an identity is assigned to another construct.
+     */
+    private void _applyIdentities() throws MIOException {
+        for (DelayedIdentity identity: _delayedIdentities) {
+            final Topic topic = _find(identity.getTopic());
+            final Locator loc = identity.getLocator();
+            try {
+                switch (identity.getKind()) {
+                    case _ITEM_IDENTIFIER:
+                        topic.addItemIdentifier(loc);
+                        break;
+                    case _SUBJECT_IDENTIFIER:
+                        topic.addSubjectIdentifier(loc);
+                        break;
+                    case _SUBJECT_LOCATOR:
+                        topic.addSubjectLocator(loc);
+                        break;
+                }
+            }
+            catch (IdentityConstraintException ex) {
+                throw new MIOException("The identity '" + loc.getReference() + "' is already assigned to another construct", ex);
+            }
+        }
+    }
+
+    private static final class DelayedIdentity {
+        private final Topic _topic;
+        private final Locator _loc;
+        private final byte _kind;
+        public DelayedIdentity(Topic topic, Locator loc, byte kind) {
+            _topic = topic;
+            _loc = loc;
+            _kind = kind;
+        }
+        public Topic getTopic() {
+            return _topic;
+        }
+        public Locator getLocator() {
+            return _loc;
+        }
+        public byte getKind() {
+            return _kind;
+        }
+    }
+
+}
@@ -39,8 +39,7 @@ import org.tmapi.core.Scoped;
 import org.tmapi.core.Topic;
 import org.tmapi.core.TopicMap;
 import org.tmapi.core.Variant;
-import org.tmapi.index.ScopedIndex;
-import org.tmapi.index.TypeInstanceIndex;
+import org.tmapix.io.internal.utils.TopicMapFragment;
 import org.tmapix.voc.TMDM;
 import org.tmapix.voc.XSD;
 
@@ -279,35 +278,51 @@ public class CTMTopicMapWriter extends AbstractBaseTextualTopicMapWriter {
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The fragment contains the provided topics, the associations played by
+     * these topics and the topics which are referenced by them (types, themes,
+     * reifiers and role players). The referenced topics are serialized
+     * completely but their own references are not followed.
+     * </p>
      */
     @Override
     public void write(final Topic... topics) throws IOException {
-    	throw new UnsupportedOperationException("Not implemented yet.");
+        final TopicMapFragment fragment = new TopicMapFragment(false);
+        for (Topic topic: topics) {
+            fragment.addTopic(topic);
+        }
+        final Collection<Topic> requested = new ArrayList<Topic>(fragment.getRequestedTopics());
+        final Collection<Topic> referenced = new ArrayList<Topic>(fragment.getTopics());
+        referenced.removeAll(requested);
+        final Collection<Association> assocs = new HashSet<Association>(fragment.getAssociations());
+        TopicMap topicMap = topics.length > 0 ? topics[0].getTopicMap() : null;
+        _defaultNameType = topicMap != null ? topicMap.getTopicBySubjectIdentifier(topicMap.createLocator(TMDM.TOPIC_NAME)) : null;
+        _writeHeader();
+        if (topicMap != null) {
+            _createSupertypeSubtypeRelationships(super.getIndexSnapshot(topicMap), topicMap, assocs);
+        }
+        _writeSection("Topics");
+        _writeTopics(requested);
+        if (!referenced.isEmpty()) {
+            _writeSection("Referenced Topics");
+            _writeTopics(referenced);
+        }
+        _writeAssociations(assocs);
+        _writeFooter();
     }
-    
+
+
     /* (non-Javadoc)
      * @see org.tinytim.mio.TopicMapWriter#write(org.tmapi.core.TopicMap)
      */
     @Override
     public void write(final TopicMap topicMap) throws IOException {
         _defaultNameType = topicMap.getTopicBySubjectIdentifier(topicMap.createLocator(TMDM.TOPIC_NAME));
-        _out.write("%encoding \"" + _encoding + "\"");
-        _newline();
-        _out.write("%version 1.0");
-        _writeFileHeader();
-        _writeImports();
-        _writePrefixes();
-        _newline();
+        _writeHeader();
         Collection<Topic> topics = new ArrayList<Topic>(topicMap.getTopics());
-        Collection<Association> assocs = new ArrayList<Association>(topicMap.getAssociations());
-        final TypeInstanceIndex tiIdx = topicMap.getIndex(TypeInstanceIndex.class);
-        if (!tiIdx.isOpen()) {
-            tiIdx.open();
-        }
-        if (!tiIdx.isAutoUpdated()) {
-            tiIdx.reindex();
-        }
-        _createSupertypeSubtypeRelationships(tiIdx, topicMap, assocs);
+        Collection<Association> assocs = new HashSet<Association>(topicMap.getAssociations());
+        final IndexSnapshot idx = super.getIndexSnapshot(topicMap);
+        _createSupertypeSubtypeRelationships(idx, topicMap, assocs);
         if (topicMap.getReifier() != null) {
             // Special handling of the tm reifier to avoid an additional 
             // whitespace character in front of the ~
@@ -320,41 +335,68 @@ public class CTMTopicMapWriter extends AbstractBaseTextualTopicMapWriter {
             topics.remove(reifier);
         }
         _writeSection("ONTOLOGY");
-        Collection<Topic> types = tiIdx.getTopicTypes();
+        Collection<Topic> types = idx.getTopicTypes();
         _writeOntologySection(types, topics, "Topic Types");
-        types = tiIdx.getAssociationTypes();
+        types = idx.getAssociationTypes();
         _writeOntologySection(types, topics, "Association Types");
-        types = tiIdx.getRoleTypes();
+        types = idx.getRoleTypes();
         _writeOntologySection(types, topics, "Role Types");
-        types = tiIdx.getOccurrenceTypes();
+        types = idx.getOccurrenceTypes();
         _writeOntologySection(types, topics, "Occurrence Types");
-        types = tiIdx.getNameTypes();
+        types = idx.getNameTypes();
         _writeOntologySection(types, topics, "Name Types");
-        tiIdx.close();
-        final ScopedIndex scopeIdx = topicMap.getIndex(ScopedIndex.class);
-        if (!scopeIdx.isOpen()) {
-            scopeIdx.open();
-        }
-        if (!scopeIdx.isAutoUpdated()) {
-            scopeIdx.reindex();
-        }
-        _writeOntologySection(scopeIdx.getAssociationThemes(), topics, "Association Themes");
-        _writeOntologySection(scopeIdx.getOccurrenceThemes(), topics, "Occurrence Themes");
-        _writeOntologySection(scopeIdx.getNameThemes(), topics, "Name Themes");
-        _writeOntologySection(scopeIdx.getVariantThemes(), topics, "Variant Themes");
-        scopeIdx.close();
+        _writeOntologySection(idx.getAssociationThemes(), topics, "Association Themes");
+        _writeOntologySection(idx.getOccurrenceThemes(), topics, "Occurrence Themes");
+        _writeOntologySection(idx.getNameThemes(), topics, "Name Themes");
+        _writeOntologySection(idx.getVariantThemes(), topics, "Variant Themes");
         _newline();
         _writeSection("INSTANCES");
         _writeSection("Topics");
         _writeTopics(topics);
-        if (!assocs.isEmpty()) {
-            Association[] assocArray = assocs.toArray(new Association[assocs.size()]);
-            _writeSection("Associations");
-            Arrays.sort(assocArray, super.getAssociationComparator());
-            for (Association assoc: assocArray) {
-                _writeAssociation(assoc);
-            }
+        _writeAssociations(assocs);
+        _writeFooter();
+    }
+
+    /**
+     * Writes the encoding and version directives, the file header, the
+     * imports and the prefixes.
+     *
+     * @throws IOException In case of an error.
+     */
+    private void _writeHeader() throws IOException {
+        _out.write("%encoding \"" + _encoding + "\"");
+        _newline();
+        _out.write("%version 1.0");
+        _writeFileHeader();
+        _writeImports();
+        _writePrefixes();
+        _newline();
+    }
+
+    /**
+     * Sorts the specified associations and serializes them.
+     *
+     * @param assocs An unordered collection of associations.
+     * @throws IOException In case of an error.
+     */
+    private void _writeAssociations(Collection<Association> assocs) throws IOException {
+        if (assocs.isEmpty()) {
+            return;
+        }
+        Association[] assocArray = assocs.toArray(new Association[assocs.size()]);
+        _writeSection("Associations");
+        Arrays.sort(assocArray, super.getAssociationComparator());
+        for (Association assoc: assocArray) {
+            _writeAssociation(assoc);
         }
+    }
+
+    /**
+     * Writes the footer, flushes the output and releases the internal state.
+     *
+     * @throws IOException In case of an error.
+     */
+    private void _writeFooter() throws IOException {
         _newline();
         _out.write("# Thanks for using TMAPIX I/O -- http://www.tmapix.org/ :)");
         _newline();
@@ -363,7 +405,7 @@ public class CTMTopicMapWriter extends AbstractBaseTextualTopicMapWriter {
         _topic2Supertypes.clear();
     }
 
-    private void _createSupertypeSubtypeRelationships(final TypeInstanceIndex tiIdx,
+    private void _createSupertypeSubtypeRelationships(final IndexSnapshot idx,
             TopicMap tm, Collection<Association> assocs) {
         final Topic supertypeSubtype = tm.getTopicBySubjectIdentifier(tm.createLocator(TMDM.SUPERTYPE_SUBTYPE));
         final Topic supertype = tm.getTopicBySubjectIdentifier(tm.createLocator(TMDM.SUPERTYPE));
@@ -371,7 +413,7 @@ public class CTMTopicMapWriter extends AbstractBaseTextualTopicMapWriter {
         if (supertypeSubtype == null || supertype == null || subtype == null) {
             return;
         }
-        for (Association assoc: tiIdx.getAssociations(supertypeSubtype)) {
+        for (Association assoc: idx.getAssociations(supertypeSubtype)) {
             if (!assoc.getScope().isEmpty()) {
                 continue;
             }
@@ -395,13 +437,15 @@ public class CTMTopicMapWriter extends AbstractBaseTextualTopicMapWriter {
             if (supertypePlayer == null || subtypePlayer == null) {
                 continue;
             }
+            if (!assocs.remove(assoc)) {
+                continue;
+            }
             Collection<Topic> supertypes = _topic2Supertypes.get(subtypePlayer);
             if (supertypes == null) {
                 supertypes = new HashSet<Topic>();
                 _topic2Supertypes.put(subtypePlayer, supertypes);
             }
             supertypes.add(supertypePlayer);
-            assocs.remove(assoc);
         }
     }
 
@@ -15,7 +15,13 @@
  */
 package org.tmapix.io;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.AbstractSet;
 import java.util.ArrayList;
@@ -23,13 +29,18 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,7 +58,9 @@ import org.tmapi.core.TopicInUseException;
 import org.tmapi.core.TopicMap;
 import org.tmapi.core.Typed;
 import org.tmapi.core.Variant;
-import org.tmapi.index.TypeInstanceIndex;
+import org.tmapix.io.internal.utils.ExternalSorter;
+import org.tmapix.io.internal.utils.Parallel;
+import org.tmapix.io.internal.utils.TopicMapFragment;
 import org.tmapix.voc.TMDM;
 import org.tmapix.voc.XSD;
 
@@ -76,15 +89,28 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
 
     private static final Role[] _EMPTY_ROLES = new Role[0];
 
+    /**
+     * Marks a virtual topic or a virtual association in the external sort 
+     * records.
+     */
+    private static final char _VIRTUAL = '\u0001';
+
+    /**
+     * Number of topics which are prepared by one task in parallel mode.
+     */
+    private static final int _TOPIC_BATCH_SIZE = 256;
+
     private final AttributesImpl _attrs;
 
     private Topic _type;
     private Topic _instance;
     private Topic _typeInstance;
 
-    private final XMLC14NWriter _out;
+    private XMLC14NWriter _out;
     private final String _normBase;
     private final Map<Construct, Integer> _construct2Id;
+    private final Map<Topic, Integer> _topic2Rank;
+    private final Map<Association, Integer> _assoc2Rank;
     private final Map<Topic, List<Role>> _topic2Roles;
     private final Map<Locator, String> _locator2Norm;
     private final Map<Association, Role[]> _assoc2Roles;
@@ -95,11 +121,16 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
     private final Comparator<Occurrence> _occComparator;
     private final Comparator<Name> _nameComparator;
     private final Comparator<Variant> _variantComparator;
-    private final Comparator<Set<Locator>> _locSetComparator;
     private final Comparator<Locator> _locComparator;
     private final Comparator<Set<Topic>> _scopeComparator;
 
     private DuplicateRemover _duplicateRemover;
+    private IndexSnapshot _indexSnapshot;
+
+    private long _memoryBudget;
+    private File _tmpDir;
+    private int _parallelism;
+    private ExecutorService _executor;
 
     /**
      * Creates a canonicalizer.
@@ -116,18 +147,20 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
         _attrs = new AttributesImpl();
         _normBase = _normalizeBaseLocator(baseLocator);
         _construct2Id = new IdentityHashMap<Construct, Integer>();
-        _locator2Norm = new HashMap<Locator, String>();
+        _locator2Norm = new ConcurrentHashMap<Locator, String>();
         _assoc2Roles = new IdentityHashMap<Association, Role[]>();
         _topic2Roles = new IdentityHashMap<Topic, List<Role>>();
+        _topic2Rank = new IdentityHashMap<Topic, Integer>();
+        _assoc2Rank = new IdentityHashMap<Association, Integer>();
         _topicComparator = new TopicComparator();
         _assocComparator = new AssociationComparator();
         _roleComparator = new RoleComparator();
         _occComparator = new OccurrenceComparator();
         _nameComparator = new NameComparator();
         _variantComparator = new VariantComparator();
-        _locSetComparator = new LocatorSetComparator();
         _locComparator = new LocatorComparator();
         _scopeComparator = new ScopeComparator();
+        _parallelism = 1;
     }
 
     /**
@@ -151,6 +184,127 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
         return _duplicateRemover;
     }
 
+    /**
+     * Sets the index snapshot which provides the type-instance information
+     * of the topic map.
+     * <p>
+     * The snapshot is used if it belongs to the topic map which is written,
+     * otherwise the writer creates a snapshot for each written topic map.
+     * The snapshot is ignored if the {@link DuplicateRemover} modifies the
+     * topic map.
+     * </p>
+     *
+     * @param snapshot The snapshot or {@code null}.
+     */
+    public void setIndexSnapshot(final IndexSnapshot snapshot) {
+        _indexSnapshot = snapshot;
+    }
+
+    /**
+     * Returns the index snapshot.
+     *
+     * @return The index snapshot or {@code null} if no snapshot was set.
+     */
+    public IndexSnapshot getIndexSnapshot() {
+        return _indexSnapshot;
+    }
+
+    /**
+     * Sets the memory budget (in bytes) for the canonicalization.
+     * <p>
+     * If the budget is greater than zero, the writer computes the sort key of
+     * each topic and association once and sorts the keys externally: Sorted
+     * runs which exceed the budget are written into temporary files and 
+     * merged while the CXTM is written. The output is identical to the 
+     * output of the in-memory canonicalization.
+     * </p>
+     * <p>
+     * The writer keeps the number of each topic in memory, all other 
+     * information about the topic map is either streamed from the topic map 
+     * or spilled to disk. The budget applies to each sort phase.
+     * </p>
+     * <p>
+     * If the budget is zero (default), the whole topic map is canonicalized 
+     * in memory.
+     * </p>
+     *
+     * @param budget The memory budget in bytes or zero to disable the 
+     *          external sort.
+     */
+    public void setMemoryBudget(final long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("The memory budget must not be negative");
+        }
+        _memoryBudget = budget;
+    }
+
+    /**
+     * Returns the memory budget.
+     *
+     * @return The memory budget in bytes, zero indicates that the external
+     *          sort is disabled.
+     */
+    public long getMemoryBudget() {
+        return _memoryBudget;
+    }
+
+    /**
+     * Sets the directory for temporary files.
+     * <p>
+     * The directory is used iff the memory budget is greater than zero.
+     * </p>
+     *
+     * @param dir The directory or {@code null} to use the default temporary 
+     *          directory.
+     */
+    public void setTemporaryDirectory(final File dir) {
+        _tmpDir = dir;
+    }
+
+    /**
+     * Returns the directory for temporary files.
+     *
+     * @return The directory or {@code null} if the default temporary 
+     *          directory is used.
+     */
+    public File getTemporaryDirectory() {
+        return _tmpDir;
+    }
+
+    /**
+     * Sets the number of threads which are used to canonicalize the topic map.
+     * <p>
+     * If the parallelism is greater than <tt>1</tt>, the sort keys of the
+     * topics and associations are computed and sorted by a thread pool and
+     * the names, occurrences, variants and played roles of the topics are 
+     * sorted ahead of the serialization. The output is identical to the
+     * output of the sequential canonicalization. 
+     * </p>
+     * <p>
+     * The parallelism applies to the in-memory canonicalization only, it is
+     * ignored if a memory budget is set. The default parallelism is 
+     * <tt>1</tt>.
+     * </p>
+     *
+     * @param parallelism The number of threads, <tt>1</tt> disables the 
+     *          parallel mode.
+     */
+    public void setParallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be greater than zero");
+        }
+        _parallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of threads which are used to canonicalize the topic map.
+     *
+     * @return The parallelism, <tt>1</tt> indicates the sequential mode.
+     */
+    public int getParallelism() {
+        return _parallelism;
+    }
+
     @Override
     public void write(Iterable<Topic> topics) throws IOException {
     	List<Topic> tl = new ArrayList<Topic>();
@@ -160,11 +314,73 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
     }
 
     /**
-     * {@inheritDoc}
+     * Serializes a fragment of a topic map into the CXTM format.
+     * <p>
+     * The fragment contains the provided topics, the associations played
+     * by the topics (including the type-instance relationships of the topics)
+     * and all topics which are referenced by these constructs, directly or
+     * indirectly. The fragment is canonicalized like a topic map which 
+     * consists only of these constructs; the item identifiers and the 
+     * reifier of the topic map are not written.
+     * </p>
+     * <p>
+     * The topic map is not modified, the duplicate remover and the memory
+     * budget are ignored.
+     * </p>
+     * 
+     * @param topics The topics to serialize.
+     * @throws IOException If an error occurs.
      */
     @Override
     public void write(final Topic... topics) throws IOException {
-    	throw new UnsupportedOperationException("Not implemented yet.");
+        if (topics.length == 0) {
+            _write(null, new Topic[0], new Association[0]);
+            return;
+        }
+        final TopicMap topicMap = topics[0].getTopicMap();
+        final TopicMapFragment fragment = new TopicMapFragment(true);
+        for (Topic topic: topics) {
+            fragment.addTopic(topic);
+        }
+        final IndexSnapshot idx = IndexSnapshot.get(_indexSnapshot, topicMap);
+        final Set<Topic> requested = fragment.getRequestedTopics();
+        final List<Topic[]> typeInstance = new ArrayList<Topic[]>();
+        for (Topic topic: requested) {
+            for (Topic type: topic.getTypes()) {
+                typeInstance.add(new Topic[] {type, topic});
+            }
+            for (Topic instance: idx.getTopics(topic)) {
+                // Type-instance relationships between requested topics are 
+                // detected by the instance
+                if (!requested.contains(instance)) {
+                    typeInstance.add(new Topic[] {topic, instance});
+                    fragment.addReferencedTopic(instance);
+                }
+            }
+        }
+        final List<Topic> virtualTopics = new ArrayList<Topic>(3);
+        if (!typeInstance.isEmpty()) {
+            _typeInstance = _getTopicBySubjectIdentifier(topicMap, virtualTopics, TMDM.TYPE_INSTANCE);
+            _type = _getTopicBySubjectIdentifier(topicMap, virtualTopics, TMDM.TYPE);
+            _instance = _getTopicBySubjectIdentifier(topicMap, virtualTopics, TMDM.INSTANCE);
+            for (Topic topic: new Topic[] {_typeInstance, _type, _instance}) {
+                if (!virtualTopics.contains(topic)) {
+                    fragment.addReferencedTopic(topic);
+                }
+            }
+        }
+        final List<Topic> topics_ = new ArrayList<Topic>(fragment.getTopics());
+        topics_.addAll(virtualTopics);
+        final List<Association> assocs = new ArrayList<Association>(fragment.getAssociations());
+        for (Topic[] pair: typeInstance) {
+            final Association assoc = new TypeInstanceAssociation(pair[0], pair[1]);
+            for (Role role: assoc.getRoles()) {
+                _addAlienRole(role);
+            }
+            assocs.add(assoc);
+        }
+        _write(null, topics_.toArray(new Topic[topics_.size()]), 
+                assocs.toArray(new Association[assocs.size()]));
     }
 
     /**
@@ -178,40 +394,121 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
      * @throws IOException If an error occurs.
      */
     public void write(TopicMap topicMap) throws IOException {
+        final IndexSnapshot idx;
         if (_duplicateRemover != null) {
             _duplicateRemover.removeDuplicates(topicMap);
+            idx = IndexSnapshot.create(topicMap);
         }
-        final TypeInstanceIndex typeInstanceIndex = topicMap.getIndex(TypeInstanceIndex.class);
-        if (!typeInstanceIndex.isOpen()) {
-            typeInstanceIndex.open();
+        else {
+            idx = IndexSnapshot.get(_indexSnapshot, topicMap);
         }
-        if (!typeInstanceIndex.isAutoUpdated()) {
-            typeInstanceIndex.reindex();
+        if (_memoryBudget > 0) {
+            try {
+                _writeExternal(topicMap, idx);
+            }
+            finally {
+                _attrs.clear();
+                _construct2Id.clear();
+                _topic2Rank.clear();
+            }
+            return;
         }
-        Topic[] topics = _fetchTopics(topicMap, typeInstanceIndex);
-        Association[] assocs = _fetchAssociations(topicMap, typeInstanceIndex);
-        typeInstanceIndex.close();
-        _createIndex(topics, assocs);
-        _out.startDocument();
-        _attrs.clear();
-        _addReifier(_attrs, topicMap);
-        _out.startElement("topicMap", _attrs);
-        _out.newline();
-        _writeItemIdentifiers(topicMap);
-        for (Topic topic: topics) {
-            _writeTopic(topic);
+        Topic[] topics = _fetchTopics(topicMap, idx);
+        Association[] assocs = _fetchAssociations(topicMap, idx);
+        _write(topicMap, topics, assocs);
+    }
+
+    /**
+     * Canonicalizes the provided topics and associations in memory and 
+     * serializes them.
+     *
+     * @param topicMap The topic map which provides the reifier and the item
+     *          identifiers of the topic map element or {@code null}.
+     * @param topics The topics to serialize.
+     * @param assocs The associations to serialize.
+     * @throws IOException If an error occurs.
+     */
+    private void _write(final TopicMap topicMap, final Topic[] topics, 
+            final Association[] assocs) throws IOException {
+        if (_parallelism > 1) {
+            _executor = Executors.newFixedThreadPool(_parallelism);
+        }
+        try {
+            _createIndex(topics, assocs);
+            _out.startDocument();
+            _attrs.clear();
+            if (topicMap != null) {
+                _addReifier(_attrs, topicMap);
+            }
+            _out.startElement("topicMap", _attrs);
+            _out.newline();
+            if (topicMap != null) {
+                _writeItemIdentifiers(topicMap);
+            }
+            _writeTopics(topics);
+            for (Association assoc: assocs) {
+                _writeAssociation(assoc);
+            }
+            _out.endElement("topicMap");
+            _out.newline();
+            _out.endDocument();
         }
-        for (Association assoc: assocs) {
-            _writeAssociation(assoc);
+        finally {
+            if (_executor != null) {
+                _executor.shutdownNow();
+                _executor = null;
+            }
+            _attrs.clear();
+            _construct2Id.clear();
+            _topic2Rank.clear();
+            _assoc2Rank.clear();
+            _topic2Roles.clear();
+            _locator2Norm.clear();
+            _assoc2Roles.clear();
+        }
+    }
+
+    /**
+     * Serializes the sorted topics.
+     * <p>
+     * In parallel mode, the children of the topics are sorted by the thread
+     * pool while the topics are written.
+     * </p>
+     *
+     * @param topics The sorted topics.
+     * @throws IOException If an error occurs.
+     */
+    private void _writeTopics(final Topic[] topics) throws IOException {
+        if (_executor == null) {
+            for (Topic topic: topics) {
+                _writeTopic(topic, _sortChildren(topic, true));
+            }
+            return;
+        }
+        final LinkedList<Future<TopicChildren[]>> batches = new LinkedList<Future<TopicChildren[]>>();
+        final int maxBatches = 2 * _parallelism;
+        int next = 0;
+        int written = 0;
+        while (written < topics.length) {
+            while (next < topics.length && batches.size() < maxBatches) {
+                final int from = next;
+                final int to = Math.min(topics.length, from + _TOPIC_BATCH_SIZE);
+                batches.add(_executor.submit(new Callable<TopicChildren[]>() {
+                    public TopicChildren[] call() {
+                        final TopicChildren[] children = new TopicChildren[to - from];
+                        for (int i=from; i < to; i++) {
+                            children[i - from] = _sortChildren(topics[i], true);
+                        }
+                        return children;
+                    }
+                }));
+                next = to;
+            }
+            final TopicChildren[] children = Parallel.get(batches.removeFirst());
+            for (int i=0; i < children.length; i++) {
+                _writeTopic(topics[written++], children[i]);
+            }
         }
-        _out.endElement("topicMap");
-        _out.newline();
-        _out.endDocument();
-        _attrs.clear();
-        _construct2Id.clear();
-        _topic2Roles.clear();
-        _locator2Norm.clear();
-        _assoc2Roles.clear();
     }
 
     /**
@@ -224,10 +521,10 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
      * </p>
      * 
      * @param topicMap The topic map from which the topic should be serialized.
-     * @param idx A (upto date) type instance index.
+     * @param idx The index snapshot.
      * @return All topics which must be included into the output.
      */
-    private Topic[] _fetchTopics(final TopicMap topicMap, final TypeInstanceIndex idx) {
+    private Topic[] _fetchTopics(final TopicMap topicMap, final IndexSnapshot idx) {
         Collection<Topic> types = idx.getTopicTypes();
         if (types.isEmpty()) {
             Set<Topic> topics = topicMap.getTopics();
@@ -270,10 +567,10 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
      * model type-instance relationships properly.
      *
      * @param tm The topic map from which the associations should be serialized.
-     * @param idx A (upto date) type instance index.
+     * @param idx The index snapshot.
      * @return An unsorted array of associations which must be included into the output.
      */
-    private Association[] _fetchAssociations(final TopicMap tm, final TypeInstanceIndex idx) {
+    private Association[] _fetchAssociations(final TopicMap tm, final IndexSnapshot idx) {
         Collection<Topic> types = idx.getTopicTypes();
         if (types.isEmpty()) {
             Set<Association> assocs = tm.getAssociations();
@@ -283,43 +580,436 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
             List<Association> assocs = new ArrayList<Association>(tm.getAssociations());
             for (Topic type: types) {
                 for (Topic instance: idx.getTopics(type)) {
-                    assocs.add(new TypeInstanceAssociation(type, instance));
+                    final Association assoc = new TypeInstanceAssociation(type, instance);
+                    for (Role role: assoc.getRoles()) {
+                        _addAlienRole(role);
+                    }
+                    assocs.add(assoc);
                 }
             }
             return assocs.toArray(new Association[assocs.size()]);
         }
     }
 
+    /**
+     * Registers a role of a virtual type-instance association.
+     *
+     * @param role The role.
+     */
+    private void _addAlienRole(final Role role) {
+        final Topic player = role.getPlayer();
+        List<Role> roles = _topic2Roles.get(player);
+        if (roles == null) {
+            roles = new ArrayList<Role>(2);
+            _topic2Roles.put(player, roles);
+        }
+        roles.add(role);
+    }
+
+    /**
+     * Serializes the topic map using an external sort.
+     * 
+     * @see #setMemoryBudget(long)
+     *
+     * @param topicMap The topic map to serialize.
+     * @param idx The index snapshot.
+     * @throws IOException If an error occurs.
+     */
+    private void _writeExternal(final TopicMap topicMap, final IndexSnapshot idx) throws IOException {
+        final Collection<Topic> types = idx.getTopicTypes();
+        final List<Topic> virtualTopics = new ArrayList<Topic>(3);
+        if (!types.isEmpty()) {
+            _typeInstance = _getTopicBySubjectIdentifier(topicMap, virtualTopics, TMDM.TYPE_INSTANCE);
+            _type = _getTopicBySubjectIdentifier(topicMap, virtualTopics, TMDM.TYPE);
+            _instance = _getTopicBySubjectIdentifier(topicMap, virtualTopics, TMDM.INSTANCE);
+        }
+        final Topic[] topics = _sortTopicsExternal(topicMap, virtualTopics);
+        final ExternalSorter rolesPlayed = new ExternalSorter(_memoryBudget, _tmpDir);
+        final File assocFile = File.createTempFile("tmapix-cxtm", ".xml", _tmpDir);
+        try {
+            // Associations are serialized first since the topics refer to the roles
+            final XMLC14NWriter out = _out;
+            final OutputStream assocOut = new BufferedOutputStream(new FileOutputStream(assocFile));
+            _out = new XMLC14NWriter(assocOut);
+            try {
+                _writeAssociationsExternal(topicMap, topics, idx, types, rolesPlayed);
+                _out.endDocument();
+            }
+            finally {
+                _out = out;
+                assocOut.close();
+            }
+            _out.startDocument();
+            _attrs.clear();
+            _addReifier(_attrs, topicMap);
+            _out.startElement("topicMap", _attrs);
+            _out.newline();
+            _writeItemIdentifiers(topicMap);
+            final ExternalSorter.Cursor cursor = rolesPlayed.sort();
+            try {
+                boolean hasRole = cursor.next();
+                for (int i=0; i < topics.length; i++) {
+                    final Topic topic = topics[i];
+                    topics[i] = null;
+                    _writeTopicStart(topic, _sortChildren(topic, false));
+                    final String prefix = _appendInt(new StringBuilder(2), i+1).toString();
+                    while (hasRole && cursor.getKey().startsWith(prefix)) {
+                        _writeRolePlayed(cursor.getValue());
+                        hasRole = cursor.next();
+                    }
+                    _out.endElement("topic");
+                    _out.newline();
+                }
+            }
+            finally {
+                cursor.close();
+            }
+            final InputStream in = new BufferedInputStream(new FileInputStream(assocFile));
+            try {
+                _out.writeRaw(in);
+            }
+            finally {
+                in.close();
+            }
+            _out.endElement("topicMap");
+            _out.newline();
+            _out.endDocument();
+        }
+        finally {
+            assocFile.delete();
+        }
+    }
+
+    /**
+     * Sorts the topics by their canonical sort keys and assigns the numbers
+     * and ranks to the topics.
+     *
+     * @param topicMap The topic map.
+     * @param virtualTopics Virtual topics which should be included into the output.
+     * @return The sorted topics.
+     * @throws IOException If an error occurs.
+     */
+    private Topic[] _sortTopicsExternal(final TopicMap topicMap, final List<Topic> virtualTopics) throws IOException {
+        final ExternalSorter sorter = new ExternalSorter(_memoryBudget, _tmpDir);
+        final StringBuilder sb = new StringBuilder();
+        // The records refer to the position of the topic within this array
+        final List<Topic> candidates = new ArrayList<Topic>(topicMap.getTopics());
+        candidates.addAll(virtualTopics);
+        for (int i=0; i < candidates.size(); i++) {
+            sorter.add(_topicKey(candidates.get(i), sb), Integer.toString(i));
+        }
+        final List<Topic> topics = new ArrayList<Topic>();
+        final ExternalSorter.Cursor cursor = sorter.sort();
+        try {
+            String prevKey = null;
+            int rank = 0;
+            while (cursor.next()) {
+                final Topic topic = candidates.set(Integer.parseInt(cursor.getValue()), null);
+                topics.add(topic);
+                final int number = topics.size();
+                _construct2Id.put(topic, Integer.valueOf(number));
+                final String key = cursor.getKey();
+                if (key.equals(prevKey)) {
+                    _topic2Rank.put(topic, Integer.valueOf(rank));
+                }
+                else {
+                    rank = number;
+                    prevKey = key;
+                }
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        return topics.toArray(new Topic[topics.size()]);
+    }
+
+    /**
+     * Sorts the associations by their canonical sort keys and serializes them.
+     * 
+     * The references to the roles are written to the <tt>rolesPlayed</tt> sorter.
+     *
+     * @param topicMap The topic map.
+     * @param topics The sorted topics.
+     * @param idx The index snapshot.
+     * @param types The topic types.
+     * @param rolesPlayed The sorter which receives the references to the roles.
+     * @throws IOException If an error occurs.
+     */
+    private void _writeAssociationsExternal(final TopicMap topicMap, 
+            final Topic[] topics, final IndexSnapshot idx, final Collection<Topic> types, 
+            final ExternalSorter rolesPlayed) throws IOException {
+        final ExternalSorter sorter = new ExternalSorter(_memoryBudget, _tmpDir);
+        final StringBuilder sb = new StringBuilder();
+        // The records refer to the position of the association within this array
+        // or to the numbers of the type and instance of a virtual association
+        final Association[] assocs = topicMap.getAssociations().toArray(new Association[0]);
+        for (int i=0; i < assocs.length; i++) {
+            sorter.add(_associationKey(assocs[i], sb), Integer.toString(i));
+        }
+        for (Topic type: types) {
+            for (Topic instance: idx.getTopics(type)) {
+                sorter.add(_associationKey(new TypeInstanceAssociation(type, instance), sb), 
+                        _VIRTUAL + Integer.toString(_indexOf(type)) + _VIRTUAL + Integer.toString(_indexOf(instance)));
+            }
+        }
+        final ExternalSorter.Cursor cursor = sorter.sort();
+        try {
+            String prevKey = null;
+            int number = 0;
+            int rank = 0;
+            while (cursor.next()) {
+                number++;
+                final String key = cursor.getKey();
+                if (!key.equals(prevKey)) {
+                    rank = number;
+                    prevKey = key;
+                }
+                final String value = cursor.getValue();
+                Association assoc = null;
+                if (value.charAt(0) == _VIRTUAL) {
+                    final int idx2 = value.indexOf(_VIRTUAL, 1);
+                    assoc = new TypeInstanceAssociation(topics[Integer.parseInt(value.substring(1, idx2))-1], 
+                                                        topics[Integer.parseInt(value.substring(idx2+1))-1]);
+                }
+                else {
+                    final int pos = Integer.parseInt(value);
+                    assoc = assocs[pos];
+                    assocs[pos] = null;
+                }
+                final Set<Role> roles_ = assoc.getRoles();
+                final Role[] roles = roles_.toArray(new Role[roles_.size()]);
+                Arrays.sort(roles, _roleComparator);
+                for (int i=0; i < roles.length; i++) {
+                    final Topic player = roles[i].getPlayer();
+                    if (player == null) {
+                        continue;
+                    }
+                    sb.setLength(0);
+                    _appendInt(sb, _indexOf(player));
+                    _appendInt(sb, _rankOf(roles[i].getType()));
+                    _appendInt(sb, rank);
+                    rolesPlayed.add(sb.toString(), "association." + number + ".role." + (i+1));
+                }
+                _writeAssociation(assoc, number, roles);
+            }
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the canonical sort key of the provided topic.
+     * <p>
+     * The natural order of the keys is equal to the canonical order of 
+     * topics: subject identifiers, subject locators, item identifiers.
+     * </p>
+     *
+     * @param topic The topic.
+     * @param sb A string builder which is used to create the key.
+     * @return The sort key.
+     */
+    private String _topicKey(final Topic topic, final StringBuilder sb) {
+        sb.setLength(0);
+        _appendLocatorSet(sb, topic.getSubjectIdentifiers());
+        _appendLocatorSet(sb, topic.getSubjectLocators());
+        _appendLocatorSet(sb, topic.getItemIdentifiers());
+        return sb.toString();
+    }
+
+    /**
+     * Appends the size of the locator set followed by the sorted, normalized
+     * locators to the string builder. Each locator is terminated by 
+     * <tt>#x0</tt>.
+     *
+     * @param sb The string builder.
+     * @param locators The locators.
+     */
+    private void _appendLocatorSet(final StringBuilder sb, final Set<Locator> locators) {
+        final String[] locs = new String[locators.size()];
+        int i = 0;
+        for (Locator loc: locators) {
+            locs[i++] = _normalizeLocator(loc);
+        }
+        Arrays.sort(locs);
+        _appendInt(sb, locs.length);
+        for (i=0; i < locs.length; i++) {
+            sb.append(locs[i]).append('\u0000');
+        }
+    }
+
+    /**
+     * Returns the canonical sort key of the provided association.
+     * <p>
+     * The natural order of the keys is equal to the canonical order of 
+     * associations: type, roles, scope. All topics must have been ranked.
+     * </p>
+     *
+     * @param assoc The association.
+     * @param sb A string builder which is used to create the key.
+     * @return The sort key.
+     */
+    private String _associationKey(final Association assoc, final StringBuilder sb) {
+        sb.setLength(0);
+        _appendInt(sb, _rankOf(assoc.getType()));
+        final Set<Role> roles = assoc.getRoles();
+        final long[] roleKeys = new long[roles.size()];
+        int i = 0;
+        for (Role role: roles) {
+            roleKeys[i++] = ((long) _rankOf(role.getPlayer())) << 32 | _rankOf(role.getType());
+        }
+        Arrays.sort(roleKeys);
+        _appendInt(sb, roleKeys.length);
+        for (i=0; i < roleKeys.length; i++) {
+            _appendInt(sb, (int) (roleKeys[i] >>> 32));
+            _appendInt(sb, (int) roleKeys[i]);
+        }
+        final Set<Topic> scope = assoc.getScope();
+        final int[] themes = new int[scope.size()];
+        i = 0;
+        for (Topic theme: scope) {
+            themes[i++] = _rankOf(theme);
+        }
+        Arrays.sort(themes);
+        _appendInt(sb, themes.length);
+        for (i=0; i < themes.length; i++) {
+            _appendInt(sb, themes[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends a non-negative integer as two characters to the provided
+     * string builder. The natural order of the characters reflects the
+     * order of the integers.
+     *
+     * @param sb The string builder.
+     * @param i The integer.
+     * @return The string builder.
+     */
+    private static StringBuilder _appendInt(final StringBuilder sb, final int i) {
+        return sb.append((char) (i >>> 16)).append((char) (i & 0xFFFF));
+    }
+
+    /**
+     * Returns the rank of the provided topic.
+     * <p>
+     * Topics which are equal acc. to the {@link TopicComparator} have the 
+     * same rank. The rank of <tt>null</tt> is <tt>0</tt>.
+     * </p>
+     *
+     * @param topic The topic.
+     * @return The rank of the topic.
+     */
+    private int _rankOf(final Topic topic) {
+        if (topic == null) {
+            return 0;
+        }
+        final Integer rank = _topic2Rank.get(topic);
+        return rank != null ? rank.intValue() : _indexOf(topic);
+    }
+
+    /**
+     * Returns the rank of the provided association.
+     * <p>
+     * Associations which have equal sort keys have the same rank.
+     * </p>
+     *
+     * @param assoc The association.
+     * @return The rank of the association.
+     */
+    private int _rankOf(final Association assoc) {
+        final Integer rank = _assoc2Rank.get(assoc);
+        return rank != null ? rank.intValue() : _indexOf(assoc);
+    }
+
     /**
      * Creates the index on which the canonicalizer operates.
      * 
      * As sideeffect, the provided topic and association arrays get sorted.
+     * 
+     * The topics and associations are sorted by their canonical sort keys
+     * which are computed once per construct. Afterwards, topics and 
+     * associations are compared by their ranks.
      *
      * @param topics An array of topics.
      * @param assocs An array of associations.
      */
-    private void _createIndex(Topic[] topics, Association[] assocs) {
-        Arrays.sort(topics, _topicComparator);
-        Topic topic = null;
-        for (int i=0; i < topics.length; i++) {
-            topic = topics[i];
+    private void _createIndex(final Topic[] topics, final Association[] assocs) {
+        SortKey[] keys = new SortKey[topics.length];
+        _computeKeys(keys, topics);
+        Parallel.sort(_executor, _parallelism, keys, null);
+        int rank = 0;
+        for (int i=0; i < keys.length; i++) {
+            final Topic topic = (Topic) keys[i].construct;
+            topics[i] = topic;
             _construct2Id.put(topic, Integer.valueOf(i+1));
+            if (i > 0 && keys[i].key.equals(keys[i-1].key)) {
+                _topic2Rank.put(topic, Integer.valueOf(rank));
+            }
+            else {
+                rank = i+1;
+            }
         }
-        Arrays.sort(assocs, _assocComparator);
-        Association assoc = null;
-        for (int i=0; i < assocs.length; i++) {
-            assoc = assocs[i];
+        keys = new SortKey[assocs.length];
+        _computeKeys(keys, assocs);
+        Parallel.sort(_executor, _parallelism, keys, null);
+        for (int i=0; i < keys.length; i++) {
+            final Association assoc = (Association) keys[i].construct;
+            assocs[i] = assoc;
             _construct2Id.put(assoc, Integer.valueOf(i+1));
-            Set<Role> roles_ = assoc.getRoles();
-            Role[] roles = roles_.toArray(new Role[roles_.size()]);
-            Arrays.sort(roles, _roleComparator);
-            _assoc2Roles.put(assoc, roles);
+            if (i > 0 && keys[i].key.equals(keys[i-1].key)) {
+                _assoc2Rank.put(assoc, Integer.valueOf(rank));
+            }
+            else {
+                rank = i+1;
+            }
+        }
+        final Role[][] sortedRoles = new Role[assocs.length][];
+        Parallel.forEach(_executor, _parallelism, assocs.length, new Parallel.Range() {
+            public void run(int from, int to) {
+                for (int i=from; i < to; i++) {
+                    final Set<Role> roles = assocs[i].getRoles();
+                    sortedRoles[i] = roles.toArray(new Role[roles.size()]);
+                    Arrays.sort(sortedRoles[i], _roleComparator);
+                }
+            }
+        });
+        for (int i=0; i < assocs.length; i++) {
+            final Role[] roles = sortedRoles[i];
+            _assoc2Roles.put(assocs[i], roles);
             for (int j=0; j < roles.length; j++) {
                 _construct2Id.put(roles[j], Integer.valueOf(j+1));
             }
         }
     }
 
+    /**
+     * Computes the sort keys of the provided topics or associations.
+     * <p>
+     * Association keys depend on the ranks of the topics, the topics must 
+     * be ranked before the association keys are computed.
+     * </p>
+     *
+     * @param keys The array which receives the keys.
+     * @param constructs An array of topics or an array of associations.
+     */
+    private void _computeKeys(final SortKey[] keys, final Construct[] constructs) {
+        Parallel.forEach(_executor, _parallelism, constructs.length, new Parallel.Range() {
+            public void run(int from, int to) {
+                final StringBuilder sb = new StringBuilder();
+                for (int i=from; i < to; i++) {
+                    final Construct construct = constructs[i];
+                    final String key = construct instanceof Topic 
+                                            ? _topicKey((Topic) construct, sb)
+                                            : _associationKey((Association) construct, sb);
+                    keys[i] = new SortKey(key, construct);
+                }
+            }
+        });
+    }
+
     /**
      * Returns a sorted array of roles of the provided association.
      *
@@ -384,13 +1074,76 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
         return _construct2Id.get(tmo).intValue();
     }
 
+    /**
+     * Sorts the names, variants, occurrences and (optionally) the played 
+     * roles of the provided topic.
+     * <p>
+     * This method does not modify the state of the writer and may be 
+     * invoked concurrently once the index was created.
+     * </p>
+     *
+     * @param topic The topic.
+     * @param rolesPlayed {@code true} to sort the played roles, otherwise
+     *          {@code false}.
+     * @return The sorted children of the topic.
+     */
+    private TopicChildren _sortChildren(final Topic topic, final boolean rolesPlayed) {
+        final Name[] names = _getNames(topic);
+        final Variant[][] variants = new Variant[names.length][];
+        for (int i=0; i < names.length; i++) {
+            variants[i] = _getVariants(names[i]);
+        }
+        Role[] roles = null;
+        if (rolesPlayed) {
+            List<Role> roles_ = new ArrayList<Role>(topic.getRolesPlayed().size());
+            for (Role role: topic.getRolesPlayed()) {
+                // Fragments may not contain all played associations
+                if (_construct2Id.containsKey(role.getParent())) {
+                    roles_.add(role);
+                }
+            }
+            List<Role> alienRoles = _topic2Roles.get(topic);
+            if (alienRoles != null) {
+                roles_.addAll(alienRoles);
+            }
+            roles = roles_.toArray(new Role[roles_.size()]);
+            Arrays.sort(roles, _roleComparator);
+        }
+        return new TopicChildren(names, variants, _getOccurrences(topic), roles);
+    }
+
     /**
      * Serializes the <tt>topic</tt>.
      *
      * @param topic The topic to serialize.
+     * @param children The sorted children of the topic.
      * @throws IOException If an error occurs.
      */
-    private void _writeTopic(final Topic topic) throws IOException {
+    private void _writeTopic(final Topic topic, final TopicChildren children) throws IOException {
+        _writeTopicStart(topic, children);
+        final Role[] roles = children.roles;
+        StringBuilder sb = new StringBuilder(20);
+        for (int i=0; i < roles.length; i++) {
+            sb.append("association.")
+                .append(_indexOf(roles[i].getParent()))
+                .append(".role.")
+                .append(_indexOf(roles[i]));
+            _writeRolePlayed(sb.toString());
+            sb.setLength(0);
+        }
+        _out.endElement("topic");
+        _out.newline();
+    }
+
+    /**
+     * Writes the start tag of the topic element and all properties of the 
+     * topic except the played roles.
+     *
+     * @param topic The topic to serialize.
+     * @param children The sorted children of the topic.
+     * @throws IOException If an error occurs.
+     */
+    private void _writeTopicStart(final Topic topic, final TopicChildren children) throws IOException {
         _attrs.clear();
         _attrs.addAttribute("", "number", "", "CDATA", Integer.toString(_indexOf(topic)));
         _out.startElement("topic", _attrs);
@@ -398,35 +1151,27 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
         _writeLocatorSet("subjectIdentifiers", topic.getSubjectIdentifiers());
         _writeLocatorSet("subjectLocators", topic.getSubjectLocators());
         _writeItemIdentifiers(topic);
-        Name[] names = _getNames(topic);
+        final Name[] names = children.names;
         for (int i=0; i < names.length; i++) {
-            _writeName(names[i], i+1);
+            _writeName(names[i], i+1, children.variants[i]);
         }
-        Occurrence[] occs = _getOccurrences(topic);
+        final Occurrence[] occs = children.occurrences;
         for (int i=0; i < occs.length; i++) {
             _writeOccurrence(occs[i], i+1);
         }
-        List<Role> roles_ = new ArrayList<Role>(topic.getRolesPlayed());
-        List<Role> alienRoles = _topic2Roles.get(topic);
-        if (alienRoles != null) {
-            roles_.addAll(alienRoles);
-        }
-        Role[] roles = roles_.toArray(new Role[roles_.size()]);
-        Arrays.sort(roles, _roleComparator);
-        StringBuilder sb = new StringBuilder(20);
-        for (int i=0; i < roles.length; i++) {
-            sb.append("association.")
-                .append(_indexOf(roles[i].getParent()))
-                .append(".role.")
-                .append(_indexOf(roles[i]));
-            _attrs.clear();
-            _attrs.addAttribute("", "ref", "", "CDATA", sb.toString());
-            _out.startElement("rolePlayed", _attrs);
-            _out.endElement("rolePlayed");
-            _out.newline();
-            sb.setLength(0);
-        }
-        _out.endElement("topic");
+    }
+
+    /**
+     * Writes a reference to a played role.
+     *
+     * @param ref The reference to the role.
+     * @throws IOException If an error occurs.
+     */
+    private void _writeRolePlayed(final String ref) throws IOException {
+        _attrs.clear();
+        _attrs.addAttribute("", "ref", "", "CDATA", ref);
+        _out.startElement("rolePlayed", _attrs);
+        _out.endElement("rolePlayed");
         _out.newline();
     }
 
@@ -437,11 +1182,24 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
      * @throws IOException If an error occurs.
      */
     private void _writeAssociation(final Association assoc) throws IOException {
-        _out.startElement("association", _attributes(assoc, _indexOf(assoc)));
+        _writeAssociation(assoc, _indexOf(assoc), _getRoles(assoc));
+    }
+
+    /**
+     * Serializes an association.
+     *
+     * @param assoc The association to serialize.
+     * @param pos The position of the association.
+     * @param roles The sorted roles of the association.
+     * @throws IOException If an error occurs.
+     */
+    private void _writeAssociation(final Association assoc, int pos, Role[] roles) throws IOException {
+        _out.startElement("association", _attributes(assoc, pos));
         _out.newline();
         _writeType(assoc);
-        for (Role role: _getRoles(assoc)) {
-            _out.startElement("role", _attributes(role, _indexOf(role)));
+        for (int i=0; i < roles.length; i++) {
+            final Role role = roles[i];
+            _out.startElement("role", _attributes(role, i+1));
             _out.newline();
             _out.startElement("player", _topicRef(role.getPlayer()));
             _out.endElement("player");
@@ -500,9 +1258,10 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
      *
      * @param name The name to serialize.
      * @param pos The position of the name within the parent container.
+     * @param variants The sorted variants of the name.
      * @throws IOException If an error occurs.
      */
-    private void _writeName(final Name name, int pos) throws IOException {
+    private void _writeName(final Name name, int pos, final Variant[] variants) throws IOException {
         _out.startElement("name", _attributes(name, pos));
         _out.newline();
         _out.startElement("value");
@@ -511,7 +1270,6 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
         _out.newline();
         _writeType(name);
         _writeScope(name);
-        Variant[] variants = _getVariants(name);
         Variant variant = null;
         for (int i=0; i<variants.length; i++) {
             variant = variants[i];
@@ -697,7 +1455,9 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
         if (normLoc.length() > 0 && normLoc.charAt(0) == '/') {
             normLoc = normLoc.substring(1);
         }
-        _locator2Norm.put(locator, normLoc);
+        if (_memoryBudget == 0) {
+            _locator2Norm.put(locator, normLoc);
+        }
         return normLoc;
     }
 
@@ -742,6 +1502,8 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
      * Utility interface to remove duplicates from a topic map.
      * 
      * Implementations of this interface may be implementation-specific.
+     * 
+     * @see DefaultDuplicateRemover
      */
     public static interface DuplicateRemover {
 
@@ -772,14 +1534,7 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
                 _reportInvalid("Comparing topics where one topic is null");
                 return -1;
             }
-            int res = _locSetComparator.compare(o1.getSubjectIdentifiers(), o2.getSubjectIdentifiers());
-            if (res == 0) {
-                res = _locSetComparator.compare(o1.getSubjectLocators(), o2.getSubjectLocators());
-                if (res == 0) {
-                    res = _locSetComparator.compare(o1.getItemIdentifiers(), o2.getItemIdentifiers());
-                }
-            }
-            return res;
+            return _rankOf(o1) - _rankOf(o2);
         }
     }
 
@@ -857,45 +1612,13 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
      * 3. [scope]
      * 4. [parent]
      */
-    private final class AssociationComparator extends AbstractComparator<Association> {
-
-        private Comparator<Set<Role>> _roleSetComparator;
-
-        AssociationComparator() {
-            _roleSetComparator = new RoleSetComparator();
-        }
+    private final class AssociationComparator implements Comparator<Association> {
 
         public int compare(Association o1, Association o2) {
             if (o1 == o2) {
                 return 0;
             }
-            int res = compareType(o1, o2);
-            if (res == 0) {
-                res = _roleSetComparator.compare(o1.getRoles(), o2.getRoles());
-                if (res == 0) {
-                    res = compareScope(o1, o2);
-                }
-            }
-            return res;
-        }
-    }
-
-    /**
-     * Role comparator which ignores the parent association. This comparator
-     * is meant to be used for roles where the parent is known to be equal or
-     * unequal.
-     */
-    private class RoleIgnoreParentComparator extends AbstractComparator<Role> {
-
-        public int compare(Role o1, Role o2) {
-            if (o1 == o2) {
-                return 0;
-            }
-            int res = _topicComparator.compare(o1.getPlayer(), o2.getPlayer());
-            if (res == 0) {
-                res = compareType(o1, o2);
-            }
-            return res;
+            return _rankOf(o1) - _rankOf(o2);
         }
     }
 
@@ -905,15 +1628,18 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
      * 2. [type]
      * 3. [parent]
      */
-    private final class RoleComparator extends RoleIgnoreParentComparator {
+    private final class RoleComparator extends AbstractComparator<Role> {
 
         public int compare(Role o1, Role o2) {
             if (o1 == o2) {
                 return 0;
             }
-            int res = super.compare(o1, o2);
+            int res = _topicComparator.compare(o1.getPlayer(), o2.getPlayer());
             if (res == 0) {
-                res = _assocComparator.compare(o1.getParent(), o2.getParent());
+                res = compareType(o1, o2);
+                if (res == 0) {
+                    res = _assocComparator.compare(o1.getParent(), o2.getParent());
+                }
             }
             return res;
         }
@@ -1023,33 +1749,6 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
         abstract int compareContent(Set<T> o1, Set<T> o2, int size);
     }
 
-    /**
-     * Compares role sets. The parent of the roles is ignored! 
-     */
-    private final class RoleSetComparator extends AbstractSetComparator<Role> {
-
-        private RoleIgnoreParentComparator _roleCmp; 
-
-        RoleSetComparator() {
-            _roleCmp = new RoleIgnoreParentComparator();
-        }
-
-        @Override
-        int compareContent(Set<Role> o1, Set<Role> o2,
-                int size) {
-            int res = 0;
-            Role[] roles1 = o1.toArray(new Role[size]);
-            Role[] roles2 = o2.toArray(new Role[size]);
-            Arrays.sort(roles1, _roleCmp);
-            Arrays.sort(roles2, _roleCmp);
-            for (int i=0; i < size && res == 0; i++) {
-                res = _roleCmp.compare(roles1[i], roles2[i]);
-            }
-            return res;
-        }
-        
-    }
-
     /**
      * Compares the scope of two scoped Topic Maps constructs.
      */
@@ -1070,25 +1769,6 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
 
     }
 
-    /**
-     * Comparator for sets of {@link org.tmapi.core.Locator}s. 
-     */
-    private final class LocatorSetComparator extends AbstractSetComparator<Locator> {
-
-        @Override
-        int compareContent(Set<Locator> o1, Set<Locator> o2, int size) {
-            int res = 0;
-            Locator[] locs1 = o1.toArray(new Locator[size]);
-            Locator[] locs2 = o2.toArray(new Locator[size]);
-            Arrays.sort(locs1, _locComparator);
-            Arrays.sort(locs2, _locComparator);
-            for (int i=0; i < size && res == 0; i++) {
-                res = _locComparator.compare(locs1[i], locs2[i]);
-            }
-            return res;
-        }
-    }
-
     /**
      * Compares {@link org.tmapi.core.Locator}s.
      */
@@ -1104,6 +1784,42 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
     }
 
 
+    /**
+     * The sorted children of a topic.
+     */
+    private static final class TopicChildren {
+
+        final Name[] names;
+        final Variant[][] variants;
+        final Occurrence[] occurrences;
+        final Role[] roles;
+
+        TopicChildren(Name[] names, Variant[][] variants, Occurrence[] occurrences, Role[] roles) {
+            this.names = names;
+            this.variants = variants;
+            this.occurrences = occurrences;
+            this.roles = roles;
+        }
+    }
+
+    /**
+     * Pairs a Topic Maps construct with its canonical sort key.
+     */
+    private static final class SortKey implements Comparable<SortKey> {
+
+        final String key;
+        final Construct construct;
+
+        SortKey(String key, Construct construct) {
+            this.key = key;
+            this.construct = construct;
+        }
+
+        public int compareTo(SortKey o) {
+            return key.compareTo(o.key);
+        }
+    }
+
     /*
      * Helper classes to treat type-instance relationships, modelled as property
      * of a topic, as associations. 
@@ -1210,12 +1926,6 @@ public final class CXTMTopicMapWriter implements TopicMapWriter {
             _type = type;
             _player = player;
             _parent = parent;
-            List<Role> roles = _topic2Roles.get(player);
-            if (roles == null) {
-                roles = new ArrayList<Role>(2);
-                _topic2Roles.put(player, roles);
-            }
-            roles.add(this);
         }
 
         public Topic getType() {
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Construct;
+import org.tmapi.core.DatatypeAware;
+import org.tmapi.core.Locator;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Reifiable;
+import org.tmapi.core.Role;
+import org.tmapi.core.Scoped;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.Variant;
+
+/**
+ * Tracks the topics and associations of a topic map which were created,
+ * modified or removed since a checkpoint.
+ * <p>
+ * TMAPI provides no change notifications, therefore the tracker keeps a
+ * fingerprint of each topic and association which was taken at the
+ * checkpoint. A topic is modified if its identities, types, names (including
+ * the variants) or occurrences were changed, an association is modified if
+ * its type, scope, reifier, item identifiers or roles were changed.
+ * </p>
+ * <p>
+ * The changes are computed lazily by {@link #getChangedTopics()} /
+ * {@link #getChangedAssociations()} etc. and cached until the next
+ * {@link #checkpoint()} or {@link #refresh()}. Both operations visit all
+ * topics and associations but do not create any output, they are much
+ * cheaper than a serialization of the whole topic map.
+ * </p>
+ * <p>
+ * Besides the fingerprints, the tracker keeps a reference to each topic 
+ * and a key of each association (see {@link TopicMapDelta}) which locate 
+ * the removed and modified constructs in a copy of the topic map.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ *
+ * @see TopicMapDelta
+ * @see XTM2TopicMapWriter#writeDelta(ChangeTracker)
+ * @see JTMTopicMapWriter#writeDelta(ChangeTracker)
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class ChangeTracker {
+
+    private static final long _FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long _FNV_PRIME = 0x100000001b3L;
+
+    private final TopicMap _topicMap;
+    private Map<String, Long> _topic2Fingerprint;
+    private Map<String, Long> _assoc2Fingerprint;
+    private Map<String, String> _topic2Reference;
+    private Map<String, String> _assoc2Key;
+    private long _topicMapFingerprint;
+    private Set<Topic> _changedTopics;
+    private Set<Association> _changedAssocs;
+    private Set<String> _removedIds;
+    private boolean _topicMapChanged;
+
+    /**
+     * Creates a tracker for the specified topic map and sets the first
+     * checkpoint.
+     *
+     * @param topicMap The topic map to track.
+     */
+    public ChangeTracker(final TopicMap topicMap) {
+        if (topicMap == null) {
+            throw new IllegalArgumentException("The topic map must not be null");
+        }
+        _topicMap = topicMap;
+        checkpoint();
+    }
+
+    /**
+     * Returns the tracked topic map.
+     *
+     * @return The topic map.
+     */
+    public TopicMap getTopicMap() {
+        return _topicMap;
+    }
+
+    /**
+     * Sets a new checkpoint. All changes which were made up to now are
+     * discarded.
+     */
+    public void checkpoint() {
+        final Collection<Topic> topics = _topicMap.getTopics();
+        final Collection<Association> assocs = _topicMap.getAssociations();
+        _topic2Fingerprint = new HashMap<String, Long>(topics.size() * 4 / 3 + 1);
+        _assoc2Fingerprint = new HashMap<String, Long>(assocs.size() * 4 / 3 + 1);
+        _topic2Reference = new HashMap<String, String>(topics.size() * 4 / 3 + 1);
+        _assoc2Key = new HashMap<String, String>(assocs.size() * 4 / 3 + 1);
+        for (Topic topic: topics) {
+            final String id = topic.getId();
+            _topic2Fingerprint.put(id, _fingerprint(topic));
+            _topic2Reference.put(id, TopicMapDelta.reference(topic));
+        }
+        for (Association assoc: assocs) {
+            final String id = assoc.getId();
+            _assoc2Fingerprint.put(id, _fingerprint(assoc));
+            _assoc2Key.put(id, TopicMapDelta.key(assoc));
+        }
+        _topicMapFingerprint = _topicMapFingerprint();
+        _reset();
+    }
+
+    /**
+     * Discards the computed changes; the next request recomputes them
+     * against the last checkpoint.
+     * <p>
+     * This method has to be called if the topic map was modified after
+     * the changes were requested.
+     * </p>
+     */
+    public void refresh() {
+        _reset();
+    }
+
+    /**
+     * Returns the topics which were created or modified since the
+     * last checkpoint.
+     *
+     * @return An unmodifiable (maybe empty) set of topics.
+     */
+    public Set<Topic> getChangedTopics() {
+        _computeChanges();
+        return Collections.unmodifiableSet(_changedTopics);
+    }
+
+    /**
+     * Returns the associations which were created or modified since the
+     * last checkpoint.
+     *
+     * @return An unmodifiable (maybe empty) set of associations.
+     */
+    public Set<Association> getChangedAssociations() {
+        _computeChanges();
+        return Collections.unmodifiableSet(_changedAssocs);
+    }
+
+    /**
+     * Returns the identifiers (see {@link Construct#getId()}) of the topics
+     * and associations which were removed since the last checkpoint.
+     *
+     * @return An unmodifiable (maybe empty) set of construct identifiers.
+     */
+    public Set<String> getRemovedIds() {
+        _computeChanges();
+        return Collections.unmodifiableSet(_removedIds);
+    }
+
+    /**
+     * Returns if the reifier or the item identifiers of the topic map were
+     * changed since the last checkpoint.
+     *
+     * @return {@code true} if the topic map was changed, otherwise {@code false}.
+     */
+    public boolean isTopicMapChanged() {
+        _computeChanges();
+        return _topicMapChanged;
+    }
+
+    /**
+     * Returns if any construct was created, modified or removed since the
+     * last checkpoint.
+     *
+     * @return {@code true} if the topic map was changed, otherwise {@code false}.
+     */
+    public boolean hasChanges() {
+        _computeChanges();
+        return _topicMapChanged || !_changedTopics.isEmpty()
+                || !_changedAssocs.isEmpty() || !_removedIds.isEmpty();
+    }
+
+    /**
+     * Returns the reference of the topic with the provided identifier at
+     * the checkpoint.
+     *
+     * @param id The identifier of the topic.
+     * @return The reference or {@code null} if the topic did not exist or
+     *          had no identity.
+     */
+    String getCheckpointReference(final String id) {
+        return _topic2Reference.get(id);
+    }
+
+    /**
+     * Returns the key of the association with the provided identifier at
+     * the checkpoint.
+     *
+     * @param id The identifier of the association.
+     * @return The key or {@code null} if the association did not exist or
+     *          a topic of the association had no identity.
+     */
+    String getCheckpointKey(final String id) {
+        return _assoc2Key.get(id);
+    }
+
+    private void _reset() {
+        _changedTopics = null;
+        _changedAssocs = null;
+        _removedIds = null;
+    }
+
+    private void _computeChanges() {
+        if (_changedTopics != null) {
+            return;
+        }
+        final Set<Topic> changedTopics = new LinkedHashSet<Topic>();
+        final Set<Association> changedAssocs = new LinkedHashSet<Association>();
+        final Set<String> removedIds = new HashSet<String>(_topic2Fingerprint.keySet());
+        removedIds.addAll(_assoc2Fingerprint.keySet());
+        for (Topic topic: _topicMap.getTopics()) {
+            final String id = topic.getId();
+            removedIds.remove(id);
+            final Long fingerprint = _topic2Fingerprint.get(id);
+            if (fingerprint == null || fingerprint.longValue() != _fingerprint(topic)) {
+                changedTopics.add(topic);
+            }
+        }
+        for (Association assoc: _topicMap.getAssociations()) {
+            final String id = assoc.getId();
+            removedIds.remove(id);
+            final Long fingerprint = _assoc2Fingerprint.get(id);
+            if (fingerprint == null || fingerprint.longValue() != _fingerprint(assoc)) {
+                changedAssocs.add(assoc);
+            }
+        }
+        _topicMapChanged = _topicMapFingerprint != _topicMapFingerprint();
+        _changedTopics = changedTopics;
+        _changedAssocs = changedAssocs;
+        _removedIds = removedIds;
+    }
+
+    private long _topicMapFingerprint() {
+        long h = _FNV_OFFSET;
+        h = _mix(h, _reifier(_topicMap));
+        h = _mix(h, _locators(_topicMap.getItemIdentifiers()));
+        return h;
+    }
+
+    private static long _fingerprint(final Topic topic) {
+        long h = _FNV_OFFSET;
+        h = _mix(h, _locators(topic.getItemIdentifiers()));
+        h = _mix(h, _locators(topic.getSubjectIdentifiers()));
+        h = _mix(h, _locators(topic.getSubjectLocators()));
+        h = _mix(h, _topics(topic.getTypes()));
+        long children = 0;
+        for (Name name: topic.getNames()) {
+            children += _fingerprint(name);
+        }
+        h = _mix(h, children);
+        children = 0;
+        for (Occurrence occ: topic.getOccurrences()) {
+            children += _fingerprint(occ);
+        }
+        h = _mix(h, children);
+        return h;
+    }
+
+    private static long _fingerprint(final Association assoc) {
+        long h = _fingerprint((Construct) assoc);
+        h = _mix(h, _hash(assoc.getType().getId()));
+        h = _mix(h, _topics(assoc.getScope()));
+        h = _mix(h, _reifier(assoc));
+        long roles = 0;
+        for (Role role: assoc.getRoles()) {
+            long r = _fingerprint((Construct) role);
+            r = _mix(r, _hash(role.getType().getId()));
+            r = _mix(r, _hash(role.getPlayer().getId()));
+            r = _mix(r, _reifier(role));
+            roles += r;
+        }
+        return _mix(h, roles);
+    }
+
+    private static long _fingerprint(final Name name) {
+        long h = _scopedAndReifiable(name);
+        h = _mix(h, _hash(name.getType().getId()));
+        h = _mix(h, _hash(name.getValue()));
+        long variants = 0;
+        for (Variant variant: name.getVariants()) {
+            variants += _datatyped(_scopedAndReifiable(variant), variant);
+        }
+        return _mix(h, variants);
+    }
+
+    private static long _fingerprint(final Occurrence occ) {
+        long h = _scopedAndReifiable(occ);
+        h = _mix(h, _hash(occ.getType().getId()));
+        return _datatyped(h, occ);
+    }
+
+    private static long _fingerprint(final Construct construct) {
+        return _mix(_FNV_OFFSET, _locators(construct.getItemIdentifiers()));
+    }
+
+    private static <T extends Scoped & Reifiable> long _scopedAndReifiable(final T construct) {
+        long h = _fingerprint((Construct) construct);
+        h = _mix(h, _topics(construct.getScope()));
+        return _mix(h, _reifier(construct));
+    }
+
+    private static long _datatyped(final long h, final DatatypeAware datatyped) {
+        return _mix(_mix(h, _hash(datatyped.getValue())),
+                        _hash(datatyped.getDatatype().getReference()));
+    }
+
+    private static long _reifier(final Reifiable reifiable) {
+        final Topic reifier = reifiable.getReifier();
+        return reifier == null ? 0 : _hash(reifier.getId());
+    }
+
+    /**
+     * Returns an order-independent hash of the provided topics.
+     */
+    private static long _topics(final Set<Topic> topics) {
+        long h = 0;
+        for (Topic topic: topics) {
+            h += _hash(topic.getId());
+        }
+        return h;
+    }
+
+    /**
+     * Returns an order-independent hash of the provided locators.
+     */
+    private static long _locators(final Set<Locator> locators) {
+        long h = 0;
+        for (Locator loc: locators) {
+            h += _hash(loc.getReference());
+        }
+        return h;
+    }
+
+    /**
+     * Returns the 64 bit FNV-1a hash of the provided string.
+     */
+    private static long _hash(final String s) {
+        long h = _FNV_OFFSET;
+        for (int i=0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= _FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static long _mix(final long h, final long value) {
+        return (h ^ value ^ (value >>> 29)) * _FNV_PRIME;
+    }
+
+}
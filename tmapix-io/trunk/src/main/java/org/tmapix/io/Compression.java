@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.tmapix.io.internal.utils.BlockGZIPOutputStream;
+
+import com.semagia.mio.Source;
+
+/**
+ * Provides compressed output streams for the {@link TopicMapWriter}s and 
+ * detects compressed input of the {@link TopicMapReader}s.
+ * <p>
+ * The readers detect gzip compressed input automatically. To write a gzip
+ * compressed topic map, the stream must be wrapped:
+ * </p>
+ * <pre>
+ *   final OutputStream out = Compression.gzip(new FileOutputStream("map.xtm.gz"));
+ *   new XTM20TopicMapWriter(out, base).write(topicMap);
+ *   out.close();
+ * </pre>
+ * <p>
+ * The stream must be closed (or {@link #finish(OutputStream) finished}) 
+ * after the topic map was written.
+ * </p>
+ * <p>
+ * The XTM, TM/XML and binary writers provide a <tt>setCompression</tt> 
+ * method which compresses the output without wrapping the stream.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class Compression {
+
+    private static final int _BUFFER_SIZE = 1 << 16;
+
+    private Compression() {
+        // noop.
+    }
+
+    /**
+     * Returns a stream which compresses the data with gzip. The data is 
+     * compressed in blocks by as many threads as processors are available.
+     *
+     * @param out The stream to write the compressed data to.
+     * @return A gzip compressing stream.
+     */
+    public static OutputStream gzip(final OutputStream out) {
+        return gzip(out, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Returns a stream which compresses the data with gzip.
+     * <p>
+     * The data is split into blocks which are compressed independently 
+     * of each other, the result is a multi-member gzip stream. 
+     * </p>
+     *
+     * @param out The stream to write the compressed data to.
+     * @param parallelism The number of threads which compress the blocks,
+     *          <tt>1</tt> compresses the blocks in the calling thread.
+     * @return A gzip compressing stream.
+     */
+    public static OutputStream gzip(final OutputStream out, final int parallelism) {
+        return new BlockGZIPOutputStream(out, parallelism, BlockGZIPOutputStream.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Writes the remaining compressed data without closing the underlying 
+     * stream. Does nothing if the stream was not created by this class.
+     *
+     * @param out A stream returned by {@link #gzip(OutputStream)}.
+     * @throws IOException In case of an error.
+     */
+    public static void finish(final OutputStream out) throws IOException {
+        if (out instanceof BlockGZIPOutputStream) {
+            ((BlockGZIPOutputStream) out).finish();
+        }
+    }
+
+    /**
+     * Returns a stream which decompresses the provided stream if it is 
+     * gzip compressed. Otherwise a buffered stream is returned which 
+     * provides the original data.
+     *
+     * @param in The stream to read from.
+     * @return A stream which provides the uncompressed data.
+     * @throws IOException In case of an error.
+     */
+    public static InputStream decompress(final InputStream in) throws IOException {
+        final InputStream stream = in.markSupported() ? in : new BufferedInputStream(in, _BUFFER_SIZE);
+        stream.mark(2);
+        final int b1 = stream.read();
+        final int b2 = stream.read();
+        stream.reset();
+        if (b1 == 0x1F && b2 == 0x8B) {
+            return new GZIPInputStream(stream, _BUFFER_SIZE);
+        }
+        return stream;
+    }
+
+    /**
+     * Returns a source which provides the uncompressed data of the provided
+     * source. Sources without a byte stream are returned unmodified.
+     *
+     * @param source The source.
+     * @return A source which provides the uncompressed data.
+     * @throws IOException In case of an error.
+     */
+    static Source decompress(final Source source) throws IOException {
+        final InputStream in = source.getByteStream();
+        if (in == null) {
+            return source;
+        }
+        final InputStream stream = decompress(in);
+        return source.getEncoding() != null ? new Source(stream, source.getBaseIRI(), source.getEncoding())
+                                            : new Source(stream, source.getBaseIRI());
+    }
+
+}
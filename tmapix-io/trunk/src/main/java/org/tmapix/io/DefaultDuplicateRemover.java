@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.tmapi.core.TopicMap;
+import org.tmapix.io.internal.utils.DuplicateRemovalUtils;
+
+/**
+ * {@link CXTMTopicMapWriter.DuplicateRemover} implementation which works
+ * with any TMAPI-compatible Topic Maps engine.
+ * <p>
+ * The duplicate names, occurrences, variants, roles and associations are
+ * detected in one linear pass over the topic map by a signature-keyed 
+ * index per parent. The duplicates are merged into the first construct:
+ * The item identifiers and the reifier are moved to the remaining construct.
+ * </p>
+ * <p>
+ * The duplicates of the topics' characteristics and of the associations'
+ * roles are detected in parallel, the modifications of the topic map are
+ * done by the calling thread.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class DefaultDuplicateRemover implements CXTMTopicMapWriter.DuplicateRemover {
+
+    private int _parallelism;
+
+    /**
+     * Creates a duplicate remover which uses as many threads as processors
+     * are available.
+     */
+    public DefaultDuplicateRemover() {
+        _parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Sets the number of threads which are used to detect the duplicates.
+     *
+     * @param parallelism The number of threads, <tt>1</tt> disables the
+     *          parallel mode.
+     */
+    public void setParallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be greater than zero");
+        }
+        _parallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of threads which are used to detect the duplicates.
+     *
+     * @return The parallelism, <tt>1</tt> indicates the sequential mode.
+     */
+    public int getParallelism() {
+        return _parallelism;
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapix.io.CXTMTopicMapWriter.DuplicateRemover#removeDuplicates(org.tmapi.core.TopicMap)
+     */
+    @Override
+    public void removeDuplicates(final TopicMap topicMap) {
+        final ExecutorService executor = _parallelism > 1 
+                                            ? Executors.newFixedThreadPool(_parallelism)
+                                            : null;
+        try {
+            DuplicateRemovalUtils.removeDuplicates(topicMap, executor, _parallelism);
+        }
+        finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+}
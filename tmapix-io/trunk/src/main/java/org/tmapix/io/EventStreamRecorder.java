@@ -0,0 +1,185 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.tmapix.io.internal.utils.AbstractEventMapHandler;
+import org.tmapix.io.internal.utils.MapHandlerEvents;
+
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.MIOException;
+
+/**
+ * {@link IMapHandler} implementation which records the events into a
+ * compact binary stream.
+ * <p>
+ * The stream can be replayed by the {@link EventStreamTopicMapReader}
+ * without parsing the original source again. Optionally, the events are
+ * forwarded to another {@link IMapHandler}, so a source can be imported
+ * and recorded at the same time.
+ * </p>
+ * <p>
+ * Format: The stream starts with the bytes <tt>TMXE</tt> and a version byte,
+ * followed by the events. Each event is written as one byte, followed by its
+ * string arguments. A string argument is a varint <tt>n</tt>: <tt>0</tt>
+ * introduces a string which is not stored in the string table, <tt>1</tt>
+ * introduces a string which is appended to the string table and
+ * <tt>n &gt; 1</tt> refers to the string <tt>n - 2</tt> of the table.
+ * Introduced strings are written as varint length followed by the UTF-8
+ * bytes. IRIs and datatypes are stored in the string table, values are not.
+ * </p>
+ * <p>
+ * The stream is flushed at the end of each topic map. The provided
+ * {@link OutputStream} is not closed.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class EventStreamRecorder extends AbstractEventMapHandler {
+
+    static final byte[] MAGIC = new byte[] {'T', 'M', 'X', 'E'};
+    static final byte VERSION = 1;
+    static final Charset UTF_8 = Charset.forName("utf-8");
+
+    private final OutputStream _out;
+    private final IMapHandler _delegate;
+    private final Map<String, Integer> _strings;
+    private final byte[] _buffer;
+    private int _pos;
+
+    /**
+     * Creates a recorder.
+     *
+     * @param out The stream to write the events onto.
+     * @throws IOException If an error occurs.
+     */
+    public EventStreamRecorder(final OutputStream out) throws IOException {
+        this(out, null);
+    }
+
+    /**
+     * Creates a recorder which forwards the events to another handler.
+     *
+     * @param out The stream to write the events onto.
+     * @param delegate The handler which receives the events or {@code null}.
+     * @throws IOException If an error occurs.
+     */
+    public EventStreamRecorder(final OutputStream out, final IMapHandler delegate) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("The output stream must not be null");
+        }
+        _out = out;
+        _delegate = delegate;
+        _strings = new HashMap<String, Integer>();
+        _buffer = new byte[16 * 1024];
+        _out.write(MAGIC);
+        _out.write(VERSION);
+    }
+
+    /**
+     * Writes all buffered events onto the output stream and flushes it.
+     *
+     * @throws IOException If an error occurs.
+     */
+    public void flush() throws IOException {
+        _flushBuffer();
+        _out.flush();
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapix.io.internal.utils.AbstractEventMapHandler#handleEvent(byte, java.lang.String, java.lang.String)
+     */
+    @Override
+    protected void handleEvent(final byte event, final String arg, final String arg2) throws MIOException {
+        if (_delegate != null) {
+            MapHandlerEvents.fire(_delegate, event, arg, arg2);
+        }
+        try {
+            _write(event);
+            switch (event) {
+                case MapHandlerEvents.VALUE:
+                    _writeString(arg, false);
+                    break;
+                case MapHandlerEvents.VALUE_DATATYPE:
+                    _writeString(arg, false);
+                    _writeString(arg2, true);
+                    break;
+                case MapHandlerEvents.END_TOPIC_MAP:
+                    flush();
+                    break;
+                default:
+                    if (MapHandlerEvents.argumentCount(event) > 0) {
+                        _writeString(arg, true);
+                    }
+            }
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    private void _writeString(final String value, final boolean table) throws IOException {
+        if (table) {
+            final Integer idx = _strings.get(value);
+            if (idx != null) {
+                _writeVarInt(idx.intValue() + 2);
+                return;
+            }
+            _strings.put(value, Integer.valueOf(_strings.size()));
+        }
+        _writeVarInt(table ? 1 : 0);
+        final byte[] bytes = value.getBytes(UTF_8);
+        _writeVarInt(bytes.length);
+        if (bytes.length > _buffer.length - _pos) {
+            _flushBuffer();
+            if (bytes.length > _buffer.length) {
+                _out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, _buffer, _pos, bytes.length);
+        _pos += bytes.length;
+    }
+
+    private void _writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            _write((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        _write((byte) value);
+    }
+
+    private void _write(final byte b) throws IOException {
+        if (_pos == _buffer.length) {
+            _flushBuffer();
+        }
+        _buffer[_pos++] = b;
+    }
+
+    private void _flushBuffer() throws IOException {
+        if (_pos > 0) {
+            _out.write(_buffer, 0, _pos);
+            _pos = 0;
+        }
+    }
+
+}
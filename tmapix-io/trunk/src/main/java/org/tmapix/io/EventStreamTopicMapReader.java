@@ -0,0 +1,243 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tmapi.core.TopicMap;
+import org.tmapix.io.internal.utils.MapHandlerEvents;
+
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.MIOException;
+
+/**
+ * {@link TopicMapReader} implementation which replays an event stream
+ * recorded by the {@link EventStreamRecorder}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class EventStreamTopicMapReader implements TopicMapReader {
+
+    private final TopicMap _topicMap;
+    private final File _file;
+    private InputStream _in;
+
+    /**
+     * Constructs a new instance.
+     * <p>
+     * The file is opened by {@link #read()} and closed afterwards.
+     * </p>
+     *
+     * @param topicMap The topic map to which the content is added to.
+     * @param source The file to read the events from.
+     */
+    public EventStreamTopicMapReader(final TopicMap topicMap, final File source) {
+        this(topicMap, source, null);
+    }
+
+    /**
+     * Constructs a new instance.
+     * <p>
+     * The stream is not closed by {@link #read()}.
+     * </p>
+     *
+     * @param topicMap The topic map to which the content is added to.
+     * @param source The stream to read the events from.
+     */
+    public EventStreamTopicMapReader(final TopicMap topicMap, final InputStream source) {
+        this(topicMap, null, source);
+    }
+
+    private EventStreamTopicMapReader(final TopicMap topicMap, final File file, final InputStream in) {
+        if (topicMap == null) {
+            throw new IllegalArgumentException("The topic map must not be null");
+        }
+        if (file == null && in == null) {
+            throw new IllegalArgumentException("The source must not be null");
+        }
+        _topicMap = topicMap;
+        _file = file;
+        _in = in;
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapix.io.TopicMapReader#read()
+     */
+    @Override
+    public void read() throws IOException {
+        final InputStream in = _file != null ? new FileInputStream(_file) : _in;
+        try {
+            replay(in, MapHandlerFactory.createMapHandler(_topicMap));
+        }
+        catch (MIOException ex) {
+            if (ex.getException() instanceof IOException) {
+                throw (IOException) ex.getException();
+            }
+            throw new TMAPIXParseException(ex);
+        }
+        finally {
+            _in = null;
+            if (_file != null) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Sends the events of a recorded stream to the provided handler.
+     *
+     * @param in The stream to read the events from.
+     * @param handler The handler which receives the events.
+     * @throws IOException If the stream cannot be read or if the stream
+     *          is not a valid event stream.
+     * @throws MIOException If the handler reports an error.
+     */
+    public static void replay(final InputStream in, final IMapHandler handler) throws IOException, MIOException {
+        new Decoder(in).replay(handler);
+    }
+
+
+    /**
+     * Decodes the event stream.
+     */
+    private static final class Decoder {
+
+        private final InputStream _in;
+        private final byte[] _buffer;
+        private int _pos;
+        private int _limit;
+        private final List<String> _strings;
+
+        Decoder(final InputStream in) {
+            _in = in;
+            _buffer = new byte[64 * 1024];
+            _strings = new ArrayList<String>();
+        }
+
+        void replay(final IMapHandler handler) throws IOException, MIOException {
+            for (byte b: EventStreamRecorder.MAGIC) {
+                if (!_fill() || _buffer[_pos++] != b) {
+                    throw new IOException("The stream is not a recorded event stream");
+                }
+            }
+            if (!_fill() || _buffer[_pos++] != EventStreamRecorder.VERSION) {
+                throw new IOException("Unsupported event stream version");
+            }
+            int openMaps = 0;
+            while (_fill()) {
+                final byte event = _buffer[_pos++];
+                if (!MapHandlerEvents.isValid(event)) {
+                    throw new IOException("Illegal event " + event);
+                }
+                if (event == MapHandlerEvents.START_TOPIC_MAP) {
+                    openMaps++;
+                }
+                else if (event == MapHandlerEvents.END_TOPIC_MAP) {
+                    openMaps--;
+                }
+                final int args = MapHandlerEvents.argumentCount(event);
+                final String arg = args > 0 ? _readString() : null;
+                final String arg2 = args > 1 ? _readString() : null;
+                MapHandlerEvents.fire(handler, event, arg, arg2);
+            }
+            if (openMaps != 0) {
+                throw new IOException("Unexpected end of the event stream");
+            }
+        }
+
+        /**
+         * Ensures that at least one byte is available.
+         *
+         * @return {@code false} if the end of the stream was reached.
+         */
+        private boolean _fill() throws IOException {
+            if (_pos < _limit) {
+                return true;
+            }
+            _pos = 0;
+            _limit = 0;
+            int n = _in.read(_buffer);
+            while (n == 0) {
+                n = _in.read(_buffer);
+            }
+            if (n < 0) {
+                return false;
+            }
+            _limit = n;
+            return true;
+        }
+
+        private byte _readByte() throws IOException {
+            if (!_fill()) {
+                throw new IOException("Unexpected end of the event stream");
+            }
+            return _buffer[_pos++];
+        }
+
+        private int _readVarInt() throws IOException {
+            int result = 0;
+            for (int shift=0; shift < 32; shift += 7) {
+                final byte b = _readByte();
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        private String _readString() throws IOException {
+            final int n = _readVarInt();
+            if (n > 1) {
+                if (n - 2 >= _strings.size()) {
+                    throw new IOException("Illegal string reference " + (n - 2));
+                }
+                return _strings.get(n - 2);
+            }
+            final int length = _readVarInt();
+            final String value;
+            if (_limit - _pos >= length) {
+                value = new String(_buffer, _pos, length, EventStreamRecorder.UTF_8);
+                _pos += length;
+            }
+            else {
+                final byte[] bytes = new byte[length];
+                int off = 0;
+                while (off < length) {
+                    if (!_fill()) {
+                        throw new IOException("Unexpected end of the event stream");
+                    }
+                    final int len = Math.min(length - off, _limit - _pos);
+                    System.arraycopy(_buffer, _pos, bytes, off, len);
+                    _pos += len;
+                    off += len;
+                }
+                value = new String(bytes, EventStreamRecorder.UTF_8);
+            }
+            if (n == 1) {
+                _strings.add(value);
+            }
+            return value;
+        }
+    }
+
+}
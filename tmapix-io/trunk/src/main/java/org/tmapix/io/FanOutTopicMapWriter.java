@@ -0,0 +1,319 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.tmapi.core.TMAPIException;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.TopicMapSystem;
+import org.tmapi.core.TopicMapSystemFactory;
+import org.tmapix.io.internal.utils.CopyUtils;
+
+/**
+ * {@link TopicMapWriter} implementation which serializes a topic map with 
+ * several writers at once (i.e. XTM 2.1, JTM and CTM).
+ * <p>
+ * By default, the topic map is read exactly once: All constructs are copied 
+ * into an in-memory topic map and the writers serialize the copy. This avoids
+ * that each writer reads the constructs from a topic map with expensive 
+ * getters (i.e. a database backed topic map). The writers share one 
+ * {@link IndexSnapshot} of the copy. If the topic map contains a topic 
+ * without any identity, the writers serialize the topic map itself since 
+ * the in-memory topic map would add a generated item identifier to the copy
+ * of the topic.
+ * </p>
+ * <p>
+ * Each writer should write into its own stream. The writers may run in 
+ * parallel (see {@link #setParallelism(int)}), the writers must not modify
+ * the topic map in this case (i.e. a {@link CXTMTopicMapWriter} with a
+ * {@link CXTMTopicMapWriter.DuplicateRemover}).
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class FanOutTopicMapWriter implements TopicMapWriter {
+
+    private static final String _COPY_IRI = "urn:x-tmapix:fanout";
+
+    private final List<TopicMapWriter> _writers;
+    private int _parallelism;
+    private boolean _copy;
+
+    /**
+     * Creates a writer which delegates to the provided writers.
+     *
+     * @param writers The writers.
+     */
+    public FanOutTopicMapWriter(final TopicMapWriter... writers) {
+        _writers = new ArrayList<TopicMapWriter>(writers.length);
+        for (TopicMapWriter writer: writers) {
+            add(writer);
+        }
+        _parallelism = 1;
+        _copy = true;
+    }
+
+    /**
+     * Adds a writer.
+     *
+     * @param writer The writer to add.
+     */
+    public void add(final TopicMapWriter writer) {
+        if (writer == null) {
+            throw new IllegalArgumentException("The writer must not be null");
+        }
+        _writers.add(writer);
+    }
+
+    /**
+     * Sets the number of writers which are executed in parallel.
+     *
+     * @param parallelism The number of threads, <tt>1</tt> (default) 
+     *          executes the writers one after another.
+     */
+    public void setParallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be greater than zero");
+        }
+        _parallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of writers which are executed in parallel.
+     *
+     * @return The parallelism, <tt>1</tt> indicates the sequential mode.
+     */
+    public int getParallelism() {
+        return _parallelism;
+    }
+
+    /**
+     * Sets if the topic map should be copied into an in-memory topic map
+     * before it is serialized.
+     * <p>
+     * The copy can be disabled if the getters of the topic map are cheap,
+     * the writers read from the topic map directly in this case.
+     * </p>
+     *
+     * @param copy {@code true} to serialize a copy (default), otherwise 
+     *          {@code false}.
+     */
+    public void setCopy(final boolean copy) {
+        _copy = copy;
+    }
+
+    /**
+     * Returns if the topic map is copied before it is serialized.
+     *
+     * @return {@code true} if the topic map is copied, otherwise {@code false}.
+     */
+    public boolean getCopy() {
+        return _copy;
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapix.io.TopicMapWriter#write(org.tmapi.core.TopicMap)
+     */
+    @Override
+    public void write(final TopicMap topicMap) throws IOException {
+        if (!_copy) {
+            _write(topicMap);
+            return;
+        }
+        final TopicMapSystem sys;
+        final TopicMap copy;
+        try {
+            sys = TopicMapSystemFactory.newInstance().newTopicMapSystem();
+            copy = sys.createTopicMap(_COPY_IRI);
+        }
+        catch (TMAPIException ex) {
+            throw new IOException("Cannot create the in-memory topic map: " + ex.getMessage(), ex);
+        }
+        boolean copied = false;
+        try {
+            copied = CopyUtils.copyIdentified(topicMap, copy);
+            if (copied) {
+                _write(copy);
+            }
+        }
+        finally {
+            sys.close();
+        }
+        if (!copied) {
+            _write(topicMap);
+        }
+    }
+
+    /**
+     * Serializes the topic map with all writers. The writers which support
+     * an {@link IndexSnapshot} receive a shared snapshot of the topic map.
+     */
+    private void _write(final TopicMap topicMap) throws IOException {
+        final IndexSnapshot snapshot = IndexSnapshot.create(topicMap);
+        final IndexSnapshot[] previous = new IndexSnapshot[_writers.size()];
+        for (int i=0; i < previous.length; i++) {
+            previous[i] = _setIndexSnapshot(_writers.get(i), snapshot);
+        }
+        try {
+            final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(_writers.size());
+            for (final TopicMapWriter writer: _writers) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        writer.write(topicMap);
+                        return null;
+                    }
+                });
+            }
+            _execute(tasks);
+        }
+        finally {
+            for (int i=0; i < previous.length; i++) {
+                _setIndexSnapshot(_writers.get(i), previous[i]);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapix.io.TopicMapWriter#write(org.tmapi.core.Topic[])
+     */
+    @Override
+    public void write(final Topic... topics) throws IOException {
+        write(Arrays.asList(topics));
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapix.io.TopicMapWriter#write(java.lang.Iterable)
+     */
+    @Override
+    public void write(final Iterable<Topic> topics) throws IOException {
+        final List<Topic> fragment = new ArrayList<Topic>();
+        for (Topic topic: topics) {
+            fragment.add(topic);
+        }
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(_writers.size());
+        for (final TopicMapWriter writer: _writers) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    writer.write(fragment);
+                    return null;
+                }
+            });
+        }
+        _execute(tasks);
+    }
+
+    /**
+     * Executes the tasks, either one after another or in parallel.
+     */
+    private void _execute(final List<Callable<Void>> tasks) throws IOException {
+        if (_parallelism == 1 || tasks.size() < 2) {
+            for (Callable<Void> task: tasks) {
+                _call(task);
+            }
+            return;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(_parallelism, tasks.size()));
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>(tasks.size());
+            for (Callable<Void> task: tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<Void> future: futures) {
+                _get(future);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void _call(final Callable<Void> task) throws IOException {
+        try {
+            task.call();
+        }
+        catch (IOException ex) {
+            throw ex;
+        }
+        catch (RuntimeException ex) {
+            throw ex;
+        }
+        catch (Exception ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    private static void _get(final Future<Void> future) throws IOException {
+        try {
+            future.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the writers", ex);
+        }
+        catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Sets the snapshot if the writer supports it.
+     *
+     * @return The previous snapshot of the writer.
+     */
+    private static IndexSnapshot _setIndexSnapshot(final TopicMapWriter writer, final IndexSnapshot snapshot) {
+        IndexSnapshot previous = null;
+        if (writer instanceof AbstractBaseTextualTopicMapWriter) {
+            final AbstractBaseTextualTopicMapWriter w = (AbstractBaseTextualTopicMapWriter) writer;
+            previous = w.getIndexSnapshot();
+            w.setIndexSnapshot(snapshot);
+        }
+        else if (writer instanceof JTMTopicMapWriter) {
+            final JTMTopicMapWriter w = (JTMTopicMapWriter) writer;
+            previous = w.getIndexSnapshot();
+            w.setIndexSnapshot(snapshot);
+        }
+        else if (writer instanceof CXTMTopicMapWriter) {
+            final CXTMTopicMapWriter w = (CXTMTopicMapWriter) writer;
+            previous = w.getIndexSnapshot();
+            w.setIndexSnapshot(snapshot);
+        }
+        return previous;
+    }
+
+}
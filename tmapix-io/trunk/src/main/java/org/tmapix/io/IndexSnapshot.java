@@ -0,0 +1,299 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Role;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.Variant;
+import org.tmapi.index.ScopedIndex;
+import org.tmapi.index.TypeInstanceIndex;
+
+/**
+ * Provides the type-instance and scope information of a topic map which is
+ * needed by the {@link CTMTopicMapWriter}, {@link LTMTopicMapWriter},
+ * {@link JTMTopicMapWriter} and {@link CXTMTopicMapWriter}.
+ * <p>
+ * If the {@link TypeInstanceIndex} and the {@link ScopedIndex} of the 
+ * Topic Maps engine are auto-updated, the snapshot delegates to these 
+ * indexes. Otherwise the information is collected in one pass over the 
+ * topic map; the snapshot reflects the state of the topic map at creation 
+ * time in this case and must be recreated after the topic map was modified.
+ * </p>
+ * <p>
+ * A snapshot can be passed to several writers, i.e. to export a topic map 
+ * into different syntaxes, so the indexes are built once.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class IndexSnapshot {
+
+    private final TopicMap _topicMap;
+    private final TypeInstanceIndex _typeInstanceIndex;
+    private final ScopedIndex _scopedIndex;
+    private final Map<Topic, List<Topic>> _type2Instances;
+    private final Map<Topic, List<Association>> _type2Associations;
+    private final Set<Topic> _roleTypes;
+    private final Set<Topic> _occurrenceTypes;
+    private final Set<Topic> _nameTypes;
+    private final Set<Topic> _associationThemes;
+    private final Set<Topic> _occurrenceThemes;
+    private final Set<Topic> _nameThemes;
+    private final Set<Topic> _variantThemes;
+
+    private IndexSnapshot(final TopicMap topicMap, final TypeInstanceIndex typeInstanceIndex,
+            final ScopedIndex scopedIndex) {
+        _topicMap = topicMap;
+        _typeInstanceIndex = typeInstanceIndex;
+        _scopedIndex = scopedIndex;
+        _type2Instances = new HashMap<Topic, List<Topic>>();
+        _type2Associations = new HashMap<Topic, List<Association>>();
+        _roleTypes = new HashSet<Topic>();
+        _occurrenceTypes = new HashSet<Topic>();
+        _nameTypes = new HashSet<Topic>();
+        _associationThemes = new HashSet<Topic>();
+        _occurrenceThemes = new HashSet<Topic>();
+        _nameThemes = new HashSet<Topic>();
+        _variantThemes = new HashSet<Topic>();
+    }
+
+    /**
+     * Creates a snapshot of the provided topic map.
+     *
+     * @param topicMap The topic map.
+     * @return A snapshot of the topic map.
+     */
+    public static IndexSnapshot create(final TopicMap topicMap) {
+        if (topicMap == null) {
+            throw new IllegalArgumentException("The topic map must not be null");
+        }
+        final TypeInstanceIndex typeInstanceIndex = topicMap.getIndex(TypeInstanceIndex.class);
+        final ScopedIndex scopedIndex = topicMap.getIndex(ScopedIndex.class);
+        if (typeInstanceIndex.isAutoUpdated() && scopedIndex.isAutoUpdated()) {
+            if (!typeInstanceIndex.isOpen()) {
+                typeInstanceIndex.open();
+            }
+            if (!scopedIndex.isOpen()) {
+                scopedIndex.open();
+            }
+            return new IndexSnapshot(topicMap, typeInstanceIndex, scopedIndex);
+        }
+        return collect(topicMap);
+    }
+
+    /**
+     * Creates a snapshot of the provided topic map by one pass over the
+     * topics and associations.
+     *
+     * @param topicMap The topic map.
+     * @return A snapshot of the topic map.
+     */
+    static IndexSnapshot collect(final TopicMap topicMap) {
+        final IndexSnapshot snapshot = new IndexSnapshot(topicMap, null, null);
+        snapshot._collect();
+        return snapshot;
+    }
+
+    /**
+     * Returns the snapshot to use for the provided topic map.
+     *
+     * @param snapshot A snapshot or {@code null}.
+     * @param topicMap The topic map.
+     * @return The provided snapshot if it belongs to the topic map, 
+     *          otherwise a new snapshot.
+     */
+    static IndexSnapshot get(final IndexSnapshot snapshot, final TopicMap topicMap) {
+        return snapshot != null && snapshot._topicMap.equals(topicMap) 
+                    ? snapshot
+                    : create(topicMap);
+    }
+
+    private void _collect() {
+        for (Topic topic: _topicMap.getTopics()) {
+            for (Topic type: topic.getTypes()) {
+                _add(_type2Instances, type, topic);
+            }
+            for (Name name: topic.getNames()) {
+                _nameTypes.add(name.getType());
+                _nameThemes.addAll(name.getScope());
+                for (Variant variant: name.getVariants()) {
+                    _variantThemes.addAll(variant.getScope());
+                }
+            }
+            for (Occurrence occ: topic.getOccurrences()) {
+                _occurrenceTypes.add(occ.getType());
+                _occurrenceThemes.addAll(occ.getScope());
+            }
+        }
+        for (Association assoc: _topicMap.getAssociations()) {
+            _add(_type2Associations, assoc.getType(), assoc);
+            _associationThemes.addAll(assoc.getScope());
+            for (Role role: assoc.getRoles()) {
+                _roleTypes.add(role.getType());
+            }
+        }
+    }
+
+    private static <T> void _add(final Map<Topic, List<T>> map, final Topic key, final T value) {
+        List<T> values = map.get(key);
+        if (values == null) {
+            values = new ArrayList<T>();
+            map.put(key, values);
+        }
+        values.add(value);
+    }
+
+    private static <T> Collection<T> _get(final Map<Topic, List<T>> map, final Topic key) {
+        final List<T> values = map.get(key);
+        return values == null ? Collections.<T>emptyList() : Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Returns the topic map this snapshot belongs to.
+     *
+     * @return The topic map.
+     */
+    public TopicMap getTopicMap() {
+        return _topicMap;
+    }
+
+    /**
+     * Returns the topics which are used as topic types.
+     *
+     * @return An unmodifiable collection of topic types.
+     */
+    public Collection<Topic> getTopicTypes() {
+        return _typeInstanceIndex != null ? _typeInstanceIndex.getTopicTypes()
+                                          : Collections.unmodifiableSet(_type2Instances.keySet());
+    }
+
+    /**
+     * Returns the instances of the provided topic type.
+     *
+     * @param type The topic type.
+     * @return An unmodifiable collection of topics.
+     */
+    public Collection<Topic> getTopics(final Topic type) {
+        return _typeInstanceIndex != null ? _typeInstanceIndex.getTopics(type)
+                                          : _get(_type2Instances, type);
+    }
+
+    /**
+     * Returns the topics which are used as association types.
+     *
+     * @return An unmodifiable collection of association types.
+     */
+    public Collection<Topic> getAssociationTypes() {
+        return _typeInstanceIndex != null ? _typeInstanceIndex.getAssociationTypes()
+                                          : Collections.unmodifiableSet(_type2Associations.keySet());
+    }
+
+    /**
+     * Returns the associations of the provided type.
+     *
+     * @param type The association type.
+     * @return An unmodifiable collection of associations.
+     */
+    public Collection<Association> getAssociations(final Topic type) {
+        return _typeInstanceIndex != null ? _typeInstanceIndex.getAssociations(type)
+                                          : _get(_type2Associations, type);
+    }
+
+    /**
+     * Returns the topics which are used as role types.
+     *
+     * @return An unmodifiable collection of role types.
+     */
+    public Collection<Topic> getRoleTypes() {
+        return _typeInstanceIndex != null ? _typeInstanceIndex.getRoleTypes()
+                                          : Collections.unmodifiableSet(_roleTypes);
+    }
+
+    /**
+     * Returns the topics which are used as occurrence types.
+     *
+     * @return An unmodifiable collection of occurrence types.
+     */
+    public Collection<Topic> getOccurrenceTypes() {
+        return _typeInstanceIndex != null ? _typeInstanceIndex.getOccurrenceTypes()
+                                          : Collections.unmodifiableSet(_occurrenceTypes);
+    }
+
+    /**
+     * Returns the topics which are used as name types.
+     *
+     * @return An unmodifiable collection of name types.
+     */
+    public Collection<Topic> getNameTypes() {
+        return _typeInstanceIndex != null ? _typeInstanceIndex.getNameTypes()
+                                          : Collections.unmodifiableSet(_nameTypes);
+    }
+
+    /**
+     * Returns the topics which are used as themes of associations.
+     *
+     * @return An unmodifiable collection of themes.
+     */
+    public Collection<Topic> getAssociationThemes() {
+        return _scopedIndex != null ? _scopedIndex.getAssociationThemes()
+                                    : Collections.unmodifiableSet(_associationThemes);
+    }
+
+    /**
+     * Returns the topics which are used as themes of occurrences.
+     *
+     * @return An unmodifiable collection of themes.
+     */
+    public Collection<Topic> getOccurrenceThemes() {
+        return _scopedIndex != null ? _scopedIndex.getOccurrenceThemes()
+                                    : Collections.unmodifiableSet(_occurrenceThemes);
+    }
+
+    /**
+     * Returns the topics which are used as themes of names.
+     *
+     * @return An unmodifiable collection of themes.
+     */
+    public Collection<Topic> getNameThemes() {
+        return _scopedIndex != null ? _scopedIndex.getNameThemes()
+                                    : Collections.unmodifiableSet(_nameThemes);
+    }
+
+    /**
+     * Returns the topics which are used as themes of variants.
+     *
+     * @return An unmodifiable collection of themes.
+     */
+    public Collection<Topic> getVariantThemes() {
+        return _scopedIndex != null ? _scopedIndex.getVariantThemes()
+                                    : Collections.unmodifiableSet(_variantThemes);
+    }
+
+}
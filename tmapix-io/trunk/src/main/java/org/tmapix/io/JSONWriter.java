@@ -15,9 +15,11 @@
  */
 package org.tmapix.io;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 import java.util.Arrays;
 
@@ -31,13 +33,13 @@ import java.util.Arrays;
  */
 final class JSONWriter {
 
-    private OutputStreamWriter _out;
+    private Writer _out;
     private boolean _wantComma;
     private int _depth;
     private boolean _prettify;
 
     public JSONWriter(OutputStream out, String encoding) throws IOException {
-        _out = new OutputStreamWriter(out, encoding);
+        _out = new BufferedWriter(new OutputStreamWriter(out, encoding));
     }
 
     /**
@@ -34,7 +34,6 @@ import org.tmapi.core.Topic;
 import org.tmapi.core.TopicMap;
 import org.tmapi.core.Typed;
 import org.tmapi.core.Variant;
-import org.tmapi.index.TypeInstanceIndex;
 import org.tmapix.voc.TMDM;
 import org.tmapix.voc.XSD;
 
@@ -56,6 +55,7 @@ public class JTMTopicMapWriter implements TopicMapWriter {
     private String _baseIRI;
     private Topic _defaultNameType;
     private boolean _exportIIds = true;
+    private IndexSnapshot _indexSnapshot;
 
     /**
      * Creates a JTM writer, using "utf-8" encoding.
@@ -126,6 +126,29 @@ public class JTMTopicMapWriter implements TopicMapWriter {
         _exportIIds = export;
     }
 
+    /**
+     * Sets the index snapshot which provides the type-instance information
+     * of the topic map.
+     * <p>
+     * The snapshot is used if it belongs to the topic map which is written,
+     * otherwise the writer creates a snapshot for each written topic map.
+     * </p>
+     *
+     * @param snapshot The snapshot or {@code null}.
+     */
+    public void setIndexSnapshot(final IndexSnapshot snapshot) {
+        _indexSnapshot = snapshot;
+    }
+
+    /**
+     * Returns the index snapshot.
+     *
+     * @return The index snapshot or {@code null} if no snapshot was set.
+     */
+    public IndexSnapshot getIndexSnapshot() {
+        return _indexSnapshot;
+    }
+
     @Override
     public void write(Iterable<Topic> topics) throws IOException {
     	List<Topic> tl = new ArrayList<Topic>();
@@ -168,25 +191,34 @@ public class JTMTopicMapWriter implements TopicMapWriter {
             _writeAssociation(assoc);
         }
         // Write type-instance relationships
-        final TypeInstanceIndex tiIdx = topicMap.getIndex(TypeInstanceIndex.class);
-        if (!tiIdx.isOpen()) {
-            tiIdx.open();
-        }
-        if (!tiIdx.isAutoUpdated()) {
-            tiIdx.reindex();
-        }
+        final IndexSnapshot idx = IndexSnapshot.get(_indexSnapshot, topicMap);
         for(Topic type : topics) {
         	for(Topic typeType : type.getTypes())
         		_writeTypeInstance(typeType, type);
-	       	for(Topic instance : tiIdx.getTopics(type))
+	       	for(Topic instance : idx.getTopics(type))
 	            _writeTypeInstance(type, instance);
     	}
-        tiIdx.close();
         _out.endArray();
         _out.endObject();
         _out.endDocument();
     }
 
+    /**
+     * Writes the topics and associations which were created or modified
+     * since the last checkpoint of the provided tracker.
+     * <p>
+     * The result is a JTM document which contains the delta (see 
+     * {@link TopicMapDelta}). Read the document into an empty topic map
+     * and apply it with {@link TopicMapDelta#apply(TopicMap, TopicMap)}.
+     * </p>
+     *
+     * @param tracker The change tracker.
+     * @throws IOException If an error occurs.
+     */
+    public void writeDelta(final ChangeTracker tracker) throws IOException {
+        TopicMapDelta.write(tracker, this);
+    }
+
     /* (non-Javadoc)
      * @see org.tinytim.mio.TopicMapWriter#write(org.tmapi.core.TopicMap)
      */
@@ -211,19 +243,12 @@ public class JTMTopicMapWriter implements TopicMapWriter {
             _writeAssociation(assoc);
         }
         // Write type-instance relationships
-        final TypeInstanceIndex tiIdx = topicMap.getIndex(TypeInstanceIndex.class);
-        if (!tiIdx.isOpen()) {
-            tiIdx.open();
-        }
-        if (!tiIdx.isAutoUpdated()) {
-            tiIdx.reindex();
-        }
-        for (Topic type: tiIdx.getTopicTypes()) {
-            for (Topic instance: tiIdx.getTopics(type)) {
+        final IndexSnapshot idx = IndexSnapshot.get(_indexSnapshot, topicMap);
+        for (Topic type: idx.getTopicTypes()) {
+            for (Topic instance: idx.getTopics(type)) {
                 _writeTypeInstance(type, instance);
             }
         }
-        tiIdx.close();
         _out.endArray();
         _out.endObject();
         _out.endDocument();
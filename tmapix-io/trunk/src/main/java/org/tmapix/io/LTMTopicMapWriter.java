@@ -35,8 +35,6 @@ import org.tmapi.core.Scoped;
 import org.tmapi.core.Topic;
 import org.tmapi.core.TopicMap;
 import org.tmapi.core.Variant;
-import org.tmapi.index.ScopedIndex;
-import org.tmapi.index.TypeInstanceIndex;
 
 import org.tmapix.voc.TMDM;
 import org.tmapix.voc.XSD;
@@ -134,37 +132,22 @@ public class LTMTopicMapWriter extends AbstractBaseTextualTopicMapWriter {
             topics.remove(topicMap.getReifier());
         }
         _writeSection("ONTOLOGY");
-        final TypeInstanceIndex tiIdx = topicMap.getIndex(TypeInstanceIndex.class);
-        if (!tiIdx.isOpen()) {
-            tiIdx.open();
-        }
-        if (!tiIdx.isAutoUpdated()) {
-            tiIdx.reindex();
-        }
-        _writeOntologySection(tiIdx.getTopicTypes(), topics, "Topic Types");
-        _writeOntologySection(tiIdx.getAssociationTypes(), topics, "Association Types");
-        _writeOntologySection(tiIdx.getRoleTypes(), topics, "Role Types");
-        _writeOntologySection(tiIdx.getOccurrenceTypes(), topics, "Occurrence Types");
-        Collection<Topic> nameTypes = tiIdx.getNameTypes();
+        final IndexSnapshot idx = super.getIndexSnapshot(topicMap);
+        _writeOntologySection(idx.getTopicTypes(), topics, "Topic Types");
+        _writeOntologySection(idx.getAssociationTypes(), topics, "Association Types");
+        _writeOntologySection(idx.getRoleTypes(), topics, "Role Types");
+        _writeOntologySection(idx.getOccurrenceTypes(), topics, "Occurrence Types");
+        Collection<Topic> nameTypes = idx.getNameTypes();
         if (omitDefaultNameType) {
             // Need a copy since the returned collection is read-only
             nameTypes = new ArrayList<Topic>(nameTypes);
             nameTypes.remove(_defaultNameType);
         }
         _writeOntologySection(nameTypes, topics, "Name Types");
-        tiIdx.close();
-        final ScopedIndex scopedIdx = topicMap.getIndex(ScopedIndex.class);
-        if (!scopedIdx.isOpen()) {
-            scopedIdx.open();
-        }
-        if (!scopedIdx.isAutoUpdated()) {
-            scopedIdx.reindex();
-        }
-        _writeOntologySection(scopedIdx.getAssociationThemes(), topics, "Association Themes");
-        _writeOntologySection(scopedIdx.getOccurrenceThemes(), topics, "Occurrence Themes");
-        _writeOntologySection(scopedIdx.getNameThemes(), topics, "Name Themes");
-        _writeOntologySection(scopedIdx.getVariantThemes(), topics, "Variant Themes");
-        scopedIdx.close();
+        _writeOntologySection(idx.getAssociationThemes(), topics, "Association Themes");
+        _writeOntologySection(idx.getOccurrenceThemes(), topics, "Occurrence Themes");
+        _writeOntologySection(idx.getNameThemes(), topics, "Name Themes");
+        _writeOntologySection(idx.getVariantThemes(), topics, "Variant Themes");
         _writeSection("INSTANCES");
         _writeSection("Topics");
         _writeTopics(topics);
@@ -65,4 +65,24 @@ public class MapHandlerFactory {
         return TMAPIChooser.createTMAPIMapHandler(topicMap);
     }
 
+    /**
+     * Creates a {@link IMapHandler} that works upon TMAPI and which is 
+     * optimized for bulk imports.
+     * <p>
+     * The returned {@link IMapHandler} collects the identities of the topics
+     * and merges topics which represent the same subject when the end of 
+     * the topic map is reached. Each topic is merged at most once. Until
+     * the import has been finished, the topic map may contain topics which 
+     * represent the same subject.
+     * </p>
+     * 
+     * @see #createTMAPIMapHandler(TopicMap)
+     * 
+     * @param topicMap A topic map.
+     * @return A {@link IMapHandler} instance that acts upon the specified topic map.
+     */
+    public static IMapHandler createBulkTMAPIMapHandler(final TopicMap topicMap) {
+        return TMAPIChooser.createBulkTMAPIMapHandler(topicMap);
+    }
+
 }
@@ -0,0 +1,492 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Construct;
+import org.tmapi.core.Locator;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Reifiable;
+import org.tmapi.core.Role;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.Variant;
+
+/**
+ * Read-only, random access view on a binary topic map which was written by
+ * the {@link BinaryTopicMapWriter} in indexed mode.
+ * <p>
+ * The file is memory-mapped, lookups by subject identifier, subject locator
+ * and item identifier are binary searches over the sorted identity indexes
+ * of the file. Topics are materialized into the provided topic map on first
+ * access: The requested topic is created with its types, names and
+ * occurrences, the topics which are referenced by these characteristics
+ * are created with their identities only. The associations played by a
+ * topic are materialized by {@link #loadAssociations(Topic)}.
+ * </p>
+ * <p>
+ * The provided topic map should be empty and must not be modified by other
+ * means; files larger than 2 GB are not supported.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class MappedTopicMapStore {
+
+    private static final int _NOT_FOUND = Integer.MIN_VALUE;
+    private static final int _SECTION_COUNT = BinaryTopicMapFormat.ROLES_PLAYED + 1;
+    private static final int[] _EMPTY = new int[0];
+
+    private final TopicMap _topicMap;
+    private final ByteBuffer _buf;
+    private final int[] _sectionOffsets;
+    private final int[] _sectionLengths;
+    private final int _topicCount;
+    private final int _assocCount;
+    private final Map<Integer, Topic> _topics;
+    private final Map<Topic, Integer> _topic2Index;
+    private final BitSet _loadedTopics;
+    private final BitSet _loadedAssocs;
+    private int _pos;
+
+    private MappedTopicMapStore(final TopicMap topicMap, final ByteBuffer buf) throws IOException {
+        _topicMap = topicMap;
+        _buf = buf;
+        _sectionOffsets = new int[_SECTION_COUNT];
+        _sectionLengths = new int[_SECTION_COUNT];
+        _readSectionDirectory();
+        _topicCount = _sectionLengths[BinaryTopicMapFormat.TOPIC_OFFSETS] / 8;
+        _assocCount = _sectionLengths[BinaryTopicMapFormat.ASSOCIATION_OFFSETS] / 4;
+        _topics = new HashMap<Integer, Topic>();
+        _topic2Index = new HashMap<Topic, Integer>();
+        _loadedTopics = new BitSet(_topicCount);
+        _loadedAssocs = new BitSet(_assocCount);
+        _pos = _sectionOffsets[BinaryTopicMapFormat.TOPIC_MAP];
+        _setReifier(_topicMap);
+        _addItemIdentifiers(_topicMap);
+    }
+
+    /**
+     * Opens a binary topic map.
+     *
+     * @param topicMap The (empty) topic map which receives the materialized
+     *          topics and associations.
+     * @param file A file which was written by the {@link BinaryTopicMapWriter}
+     *          in indexed mode.
+     * @return A store.
+     * @throws IOException If the file cannot be read or if the file contains
+     *          no indexes.
+     */
+    public static MappedTopicMapStore open(final TopicMap topicMap, final File file) throws IOException {
+        if (topicMap == null) {
+            throw new IllegalArgumentException("The topic map must not be null");
+        }
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Files larger than 2 GB are not supported");
+            }
+            // The mapping stays valid after the channel was closed
+            return new MappedTopicMapStore(topicMap,
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the topic map which contains the materialized constructs.
+     *
+     * @return The topic map.
+     */
+    public TopicMap getTopicMap() {
+        return _topicMap;
+    }
+
+    /**
+     * Returns the number of topics in the file.
+     *
+     * @return The number of topics.
+     */
+    public int getTopicCount() {
+        return _topicCount;
+    }
+
+    /**
+     * Returns the number of associations in the file.
+     *
+     * @return The number of associations.
+     */
+    public int getAssociationCount() {
+        return _assocCount;
+    }
+
+    /**
+     * Returns the topic with the provided subject identifier.
+     *
+     * @param iri The subject identifier (external form).
+     * @return The topic or {@code null} if no topic with the subject identifier exists.
+     */
+    public Topic getTopicBySubjectIdentifier(final String iri) {
+        final int owner = _find(BinaryTopicMapFormat.SUBJECT_IDENTIFIER_INDEX, iri);
+        return owner == _NOT_FOUND ? null : _loadTopic(owner);
+    }
+
+    /**
+     * Returns the topic with the provided subject locator.
+     *
+     * @param iri The subject locator (external form).
+     * @return The topic or {@code null} if no topic with the subject locator exists.
+     */
+    public Topic getTopicBySubjectLocator(final String iri) {
+        final int owner = _find(BinaryTopicMapFormat.SUBJECT_LOCATOR_INDEX, iri);
+        return owner == _NOT_FOUND ? null : _loadTopic(owner);
+    }
+
+    /**
+     * Returns the construct with the provided item identifier.
+     * <p>
+     * If the construct is a characteristic of a topic, the topic is
+     * materialized; if the construct is a role, the association is
+     * materialized.
+     * </p>
+     *
+     * @param iri The item identifier (external form).
+     * @return The construct or {@code null} if no construct with the item
+     *          identifier exists.
+     */
+    public Construct getConstructByItemIdentifier(final String iri) {
+        final int owner = _find(BinaryTopicMapFormat.ITEM_IDENTIFIER_INDEX, iri);
+        if (owner >= 0) {
+            _loadTopic(owner);
+        }
+        else if (owner != _NOT_FOUND) {
+            _loadAssociation(-(owner + 1));
+        }
+        // The item identifiers of the topic map are loaded eagerly
+        return _topicMap.getConstructByItemIdentifier(_topicMap.createLocator(iri));
+    }
+
+    /**
+     * Materializes the associations played by the provided topic.
+     * <p>
+     * Afterwards, {@link Topic#getRolesPlayed()} returns all roles of the
+     * topic.
+     * </p>
+     *
+     * @param topic A topic which was materialized by this store.
+     */
+    public void loadAssociations(final Topic topic) {
+        final Integer idx = _topic2Index.get(topic);
+        if (idx == null) {
+            throw new IllegalArgumentException("The topic was not materialized by this store");
+        }
+        final int offset = _sectionOffsets[BinaryTopicMapFormat.ROLES_PLAYED];
+        final int start = _buf.getInt(offset + idx.intValue() * 4);
+        final int end = _buf.getInt(offset + (idx.intValue() + 1) * 4);
+        final int assocs = offset + (_topicCount + 1) * 4;
+        for (int i=start; i < end; i++) {
+            _loadAssociation(_buf.getInt(assocs + i * 4));
+        }
+    }
+
+    /**
+     * Reads the offsets and lengths of the sections.
+     */
+    private void _readSectionDirectory() throws IOException {
+        final int magicLength = BinaryTopicMapFormat.MAGIC.length;
+        if (_buf.limit() < magicLength + 1) {
+            throw new IOException("The file is not a binary topic map");
+        }
+        for (int i=0; i < magicLength; i++) {
+            if (_buf.get(i) != BinaryTopicMapFormat.MAGIC[i]) {
+                throw new IOException("The file is not a binary topic map");
+            }
+        }
+        if (_buf.get(magicLength) != BinaryTopicMapFormat.VERSION) {
+            throw new IOException("Unsupported binary topic map version");
+        }
+        Arrays.fill(_sectionOffsets, -1);
+        int pos = magicLength + 1;
+        while (true) {
+            if (pos + 5 > _buf.limit()) {
+                throw new IOException("Unexpected end of the binary topic map");
+            }
+            final int code = _buf.get(pos) & 0xFF;
+            final int length = _buf.getInt(pos + 1);
+            pos += 5;
+            if (length < 0 || pos + length > _buf.limit()) {
+                throw new IOException("Illegal length of section " + code);
+            }
+            if (code == BinaryTopicMapFormat.END) {
+                break;
+            }
+            if (code < _SECTION_COUNT) {
+                _sectionOffsets[code] = pos;
+                _sectionLengths[code] = length;
+            }
+            pos += length;
+        }
+        for (int code: new int[] {BinaryTopicMapFormat.LOCATORS, BinaryTopicMapFormat.STRINGS,
+                                  BinaryTopicMapFormat.TOPICS, BinaryTopicMapFormat.TOPIC_MAP,
+                                  BinaryTopicMapFormat.CHARACTERISTICS, BinaryTopicMapFormat.ASSOCIATIONS,
+                                  BinaryTopicMapFormat.LOCATOR_OFFSETS, BinaryTopicMapFormat.STRING_OFFSETS,
+                                  BinaryTopicMapFormat.TOPIC_OFFSETS, BinaryTopicMapFormat.ASSOCIATION_OFFSETS,
+                                  BinaryTopicMapFormat.ITEM_IDENTIFIER_INDEX,
+                                  BinaryTopicMapFormat.SUBJECT_IDENTIFIER_INDEX,
+                                  BinaryTopicMapFormat.SUBJECT_LOCATOR_INDEX,
+                                  BinaryTopicMapFormat.ROLES_PLAYED}) {
+            if (_sectionOffsets[code] < 0) {
+                throw new IOException("The binary topic map contains no indexes, section " + code + " is missing");
+            }
+        }
+    }
+
+    /**
+     * Returns the owner of the provided IRI or {@link #_NOT_FOUND}.
+     */
+    private int _find(final int index, final String iri) {
+        final int offset = _sectionOffsets[index];
+        int low = 0;
+        int high = _sectionLengths[index] / 8 - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int entry = offset + mid * 8;
+            final int cmp = _locator(_buf.getInt(entry)).compareTo(iri);
+            if (cmp < 0) {
+                low = mid + 1;
+            }
+            else if (cmp > 0) {
+                high = mid - 1;
+            }
+            else {
+                return _buf.getInt(entry + 4);
+            }
+        }
+        return _NOT_FOUND;
+    }
+
+    /**
+     * Returns the topic with the provided index. The topic is created with
+     * its identities if it does not exist yet.
+     */
+    private Topic _topic(final int idx) {
+        final Integer key = Integer.valueOf(idx);
+        Topic topic = _topics.get(key);
+        if (topic != null) {
+            return topic;
+        }
+        final int pos = _pos;
+        _pos = _sectionOffsets[BinaryTopicMapFormat.TOPICS]
+                + _buf.getInt(_sectionOffsets[BinaryTopicMapFormat.TOPIC_OFFSETS] + idx * 8);
+        final int[] iids = _readInts();
+        final int[] sids = _readInts();
+        final int[] slos = _readInts();
+        _pos = pos;
+        if (sids.length > 0) {
+            topic = _topicMap.createTopicBySubjectIdentifier(_createLocator(sids[0]));
+        }
+        else if (slos.length > 0) {
+            topic = _topicMap.createTopicBySubjectLocator(_createLocator(slos[0]));
+        }
+        else {
+            topic = _topicMap.createTopicByItemIdentifier(_createLocator(iids[0]));
+        }
+        for (int iid: iids) {
+            topic.addItemIdentifier(_createLocator(iid));
+        }
+        for (int sid: sids) {
+            topic.addSubjectIdentifier(_createLocator(sid));
+        }
+        for (int slo: slos) {
+            topic.addSubjectLocator(_createLocator(slo));
+        }
+        _topics.put(key, topic);
+        _topic2Index.put(topic, key);
+        return topic;
+    }
+
+    /**
+     * Returns the topic with the provided index, the characteristics of the
+     * topic are materialized if necessary.
+     */
+    private Topic _loadTopic(final int idx) {
+        final Topic topic = _topic(idx);
+        if (_loadedTopics.get(idx)) {
+            return topic;
+        }
+        _loadedTopics.set(idx);
+        _pos = _sectionOffsets[BinaryTopicMapFormat.CHARACTERISTICS]
+                + _buf.getInt(_sectionOffsets[BinaryTopicMapFormat.TOPIC_OFFSETS] + idx * 8 + 4);
+        for (int i=_readInt(); i > 0; i--) {
+            topic.addType(_topic(_readInt()));
+        }
+        for (int i=_readInt(); i > 0; i--) {
+            final int reifier = _readInt();
+            final int[] iids = _readInts();
+            final Topic type = _topic(_readInt());
+            final List<Topic> scope = _readScope();
+            final Name name = topic.createName(type, _string(_readInt()), scope);
+            _addItemIdentifiers(name, iids);
+            _setReifier(name, reifier);
+            for (int j=_readInt(); j > 0; j--) {
+                final int variantReifier = _readInt();
+                final int[] variantIids = _readInts();
+                final List<Topic> variantScope = _readScope();
+                final String value = _string(_readInt());
+                final Variant variant = name.createVariant(value, _createLocator(_readInt()), variantScope);
+                _addItemIdentifiers(variant, variantIids);
+                _setReifier(variant, variantReifier);
+            }
+        }
+        for (int i=_readInt(); i > 0; i--) {
+            final int reifier = _readInt();
+            final int[] iids = _readInts();
+            final Topic type = _topic(_readInt());
+            final List<Topic> scope = _readScope();
+            final String value = _string(_readInt());
+            final Occurrence occ = topic.createOccurrence(type, value, _createLocator(_readInt()), scope);
+            _addItemIdentifiers(occ, iids);
+            _setReifier(occ, reifier);
+        }
+        return topic;
+    }
+
+    /**
+     * Materializes the association with the provided index.
+     */
+    private void _loadAssociation(final int idx) {
+        if (_loadedAssocs.get(idx)) {
+            return;
+        }
+        _loadedAssocs.set(idx);
+        _pos = _sectionOffsets[BinaryTopicMapFormat.ASSOCIATIONS]
+                + _buf.getInt(_sectionOffsets[BinaryTopicMapFormat.ASSOCIATION_OFFSETS] + idx * 4);
+        final int reifier = _readInt();
+        final int[] iids = _readInts();
+        final Topic type = _topic(_readInt());
+        final Association assoc = _topicMap.createAssociation(type, _readScope());
+        _addItemIdentifiers(assoc, iids);
+        _setReifier(assoc, reifier);
+        for (int i=_readInt(); i > 0; i--) {
+            final int roleReifier = _readInt();
+            final int[] roleIids = _readInts();
+            final Topic roleType = _topic(_readInt());
+            final Role role = assoc.createRole(roleType, _topic(_readInt()));
+            _addItemIdentifiers(role, roleIids);
+            _setReifier(role, roleReifier);
+        }
+    }
+
+    private List<Topic> _readScope() {
+        final int count = _readInt();
+        final List<Topic> scope = new ArrayList<Topic>(count);
+        for (int i=0; i < count; i++) {
+            scope.add(_topic(_readInt()));
+        }
+        return scope;
+    }
+
+    private void _setReifier(final Reifiable reifiable) {
+        _setReifier(reifiable, _readInt());
+    }
+
+    private void _setReifier(final Reifiable reifiable, final int reifier) {
+        if (reifier > 0) {
+            reifiable.setReifier(_topic(reifier - 1));
+        }
+    }
+
+    private void _addItemIdentifiers(final Construct construct) {
+        _addItemIdentifiers(construct, _readInts());
+    }
+
+    private void _addItemIdentifiers(final Construct construct, final int[] iids) {
+        for (int iid: iids) {
+            construct.addItemIdentifier(_createLocator(iid));
+        }
+    }
+
+    private Locator _createLocator(final int idx) {
+        return _topicMap.createLocator(_locator(idx));
+    }
+
+    private String _locator(final int idx) {
+        return _tableEntry(BinaryTopicMapFormat.LOCATORS, BinaryTopicMapFormat.LOCATOR_OFFSETS, idx);
+    }
+
+    private String _string(final int idx) {
+        return _tableEntry(BinaryTopicMapFormat.STRINGS, BinaryTopicMapFormat.STRING_OFFSETS, idx);
+    }
+
+    private String _tableEntry(final int table, final int offsets, final int idx) {
+        final int pos = _pos;
+        _pos = _sectionOffsets[table] + _buf.getInt(_sectionOffsets[offsets] + idx * 4);
+        final byte[] bytes = new byte[_readInt()];
+        for (int i=0; i < bytes.length; i++) {
+            bytes[i] = _buf.get(_pos++);
+        }
+        _pos = pos;
+        return new String(bytes, BinaryTopicMapFormat.UTF_8);
+    }
+
+    private int[] _readInts() {
+        final int count = _readInt();
+        if (count == 0) {
+            return _EMPTY;
+        }
+        final int[] result = new int[count];
+        for (int i=0; i < count; i++) {
+            result[i] = _readInt();
+        }
+        return result;
+    }
+
+    /**
+     * Reads a varint.
+     */
+    private int _readInt() {
+        int result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = _buf.get(_pos++);
+            result |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+
+}
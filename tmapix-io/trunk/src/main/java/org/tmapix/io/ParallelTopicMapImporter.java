@@ -0,0 +1,473 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.tmapi.core.TopicMap;
+import org.tmapix.io.internal.utils.MapHandlerEventBuffer;
+import org.tmapix.io.internal.utils.XTM10Utils;
+
+import com.semagia.mio.DeserializerRegistry;
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.MIOParseException;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.Syntax;
+
+/**
+ * Imports several sources into one topic map.
+ * <p>
+ * The sources are parsed concurrently, each deserializer records its events
+ * into a private buffer. The buffers are applied to the topic map by the
+ * calling thread in the order in which the sources were added, using the
+ * same {@link IMapHandler} implementation as the {@link TopicMapReader}s
+ * (see {@link MapHandlerFactory#createMapHandler(TopicMap)}). The result 
+ * does not depend on the number of threads.
+ * </p>
+ * <p>
+ * An erroneous source does not abort the import, the error is reported by
+ * {@link #read()} and the import continues with the next source. Unlike 
+ * with a {@link TopicMapReader}, a source which cannot be parsed does not
+ * contribute anything to the topic map since its events are applied only 
+ * after the source was parsed completely. If the topic map rejects an event
+ * while the events are applied, the events which were applied before 
+ * remain in the topic map.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class ParallelTopicMapImporter {
+
+    private static final Map<String, Object> _NO_PROPERTIES = Collections.emptyMap();
+
+    private final TopicMap _topicMap;
+    private final List<Input> _inputs;
+    private int _parallelism;
+    private boolean _convertToTMDM;
+
+    /**
+     * Creates an importer which uses as many threads as processors are
+     * available.
+     *
+     * @param topicMap The topic map to which the content is added to.
+     */
+    public ParallelTopicMapImporter(final TopicMap topicMap) {
+        if (topicMap == null) {
+            throw new IllegalArgumentException("The topic map must not be null");
+        }
+        _topicMap = topicMap;
+        _inputs = new ArrayList<Input>();
+        _parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Sets the number of threads which parse the sources.
+     * <p>
+     * If <tt>parallelism</tt> is <tt>1</tt>, the sources are parsed by the
+     * calling thread.
+     * </p>
+     *
+     * @param parallelism The number of threads, must be greater than zero.
+     */
+    public void setParallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be greater than zero, got: " + parallelism);
+        }
+        _parallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of threads which parse the sources.
+     *
+     * @return The number of threads.
+     */
+    public int getParallelism() {
+        return _parallelism;
+    }
+
+    /**
+     * Enables / disables translation of XTM 1.0 PSIs and the XTM 1.0
+     * reification mechanism to the TMDM equivalent (disabled by default).
+     * <p>
+     * The translation is done once after all sources were imported.
+     * </p>
+     *
+     * @see XTM10TopicMapReader#setTranslateToTMDM(boolean)
+     *
+     * @param translate <tt>true</tt> to enable the translation,
+     *          <tt>false</tt> to disable the translation.
+     */
+    public void setTranslateToTMDM(final boolean translate) {
+        _convertToTMDM = translate;
+    }
+
+    /**
+     * Returns if XTM 1.0 topic maps are translated into the TMDM equivalent.
+     *
+     * @return <tt>true</tt> if XTM 1.0 is translated, otherwise <tt>false</tt>.
+     */
+    public boolean isTranslatingToTMDM() {
+        return _convertToTMDM;
+    }
+
+    /**
+     * Adds a file to the import.
+     * <p>
+     * The file is opened when it is parsed. The <tt>file</tt> is converted
+     * into an absolute IRI which will be utilised as document IRI.
+     * </p>
+     *
+     * @param file The file to import.
+     * @param syntax The syntax of the file.
+     * @throws IOException If the document IRI cannot be created.
+     */
+    public void add(final File file, final Syntax syntax) throws IOException {
+        add(file, syntax, file.toURI().toURL().toString());
+    }
+
+    /**
+     * Adds a file to the import.
+     * <p>
+     * The file is opened when it is parsed.
+     * </p>
+     *
+     * @param file The file to import.
+     * @param syntax The syntax of the file.
+     * @param docIRI The document IRI which is used to resolve IRIs against.
+     */
+    public void add(final File file, final Syntax syntax, final String docIRI) {
+        add(file, syntax, docIRI, _NO_PROPERTIES);
+    }
+
+    /**
+     * Adds a file to the import and sets the provided properties of the
+     * deserializer which parses the file.
+     * <p>
+     * The file is opened when it is parsed. The properties are the
+     * properties of the MIO deserializer (see {@link Property}), i.e. 
+     * {@link Property#LTM_LEGACY} or {@link Property#RDF2TM_MAPPING_IRI}.
+     * </p>
+     *
+     * @param file The file to import.
+     * @param syntax The syntax of the file.
+     * @param docIRI The document IRI which is used to resolve IRIs against.
+     * @param properties The properties of the deserializer (name -&gt; value).
+     */
+    public void add(final File file, final Syntax syntax, final String docIRI, 
+            final Map<String, Object> properties) {
+        _add(new Input(file, null, syntax, docIRI, properties));
+    }
+
+    /**
+     * Adds a source to the import.
+     *
+     * @param source The source to import.
+     * @param syntax The syntax of the source.
+     */
+    public void add(final Source source, final Syntax syntax) {
+        add(source, syntax, _NO_PROPERTIES);
+    }
+
+    /**
+     * Adds a source to the import and sets the provided properties of the
+     * deserializer which parses the source.
+     *
+     * @see #add(File, Syntax, String, Map)
+     * @param source The source to import.
+     * @param syntax The syntax of the source.
+     * @param properties The properties of the deserializer (name -&gt; value).
+     */
+    public void add(final Source source, final Syntax syntax, final Map<String, Object> properties) {
+        _add(new Input(null, source, syntax, source.getIRI(), properties));
+    }
+
+    private void _add(final Input input) {
+        if (input.syntax == null) {
+            throw new IllegalArgumentException("The syntax must not be null");
+        }
+        _inputs.add(input);
+    }
+
+    /**
+     * Imports all sources which were added.
+     * <p>
+     * The sources are removed from this importer, the instance can be
+     * reused afterwards.
+     * </p>
+     *
+     * @return A (maybe empty) list of the errors which occurred while the 
+     *          sources were imported, in the order of the sources. Each 
+     *          source is reported at most once.
+     * @throws InterruptedIOException If the calling thread was interrupted,
+     *          the sources which were applied before remain in the topic map.
+     */
+    public List<ImportError> read() throws InterruptedIOException {
+        final List<Input> inputs = new ArrayList<Input>(_inputs);
+        _inputs.clear();
+        final List<ImportError> errors = new ArrayList<ImportError>();
+        if (_parallelism == 1 || inputs.size() < 2) {
+            for (int i=0; i < inputs.size(); i++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("The import was interrupted");
+                }
+                final Input input = inputs.get(i);
+                final MapHandlerEventBuffer buffer;
+                try {
+                    buffer = new ParseTask(input).call();
+                }
+                catch (Exception ex) {
+                    errors.add(new ImportError(i, input.docIRI, _toParseException(input, ex)));
+                    continue;
+                }
+                _replay(i, input, buffer, errors);
+            }
+        }
+        else {
+            _read(inputs, errors);
+        }
+        if (_convertToTMDM) {
+            XTM10Utils.convertToTMDM(_topicMap);
+        }
+        return errors;
+    }
+
+    private void _read(final List<Input> inputs, final List<ImportError> errors) throws InterruptedIOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(_parallelism);
+        try {
+            final LinkedList<Future<MapHandlerEventBuffer>> pending = new LinkedList<Future<MapHandlerEventBuffer>>();
+            // Limits the number of buffered sources
+            final int maxPending = 2 * _parallelism;
+            int next = 0;
+            for (int i=0; i < inputs.size(); i++) {
+                while (next < inputs.size() && pending.size() < maxPending) {
+                    pending.add(executor.submit(new ParseTask(inputs.get(next))));
+                    next++;
+                }
+                final Input input = inputs.get(i);
+                final MapHandlerEventBuffer buffer;
+                try {
+                    // Future#get does not check the interrupt status if the task is done
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedException();
+                    }
+                    buffer = _get(pending.removeFirst());
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    final InterruptedIOException iex = new InterruptedIOException("The import was interrupted");
+                    iex.initCause(ex);
+                    throw iex;
+                }
+                catch (Exception ex) {
+                    errors.add(new ImportError(i, input.docIRI, _toParseException(input, ex)));
+                    continue;
+                }
+                _replay(i, input, buffer, errors);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Applies the events of a completely parsed source to the topic map.
+     */
+    private void _replay(final int index, final Input input, final MapHandlerEventBuffer buffer, 
+            final List<ImportError> errors) {
+        try {
+            buffer.replay(MapHandlerFactory.createMapHandler(_topicMap));
+        }
+        catch (Exception ex) {
+            errors.add(new ImportError(index, input.docIRI, _toParseException(input, ex)));
+        }
+    }
+
+    private static MapHandlerEventBuffer _get(final Future<MapHandlerEventBuffer> future) throws Exception {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Parses the input and sends the events to the provided handler.
+     */
+    private static void _parse(final Input input, final IMapHandler handler) throws IOException, MIOException {
+        final IDeserializer deserializer = DeserializerRegistry.getInstance().createDeserializer(input.syntax);
+        if (deserializer == null) {
+            throw new IllegalArgumentException("Deserializer for " + input.syntax.getName() + " not found");
+        }
+        deserializer.setProperty(Property.VALIDATE, Boolean.FALSE);
+        for (Map.Entry<String, Object> property: input.properties.entrySet()) {
+            deserializer.setProperty(property.getKey(), property.getValue());
+        }
+        deserializer.setMapHandler(handler);
+        if (input.file == null) {
+            deserializer.parse(Compression.decompress(input.source));
+            return;
+        }
+        final InputStream in = new FileInputStream(input.file);
+        try {
+            deserializer.parse(new Source(Compression.decompress(in), input.docIRI));
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static TMAPIXParseException _toParseException(final Input input, final Exception ex) {
+        if (ex instanceof TMAPIXParseException) {
+            return (TMAPIXParseException) ex;
+        }
+        int line = -1;
+        int column = -1;
+        if (ex instanceof MIOParseException) {
+            line = ((MIOParseException) ex).getLineNumber();
+            column = ((MIOParseException) ex).getColumnNumber();
+        }
+        return new TMAPIXParseException("Error while importing <" + input.docIRI + ">: " + ex.getMessage(),
+                ex, line, column);
+    }
+
+
+    /**
+     * An error which occurred while a source was imported.
+     */
+    public static final class ImportError {
+
+        private final int _index;
+        private final String _docIRI;
+        private final TMAPIXParseException _error;
+
+        ImportError(final int index, final String docIRI, final TMAPIXParseException error) {
+            _index = index;
+            _docIRI = docIRI;
+            _error = error;
+        }
+
+        /**
+         * Returns the position of the source in the order in which the 
+         * sources were added, starting at <tt>0</tt>.
+         *
+         * @return The index of the source.
+         */
+        public int getIndex() {
+            return _index;
+        }
+
+        /**
+         * Returns the document IRI of the source.
+         *
+         * @return The document IRI.
+         */
+        public String getDocumentIRI() {
+            return _docIRI;
+        }
+
+        /**
+         * Returns the error.
+         *
+         * @return The error.
+         */
+        public TMAPIXParseException getError() {
+            return _error;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "[" + _index + "] " + _error.getMessage();
+        }
+    }
+
+
+    /**
+     * Represents a source to import.
+     */
+    private static final class Input {
+
+        final File file;
+        final Source source;
+        final Syntax syntax;
+        final String docIRI;
+        final Map<String, Object> properties;
+
+        Input(final File file, final Source source, final Syntax syntax, final String docIRI, 
+                final Map<String, Object> properties) {
+            if (properties == null) {
+                throw new IllegalArgumentException("The properties must not be null");
+            }
+            this.file = file;
+            this.source = source;
+            this.syntax = syntax;
+            this.docIRI = docIRI;
+            this.properties = properties.isEmpty() ? _NO_PROPERTIES 
+                                : new HashMap<String, Object>(properties);
+        }
+    }
+
+
+    /**
+     * Parses an input into a {@link MapHandlerEventBuffer}.
+     */
+    private static final class ParseTask implements Callable<MapHandlerEventBuffer> {
+
+        private final Input _input;
+
+        ParseTask(final Input input) {
+            _input = input;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public MapHandlerEventBuffer call() throws Exception {
+            final MapHandlerEventBuffer buffer = new MapHandlerEventBuffer();
+            _parse(_input, buffer);
+            return buffer;
+        }
+    }
+
+}
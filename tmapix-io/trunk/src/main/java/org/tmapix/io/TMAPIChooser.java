@@ -60,6 +60,13 @@ final class TMAPIChooser {
         return new TMAPIMapHandler(topicMap);
     }
 
+    static IMapHandler createBulkTMAPIMapHandler(TopicMap topicMap) {
+        if (topicMap == null) {
+            throw new IllegalArgumentException("The topic map must not be null");
+        }
+        return new BulkTMAPIMapHandler(topicMap);
+    }
+
     static boolean isTinyTim(TopicMap topicMap) {
         return topicMap.getClass().getName().startsWith(_TINYTIM);
     }
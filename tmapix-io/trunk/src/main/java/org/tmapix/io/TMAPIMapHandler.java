@@ -47,16 +47,16 @@ import com.semagia.mio.voc.XSD;
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  * @version $Rev$ - $Date$
  */
-final class TMAPIMapHandler extends AbstractHamsterMapHandler<Topic> {
+class TMAPIMapHandler extends AbstractHamsterMapHandler<Topic> {
 
     /**
      * Represents the unconstrained scope.
      */
     private final static Collection<Topic> _UCS = Collections.emptySet();
     
-    private TopicMap _tm;
-    private final Locator _defaultNameType;
+    protected final TopicMap _tm;
     private Collection<DelayedRoleEvents> _delayedRoleEvents;
+    private final MergeUtils.TopicMerger _merger;
 
     /**
      * 
@@ -65,8 +65,13 @@ final class TMAPIMapHandler extends AbstractHamsterMapHandler<Topic> {
      */
     public TMAPIMapHandler(TopicMap topicMap) {
         _tm = topicMap;
-        _defaultNameType = _tm.createLocator(TMDM.TOPIC_NAME);
         _delayedRoleEvents = new ArrayList<DelayedRoleEvents>();
+        _merger = new MergeUtils.TopicMerger() {
+            @Override
+            public void merge(Topic source, Topic target) {
+                _merge(source, target);
+            }
+        };
     }
 
     /* (non-Javadoc)
@@ -214,7 +219,7 @@ final class TMAPIMapHandler extends AbstractHamsterMapHandler<Topic> {
     protected void createName(Topic parent, Topic type, String value,
             Collection<Topic> scope, Topic reifier, Collection<String> iids,
             Collection<IVariant<Topic>> variants) throws MIOException {
-        Name name = parent.createName(type != null ? type : _defaultNameType(), value, _scope(scope));
+        Name name = parent.createName(type != null ? type : createDefaultNameType(), value, _scope(scope));
         _applyItemIdentifiers(name, iids);
         _applyReifier(name, reifier);
         final Set<Topic> nameScope = name.getScope();
@@ -239,12 +244,17 @@ final class TMAPIMapHandler extends AbstractHamsterMapHandler<Topic> {
     }
 
     /**
-     * 
+     * Returns the default name type.
+     * <p>
+     * The topic is created by {@link #createTopicBySubjectIdentifier(String)},
+     * subclasses which keep track of the identities see the default name
+     * type as well.
+     * </p>
      *
-     * @return
+     * @return The topic which represents the default name type.
      */
-    private Topic _defaultNameType() {
-        return _tm.createTopicBySubjectIdentifier(_defaultNameType);
+    protected Topic createDefaultNameType() {
+        return createTopicBySubjectIdentifier(TMDM.TOPIC_NAME);
     }
 
     /* (non-Javadoc)
@@ -285,7 +295,7 @@ final class TMAPIMapHandler extends AbstractHamsterMapHandler<Topic> {
      * @param iri The IRI.
      * @return A locator.
      */
-    private Locator _createLocator(String iri) {
+    protected final Locator _createLocator(String iri) {
         return _tm.createLocator(iri);
     }
 
@@ -345,24 +355,22 @@ final class TMAPIMapHandler extends AbstractHamsterMapHandler<Topic> {
 
     private boolean _mergable(Reifiable reifiableA, Reifiable reifiableB) {
         boolean res = (reifiableA.getClass().equals(reifiableB.getClass())
-                        && SignatureGenerator.generateSignature(reifiableA)
-                            .equals(SignatureGenerator.generateSignature(reifiableB))
+                        && SignatureGenerator.isEqual(reifiableA, reifiableB)
                         );
         if (res && reifiableA instanceof Role) {
-            res = SignatureGenerator.generateSignature((Reifiable) reifiableA.getParent())
-                            .equals(SignatureGenerator.generateSignature((Reifiable) reifiableB.getParent()));
+            res = SignatureGenerator.isEqual((Reifiable) reifiableA.getParent(), (Reifiable) reifiableB.getParent());
         }
         if (res && reifiableA instanceof Variant) {
             Name parentA = (Name) reifiableA.getParent();
             Name parentB = (Name) reifiableB.getParent();
             res = parentA.getParent().equals(parentB.getParent())
-                        && SignatureGenerator.generateSignature(parentA).equals(SignatureGenerator.generateSignature(parentB));
+                        && SignatureGenerator.isEqual(parentA, parentB);
         }
         return res;
     }
 
     private void _merge(Reifiable source, Reifiable target) {
-        MergeUtils.merge(source, target);
+        MergeUtils.merge(source, target, _merger);
     }
 
     /**
@@ -373,7 +381,7 @@ final class TMAPIMapHandler extends AbstractHamsterMapHandler<Topic> {
      */
     private void _merge(Topic source, Topic target) {
         target.mergeIn(source);
-        super.notifyMerge(source, target);
+        notifyMerge(source, target);
     }
 
     private static final class DelayedRoleEvents {
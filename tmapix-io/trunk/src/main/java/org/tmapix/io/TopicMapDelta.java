@@ -0,0 +1,665 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Construct;
+import org.tmapi.core.Locator;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Reifiable;
+import org.tmapi.core.Role;
+import org.tmapi.core.TMAPIException;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.TopicMapSystem;
+import org.tmapi.core.TopicMapSystemFactory;
+import org.tmapi.core.Variant;
+
+/**
+ * Creates and applies deltas.
+ * <p>
+ * A delta is a topic map which contains the topics and associations which 
+ * were created or modified since the checkpoint of a {@link ChangeTracker}.
+ * Topics which are referenced by these constructs are contained with their
+ * identities only. The removals are recorded by occurrences of a topic
+ * with the subject identifier {@link #CHANGES}:
+ * </p>
+ * <ul>
+ *  <li>{@link #REMOVED_TOPIC}: The reference of a removed topic.</li>
+ *  <li>{@link #REMOVED_ASSOCIATION}: The key of a removed association. 
+ *      Modified associations are removed and contained in the delta with 
+ *      their new state.</li>
+ *  <li>{@link #TOPIC_MAP}: The reifier and the item identifiers of the 
+ *      topic map are replaced by the reifier and item identifiers of the
+ *      delta.</li>
+ * </ul>
+ * <p>
+ * A modified topic has an occurrence of the type {@link #PREVIOUS} which 
+ * contains the reference of the topic at the checkpoint. Applying the delta 
+ * replaces the identities, types, names and occurrences of the topic.
+ * </p>
+ * <p>
+ * A reference is a subject identifier, subject locator or item identifier
+ * of the topic, prefixed by <tt>si:</tt>, <tt>sl:</tt> resp. <tt>ii:</tt>.
+ * The key of an association consists of the reference of the type, the 
+ * sorted references of the role types and players and the sorted 
+ * references of the themes (after an <tt>@</tt>), separated by spaces.
+ * </p>
+ * <p>
+ * Since a delta is an ordinary topic map, it can be serialized by any
+ * {@link TopicMapWriter}. To apply a serialized delta, read it into an 
+ * empty topic map and call {@link #apply(TopicMap, TopicMap)}.
+ * </p>
+ *
+ * @see ChangeTracker
+ * @see XTM2TopicMapWriter#writeDelta(ChangeTracker)
+ * @see JTMTopicMapWriter#writeDelta(ChangeTracker)
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class TopicMapDelta {
+
+    /**
+     * Namespace of the delta vocabulary.
+     */
+    public static final String NAMESPACE = "http://psi.tmapix.org/delta/";
+
+    /**
+     * Subject identifier of the topic which records the removals.
+     */
+    public static final String CHANGES = NAMESPACE + "changes";
+
+    /**
+     * Occurrence type: The reference of a modified topic at the checkpoint.
+     */
+    public static final String PREVIOUS = NAMESPACE + "previous";
+
+    /**
+     * Occurrence type: The reference of a removed topic.
+     */
+    public static final String REMOVED_TOPIC = NAMESPACE + "removed-topic";
+
+    /**
+     * Occurrence type: The key of a removed or modified association.
+     */
+    public static final String REMOVED_ASSOCIATION = NAMESPACE + "removed-association";
+
+    /**
+     * Occurrence type: Indicates that the reifier or the item identifiers
+     * of the topic map were changed.
+     */
+    public static final String TOPIC_MAP = NAMESPACE + "topic-map";
+
+    private static final String _DELTA_IRI = "http://www.tmapix.org/delta";
+    private static final String _SID = "si:";
+    private static final String _SLO = "sl:";
+    private static final String _IID = "ii:";
+    private static final String _SCOPE = "@";
+
+    private final TopicMap _target;
+    private final Map<Topic, Topic> _topics;
+
+    private TopicMapDelta(final TopicMap target) {
+        _target = target;
+        _topics = new IdentityHashMap<Topic, Topic>();
+    }
+
+    /**
+     * Writes the delta of the provided tracker.
+     * <p>
+     * The delta is created in an in-memory topic map which is serialized
+     * by the provided writer.
+     * </p>
+     *
+     * @param tracker The change tracker.
+     * @param writer The writer to serialize the delta.
+     * @throws IOException If an error occurs.
+     */
+    public static void write(final ChangeTracker tracker, final TopicMapWriter writer) throws IOException {
+        final TopicMapSystem sys;
+        final TopicMap delta;
+        try {
+            sys = TopicMapSystemFactory.newInstance().newTopicMapSystem();
+            delta = sys.createTopicMap(_DELTA_IRI);
+        }
+        catch (TMAPIException ex) {
+            throw new IOException("Cannot create the in-memory topic map: " + ex.getMessage(), ex);
+        }
+        try {
+            create(tracker, delta);
+            writer.write(delta);
+        }
+        finally {
+            sys.close();
+        }
+    }
+
+    /**
+     * Creates the delta of the provided tracker.
+     *
+     * @param tracker The change tracker.
+     * @param delta An empty topic map which receives the delta.
+     */
+    public static void create(final ChangeTracker tracker, final TopicMap delta) {
+        new TopicMapDelta(delta)._create(tracker);
+    }
+
+    /**
+     * Applies the delta to the <tt>target</tt>.
+     * <p>
+     * The target should reflect the state of the topic map at the checkpoint
+     * of the {@link ChangeTracker} which created the delta.
+     * </p>
+     *
+     * @param delta The delta.
+     * @param target The topic map to apply the delta to.
+     */
+    public static void apply(final TopicMap delta, final TopicMap target) {
+        new TopicMapDelta(target)._apply(delta);
+    }
+
+    /**
+     * Returns the reference of the provided topic.
+     *
+     * @param topic The topic.
+     * @return A reference or {@code null} if the topic has no identity.
+     */
+    static String reference(final Topic topic) {
+        Set<Locator> locs = topic.getSubjectIdentifiers();
+        if (!locs.isEmpty()) {
+            return _SID + locs.iterator().next().getReference();
+        }
+        locs = topic.getSubjectLocators();
+        if (!locs.isEmpty()) {
+            return _SLO + locs.iterator().next().getReference();
+        }
+        locs = topic.getItemIdentifiers();
+        if (!locs.isEmpty()) {
+            return _IID + locs.iterator().next().getReference();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the key of the provided association.
+     *
+     * @param assoc The association.
+     * @return The key or {@code null} if a topic of the association has no
+     *          identity.
+     */
+    static String key(final Association assoc) {
+        final StringBuilder sb = new StringBuilder();
+        if (!_append(sb, assoc.getType())) {
+            return null;
+        }
+        final Set<Role> roles = assoc.getRoles();
+        final String[] roleKeys = new String[roles.size()];
+        int i = 0;
+        for (Role role: roles) {
+            final String type = reference(role.getType());
+            final String player = reference(role.getPlayer());
+            if (type == null || player == null) {
+                return null;
+            }
+            roleKeys[i++] = type + ' ' + player;
+        }
+        Arrays.sort(roleKeys);
+        for (String roleKey: roleKeys) {
+            sb.append(' ').append(roleKey);
+        }
+        final Set<Topic> scope = assoc.getScope();
+        if (!scope.isEmpty()) {
+            final String[] themes = new String[scope.size()];
+            i = 0;
+            for (Topic theme: scope) {
+                themes[i] = reference(theme);
+                if (themes[i++] == null) {
+                    return null;
+                }
+            }
+            Arrays.sort(themes);
+            sb.append(' ').append(_SCOPE);
+            for (String theme: themes) {
+                sb.append(' ').append(theme);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean _append(final StringBuilder sb, final Topic topic) {
+        final String ref = reference(topic);
+        if (ref == null) {
+            return false;
+        }
+        sb.append(ref);
+        return true;
+    }
+
+    private void _create(final ChangeTracker tracker) {
+        final TopicMap topicMap = tracker.getTopicMap();
+        Topic changes = null;
+        for (Topic topic: tracker.getChangedTopics()) {
+            final Topic copy = _topic(topic);
+            _copyCharacteristics(topic, copy);
+            final String previous = tracker.getCheckpointReference(topic.getId());
+            if (previous != null) {
+                copy.createOccurrence(_vocabulary(PREVIOUS), previous);
+            }
+        }
+        for (Association assoc: tracker.getChangedAssociations()) {
+            _copy(assoc);
+            final String key = tracker.getCheckpointKey(assoc.getId());
+            if (key != null) {
+                changes = _record(changes, REMOVED_ASSOCIATION, key);
+            }
+        }
+        for (String id: tracker.getRemovedIds()) {
+            final String ref = tracker.getCheckpointReference(id);
+            if (ref != null) {
+                changes = _record(changes, REMOVED_TOPIC, ref);
+            }
+            else {
+                final String key = tracker.getCheckpointKey(id);
+                if (key != null) {
+                    changes = _record(changes, REMOVED_ASSOCIATION, key);
+                }
+            }
+        }
+        if (tracker.isTopicMapChanged()) {
+            changes = _record(changes, TOPIC_MAP, "true");
+            _copyReifiable(topicMap, _target);
+        }
+    }
+
+    private Topic _record(final Topic changes, final String type, final String value) {
+        final Topic topic = changes != null ? changes : _vocabulary(CHANGES);
+        topic.createOccurrence(_vocabulary(type), value);
+        return topic;
+    }
+
+    private Topic _vocabulary(final String iri) {
+        return _target.createTopicBySubjectIdentifier(_target.createLocator(iri));
+    }
+
+    private void _apply(final TopicMap delta) {
+        final Topic changes = _lookup(delta, CHANGES);
+        final boolean topicMapChanged = changes != null 
+                && !_values(changes, _lookup(delta, TOPIC_MAP)).isEmpty();
+        if (topicMapChanged) {
+            _target.setReifier(null);
+            for (Locator iid: new ArrayList<Locator>(_target.getItemIdentifiers())) {
+                _target.removeItemIdentifier(iid);
+            }
+        }
+        if (changes != null) {
+            for (String key: _values(changes, _lookup(delta, REMOVED_ASSOCIATION))) {
+                final Association assoc = _findAssociation(key);
+                if (assoc != null) {
+                    assoc.remove();
+                }
+            }
+        }
+        // Modified topics keep their counterpart, even if the identities were changed
+        final Topic previousType = _lookup(delta, PREVIOUS);
+        final List<Topic> topics = new ArrayList<Topic>();
+        final Set<Topic> replaced = new HashSet<Topic>();
+        for (Topic topic: delta.getTopics()) {
+            if (_isVocabulary(topic)) {
+                continue;
+            }
+            topics.add(topic);
+            for (String ref: _values(topic, previousType)) {
+                final Topic existing = _findTopic(ref);
+                if (existing != null) {
+                    _clear(existing);
+                    _topics.put(topic, existing);
+                    replaced.add(topic);
+                }
+            }
+        }
+        if (changes != null) {
+            for (String ref: _values(changes, _lookup(delta, REMOVED_TOPIC))) {
+                final Topic topic = _findTopic(ref);
+                if (topic != null) {
+                    topic.remove();
+                }
+            }
+        }
+        for (Topic topic: replaced) {
+            final Topic existing = _topics.get(topic);
+            _addIdentities(topic, existing);
+            _removeObsoleteIdentities(topic, existing);
+        }
+        for (Topic topic: topics) {
+            _copyCharacteristics(topic, _topic(topic));
+        }
+        for (Association assoc: delta.getAssociations()) {
+            _copy(assoc);
+        }
+        if (topicMapChanged) {
+            _copyReifiable(delta, _target);
+        }
+    }
+
+    private static Topic _lookup(final TopicMap topicMap, final String iri) {
+        return topicMap.getTopicBySubjectIdentifier(topicMap.createLocator(iri));
+    }
+
+    private static boolean _isVocabulary(final Topic topic) {
+        for (Locator sid: topic.getSubjectIdentifiers()) {
+            if (sid.getReference().startsWith(NAMESPACE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the values of the occurrences of the provided type.
+     */
+    private static List<String> _values(final Topic topic, final Topic type) {
+        if (type == null) {
+            return Collections.emptyList();
+        }
+        final Collection<Occurrence> occs = topic.getOccurrences(type);
+        final List<String> values = new ArrayList<String>(occs.size());
+        for (Occurrence occ: occs) {
+            values.add(occ.getValue());
+        }
+        return values;
+    }
+
+    /**
+     * Returns the topic of the target with the provided reference.
+     *
+     * @param ref The reference.
+     * @return The topic or {@code null}.
+     */
+    private Topic _findTopic(final String ref) {
+        final String iri = ref.substring(_SID.length());
+        final Locator loc = _target.createLocator(iri);
+        if (ref.startsWith(_SID)) {
+            return _target.getTopicBySubjectIdentifier(loc);
+        }
+        if (ref.startsWith(_SLO)) {
+            return _target.getTopicBySubjectLocator(loc);
+        }
+        final Construct construct = _target.getConstructByItemIdentifier(loc);
+        return construct instanceof Topic ? (Topic) construct : null;
+    }
+
+    /**
+     * Returns an association of the target with the provided key.
+     *
+     * @param key The association key.
+     * @return The association or {@code null}.
+     */
+    private Association _findAssociation(final String key) {
+        final String[] tokens = key.split(" ");
+        final Topic type = _findTopic(tokens[0]);
+        if (type == null) {
+            return null;
+        }
+        final List<Topic> roles = new ArrayList<Topic>();
+        final Set<Topic> scope = new HashSet<Topic>();
+        int i = 1;
+        for (; i < tokens.length && !_SCOPE.equals(tokens[i]); i++) {
+            final Topic topic = _findTopic(tokens[i]);
+            if (topic == null) {
+                return null;
+            }
+            roles.add(topic);
+        }
+        for (i++; i < tokens.length; i++) {
+            final Topic theme = _findTopic(tokens[i]);
+            if (theme == null) {
+                return null;
+            }
+            scope.add(theme);
+        }
+        final Collection<Association> candidates = new ArrayList<Association>();
+        if (roles.isEmpty()) {
+            candidates.addAll(_target.getAssociations());
+        }
+        else {
+            for (Role role: roles.get(1).getRolesPlayed(roles.get(0), type)) {
+                candidates.add(role.getParent());
+            }
+        }
+        for (Association assoc: candidates) {
+            if (assoc.getType().equals(type) && assoc.getScope().equals(scope)
+                    && _equalRoles(assoc, roles)) {
+                return assoc;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns if the association has exactly the provided roles.
+     *
+     * @param assoc The association.
+     * @param roles A list of (type, player) pairs.
+     */
+    private static boolean _equalRoles(final Association assoc, final List<Topic> roles) {
+        final Set<Role> assocRoles = assoc.getRoles();
+        if (assocRoles.size() != roles.size() / 2) {
+            return false;
+        }
+        final List<Role> remaining = new ArrayList<Role>(assocRoles);
+        for (int i=0; i < roles.size(); i += 2) {
+            boolean found = false;
+            for (int j=0; j < remaining.size(); j++) {
+                final Role role = remaining.get(j);
+                if (role.getType().equals(roles.get(i)) && role.getPlayer().equals(roles.get(i+1))) {
+                    remaining.remove(j);
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the types, names and occurrences of the provided topic.
+     */
+    private static void _clear(final Topic topic) {
+        for (Topic type: new ArrayList<Topic>(topic.getTypes())) {
+            topic.removeType(type);
+        }
+        for (Name name: new ArrayList<Name>(topic.getNames())) {
+            name.remove();
+        }
+        for (Occurrence occ: new ArrayList<Occurrence>(topic.getOccurrences())) {
+            occ.remove();
+        }
+    }
+
+    /**
+     * Removes the identities of the <tt>target</tt> which the 
+     * <tt>source</tt> does not have.
+     */
+    private void _removeObsoleteIdentities(final Topic source, final Topic target) {
+        for (Locator sid: new ArrayList<Locator>(target.getSubjectIdentifiers())) {
+            if (!_contains(source.getSubjectIdentifiers(), sid)) {
+                target.removeSubjectIdentifier(sid);
+            }
+        }
+        for (Locator slo: new ArrayList<Locator>(target.getSubjectLocators())) {
+            if (!_contains(source.getSubjectLocators(), slo)) {
+                target.removeSubjectLocator(slo);
+            }
+        }
+        for (Locator iid: new ArrayList<Locator>(target.getItemIdentifiers())) {
+            if (!_contains(source.getItemIdentifiers(), iid)) {
+                target.removeItemIdentifier(iid);
+            }
+        }
+    }
+
+    private static boolean _contains(final Set<Locator> locs, final Locator loc) {
+        for (Locator l: locs) {
+            if (l.getReference().equals(loc.getReference())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the types, names and occurrences of the topic into the copy.
+     * The occurrences of the delta vocabulary are ignored.
+     */
+    private void _copyCharacteristics(final Topic topic, final Topic copy) {
+        for (Topic type: topic.getTypes()) {
+            copy.addType(_topic(type));
+        }
+        for (Name name: topic.getNames()) {
+            final Name nameCopy = copy.createName(_topic(name.getType()), name.getValue(), _topics(name.getScope()));
+            _copyReifiable(name, nameCopy);
+            for (Variant variant: name.getVariants()) {
+                _copyReifiable(variant, nameCopy.createVariant(variant.getValue(), 
+                        _locator(variant.getDatatype()), _topics(variant.getScope())));
+            }
+        }
+        for (Occurrence occ: topic.getOccurrences()) {
+            if (_isVocabulary(occ.getType())) {
+                continue;
+            }
+            _copyReifiable(occ, copy.createOccurrence(_topic(occ.getType()), occ.getValue(), 
+                    _locator(occ.getDatatype()), _topics(occ.getScope())));
+        }
+    }
+
+    private void _copy(final Association assoc) {
+        final Association copy = _target.createAssociation(_topic(assoc.getType()), _topics(assoc.getScope()));
+        _copyReifiable(assoc, copy);
+        for (Role role: assoc.getRoles()) {
+            _copyReifiable(role, copy.createRole(_topic(role.getType()), _topic(role.getPlayer())));
+        }
+    }
+
+    /**
+     * Returns the counterpart of the provided topic. The counterpart is 
+     * created with all identities of the topic if necessary.
+     */
+    private Topic _topic(final Topic topic) {
+        Topic copy = _topics.get(topic);
+        if (copy != null) {
+            return copy;
+        }
+        final Set<Locator> sids = topic.getSubjectIdentifiers();
+        final Set<Locator> slos = topic.getSubjectLocators();
+        final Set<Locator> iids = topic.getItemIdentifiers();
+        if (!sids.isEmpty()) {
+            copy = _target.createTopicBySubjectIdentifier(_locator(sids.iterator().next()));
+        }
+        else if (!slos.isEmpty()) {
+            copy = _target.createTopicBySubjectLocator(_locator(slos.iterator().next()));
+        }
+        else if (!iids.isEmpty()) {
+            copy = _target.createTopicByItemIdentifier(_locator(iids.iterator().next()));
+        }
+        else {
+            copy = _target.createTopic();
+        }
+        _topics.put(topic, copy);
+        _addIdentities(topic, copy);
+        return copy;
+    }
+
+    /**
+     * Adds the identities of the <tt>source</tt> to the <tt>target</tt>.
+     * Topics which share an identity with the <tt>target</tt> are merged
+     * into the <tt>target</tt>.
+     */
+    private void _addIdentities(final Topic source, final Topic target) {
+        for (Locator sid: source.getSubjectIdentifiers()) {
+            final Locator loc = _locator(sid);
+            _merge(target, _target.getTopicBySubjectIdentifier(loc));
+            _merge(target, _target.getConstructByItemIdentifier(loc));
+            target.addSubjectIdentifier(loc);
+        }
+        for (Locator slo: source.getSubjectLocators()) {
+            final Locator loc = _locator(slo);
+            _merge(target, _target.getTopicBySubjectLocator(loc));
+            target.addSubjectLocator(loc);
+        }
+        for (Locator iid: source.getItemIdentifiers()) {
+            final Locator loc = _locator(iid);
+            _merge(target, _target.getConstructByItemIdentifier(loc));
+            _merge(target, _target.getTopicBySubjectIdentifier(loc));
+            target.addItemIdentifier(loc);
+        }
+    }
+
+    /**
+     * Merges the <tt>other</tt> construct into the <tt>topic</tt> if it is
+     * a topic which is different from the <tt>topic</tt>.
+     */
+    private void _merge(final Topic topic, final Construct other) {
+        if (!(other instanceof Topic) || other.equals(topic)) {
+            return;
+        }
+        topic.mergeIn((Topic) other);
+        for (Map.Entry<Topic, Topic> entry: _topics.entrySet()) {
+            if (entry.getValue().equals(other)) {
+                entry.setValue(topic);
+            }
+        }
+    }
+
+    private Topic[] _topics(final Collection<Topic> topics) {
+        final Topic[] copies = new Topic[topics.size()];
+        int i = 0;
+        for (Topic topic: topics) {
+            copies[i++] = _topic(topic);
+        }
+        return copies;
+    }
+
+    private void _copyReifiable(final Reifiable source, final Reifiable target) {
+        for (Locator iid: source.getItemIdentifiers()) {
+            target.addItemIdentifier(_locator(iid));
+        }
+        final Topic reifier = source.getReifier();
+        if (reifier != null) {
+            target.setReifier(_topic(reifier));
+        }
+    }
+
+    private Locator _locator(final Locator loc) {
+        return _target.createLocator(loc.getReference());
+    }
+
+}
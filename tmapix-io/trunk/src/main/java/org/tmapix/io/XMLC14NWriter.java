@@ -16,9 +16,11 @@
 package org.tmapix.io;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.util.Arrays;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.helpers.AttributesImpl;
@@ -29,6 +31,11 @@ import org.xml.sax.helpers.AttributesImpl;
  * This class is not meant to be a generic XML-C14N writer, but it is good 
  * enough to support CXTM.
  * </p>
+ * <p>
+ * The characters are encoded into UTF-8 directly into an internal buffer,
+ * the buffer is written to the output stream if it is full or if the 
+ * document ends. The encoded start and end tags of the elements are cached.
+ * </p>
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  * @version $Rev$ - $Date$
@@ -37,12 +44,33 @@ final class XMLC14NWriter {
 
     public static final Attributes EMPTY_ATTRS = new AttributesImpl();
 
-    private static final char _NL = '\n';
+    private static final byte _NL = '\n';
+    private static final int _BUFFER_SIZE = 16 * 1024;
+
+    private static final byte[] 
+        _AMP = _encode("&amp;"),
+        _LT = _encode("&lt;"),
+        _GT = _encode("&gt;"),
+        _QUOT = _encode("&quot;"),
+        _TAB = _encode("&#x9;"),
+        _LF = _encode("&#xA;"),
+        _CR = _encode("&#xD;");
 
-    private final OutputStreamWriter _out;
+    private final OutputStream _stream;
+    private final byte[] _buf;
+    private int _pos;
+    private char[] _chars;
+    private final Map<String, byte[]> _startTags;
+    private final Map<String, byte[]> _endTags;
+    private int[] _attrOrder;
 
     public XMLC14NWriter(OutputStream out) throws IOException {
-        _out = new OutputStreamWriter(out, "UTF-8");
+        _stream = out;
+        _buf = new byte[_BUFFER_SIZE];
+        _chars = new char[256];
+        _startTags = new HashMap<String, byte[]>();
+        _endTags = new HashMap<String, byte[]>();
+        _attrOrder = new int[4];
     }
 
     /**
@@ -60,7 +88,8 @@ final class XMLC14NWriter {
      * @throws IOException If an error occurs.
      */
     public void endDocument() throws IOException {
-        _out.flush();
+        _flushBuffer();
+        _stream.flush();
     }
 
     /**
@@ -85,21 +114,26 @@ final class XMLC14NWriter {
      * @throws IOException If an error occurs.
      */
     public void startElement(String localName, Attributes attrs) throws IOException {
-        String[] names = new String[attrs.getLength()];
-        for (int i=0; i < names.length; i++) {
-            names[i] = attrs.getLocalName(i);
+        byte[] tag = _startTags.get(localName);
+        if (tag == null) {
+            tag = _encode("<" + localName);
+            _startTags.put(localName, tag);
         }
-        Arrays.sort(names);
-        _out.write('<');
-        _out.write(localName);
-        for (int i=0; i < names.length; i++) {
-            _out.write(' ');
-            _out.write(names[i]);
-            _out.write("=\"");
-            _writeEscapedAttributeValue(attrs.getValue("", names[i]));
-            _out.write('"');
+        _write(tag);
+        final int len = attrs.getLength();
+        if (len > 0) {
+            final int[] order = _sortAttributes(attrs, len);
+            for (int i=0; i < len; i++) {
+                final int idx = order[i];
+                _write((byte) ' ');
+                _writeString(attrs.getLocalName(idx));
+                _write((byte) '=');
+                _write((byte) '"');
+                _writeEscapedAttributeValue(attrs.getValue(idx));
+                _write((byte) '"');
+            }
         }
-        _out.write('>');
+        _write((byte) '>');
     }
 
     /**
@@ -109,9 +143,12 @@ final class XMLC14NWriter {
      * @throws IOException If an error occurs.
      */
     public void endElement(String localName) throws IOException {
-        _out.write("</");
-        _out.write(localName);
-        _out.write('>');
+        byte[] tag = _endTags.get(localName);
+        if (tag == null) {
+            tag = _encode("</" + localName + ">");
+            _endTags.put(localName, tag);
+        }
+        _write(tag);
     }
 
     /**
@@ -120,7 +157,25 @@ final class XMLC14NWriter {
      * @throws IOException If an error occurs.
      */
     public void newline() throws IOException {
-        _out.write(_NL);
+        _write(_NL);
+    }
+
+    /**
+     * Copies the content of the provided stream to the output.
+     * <p>
+     * The content is not escaped, it must represent UTF-8 encoded canonical
+     * XML.
+     * </p>
+     *
+     * @param in The stream to read the content from.
+     * @throws IOException If an error occurs.
+     */
+    public void writeRaw(InputStream in) throws IOException {
+        _flushBuffer();
+        int len;
+        while ((len = in.read(_buf)) != -1) {
+            _stream.write(_buf, 0, len);
+        }
     }
 
     /**
@@ -136,67 +191,214 @@ final class XMLC14NWriter {
         _writeEscapedTextContent(data);
     }
 
+    /**
+     * Returns the indexes of the attributes sorted by the local names of
+     * the attributes.
+     *
+     * @param attrs The attributes.
+     * @param len The number of attributes.
+     * @return The sorted indexes, only the first <tt>len</tt> entries are valid.
+     */
+    private int[] _sortAttributes(final Attributes attrs, final int len) {
+        if (_attrOrder.length < len) {
+            _attrOrder = new int[len];
+        }
+        final int[] order = _attrOrder;
+        // Insertion sort, elements have usually one or two attributes
+        for (int i=0; i < len; i++) {
+            final String name = attrs.getLocalName(i);
+            int j = i;
+            while (j > 0 && attrs.getLocalName(order[j-1]).compareTo(name) > 0) {
+                order[j] = order[j-1];
+                j--;
+            }
+            order[j] = i;
+        }
+        return order;
+    }
+
     /**
      * Escapes the data according to the canonical XML rules.
      *
      * @param value The value.
-     * @return The escaped value.
-     * @throws IOException 
+     * @throws IOException If an error occurs.
      */
-    private void _writeEscapedTextContent(String value) throws IOException {
-        char[] ch = value.toCharArray();
-        for (int i=0; i < ch.length; i++) {
-            switch(ch[i]) {
-                case '\r':
-                    _out.write("&#xD;");
-                    break;
-                case '&':
-                    _out.write("&amp;");
-                    break;
-                case '<':
-                    _out.write("&lt;");
-                    break;
-                case '>':
-                    _out.write("&gt;");
-                    break;
-                default:
-                    _out.write(ch[i]);
+    private void _writeEscapedTextContent(final String value) throws IOException {
+        final int len = value.length();
+        final char[] chars = _toChars(value, len);
+        int start = 0;
+        for (int i=0; i < len; i++) {
+            final byte[] escaped;
+            switch(chars[i]) {
+                case '\r': escaped = _CR; break;
+                case '&': escaped = _AMP; break;
+                case '<': escaped = _LT; break;
+                case '>': escaped = _GT; break;
+                default: continue;
             }
+            _writeChars(chars, start, i);
+            _write(escaped);
+            start = i + 1;
         }
+        _writeChars(chars, start, len);
     }
 
     /**
      * Escapes the attribute's value according to canonical XML.
      *
      * @param value The value to escape.
-     * @return The escaped value.
-     * @throws IOException 
+     * @throws IOException If an error occurs.
+     */
+    private void _writeEscapedAttributeValue(final String value) throws IOException {
+        final int len = value.length();
+        final char[] chars = _toChars(value, len);
+        int start = 0;
+        for (int i=0; i < len; i++) {
+            final byte[] escaped;
+            switch(chars[i]) {
+                case '\t': escaped = _TAB; break;
+                case '\n': escaped = _LF; break;
+                case '\r': escaped = _CR; break;
+                case '"': escaped = _QUOT; break;
+                case '&': escaped = _AMP; break;
+                case '<': escaped = _LT; break;
+                default: continue;
+            }
+            _writeChars(chars, start, i);
+            _write(escaped);
+            start = i + 1;
+        }
+        _writeChars(chars, start, len);
+    }
+
+    /**
+     * Copies the characters of the provided string into the reused 
+     * character array.
+     *
+     * @param value The string.
+     * @param len The length of the string.
+     * @return An array which contains the characters of the string at 
+     *          the indexes <tt>0 .. len-1</tt>.
+     */
+    private char[] _toChars(final String value, final int len) {
+        if (_chars.length < len) {
+            _chars = new char[Math.max(len, _chars.length * 2)];
+        }
+        value.getChars(0, len, _chars, 0);
+        return _chars;
+    }
+
+    /**
+     * Writes the provided string without escaping.
+     *
+     * @param value The string to write.
+     * @throws IOException If an error occurs.
      */
-    private void _writeEscapedAttributeValue(String value) throws IOException {
-        char[] ch = value.toCharArray();
-        for (int i=0; i<ch.length; i++) {
-            switch(ch[i]) {
-            case '\t':
-                _out.write("&#x9;");
-                break;
-            case '\n':
-                _out.write("&#xA;");
-                break;
-            case '\r':
-                _out.write("&#xD;");
-                break;
-            case '\"':
-                _out.write("&quot;");
-                break;
-            case '&':
-                _out.write("&amp;");
-                break;
-            case '<':
-                _out.write("&lt;");
-                break;
-            default:
-                _out.write(ch[i]);
+    private void _writeString(final String value) throws IOException {
+        final int len = value.length();
+        _writeChars(_toChars(value, len), 0, len);
+    }
+
+    /**
+     * Encodes the characters <tt>value[start .. end]</tt> into UTF-8.
+     * <p>
+     * Unpaired surrogates are written as <tt>?</tt>.
+     * </p>
+     *
+     * @param value The characters.
+     * @param start The start index (inclusive).
+     * @param end The end index (exclusive).
+     * @throws IOException If an error occurs.
+     */
+    private void _writeChars(final char[] value, final int start, final int end) throws IOException {
+        final byte[] buf = _buf;
+        int pos = _pos;
+        int i = start;
+        while (i < end) {
+            if (pos + 4 > buf.length) {
+                _pos = pos;
+                _flushBuffer();
+                pos = 0;
+            }
+            // Copy a run of ASCII characters without further checks
+            final int limit = Math.min(end, i + buf.length - pos);
+            char c = value[i];
+            while (c < 0x80) {
+                buf[pos++] = (byte) c;
+                if (++i == limit) {
+                    break;
+                }
+                c = value[i];
+            }
+            if (i == limit) {
+                continue;
+            }
+            if (pos + 4 > buf.length) {
+                _pos = pos;
+                _flushBuffer();
+                pos = 0;
+            }
+            if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && i+1 < end 
+                        && Character.isLowSurrogate(value[i+1])) {
+                final int cp = Character.toCodePoint(c, value[++i]);
+                buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (cp & 0x3F));
             }
+            else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                buf[pos++] = '?';
+            }
+            else {
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+            i++;
+        }
+        _pos = pos;
+    }
+
+    private void _write(final byte b) throws IOException {
+        if (_pos == _buf.length) {
+            _flushBuffer();
+        }
+        _buf[_pos++] = b;
+    }
+
+    private void _write(final byte[] bytes) throws IOException {
+        if (_pos + bytes.length > _buf.length) {
+            _flushBuffer();
+            if (bytes.length > _buf.length) {
+                _stream.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, _buf, _pos, bytes.length);
+        _pos += bytes.length;
+    }
+
+    private void _flushBuffer() throws IOException {
+        if (_pos > 0) {
+            _stream.write(_buf, 0, _pos);
+            _pos = 0;
+        }
+    }
+
+    /**
+     * Returns the UTF-8 encoded bytes of the provided string.
+     */
+    private static byte[] _encode(final String s) {
+        try {
+            return s.getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException ex) {
+            // Cannot happen, UTF-8 is always supported
+            throw new RuntimeException(ex);
         }
     }
 }
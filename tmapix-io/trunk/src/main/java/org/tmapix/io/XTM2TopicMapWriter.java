@@ -36,6 +36,7 @@ import org.tmapi.core.TopicMap;
 import org.tmapi.core.Typed;
 import org.tmapi.core.Variant;
 
+import org.tmapix.io.internal.utils.TopicMapFragment;
 import org.tmapix.voc.Namespace;
 import org.tmapix.voc.XSD;
 
@@ -57,6 +58,7 @@ public class XTM2TopicMapWriter extends AbstractXMLTopicMapWriter {
     private Topic _defaultNameType;
     private final XTMVersion _version;
     private boolean _exportIIds = true;
+    private boolean _streaming;
 
     /**
      * Creates a XTM 2.0 / 2.1 writer using "utf-8" encoding.
@@ -133,10 +135,35 @@ public class XTM2TopicMapWriter extends AbstractXMLTopicMapWriter {
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The fragment contains the provided topics and the associations played
+     * by these topics. The topics which are referenced by the fragment are
+     * written with their identities only.
+     * </p>
      */
     @Override
     public void write(final Topic... topics) throws IOException {
-    	throw new UnsupportedOperationException("Not implemented yet.");
+        final TopicMapFragment fragment = new TopicMapFragment(false);
+        for (Topic topic: topics) {
+            fragment.addTopic(topic);
+        }
+        _writeFragment(topics.length > 0 ? topics[0].getTopicMap() : null, fragment);
+    }
+
+    /**
+     * Writes the topics and associations which were created or modified
+     * since the last checkpoint of the provided tracker.
+     * <p>
+     * The result is a XTM document which contains the delta (see 
+     * {@link TopicMapDelta}). Read the document into an empty topic map
+     * and apply it with {@link TopicMapDelta#apply(TopicMap, TopicMap)}.
+     * </p>
+     *
+     * @param tracker The change tracker.
+     * @throws IOException If an error occurs.
+     */
+    public void writeDelta(final ChangeTracker tracker) throws IOException {
+        TopicMapDelta.write(tracker, this);
     }
 
     /* (non-Javadoc)
@@ -144,31 +171,183 @@ public class XTM2TopicMapWriter extends AbstractXMLTopicMapWriter {
      */
     @Override
     public void write(final TopicMap topicMap) throws IOException {
+        startTopicMap(topicMap);
+        for (Topic topic: topicMap.getTopics()) {
+            writeTopic(topic);
+        }
+        for (Association assoc: topicMap.getAssociations()) {
+            writeAssociation(assoc);
+        }
+        endTopicMap();
+    }
+
+    /**
+     * Starts a topic map document which is written incrementally by 
+     * {@link #writeTopic(Topic)} and {@link #writeAssociation(Association)}.
+     * <p>
+     * The writer keeps no state about the written constructs, the memory
+     * usage does not depend on the size of the output. The constructs
+     * may be created on demand, i.e. from a database cursor, and may be
+     * discarded after they were written. If the constructs stem from 
+     * different topic maps, the topics should have item identifiers (XTM 2.0)
+     * or subject identifiers / subject locators (XTM 2.1) since the internal
+     * identifiers of the topics are used to reference topics otherwise.
+     * </p>
+     * <p>
+     * All constructs are written as they are, the type-instance associations
+     * and the default name type are not treated specially.
+     * </p>
+     *
+     * @see #endTopicMap()
+     * 
+     * @throws IOException If an error occurs.
+     */
+    public void startTopicMap() throws IOException {
+        _startStream(null);
+    }
+
+    /**
+     * Starts a topic map document which is written incrementally.
+     * <p>
+     * In addition to {@link #startTopicMap()}, the reifier and the item 
+     * identifiers of the provided topic map are written. Type-instance 
+     * associations of the provided topic map are omitted since they are 
+     * written as types of the topics and the default name type is omitted 
+     * if possible.
+     * </p>
+     *
+     * @param topicMap The topic map.
+     * @throws IOException If an error occurs.
+     */
+    public void startTopicMap(final TopicMap topicMap) throws IOException {
+        if (topicMap == null) {
+            throw new IllegalArgumentException("The topic map must not be null");
+        }
+        _startStream(topicMap);
+    }
+
+    private void _startStream(final TopicMap topicMap) throws IOException {
+        if (_streaming) {
+            throw new IllegalStateException("The topic map has been started already");
+        }
         // Cache the default name type. May be null, though
-        _defaultNameType = WriterUtils.getOmitableDefaultTopicNameType(topicMap, !_exportIIds);
-        
+        _defaultNameType = topicMap != null ? WriterUtils.getOmitableDefaultTopicNameType(topicMap, !_exportIIds) : null;
         super.init(topicMap);
+        _startTopicMap(topicMap);
+        _streaming = true;
+    }
+
+    /**
+     * Writes the provided topic with all its characteristics.
+     *
+     * @see #startTopicMap()
+     * 
+     * @param topic The topic to write.
+     * @throws IOException If an error occurs.
+     */
+    public void writeTopic(final Topic topic) throws IOException {
+        _checkStreaming();
+        _writeTopic(topic, false);
+    }
+
+    /**
+     * Writes the provided association.
+     *
+     * @see #startTopicMap()
+     * 
+     * @param assoc The association to write.
+     * @throws IOException If an error occurs.
+     */
+    public void writeAssociation(final Association assoc) throws IOException {
+        _checkStreaming();
+        _writeAssociation(assoc);
+    }
+
+    /**
+     * Ends the topic map document.
+     * 
+     * @see #startTopicMap()
+     *
+     * @throws IOException If an error occurs.
+     */
+    public void endTopicMap() throws IOException {
+        _checkStreaming();
+        _streaming = false;
+        _endTopicMap();
+    }
+
+    private void _checkStreaming() {
+        if (!_streaming) {
+            throw new IllegalStateException("The topic map has not been started");
+        }
+    }
+
+    /**
+     * Writes the requested topics of the fragment, the referenced topics
+     * (identities only) and the associations of the fragment.
+     *
+     * @param topicMap The topic map or {@code null} if the fragment is empty.
+     * @param fragment The fragment to write.
+     * @throws IOException If an error occurs.
+     */
+    private void _writeFragment(final TopicMap topicMap, final TopicMapFragment fragment) throws IOException {
+        _defaultNameType = null;
+        if (topicMap != null) {
+            _defaultNameType = WriterUtils.getOmitableDefaultTopicNameType(topicMap, !_exportIIds);
+            super.init(topicMap);
+        }
+        _startTopicMap(null);
+        final Set<Topic> requested = fragment.getRequestedTopics();
+        for (Topic topic: requested) {
+            _writeTopic(topic, false);
+        }
+        for (Topic topic: fragment.getTopics()) {
+            if (!requested.contains(topic)) {
+                _writeTopic(topic, true);
+            }
+        }
+        for (Association assoc: fragment.getAssociations()) {
+            _writeAssociation(assoc);
+        }
+        _endTopicMap();
+    }
+
+    /**
+     * Writes the start of the document and the start of the topic map.
+     *
+     * @param topicMap The topic map to write the reifier and item identifiers
+     *          from or {@code null}.
+     * @throws IOException If an error occurs.
+     */
+    private void _startTopicMap(final TopicMap topicMap) throws IOException {
         _out.startDocument();
         _out.comment("\n Generated by TMAPIX I/O -- <http://www.tmapix.org/>\n");
         super.addAttribute("xmlns", Namespace.XTM_20);
         super.addAttribute("version", _version == XTMVersion.XTM_2_0 ? "2.0" : "2.1");
-        if (_version == XTMVersion.XTM_2_0 && topicMap.getReifier() != null) {
+        if (_version == XTMVersion.XTM_2_0 && topicMap != null && topicMap.getReifier() != null) {
             super.addAttribute("reifier", "#" + super.getId(topicMap.getReifier()));
         }
         _out.startElement("topicMap", _attrs);
-        _writeReifier(topicMap);
-        _writeItemIdentifiers(topicMap);
-        for (Topic topic: topicMap.getTopics()) {
-            _writeTopic(topic);
-        }
-        for (Association assoc: topicMap.getAssociations()) {
-            _writeAssociation(assoc);
+        if (topicMap != null) {
+            _writeReifier(topicMap);
+            _writeItemIdentifiers(topicMap);
         }
+    }
+
+    private void _endTopicMap() throws IOException {
         _out.endElement("topicMap");
         _out.endDocument();
     }
 
-    private void _writeTopic(final Topic topic) throws IOException {
+    /**
+     * Writes the provided topic.
+     *
+     * @param topic The topic to write.
+     * @param identitiesOnly {@code true} if only the identities of the topic
+     *          should be written, otherwise {@code false}.
+     * @throws IOException If an error occurs.
+     */
+    private void _writeTopic(final Topic topic, final boolean identitiesOnly) throws IOException {
         // Ignore the topic if it is the default name type and it has no further
         // characteristics
         if (_isDefaultNameType(topic)) {
@@ -204,6 +383,10 @@ public class XTM2TopicMapWriter extends AbstractXMLTopicMapWriter {
         }
         _writeLocators("subjectIdentifier", sids);
         _writeLocators("subjectLocator", slos);
+        if (identitiesOnly) {
+            _out.endElement("topic");
+            return;
+        }
         final Set<Topic> types = topic.getTypes();
         if (!types.isEmpty()) {
             _out.startElement("instanceOf");
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io.internal.utils;
+
+import static org.tmapix.io.internal.utils.MapHandlerEvents.*;
+
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+
+/**
+ * Internal {@link IMapHandler} implementation which translates all events
+ * into calls of {@link #handleEvent(byte, String, String)}.
+ *
+ * @see MapHandlerEvents
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public abstract class AbstractEventMapHandler implements IMapHandler {
+
+    /**
+     * Handles an event.
+     *
+     * @param event The event code, see {@link MapHandlerEvents}.
+     * @param arg The first string argument or {@code null} if the event
+     *          has no arguments.
+     * @param arg2 The second string argument or {@code null} if the event
+     *          has less than two arguments.
+     * @throws MIOException In case of an error.
+     */
+    protected abstract void handleEvent(byte event, String arg, String arg2) throws MIOException;
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startTopicMap()
+     */
+    @Override
+    public void startTopicMap() throws MIOException {
+        handleEvent(START_TOPIC_MAP, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endTopicMap()
+     */
+    @Override
+    public void endTopicMap() throws MIOException {
+        handleEvent(END_TOPIC_MAP, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startTopic(com.semagia.mio.IRef)
+     */
+    @Override
+    public void startTopic(final IRef identity) throws MIOException {
+        handleEvent(refEvent(START_TOPIC, identity), identity.getIRI(), null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endTopic()
+     */
+    @Override
+    public void endTopic() throws MIOException {
+        handleEvent(END_TOPIC, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startAssociation()
+     */
+    @Override
+    public void startAssociation() throws MIOException {
+        handleEvent(START_ASSOCIATION, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endAssociation()
+     */
+    @Override
+    public void endAssociation() throws MIOException {
+        handleEvent(END_ASSOCIATION, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startRole()
+     */
+    @Override
+    public void startRole() throws MIOException {
+        handleEvent(START_ROLE, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endRole()
+     */
+    @Override
+    public void endRole() throws MIOException {
+        handleEvent(END_ROLE, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startPlayer()
+     */
+    @Override
+    public void startPlayer() throws MIOException {
+        handleEvent(START_PLAYER, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endPlayer()
+     */
+    @Override
+    public void endPlayer() throws MIOException {
+        handleEvent(END_PLAYER, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startOccurrence()
+     */
+    @Override
+    public void startOccurrence() throws MIOException {
+        handleEvent(START_OCCURRENCE, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endOccurrence()
+     */
+    @Override
+    public void endOccurrence() throws MIOException {
+        handleEvent(END_OCCURRENCE, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startName()
+     */
+    @Override
+    public void startName() throws MIOException {
+        handleEvent(START_NAME, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endName()
+     */
+    @Override
+    public void endName() throws MIOException {
+        handleEvent(END_NAME, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startVariant()
+     */
+    @Override
+    public void startVariant() throws MIOException {
+        handleEvent(START_VARIANT, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endVariant()
+     */
+    @Override
+    public void endVariant() throws MIOException {
+        handleEvent(END_VARIANT, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startScope()
+     */
+    @Override
+    public void startScope() throws MIOException {
+        handleEvent(START_SCOPE, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endScope()
+     */
+    @Override
+    public void endScope() throws MIOException {
+        handleEvent(END_SCOPE, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startTheme()
+     */
+    @Override
+    public void startTheme() throws MIOException {
+        handleEvent(START_THEME, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endTheme()
+     */
+    @Override
+    public void endTheme() throws MIOException {
+        handleEvent(END_THEME, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startIsa()
+     */
+    @Override
+    public void startIsa() throws MIOException {
+        handleEvent(START_ISA, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endIsa()
+     */
+    @Override
+    public void endIsa() throws MIOException {
+        handleEvent(END_ISA, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startType()
+     */
+    @Override
+    public void startType() throws MIOException {
+        handleEvent(START_TYPE, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endType()
+     */
+    @Override
+    public void endType() throws MIOException {
+        handleEvent(END_TYPE, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startReifier()
+     */
+    @Override
+    public void startReifier() throws MIOException {
+        handleEvent(START_REIFIER, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endReifier()
+     */
+    @Override
+    public void endReifier() throws MIOException {
+        handleEvent(END_REIFIER, null, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#itemIdentifier(java.lang.String)
+     */
+    @Override
+    public void itemIdentifier(final String iri) throws MIOException {
+        handleEvent(ITEM_IDENTIFIER, iri, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#subjectIdentifier(java.lang.String)
+     */
+    @Override
+    public void subjectIdentifier(final String iri) throws MIOException {
+        handleEvent(SUBJECT_IDENTIFIER, iri, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#subjectLocator(java.lang.String)
+     */
+    @Override
+    public void subjectLocator(final String iri) throws MIOException {
+        handleEvent(SUBJECT_LOCATOR, iri, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#topicRef(com.semagia.mio.IRef)
+     */
+    @Override
+    public void topicRef(final IRef identity) throws MIOException {
+        handleEvent(refEvent(TOPIC_REF, identity), identity.getIRI(), null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#value(java.lang.String)
+     */
+    @Override
+    public void value(final String value) throws MIOException {
+        handleEvent(VALUE, value, null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#value(java.lang.String, java.lang.String)
+     */
+    @Override
+    public void value(final String value, final String datatype) throws MIOException {
+        handleEvent(VALUE_DATATYPE, value, datatype);
+    }
+
+}
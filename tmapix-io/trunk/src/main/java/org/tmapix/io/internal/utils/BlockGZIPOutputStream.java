@@ -0,0 +1,288 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io.internal.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Internal {@link OutputStream} which compresses fixed-size blocks 
+ * independently of each other.
+ * <p>
+ * Each block is written as complete gzip member, the concatenation of the 
+ * members is a valid gzip stream (RFC 1952) which can be read by any gzip
+ * implementation. Since the blocks do not depend on each other, they are
+ * compressed in parallel. The number of blocks which are held in memory is
+ * bounded by twice the parallelism.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class BlockGZIPOutputStream extends OutputStream {
+
+    /**
+     * Default size of a block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    private final OutputStream _out;
+    private final ExecutorService _executor;
+    private final LinkedList<Future<byte[]>> _pending;
+    private final int _maxPending;
+    private final int _blockSize;
+    private byte[] _buffer;
+    private int _count;
+    private boolean _written;
+    private boolean _finished;
+
+    /**
+     * Creates a stream which compresses the blocks with the provided number
+     * of threads.
+     *
+     * @param out The stream to write the compressed data to.
+     * @param parallelism The number of threads, <tt>1</tt> compresses the 
+     *          blocks in the calling thread.
+     * @param blockSize The size of the uncompressed blocks.
+     */
+    public BlockGZIPOutputStream(final OutputStream out, final int parallelism, final int blockSize) {
+        if (out == null) {
+            throw new IllegalArgumentException("The output stream must not be null");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be greater than zero");
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("The block size must be greater than zero");
+        }
+        _out = out;
+        _blockSize = blockSize;
+        _buffer = new byte[blockSize];
+        _pending = new LinkedList<Future<byte[]>>();
+        _maxPending = parallelism * 2;
+        _executor = parallelism > 1 ? Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory())
+                                    : null;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#write(int)
+     */
+    @Override
+    public void write(final int b) throws IOException {
+        _ensureOpen();
+        _buffer[_count++] = (byte) b;
+        if (_count == _blockSize) {
+            _submit();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        _ensureOpen();
+        while (len > 0) {
+            final int n = Math.min(len, _blockSize - _count);
+            System.arraycopy(b, off, _buffer, _count, n);
+            _count += n;
+            off += n;
+            len -= n;
+            if (_count == _blockSize) {
+                _submit();
+            }
+        }
+    }
+
+    /**
+     * Compresses the buffered data and writes all pending blocks.
+     * <p>
+     * Each flush terminates the current block, frequent flushes decrease
+     * the compression ratio.
+     * </p>
+     */
+    @Override
+    public void flush() throws IOException {
+        _ensureOpen();
+        if (_count > 0) {
+            _submit();
+        }
+        while (!_pending.isEmpty()) {
+            _writeNext();
+        }
+        _out.flush();
+    }
+
+    /**
+     * Writes all remaining data without closing the underlying stream.
+     *
+     * @throws IOException In case of an error.
+     */
+    public void finish() throws IOException {
+        if (_finished) {
+            return;
+        }
+        try {
+            if (!_written && _count == 0) {
+                // Write an empty member, an empty file is not a valid gzip stream
+                _submit();
+            }
+            flush();
+        }
+        finally {
+            _finished = true;
+            _buffer = null;
+            if (_executor != null) {
+                _executor.shutdownNow();
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#close()
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        }
+        finally {
+            _out.close();
+        }
+    }
+
+    private void _ensureOpen() throws IOException {
+        if (_finished) {
+            throw new IOException("The stream is closed");
+        }
+    }
+
+    /**
+     * Hands over the current buffer to the compression and writes the 
+     * completed blocks if too many blocks are pending.
+     */
+    private void _submit() throws IOException {
+        final Callable<byte[]> task = new CompressionTask(_buffer, _count);
+        _written = true;
+        if (_executor == null) {
+            _count = 0;
+            _out.write(_call(task));
+            return;
+        }
+        _pending.add(_executor.submit(task));
+        _buffer = new byte[_blockSize];
+        _count = 0;
+        while (_pending.size() >= _maxPending) {
+            _writeNext();
+        }
+    }
+
+    /**
+     * Waits for the oldest pending block and writes it.
+     */
+    private void _writeNext() throws IOException {
+        final Future<byte[]> future = _pending.removeFirst();
+        try {
+            _out.write(future.get());
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing", ex);
+        }
+        catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    private static byte[] _call(final Callable<byte[]> task) throws IOException {
+        try {
+            return task.call();
+        }
+        catch (IOException ex) {
+            throw ex;
+        }
+        catch (RuntimeException ex) {
+            throw ex;
+        }
+        catch (Exception ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+
+    /**
+     * Compresses one block into a gzip member.
+     */
+    private static final class CompressionTask implements Callable<byte[]> {
+
+        private final byte[] _data;
+        private final int _length;
+
+        CompressionTask(final byte[] data, final int length) {
+            _data = data;
+            _length = length;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public byte[] call() throws IOException {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(_length / 2 + 64);
+            final GZIPOutputStream gzip = new GZIPOutputStream(out);
+            gzip.write(_data, 0, _length);
+            gzip.close();
+            return out.toByteArray();
+        }
+    }
+
+
+    /**
+     * Creates daemon threads, a stream which is never closed does not
+     * prevent the JVM from exiting.
+     */
+    private static final class DaemonThreadFactory implements ThreadFactory {
+
+        private final ThreadFactory _factory = Executors.defaultThreadFactory();
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+         */
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = _factory.newThread(r);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io.internal.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Internal {@link OutputStream} which optionally compresses the data with 
+ * a {@link BlockGZIPOutputStream}.
+ * <p>
+ * Compression is switched on / off between two flushes: A flush completes
+ * the gzip stream, the writers flush once after a topic map was written, 
+ * so each topic map becomes a complete gzip stream.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class CompressibleOutputStream extends OutputStream {
+
+    private final OutputStream _out;
+    private int _parallelism;
+    private BlockGZIPOutputStream _gzip;
+
+    /**
+     * Creates an uncompressed stream.
+     *
+     * @param out The stream to write to.
+     */
+    public CompressibleOutputStream(final OutputStream out) {
+        if (out == null) {
+            throw new IllegalArgumentException("The output stream must not be null");
+        }
+        _out = out;
+    }
+
+    /**
+     * Sets the number of threads which compress the data. <tt>0</tt> 
+     * disables the compression. 
+     * <p>
+     * The setting takes effect with the first write after the next flush.
+     * </p>
+     *
+     * @param parallelism The number of threads or <tt>0</tt>.
+     */
+    public void setParallelism(final int parallelism) {
+        if (parallelism < 0) {
+            throw new IllegalArgumentException("The parallelism must not be negative");
+        }
+        _parallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of threads which compress the data.
+     *
+     * @return The number of threads or <tt>0</tt> if the compression is 
+     *          disabled.
+     */
+    public int getParallelism() {
+        return _parallelism;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#write(int)
+     */
+    @Override
+    public void write(final int b) throws IOException {
+        _target().write(b);
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        _target().write(b, off, len);
+    }
+
+    /**
+     * Completes the gzip stream (if any) and flushes the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        _finish();
+        _out.flush();
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#close()
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            _finish();
+        }
+        finally {
+            _out.close();
+        }
+    }
+
+    private OutputStream _target() {
+        if (_gzip == null && _parallelism > 0) {
+            _gzip = new BlockGZIPOutputStream(_out, _parallelism, BlockGZIPOutputStream.DEFAULT_BLOCK_SIZE);
+        }
+        return _gzip != null ? _gzip : _out;
+    }
+
+    private void _finish() throws IOException {
+        if (_gzip == null) {
+            return;
+        }
+        try {
+            _gzip.finish();
+        }
+        finally {
+            _gzip = null;
+        }
+    }
+
+}
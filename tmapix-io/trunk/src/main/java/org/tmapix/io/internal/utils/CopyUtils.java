@@ -0,0 +1,203 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io.internal.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Construct;
+import org.tmapi.core.Locator;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Reifiable;
+import org.tmapi.core.Role;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.Variant;
+
+/**
+ * Internal class to copy a topic map into another topic map.
+ * <p>
+ * Each construct of the source topic map is read exactly once, this is
+ * useful if the getters of the source are expensive (i.e. if the source 
+ * is backed by a database).
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class CopyUtils {
+
+    private final TopicMap _target;
+    private final Map<Topic, Topic> _topics;
+    private final boolean _requireIdentity;
+
+    private CopyUtils(final TopicMap target, final boolean requireIdentity) {
+        _target = target;
+        _topics = new IdentityHashMap<Topic, Topic>();
+        _requireIdentity = requireIdentity;
+    }
+
+    /**
+     * Copies all constructs of the source topic map into the target.
+     * <p>
+     * The target should be empty, otherwise the constructs of the source
+     * are merged into the target. The copy of a topic without any identity
+     * receives the item identifier which is generated by the target.
+     * </p>
+     *
+     * @param source The topic map to copy.
+     * @param target The topic map which receives the constructs.
+     */
+    public static void copy(final TopicMap source, final TopicMap target) {
+        new CopyUtils(target, false)._copy(source);
+    }
+
+    /**
+     * Copies all constructs of the source topic map into the target if 
+     * each topic of the source has at least one identity.
+     * <p>
+     * The copy stops at the first topic without identity since the target 
+     * would add a generated item identifier to the copy of the topic. The
+     * target contains a partial copy in this case and should be discarded.
+     * </p>
+     *
+     * @param source The topic map to copy.
+     * @param target The topic map which receives the constructs.
+     * @return <tt>true</tt> if the topic map was copied, <tt>false</tt> if
+     *          the source contains a topic without identity.
+     */
+    public static boolean copyIdentified(final TopicMap source, final TopicMap target) {
+        try {
+            new CopyUtils(target, true)._copy(source);
+            return true;
+        }
+        catch (MissingIdentityException ex) {
+            return false;
+        }
+    }
+
+    private void _copy(final TopicMap source) {
+        for (Topic topic: source.getTopics()) {
+            _copyTopic(topic);
+        }
+        for (Association assoc: source.getAssociations()) {
+            final Association copy = _target.createAssociation(_topic(assoc.getType()), _topics(assoc.getScope()));
+            _copyReifiable(assoc, copy);
+            for (Role role: assoc.getRoles()) {
+                _copyReifiable(role, copy.createRole(_topic(role.getType()), _topic(role.getPlayer())));
+            }
+        }
+        _copyReifiable(source, _target);
+    }
+
+    private void _copyTopic(final Topic topic) {
+        final Topic copy = _topic(topic);
+        for (Topic type: topic.getTypes()) {
+            copy.addType(_topic(type));
+        }
+        for (Name name: topic.getNames()) {
+            final Name nameCopy = copy.createName(_topic(name.getType()), name.getValue(), _topics(name.getScope()));
+            _copyReifiable(name, nameCopy);
+            for (Variant variant: name.getVariants()) {
+                _copyReifiable(variant, nameCopy.createVariant(variant.getValue(), 
+                        _locator(variant.getDatatype()), _topics(variant.getScope())));
+            }
+        }
+        for (Occurrence occ: topic.getOccurrences()) {
+            _copyReifiable(occ, copy.createOccurrence(_topic(occ.getType()), occ.getValue(), 
+                    _locator(occ.getDatatype()), _topics(occ.getScope())));
+        }
+    }
+
+    /**
+     * Returns the copy of the provided topic. The copy is created with all
+     * identities of the topic if necessary.
+     */
+    private Topic _topic(final Topic topic) {
+        Topic copy = _topics.get(topic);
+        if (copy != null) {
+            return copy;
+        }
+        final Collection<Locator> sids = topic.getSubjectIdentifiers();
+        final Collection<Locator> slos = topic.getSubjectLocators();
+        final Collection<Locator> iids = topic.getItemIdentifiers();
+        if (!sids.isEmpty()) {
+            copy = _target.createTopicBySubjectIdentifier(_locator(sids.iterator().next()));
+        }
+        else if (!slos.isEmpty()) {
+            copy = _target.createTopicBySubjectLocator(_locator(slos.iterator().next()));
+        }
+        else if (!iids.isEmpty()) {
+            copy = _target.createTopicByItemIdentifier(_locator(iids.iterator().next()));
+        }
+        else if (_requireIdentity) {
+            throw new MissingIdentityException();
+        }
+        else {
+            copy = _target.createTopic();
+        }
+        for (Locator sid: sids) {
+            copy.addSubjectIdentifier(_locator(sid));
+        }
+        for (Locator slo: slos) {
+            copy.addSubjectLocator(_locator(slo));
+        }
+        _copyItemIdentifiers(topic, copy);
+        _topics.put(topic, copy);
+        return copy;
+    }
+
+    private Topic[] _topics(final Collection<Topic> topics) {
+        final List<Topic> copies = new ArrayList<Topic>(topics.size());
+        for (Topic topic: topics) {
+            copies.add(_topic(topic));
+        }
+        return copies.toArray(new Topic[copies.size()]);
+    }
+
+    private void _copyReifiable(final Reifiable source, final Reifiable target) {
+        _copyItemIdentifiers(source, target);
+        final Topic reifier = source.getReifier();
+        if (reifier != null) {
+            target.setReifier(_topic(reifier));
+        }
+    }
+
+    private void _copyItemIdentifiers(final Construct source, final Construct target) {
+        for (Locator iid: source.getItemIdentifiers()) {
+            target.addItemIdentifier(_locator(iid));
+        }
+    }
+
+    private Locator _locator(final Locator loc) {
+        return _target.createLocator(loc.getReference());
+    }
+
+
+    /**
+     * Thrown if a topic without identity should be copied.
+     */
+    @SuppressWarnings("serial")
+    private static final class MissingIdentityException extends RuntimeException {
+        // noop.
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io.internal.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Name;
+import org.tmapi.core.Reifiable;
+import org.tmapi.core.Role;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+
+/**
+ * Internal class to remove duplicate Topic Maps constructs.
+ * <p>
+ * Duplicates are detected by a {@link Signature}-keyed index per parent
+ * and merged via {@link MergeUtils}. The detection does not modify the
+ * topic map and runs in parallel if an executor is provided: The
+ * duplicates of one topic's characteristics do not depend on any other
+ * topic. The duplicates are merged in the calling thread since the
+ * Topic Maps engines are not required to support concurrent modifications.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class DuplicateRemovalUtils {
+
+    private DuplicateRemovalUtils() {
+        // noop.
+    }
+
+    /**
+     * Removes the duplicate names, occurrences, variants, roles and
+     * associations from the provided topic map.
+     *
+     * @param topicMap The topic map to remove the duplicates from.
+     * @param executor The executor or {@code null}.
+     * @param parallelism The number of threads of the executor.
+     */
+    public static void removeDuplicates(final TopicMap topicMap,
+            final ExecutorService executor, final int parallelism) {
+        // Merging the reifiers of duplicates may merge topics which
+        // invalidates the detected duplicates, start again in this case
+        while (!_removeDuplicates(topicMap, executor, parallelism)) {
+            // noop.
+        }
+    }
+
+    /**
+     * Removes the duplicates.
+     *
+     * @return {@code false} if topics were merged and the duplicate 
+     *          detection must be repeated.
+     */
+    private static boolean _removeDuplicates(final TopicMap topicMap,
+            final ExecutorService executor, final int parallelism) {
+        final Topic[] topics = topicMap.getTopics().toArray(new Topic[0]);
+        final Association[] assocs = topicMap.getAssociations().toArray(new Association[0]);
+        final Reifiable[][] topicDuplicates = new Reifiable[topics.length][];
+        Parallel.forEach(executor, parallelism, topics.length, new Parallel.Range() {
+            public void run(final int from, final int to) {
+                final Map<Signature, Reifiable> index = new HashMap<Signature, Reifiable>();
+                for (int i=from; i < to; i++) {
+                    topicDuplicates[i] = _findDuplicates(topics[i], index);
+                }
+            }
+        });
+        final Reifiable[][] roleDuplicates = new Reifiable[assocs.length][];
+        Parallel.forEach(executor, parallelism, assocs.length, new Parallel.Range() {
+            public void run(final int from, final int to) {
+                final Map<Signature, Reifiable> index = new HashMap<Signature, Reifiable>();
+                final List<Reifiable> duplicates = new ArrayList<Reifiable>();
+                for (int i=from; i < to; i++) {
+                    duplicates.clear();
+                    index.clear();
+                    _index(assocs[i].getRoles(), index, duplicates);
+                    roleDuplicates[i] = _toArray(duplicates);
+                }
+            }
+        });
+        final int topicCount = topics.length;
+        if (!_merge(topicMap, topicCount, topicDuplicates)
+                || !_merge(topicMap, topicCount, roleDuplicates)) {
+            return false;
+        }
+        // The roles are free of duplicates now, the associations can be compared
+        final Association[] remaining = topicMap.getAssociations().toArray(new Association[0]);
+        final Signature[] sigs = new Signature[remaining.length];
+        Parallel.forEach(executor, parallelism, remaining.length, new Parallel.Range() {
+            public void run(final int from, final int to) {
+                for (int i=from; i < to; i++) {
+                    sigs[i] = SignatureGenerator.signature(remaining[i]);
+                }
+            }
+        });
+        final Map<Signature, Reifiable> index = new HashMap<Signature, Reifiable>(sigs.length);
+        final List<Reifiable> duplicates = new ArrayList<Reifiable>();
+        for (Signature sig: sigs) {
+            _index(sig, index, duplicates);
+        }
+        return _mergeAssociations(topicMap, topicCount, duplicates);
+    }
+
+    /**
+     * Merges the duplicate associations in one batch unless the merge 
+     * of reifiers may merge topics.
+     *
+     * @return {@code false} if the number of topics has changed.
+     */
+    private static boolean _mergeAssociations(final TopicMap topicMap, final int topicCount,
+            final List<Reifiable> duplicates) {
+        final int count = duplicates.size() / 2;
+        final Association[] sources = new Association[count];
+        final Association[] targets = new Association[count];
+        final Set<Association> reifiedTargets = new HashSet<Association>();
+        for (int i=0; i < count; i++) {
+            sources[i] = (Association) duplicates.get(2 * i);
+            targets[i] = (Association) duplicates.get(2 * i + 1);
+            if (_mayMergeTopics(sources[i], targets[i], reifiedTargets)) {
+                return _merge(topicMap, topicCount, new Reifiable[][] {_toArray(duplicates)});
+            }
+        }
+        MergeUtils.merge(sources, targets);
+        return topicMap.getTopics().size() == topicCount;
+    }
+
+    /**
+     * Returns if merging the <tt>source</tt> into the <tt>target</tt> may
+     * merge reifiers.
+     * <p>
+     * The targets are the first occurrence of an association, several 
+     * sources may share a target. A target which receives a reifier is 
+     * recorded in <tt>reifiedTargets</tt> so that a further reified source 
+     * of the same target is detected.
+     * </p>
+     */
+    private static boolean _mayMergeTopics(final Association source, final Association target,
+            final Set<Association> reifiedTargets) {
+        if (source.getReifier() != null
+                && (target.getReifier() != null || !reifiedTargets.add(target))) {
+            return true;
+        }
+        for (Role role: source.getRoles()) {
+            if (role.getReifier() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the duplicate variants, names and occurrences of the topic.
+     *
+     * @return An array of (duplicate, existing) pairs or {@code null}.
+     */
+    private static Reifiable[] _findDuplicates(final Topic topic, 
+            final Map<Signature, Reifiable> index) {
+        final List<Reifiable> duplicates = new ArrayList<Reifiable>();
+        for (Name name: topic.getNames()) {
+            index.clear();
+            _index(name.getVariants(), index, duplicates);
+        }
+        index.clear();
+        _index(topic.getNames(), index, duplicates);
+        _index(topic.getOccurrences(), index, duplicates);
+        index.clear();
+        return _toArray(duplicates);
+    }
+
+    /**
+     * Adds the constructs to the index and reports the duplicates as
+     * (duplicate, existing) pairs.
+     */
+    private static void _index(final Collection<? extends Reifiable> constructs,
+            final Map<Signature, Reifiable> index, final List<Reifiable> duplicates) {
+        if (constructs.size() < 2) {
+            return;
+        }
+        for (Reifiable construct: constructs) {
+            _index(SignatureGenerator.signature(construct), index, duplicates);
+        }
+    }
+
+    private static void _index(final Signature sig, final Map<Signature, Reifiable> index,
+            final List<Reifiable> duplicates) {
+        final Reifiable existing = index.get(sig);
+        if (existing != null) {
+            duplicates.add(sig.getConstruct());
+            duplicates.add(existing);
+        }
+        else {
+            index.put(sig, sig.getConstruct());
+        }
+    }
+
+    private static Reifiable[] _toArray(final List<Reifiable> duplicates) {
+        return duplicates.isEmpty() ? null : duplicates.toArray(new Reifiable[duplicates.size()]);
+    }
+
+    /**
+     * Merges the (duplicate, existing) pairs.
+     *
+     * @return {@code false} if the number of topics has changed.
+     */
+    private static boolean _merge(final TopicMap topicMap, final int topicCount, 
+            final Reifiable[][] duplicates) {
+        for (Reifiable[] pairs: duplicates) {
+            if (pairs == null) {
+                continue;
+            }
+            for (int i=0; i < pairs.length; i += 2) {
+                MergeUtils.merge(pairs[i], pairs[i+1]);
+                if (topicMap.getTopics().size() != topicCount) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io.internal.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Internal class to sort (key, value) pairs which may not fit into memory.
+ * <p>
+ * The records are sorted by their keys, records with equal keys retain the
+ * order in which they were added. If the buffered records exceed the
+ * memory budget, the buffer is sorted and written as run into a temporary
+ * file. The runs are merged on-the-fly while the sorted records are read.
+ * </p>
+ * <p>
+ * At most <tt>fan-in</tt> runs are opened at the same time. If more runs 
+ * were written, the runs are merged in several passes into fewer, larger 
+ * runs before the final merge.
+ * </p>
+ * <p>
+ * Keys and values may contain any character, including unpaired surrogates.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class ExternalSorter {
+
+    /**
+     * Estimated memory usage of a record (without the characters).
+     */
+    private static final int _RECORD_OVERHEAD = 96;
+    private static final int _BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The default number of runs which are merged at once.
+     */
+    public static final int DEFAULT_FAN_IN = 64;
+
+    private final long _budget;
+    private final int _fanIn;
+    private final File _tmpDir;
+    private final List<Record> _buffer;
+    private final List<File> _runs;
+    private long _bufferSize;
+    private long _seq;
+
+    /**
+     * Creates a sorter.
+     *
+     * @param budget The maximum number of bytes the buffered records may use.
+     * @param tmpDir The directory for the temporary files or {@code null}
+     *          to use the default temporary directory.
+     */
+    public ExternalSorter(final long budget, final File tmpDir) {
+        this(budget, tmpDir, DEFAULT_FAN_IN);
+    }
+
+    /**
+     * Creates a sorter.
+     *
+     * @param budget The maximum number of bytes the buffered records may use.
+     * @param tmpDir The directory for the temporary files or {@code null}
+     *          to use the default temporary directory.
+     * @param fanIn The maximum number of runs which are merged at once.
+     */
+    public ExternalSorter(final long budget, final File tmpDir, final int fanIn) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("The memory budget must be greater than zero");
+        }
+        if (fanIn < 2) {
+            throw new IllegalArgumentException("The fan-in must be greater than one");
+        }
+        _budget = budget;
+        _fanIn = fanIn;
+        _tmpDir = tmpDir;
+        _buffer = new ArrayList<Record>();
+        _runs = new ArrayList<File>();
+    }
+
+    /**
+     * Adds a record.
+     *
+     * @param key The key to sort the record by.
+     * @param value The value.
+     * @throws IOException If the buffer cannot be written to disk.
+     */
+    public void add(final String key, final String value) throws IOException {
+        _buffer.add(new Record(key, value, _seq++));
+        _bufferSize += _RECORD_OVERHEAD + 2 * (key.length() + value.length());
+        if (_bufferSize > _budget) {
+            _spill();
+        }
+    }
+
+    /**
+     * Returns a cursor over the sorted records.
+     * <p>
+     * No further records should be added to this sorter once this method was
+     * invoked. The caller must close the cursor, closing the cursor
+     * deletes all temporary files.
+     * </p>
+     *
+     * @return A cursor over the sorted records.
+     * @throws IOException If an error occurs.
+     */
+    public Cursor sort() throws IOException {
+        if (_runs.isEmpty()) {
+            Collections.sort(_buffer);
+            return new BufferCursor(new ArrayList<Record>(_buffer));
+        }
+        if (!_buffer.isEmpty()) {
+            _spill();
+        }
+        while (_runs.size() > _fanIn) {
+            _mergePass();
+        }
+        return new MergeCursor(new ArrayList<File>(_runs));
+    }
+
+    /**
+     * Merges the runs in groups of at most <tt>fan-in</tt> runs into new runs.
+     *
+     * @throws IOException If an error occurs.
+     */
+    private void _mergePass() throws IOException {
+        final List<File> runs = new ArrayList<File>(_runs);
+        _runs.clear();
+        for (int i=0; i < runs.size(); i += _fanIn) {
+            final List<File> group = new ArrayList<File>(runs.subList(i, Math.min(i + _fanIn, runs.size())));
+            if (group.size() == 1) {
+                _runs.add(group.get(0));
+                continue;
+            }
+            final MergeCursor cursor = new MergeCursor(group);
+            try {
+                final DataOutputStream out = _createRun(cursor.size());
+                try {
+                    while (cursor.next()) {
+                        _writeRecord(out, cursor._current);
+                    }
+                }
+                finally {
+                    out.close();
+                }
+            }
+            finally {
+                // Deletes the merged runs
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Sorts the buffer and writes it into a temporary file.
+     *
+     * @throws IOException If an error occurs.
+     */
+    private void _spill() throws IOException {
+        Collections.sort(_buffer);
+        final DataOutputStream out = _createRun(_buffer.size());
+        try {
+            for (Record record: _buffer) {
+                _writeRecord(out, record);
+            }
+        }
+        finally {
+            out.close();
+        }
+        _buffer.clear();
+        _bufferSize = 0;
+    }
+
+    /**
+     * Creates a new run.
+     *
+     * @param size The number of records of the run.
+     * @return The stream to write the records to.
+     * @throws IOException If an error occurs.
+     */
+    private DataOutputStream _createRun(final int size) throws IOException {
+        final File file = File.createTempFile("tmapix-sort", ".run", _tmpDir);
+        file.deleteOnExit();
+        _runs.add(file);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), _BUFFER_SIZE));
+        try {
+            out.writeInt(size);
+        }
+        catch (IOException ex) {
+            out.close();
+            throw ex;
+        }
+        return out;
+    }
+
+    private static void _writeRecord(final DataOutputStream out, final Record record) throws IOException {
+        out.writeLong(record.seq);
+        _writeString(out, record.key);
+        _writeString(out, record.value);
+    }
+
+    private static void _writeString(final DataOutputStream out, final String s) throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    private static String _readString(final DataInputStream in) throws IOException {
+        final int len = in.readInt();
+        final char[] ch = new char[len];
+        for (int i=0; i < len; i++) {
+            ch[i] = in.readChar();
+        }
+        return new String(ch);
+    }
+
+    /**
+     * Cursor over the sorted records.
+     */
+    public static interface Cursor {
+
+        /**
+         * Moves the cursor to the next record.
+         *
+         * @return {@code true} if a record is available, otherwise {@code false}.
+         * @throws IOException If an error occurs.
+         */
+        public boolean next() throws IOException;
+
+        /**
+         * Returns the key of the current record.
+         *
+         * @return The key.
+         */
+        public String getKey();
+
+        /**
+         * Returns the value of the current record.
+         *
+         * @return The value.
+         */
+        public String getValue();
+
+        /**
+         * Releases all resources.
+         */
+        public void close();
+    }
+
+    private static final class Record implements Comparable<Record> {
+
+        final String key;
+        final String value;
+        final long seq;
+
+        Record(String key, String value, long seq) {
+            this.key = key;
+            this.value = value;
+            this.seq = seq;
+        }
+
+        public int compareTo(Record o) {
+            int res = key.compareTo(o.key);
+            if (res == 0) {
+                res = seq < o.seq ? -1 : seq == o.seq ? 0 : 1;
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Cursor which operates upon the in-memory buffer.
+     */
+    private static final class BufferCursor implements Cursor {
+
+        private final List<Record> _records;
+        private int _idx;
+        private Record _current;
+
+        BufferCursor(List<Record> records) {
+            _records = records;
+        }
+
+        public boolean next() {
+            _current = _idx < _records.size() ? _records.get(_idx++) : null;
+            return _current != null;
+        }
+
+        public String getKey() {
+            return _current.key;
+        }
+
+        public String getValue() {
+            return _current.value;
+        }
+
+        public void close() {
+            _records.clear();
+        }
+    }
+
+    /**
+     * Reads the records of a run.
+     */
+    private static final class RunReader implements Comparable<RunReader> {
+
+        private final DataInputStream _in;
+        private int _remaining;
+        Record current;
+
+        RunReader(File file) throws IOException {
+            _in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), _BUFFER_SIZE));
+            try {
+                _remaining = _in.readInt();
+            }
+            catch (IOException ex) {
+                close();
+                throw ex;
+            }
+        }
+
+        int remaining() {
+            return _remaining;
+        }
+
+        boolean advance() throws IOException {
+            if (_remaining == 0) {
+                current = null;
+                return false;
+            }
+            _remaining--;
+            final long seq = _in.readLong();
+            final String key = _readString(_in);
+            current = new Record(key, _readString(_in), seq);
+            return true;
+        }
+
+        void close() {
+            try {
+                _in.close();
+            }
+            catch (IOException ex) {
+                // noop.
+            }
+        }
+
+        public int compareTo(RunReader o) {
+            return current.compareTo(o.current);
+        }
+    }
+
+    /**
+     * Cursor which merges the runs.
+     */
+    private static final class MergeCursor implements Cursor {
+
+        private final List<File> _files;
+        private final List<RunReader> _readers;
+        private final PriorityQueue<RunReader> _queue;
+        private RunReader _reader;
+        private Record _current;
+        private int _size;
+
+        MergeCursor(List<File> files) throws IOException {
+            _files = files;
+            _readers = new ArrayList<RunReader>(files.size());
+            _queue = new PriorityQueue<RunReader>(Math.max(1, files.size()));
+            try {
+                for (File file: files) {
+                    final RunReader reader = new RunReader(file);
+                    _readers.add(reader);
+                    _size += reader.remaining();
+                    if (reader.advance()) {
+                        _queue.add(reader);
+                    }
+                }
+            }
+            catch (IOException ex) {
+                close();
+                throw ex;
+            }
+        }
+
+        /**
+         * Returns the number of records of all runs.
+         */
+        int size() {
+            return _size;
+        }
+
+        public boolean next() throws IOException {
+            if (_reader != null && _reader.advance()) {
+                _queue.add(_reader);
+            }
+            _reader = _queue.poll();
+            _current = _reader != null ? _reader.current : null;
+            return _current != null;
+        }
+
+        public String getKey() {
+            return _current.key;
+        }
+
+        public String getValue() {
+            return _current.value;
+        }
+
+        public void close() {
+            for (RunReader reader: _readers) {
+                reader.close();
+            }
+            for (File file: _files) {
+                file.delete();
+            }
+            _readers.clear();
+            _queue.clear();
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io.internal.utils;
+
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.MIOException;
+
+/**
+ * {@link IMapHandler} implementation which records the events in memory.
+ * <p>
+ * The recorded events can be sent to another {@link IMapHandler} by
+ * {@link #replay(IMapHandler)}. An instance is meant to be filled by one
+ * thread and to be replayed by another thread after the recording thread
+ * has finished (i.e. the hand-over must be synchronized, for example by
+ * a {@link java.util.concurrent.Future}).
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class MapHandlerEventBuffer extends AbstractEventMapHandler {
+
+    private byte[] _events;
+    private int _eventCount;
+    private String[] _strings;
+    private int _stringCount;
+
+    /**
+     * Creates an empty buffer.
+     */
+    public MapHandlerEventBuffer() {
+        _events = new byte[1024];
+        _strings = new String[256];
+    }
+
+    /**
+     * Returns the number of recorded events.
+     *
+     * @return The number of events.
+     */
+    public int size() {
+        return _eventCount;
+    }
+
+    /**
+     * Sends the recorded events to the provided handler.
+     *
+     * @param handler The handler which should receive the events.
+     * @throws MIOException In case the handler reports an error.
+     */
+    public void replay(final IMapHandler handler) throws MIOException {
+        final byte[] events = _events;
+        final String[] strings = _strings;
+        int s = 0;
+        for (int i=0; i < _eventCount; i++) {
+            final byte event = events[i];
+            switch (MapHandlerEvents.argumentCount(event)) {
+                case 0: MapHandlerEvents.fire(handler, event, null, null); break;
+                case 1: MapHandlerEvents.fire(handler, event, strings[s++], null); break;
+                default:
+                    MapHandlerEvents.fire(handler, event, strings[s], strings[s+1]);
+                    s += 2;
+            }
+        }
+    }
+
+    private void _event(final byte event) {
+        if (_eventCount == _events.length) {
+            final byte[] events = new byte[_events.length * 2];
+            System.arraycopy(_events, 0, events, 0, _eventCount);
+            _events = events;
+        }
+        _events[_eventCount++] = event;
+    }
+
+    private void _string(final String value) {
+        if (_stringCount == _strings.length) {
+            final String[] strings = new String[_strings.length * 2];
+            System.arraycopy(_strings, 0, strings, 0, _stringCount);
+            _strings = strings;
+        }
+        _strings[_stringCount++] = value;
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmapix.io.internal.utils.AbstractEventMapHandler#handleEvent(byte, java.lang.String, java.lang.String)
+     */
+    @Override
+    protected void handleEvent(final byte event, final String arg, final String arg2) {
+        _event(event);
+        final int args = MapHandlerEvents.argumentCount(event);
+        if (args > 0) {
+            _string(arg);
+            if (args > 1) {
+                _string(arg2);
+            }
+        }
+    }
+
+}
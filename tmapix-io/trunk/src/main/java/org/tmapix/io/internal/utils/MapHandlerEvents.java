@@ -0,0 +1,199 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io.internal.utils;
+
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.helpers.Ref;
+
+/**
+ * Internal class which provides codes for the events of a {@link IMapHandler}.
+ * <p>
+ * The codes are used by the in-memory {@link MapHandlerEventBuffer} and by
+ * the recorded event streams, they must not be changed.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class MapHandlerEvents {
+
+    public static final byte START_TOPIC_MAP = 0;
+    public static final byte END_TOPIC_MAP = 1;
+    public static final byte END_TOPIC = 2;
+    public static final byte START_ASSOCIATION = 3;
+    public static final byte END_ASSOCIATION = 4;
+    public static final byte START_ROLE = 5;
+    public static final byte END_ROLE = 6;
+    public static final byte START_PLAYER = 7;
+    public static final byte END_PLAYER = 8;
+    public static final byte START_OCCURRENCE = 9;
+    public static final byte END_OCCURRENCE = 10;
+    public static final byte START_NAME = 11;
+    public static final byte END_NAME = 12;
+    public static final byte START_VARIANT = 13;
+    public static final byte END_VARIANT = 14;
+    public static final byte START_SCOPE = 15;
+    public static final byte END_SCOPE = 16;
+    public static final byte START_THEME = 17;
+    public static final byte END_THEME = 18;
+    public static final byte START_ISA = 19;
+    public static final byte END_ISA = 20;
+    public static final byte START_TYPE = 21;
+    public static final byte END_TYPE = 22;
+    public static final byte START_REIFIER = 23;
+    public static final byte END_REIFIER = 24;
+    /**
+     * Events with one string argument.
+     */
+    public static final byte ITEM_IDENTIFIER = 25;
+    public static final byte SUBJECT_IDENTIFIER = 26;
+    public static final byte SUBJECT_LOCATOR = 27;
+    public static final byte VALUE = 28;
+    /**
+     * Event with two string arguments (the value and the datatype).
+     */
+    public static final byte VALUE_DATATYPE = 29;
+    /**
+     * Events with one string argument which are combined with the type of
+     * the reference, see {@link #refEvent(byte, IRef)}.
+     */
+    public static final byte START_TOPIC = 32;
+    public static final byte TOPIC_REF = 36;
+
+    private static final int _TYPE_MASK = 3;
+    private static final int _II = 0;
+    private static final int _SI = 1;
+    private static final int _SL = 2;
+
+    private MapHandlerEvents() {
+        // noop.
+    }
+
+    /**
+     * Returns the event code for {@link #START_TOPIC} or {@link #TOPIC_REF}
+     * and the provided reference.
+     *
+     * @param event Either {@link #START_TOPIC} or {@link #TOPIC_REF}.
+     * @param ref The reference.
+     * @return The event code.
+     * @throws MIOException If the type of the reference is unknown.
+     */
+    public static byte refEvent(final byte event, final IRef ref) throws MIOException {
+        final int type;
+        switch (ref.getType()) {
+            case IRef.ITEM_IDENTIFIER: type = _II; break;
+            case IRef.SUBJECT_IDENTIFIER: type = _SI; break;
+            case IRef.SUBJECT_LOCATOR: type = _SL; break;
+            default: throw new MIOException("Unknown reference type " + ref.getType());
+        }
+        return (byte) (event | type);
+    }
+
+    /**
+     * Returns if the provided event code is valid.
+     *
+     * @param event The event code.
+     * @return {@code true} if the code is valid, otherwise {@code false}.
+     */
+    public static boolean isValid(final byte event) {
+        if (event >= START_TOPIC_MAP && event <= VALUE_DATATYPE) {
+            return true;
+        }
+        final int base = event & ~_TYPE_MASK;
+        return (base == START_TOPIC || base == TOPIC_REF) && (event & _TYPE_MASK) != 3;
+    }
+
+    /**
+     * Returns the number of string arguments of the provided event.
+     *
+     * @param event The event code.
+     * @return <tt>0</tt>, <tt>1</tt> or <tt>2</tt>.
+     */
+    public static int argumentCount(final byte event) {
+        if (event < ITEM_IDENTIFIER) {
+            return 0;
+        }
+        return event == VALUE_DATATYPE ? 2 : 1;
+    }
+
+    /**
+     * Sends the provided event to the handler.
+     *
+     * @param handler The handler.
+     * @param event The event code.
+     * @param arg The first argument or {@code null}.
+     * @param arg2 The second argument or {@code null}.
+     * @throws MIOException In case the handler reports an error or if the
+     *          event code is unknown.
+     */
+    public static void fire(final IMapHandler handler, final byte event,
+            final String arg, final String arg2) throws MIOException {
+        switch (event) {
+            case START_TOPIC_MAP: handler.startTopicMap(); break;
+            case END_TOPIC_MAP: handler.endTopicMap(); break;
+            case END_TOPIC: handler.endTopic(); break;
+            case START_ASSOCIATION: handler.startAssociation(); break;
+            case END_ASSOCIATION: handler.endAssociation(); break;
+            case START_ROLE: handler.startRole(); break;
+            case END_ROLE: handler.endRole(); break;
+            case START_PLAYER: handler.startPlayer(); break;
+            case END_PLAYER: handler.endPlayer(); break;
+            case START_OCCURRENCE: handler.startOccurrence(); break;
+            case END_OCCURRENCE: handler.endOccurrence(); break;
+            case START_NAME: handler.startName(); break;
+            case END_NAME: handler.endName(); break;
+            case START_VARIANT: handler.startVariant(); break;
+            case END_VARIANT: handler.endVariant(); break;
+            case START_SCOPE: handler.startScope(); break;
+            case END_SCOPE: handler.endScope(); break;
+            case START_THEME: handler.startTheme(); break;
+            case END_THEME: handler.endTheme(); break;
+            case START_ISA: handler.startIsa(); break;
+            case END_ISA: handler.endIsa(); break;
+            case START_TYPE: handler.startType(); break;
+            case END_TYPE: handler.endType(); break;
+            case START_REIFIER: handler.startReifier(); break;
+            case END_REIFIER: handler.endReifier(); break;
+            case ITEM_IDENTIFIER: handler.itemIdentifier(arg); break;
+            case SUBJECT_IDENTIFIER: handler.subjectIdentifier(arg); break;
+            case SUBJECT_LOCATOR: handler.subjectLocator(arg); break;
+            case VALUE: handler.value(arg); break;
+            case VALUE_DATATYPE: handler.value(arg, arg2); break;
+            default:
+                if (!isValid(event)) {
+                    throw new MIOException("Unknown event " + event);
+                }
+                final IRef ref = _createRef(event & _TYPE_MASK, arg);
+                if ((event & ~_TYPE_MASK) == START_TOPIC) {
+                    handler.startTopic(ref);
+                }
+                else {
+                    handler.topicRef(ref);
+                }
+        }
+    }
+
+    private static IRef _createRef(final int type, final String iri) {
+        switch (type) {
+            case _II: return Ref.createItemIdentifier(iri);
+            case _SI: return Ref.createSubjectIdentifier(iri);
+            default: return Ref.createSubjectLocator(iri);
+        }
+    }
+
+}
@@ -17,7 +17,10 @@ package org.tmapix.io.internal.utils;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.tmapi.core.Association;
 import org.tmapi.core.Locator;
@@ -37,48 +40,137 @@ import org.tmapix.voc.XSD;
  */
 public class MergeUtils {
 
+    /**
+     * Merges topics by {@link Topic#mergeIn(Topic)}.
+     */
+    private static final TopicMerger _DEFAULT_MERGER = new TopicMerger() {
+        @Override
+        public void merge(Topic source, Topic target) {
+            target.mergeIn(source);
+        }
+    };
+
     private MergeUtils() {
         // noop.
     }
 
     public static void merge(Reifiable source, Reifiable target) {
+        merge(source, target, _DEFAULT_MERGER);
+    }
+
+    /**
+     * Merges the source into the target.
+     * <p>
+     * If both constructs (or their roles resp. variants) are reified, the
+     * reifiers are merged by the provided <tt>merger</tt>.
+     * </p>
+     *
+     * @param source The construct to merge into the target.
+     * @param target The construct which is equal to the source.
+     * @param merger The merger which is used to merge the reifiers.
+     */
+    public static void merge(Reifiable source, Reifiable target, TopicMerger merger) {
         if (source.equals(target)) {
             throw new RuntimeException("Internal error: Trying to merge equal constructs: " + source);
         }
         if (source instanceof Association) {
-            _merge((Association) source, (Association) target);
+            _merge((Association) source, (Association) target, merger);
         }
         else if (source instanceof Role) {
-            _merge((Role) source, (Role) target);
+            _merge((Role) source, (Role) target, merger);
         }
         else if (source instanceof Occurrence) {
-            _merge((Occurrence) source, (Occurrence) target);
+            _merge((Occurrence) source, (Occurrence) target, merger);
         }
         else if (source instanceof Name) {
-            _merge((Name) source, (Name) target);
+            _merge((Name) source, (Name) target, merger);
         }
         else if (source instanceof Variant) {
-            _merge((Variant) source, (Variant) target);
+            _merge((Variant) source, (Variant) target, merger);
         }
         else {
             throw new RuntimeException("Internal error: Unexpected argument " + source + " " + target);
         }
     }
 
-    private static void _merge(Association source, Association target) {
-        _handleExisting(source, target);
-        Map<String, Role> sigs = new HashMap<String, Role>();
-        for (Role role: target.getRoles()) {
-            sigs.put(SignatureGenerator.generateSignature(role), role);
+    /**
+     * Merges each source association into the target association with the
+     * same index.
+     * <p>
+     * The role signatures of each target are computed once, the sources are
+     * removed after all pairs were merged. A target may be the source of 
+     * another pair, the constructs are moved to the final target in this
+     * case.
+     * </p>
+     * <p>
+     * If a target receives more than one reifier, the reifiers are merged
+     * after all sources were removed, so no topic merge happens while the
+     * role signatures are in use.
+     * </p>
+     *
+     * @param sources The associations to merge into the targets.
+     * @param targets The associations which are equal to the sources.
+     */
+    public static void merge(final Association[] sources, final Association[] targets) {
+        merge(sources, targets, _DEFAULT_MERGER);
+    }
+
+    /**
+     * Merges each source association into the target association with the
+     * same index. Reifiers are merged by the provided <tt>merger</tt>.
+     *
+     * @param sources The associations to merge into the targets.
+     * @param targets The associations which are equal to the sources.
+     * @param merger The merger which is used to merge the reifiers.
+     * @see #merge(Association[], Association[])
+     */
+    public static void merge(final Association[] sources, final Association[] targets, final TopicMerger merger) {
+        if (sources.length != targets.length) {
+            throw new IllegalArgumentException("The number of sources and targets must be equal");
         }
-        for (Role role: new ArrayList<Role>(source.getRoles())) {
-            _handleExisting(role, sigs.get(SignatureGenerator.generateSignature(role)));
-            role.remove();
+        final Map<Association, Association> redirects = new IdentityHashMap<Association, Association>(sources.length);
+        for (int i=0; i < sources.length; i++) {
+            redirects.put(sources[i], targets[i]);
         }
-        source.remove();
+        final Map<Association, Map<Signature, Role>> roleIndexes = new IdentityHashMap<Association, Map<Signature, Role>>();
+        final DeferredMerger deferred = new DeferredMerger(merger);
+        for (int i=0; i < sources.length; i++) {
+            final Association source = sources[i];
+            Association target = targets[i];
+            for (int j=0; redirects.containsKey(target); j++) {
+                target = redirects.get(target);
+                if (target == source || j == sources.length) {
+                    throw new RuntimeException("Internal error: Cyclic merge of " + source);
+                }
+            }
+            _handleExisting(source, target, deferred);
+            Map<Signature, Role> sigs = roleIndexes.get(target);
+            if (sigs == null) {
+                sigs = new HashMap<Signature, Role>();
+                for (Role role: target.getRoles()) {
+                    sigs.put(SignatureGenerator.signature(role), role);
+                }
+                roleIndexes.put(target, sigs);
+            }
+            for (Role role: source.getRoles()) {
+                final Role existing = sigs.get(SignatureGenerator.signature(role));
+                if (existing == null) {
+                    throw new RuntimeException("Internal error: No equal role for " + role);
+                }
+                _handleExisting(role, existing, deferred);
+            }
+        }
+        for (Association source: sources) {
+            source.remove();
+        }
+        deferred.flush();
+    }
+
+    private static void _merge(Association source, Association target, TopicMerger merger) {
+        merge(new Association[] {source}, new Association[] {target}, merger);
     }
 
-    private static void _handleExisting(Reifiable source, Reifiable target) {
+    private static void _handleExisting(Reifiable source, Reifiable target, TopicMerger merger) {
         _moveItemIdentifiers(source, target);
         if (source.getReifier() == null) {
             return;
@@ -86,7 +178,7 @@ public class MergeUtils {
         if (target.getReifier() != null) {
             Topic reifier = source.getReifier();
             source.setReifier(null);
-            target.getReifier().mergeIn(reifier);
+            merger.merge(reifier, target.getReifier());
         }
         else {
             Topic reifier = source.getReifier();
@@ -95,60 +187,64 @@ public class MergeUtils {
         }
     }
 
-    private static void _merge(Role source, Role target) {
+    private static void _merge(Role source, Role target, TopicMerger merger) {
         final Association sourceParent = source.getParent();
         final Association targetParent = target.getParent();
-        _handleExisting(sourceParent, targetParent);
-        _moveRoles(sourceParent, targetParent);
-        if (!sourceParent.equals(targetParent)) {
-            sourceParent.remove();
+        if (sourceParent.equals(targetParent)) {
+            // Duplicate roles within one association
+            _handleExisting(source, target, merger);
+            source.remove();
+            return;
         }
+        _handleExisting(sourceParent, targetParent, merger);
+        _moveRoles(sourceParent, targetParent, merger);
+        sourceParent.remove();
     }
     
-    private static void _moveRoles(Association source, Association target) {
+    private static void _moveRoles(Association source, Association target, TopicMerger merger) {
         if (source.equals(target)) {
             return;
         }
-        Map<String, Role> sigs = new HashMap<String, Role>();
+        Map<Signature, Role> sigs = new HashMap<Signature, Role>();
         for (Role role: target.getRoles()) {
-            sigs.put(SignatureGenerator.generateSignature(role), role);
+            sigs.put(SignatureGenerator.signature(role), role);
         }
         for (Role role: new ArrayList<Role>(source.getRoles())) {
-            Role existing = sigs.get(SignatureGenerator.generateSignature(role));
+            Role existing = sigs.get(SignatureGenerator.signature(role));
             if (existing != null) {
-                _handleExisting(role, existing);
+                _handleExisting(role, existing, merger);
             }
             else {
                 Role targetRole = target.createRole(role.getType(), role.getPlayer());
-                _handleExisting(role, targetRole);
+                _handleExisting(role, targetRole, merger);
             }
         }
     }
 
-    private static void _merge(Occurrence source, Occurrence target) {
-        _handleExisting(source, target);
+    private static void _merge(Occurrence source, Occurrence target, TopicMerger merger) {
+        _handleExisting(source, target, merger);
         source.remove();
     }
 
-    private static void _merge(Name source, Name target) {
-        _handleExisting(source, target);
-        Map<String, Variant> sigs = new HashMap<String, Variant>();
+    private static void _merge(Name source, Name target, TopicMerger merger) {
+        _handleExisting(source, target, merger);
+        Map<Signature, Variant> sigs = new HashMap<Signature, Variant>();
         for (Variant variant: target.getVariants()) {
-            sigs.put(SignatureGenerator.generateSignature(variant), variant);
+            sigs.put(SignatureGenerator.signature(variant), variant);
         }
         for (Variant variant: new ArrayList<Variant>(source.getVariants())) {
-            Variant existing = sigs.get(SignatureGenerator.generateSignature(variant));
+            Variant existing = sigs.get(SignatureGenerator.signature(variant));
             if (existing != null) {
-                _merge(variant, existing);
+                _merge(variant, existing, merger);
             }
             else {
-                _copy(variant, target);
+                _copy(variant, target, merger);
             }
         }
         source.remove();
     }
 
-    private static void _copy(Variant variant, Name name) {
+    private static void _copy(Variant variant, Name name, TopicMerger merger) {
         final String datatype = variant.getDatatype().getReference();
         Variant var = null;
         if (XSD.ANY_URI.equals(datatype)) {
@@ -160,19 +256,108 @@ public class MergeUtils {
         else {
             var = name.createVariant(variant.getValue(), variant.getDatatype(), variant.getScope());
         }
-        _handleExisting(variant, var);
+        _handleExisting(variant, var, merger);
     }
 
-    private static void _merge(Variant source, Variant target) {
-        _handleExisting(source, target);
+    private static void _merge(Variant source, Variant target, TopicMerger merger) {
+        _handleExisting(source, target, merger);
         source.remove();
     }
 
     private static void _moveItemIdentifiers(Reifiable source, Reifiable target) {
-        for (Locator iid: new ArrayList<Locator>(source.getItemIdentifiers())) {
+        final Set<Locator> iids = source.getItemIdentifiers();
+        if (iids.isEmpty()) {
+            return;
+        }
+        final Locator[] locs = iids.toArray(new Locator[iids.size()]);
+        for (Locator iid: locs) {
             source.removeItemIdentifier(iid);
+        }
+        for (Locator iid: locs) {
             target.addItemIdentifier(iid);
         }
     }
 
+
+    /**
+     * Merges two topics.
+     * <p>
+     * Callers which keep references to topics (i.e. map handlers) may use 
+     * an implementation which updates these references.
+     * </p>
+     */
+    public interface TopicMerger {
+
+        /**
+         * Merges the <tt>source</tt> into the <tt>target</tt>. 
+         * <p>
+         * The source is removed from the topic map afterwards.
+         * </p>
+         *
+         * @param source The topic to merge into the target.
+         * @param target The topic which takes over the characteristics
+         *          of the source.
+         */
+        public void merge(Topic source, Topic target);
+
+    }
+
+
+    /**
+     * {@link TopicMerger} which collects the topics and merges them 
+     * on request.
+     */
+    private static final class DeferredMerger implements TopicMerger {
+
+        private final TopicMerger _merger;
+        private final List<Topic> _pairs;
+
+        DeferredMerger(TopicMerger merger) {
+            _merger = merger;
+            _pairs = new ArrayList<Topic>();
+        }
+
+        /* (non-Javadoc)
+         * @see org.tmapix.io.internal.utils.MergeUtils.TopicMerger#merge(org.tmapi.core.Topic, org.tmapi.core.Topic)
+         */
+        @Override
+        public void merge(Topic source, Topic target) {
+            _pairs.add(source);
+            _pairs.add(target);
+        }
+
+        /**
+         * Merges the collected topics. 
+         * <p>
+         * A topic which was merged into another topic is replaced by 
+         * the topic which took it over.
+         * </p>
+         */
+        void flush() {
+            if (_pairs.isEmpty()) {
+                return;
+            }
+            final Map<Topic, Topic> merged = new IdentityHashMap<Topic, Topic>();
+            for (int i=0; i < _pairs.size(); i += 2) {
+                final Topic source = _resolve(merged, _pairs.get(i));
+                final Topic target = _resolve(merged, _pairs.get(i+1));
+                if (source != target) {
+                    _merger.merge(source, target);
+                    merged.put(source, target);
+                }
+            }
+            _pairs.clear();
+        }
+
+        private static Topic _resolve(Map<Topic, Topic> merged, Topic topic) {
+            Topic result = topic;
+            Topic next = merged.get(result);
+            while (next != null) {
+                result = next;
+                next = merged.get(result);
+            }
+            return result;
+        }
+    }
+
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io.internal.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Internal utility class to run array operations on an {@link ExecutorService}.
+ * <p>
+ * All operations run in the calling thread if the executor is {@code null}
+ * or if the array is too small to benefit from parallelism.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class Parallel {
+
+    /**
+     * Minimum number of elements a task should process.
+     */
+    private static final int _MIN_CHUNK_SIZE = 1024;
+
+    private Parallel() {
+        // noop.
+    }
+
+    /**
+     * Processes a range of array indexes.
+     */
+    public static interface Range {
+
+        /**
+         * Processes the indexes <tt>from</tt> (inclusive) to <tt>to</tt>
+         * (exclusive).
+         *
+         * @param from The first index (inclusive).
+         * @param to The last index (exclusive).
+         */
+        public void run(int from, int to);
+    }
+
+    /**
+     * Splits the indexes <tt>0 .. size</tt> into chunks and processes them.
+     * <p>
+     * This method returns after all chunks were processed.
+     * </p>
+     *
+     * @param executor The executor or {@code null}.
+     * @param parallelism The number of threads of the executor.
+     * @param size The number of indexes.
+     * @param range The task which processes the chunks.
+     */
+    public static void forEach(final ExecutorService executor, final int parallelism,
+            final int size, final Range range) {
+        final int chunks = _chunks(executor, parallelism, size);
+        if (chunks < 2) {
+            range.run(0, size);
+            return;
+        }
+        final List<Future<?>> futures = new ArrayList<Future<?>>(chunks);
+        final int chunkSize = (size + chunks - 1) / chunks;
+        for (int from=0; from < size; from += chunkSize) {
+            final int start = from;
+            final int end = Math.min(size, from + chunkSize);
+            futures.add(executor.submit(new Callable<Void>() {
+                public Void call() {
+                    range.run(start, end);
+                    return null;
+                }
+            }));
+        }
+        await(futures);
+    }
+
+    /**
+     * Sorts the provided array.
+     * <p>
+     * The sort is stable: Equal elements are not reordered. The result is
+     * the same as the result of {@link Arrays#sort(Object[], Comparator)}.
+     * </p>
+     *
+     * @param executor The executor or {@code null}.
+     * @param parallelism The number of threads of the executor.
+     * @param array The array to sort.
+     * @param comparator The comparator or {@code null} if the natural order
+     *          of the elements should be used.
+     */
+    public static <T> void sort(final ExecutorService executor, final int parallelism,
+            final T[] array, final Comparator<? super T> comparator) {
+        final int chunks = _chunks(executor, parallelism, array.length);
+        if (chunks < 2) {
+            _sort(array, 0, array.length, comparator);
+            return;
+        }
+        final int chunkSize = (array.length + chunks - 1) / chunks;
+        final List<Future<?>> sortFutures = new ArrayList<Future<?>>(chunks);
+        for (int from=0; from < array.length; from += chunkSize) {
+            final int start = from;
+            sortFutures.add(executor.submit(new Callable<Void>() {
+                public Void call() {
+                    _sort(array, start, Math.min(array.length, start + chunkSize), comparator);
+                    return null;
+                }
+            }));
+        }
+        await(sortFutures);
+        T[] src = array;
+        T[] dst = array.clone();
+        for (int width=chunkSize; width < array.length; width *= 2) {
+            final T[] in = src;
+            final T[] out = dst;
+            final int w = width;
+            final int pairs = (array.length + 2 * width - 1) / (2 * width);
+            final List<Future<?>> futures = new ArrayList<Future<?>>(pairs);
+            for (int from=0; from < array.length; from += 2 * width) {
+                final int start = from;
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() {
+                        _merge(in, out, start, Math.min(in.length, start + w),
+                                Math.min(in.length, start + 2 * w), comparator);
+                        return null;
+                    }
+                }));
+            }
+            await(futures);
+            src = out;
+            dst = in;
+        }
+        if (src != array) {
+            System.arraycopy(src, 0, array, 0, array.length);
+        }
+    }
+
+    /**
+     * Waits for the completion of the provided futures.
+     * <p>
+     * Runtime exceptions and errors thrown by a task are rethrown, checked
+     * exceptions are wrapped into a {@link RuntimeException}.
+     * </p>
+     *
+     * @param futures The futures to wait for.
+     */
+    public static void await(final List<? extends Future<?>> futures) {
+        for (Future<?> future: futures) {
+            get(future);
+        }
+    }
+
+    /**
+     * Waits for the result of the provided future.
+     *
+     * @see #await(List)
+     *
+     * @param future The future.
+     * @return The result of the future.
+     */
+    public static <T> T get(final Future<T> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a task", ex);
+        }
+        catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static int _chunks(final ExecutorService executor,
+            final int parallelism, final int size) {
+        if (executor == null || parallelism < 2) {
+            return 1;
+        }
+        return Math.min(parallelism, size / _MIN_CHUNK_SIZE);
+    }
+
+    private static <T> void _sort(final T[] array, final int from, final int to,
+            final Comparator<? super T> comparator) {
+        if (comparator == null) {
+            Arrays.sort(array, from, to);
+        }
+        else {
+            Arrays.sort(array, from, to, comparator);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> int _compare(final T a, final T b, final Comparator<? super T> comparator) {
+        return comparator != null ? comparator.compare(a, b) : ((Comparable<T>) a).compareTo(b);
+    }
+
+    /**
+     * Merges the sorted ranges <tt>in[from .. mid]</tt> and <tt>in[mid .. to]</tt>
+     * into <tt>out[from .. to]</tt>. Elements of the first range win ties.
+     */
+    private static <T> void _merge(final T[] in, final T[] out, final int from,
+            final int mid, final int to, final Comparator<? super T> comparator) {
+        int i = from;
+        int j = mid;
+        int k = from;
+        while (i < mid && j < to) {
+            out[k++] = _compare(in[j], in[i], comparator) < 0 ? in[j++] : in[i++];
+        }
+        while (i < mid) {
+            out[k++] = in[i++];
+        }
+        while (j < to) {
+            out[k++] = in[j++];
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io.internal.utils;
+
+import org.tmapi.core.Reifiable;
+
+/**
+ * Structural signature of a Topic Maps construct.
+ * <p>
+ * A signature consists of a 128-bit hash and the construct itself. Two
+ * signatures are equal iff the hashes are equal and the constructs are
+ * equal according to the TMDM equality rules. The constructs are compared
+ * only if the hashes are equal.
+ * </p>
+ * <p>
+ * Signatures are meant to be used as keys of short-living hash maps, the
+ * signature reflects the state of the construct at creation time.
+ * </p>
+ * 
+ * @see SignatureGenerator#signature(Reifiable)
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class Signature {
+
+    private final long _hi;
+    private final long _lo;
+    private final Reifiable _construct;
+
+    Signature(final long hi, final long lo, final Reifiable construct) {
+        _hi = hi;
+        _lo = lo;
+        _construct = construct;
+    }
+
+    /**
+     * Returns the construct this signature was created for.
+     *
+     * @return The construct.
+     */
+    public Reifiable getConstruct() {
+        return _construct;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Signature)) {
+            return false;
+        }
+        final Signature other = (Signature) obj;
+        return _hi == other._hi && _lo == other._lo
+                && (_construct == other._construct
+                        || SignatureGenerator.isEqual(_construct, other._construct));
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return (int) (_lo ^ (_lo >>> 32));
+    }
+
+}
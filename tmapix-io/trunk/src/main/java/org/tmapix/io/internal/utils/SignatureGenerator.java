@@ -16,7 +16,7 @@
 package org.tmapix.io.internal.utils;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 import org.tmapi.core.Association;
@@ -27,123 +27,274 @@ import org.tmapi.core.Reifiable;
 import org.tmapi.core.Role;
 import org.tmapi.core.Scoped;
 import org.tmapi.core.Topic;
-import org.tmapi.core.Typed;
 import org.tmapi.core.Variant;
 
 /**
- * 
+ * Generates {@link Signature}s and compares constructs according to the
+ * TMDM equality rules.
+ * <p>
+ * The 128-bit hash of a signature is computed by streaming over the type,
+ * the scope, the value and the datatype of a construct without creating
+ * intermediate strings. The themes of the scope and the roles of an
+ * association are combined order-independently, so no sorting is necessary.
+ * </p>
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  * @version $Rev$ - $Date$
  */
 public final class SignatureGenerator {
 
+    private static final int _ASSOCIATION = 1;
+    private static final int _ROLE = 2;
+    private static final int _NAME = 3;
+    private static final int _OCCURRENCE = 4;
+    private static final int _VARIANT = 5;
+
+    private static final long _FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long _FNV_PRIME = 0x100000001b3L;
+    private static final long _GOLDEN = 0x9e3779b97f4a7c15L;
+    private static final long _MIX = 0xc2b2ae3d27d4eb4fL;
+
     private SignatureGenerator() {
         // noop.
     }
 
-    public static String generateSignature(Reifiable reifiable) {
+    /**
+     * Returns the signature of the provided construct.
+     *
+     * @param reifiable An association, role, occurrence, name or variant.
+     * @return The signature of the construct.
+     */
+    public static Signature signature(final Reifiable reifiable) {
+        final Hasher hasher = new Hasher();
+        _hash(hasher, reifiable);
+        return new Signature(_finish(hasher._hi), _finish(hasher._lo), reifiable);
+    }
+
+    /**
+     * Returns if the provided constructs are equal according to the TMDM
+     * equality rules.
+     * <p>
+     * The parents and the item identifiers of the constructs are not taken
+     * into account.
+     * </p>
+     *
+     * @param a An association, role, occurrence, name or variant.
+     * @param b An association, role, occurrence, name or variant.
+     * @return {@code true} if the constructs are equal, otherwise {@code false}.
+     */
+    public static boolean isEqual(final Reifiable a, final Reifiable b) {
+        if (a == b) {
+            return true;
+        }
+        if (a instanceof Association) {
+            return b instanceof Association && _isEqual((Association) a, (Association) b);
+        }
+        else if (a instanceof Role) {
+            return b instanceof Role && _isEqual((Role) a, (Role) b);
+        }
+        else if (a instanceof Occurrence) {
+            final Occurrence occA = (Occurrence) a;
+            if (!(b instanceof Occurrence)) {
+                return false;
+            }
+            final Occurrence occB = (Occurrence) b;
+            return occA.getType().equals(occB.getType())
+                    && _isEqualValue(occA, occB)
+                    && occA.getScope().equals(occB.getScope());
+        }
+        else if (a instanceof Name) {
+            final Name nameA = (Name) a;
+            if (!(b instanceof Name)) {
+                return false;
+            }
+            final Name nameB = (Name) b;
+            return nameA.getType().equals(nameB.getType())
+                    && nameA.getValue().equals(nameB.getValue())
+                    && nameA.getScope().equals(nameB.getScope());
+        }
+        else if (a instanceof Variant) {
+            return b instanceof Variant
+                    && _isEqualValue((Variant) a, (Variant) b)
+                    && ((Variant) a).getScope().equals(((Variant) b).getScope());
+        }
+        throw new RuntimeException("Internal error: Unknown class: " + a);
+    }
+
+    private static boolean _isEqual(final Role a, final Role b) {
+        return a.getType().equals(b.getType())
+                && a.getPlayer().equals(b.getPlayer());
+    }
+
+    private static boolean _isEqualValue(final DatatypeAware a, final DatatypeAware b) {
+        return a.getValue().equals(b.getValue())
+                && a.getDatatype().equals(b.getDatatype());
+    }
+
+    private static boolean _isEqual(final Association a, final Association b) {
+        if (!a.getType().equals(b.getType())
+                || !a.getScope().equals(b.getScope())) {
+            return false;
+        }
+        final Collection<Role> rolesA = a.getRoles();
+        final Collection<Role> rolesB = b.getRoles();
+        if (rolesA.size() != rolesB.size()) {
+            return false;
+        }
+        // Match each role of a against an unused role of b
+        final List<Role> candidates = new ArrayList<Role>(rolesB);
+        final boolean[] used = new boolean[candidates.size()];
+        for (Role role: rolesA) {
+            boolean found = false;
+            for (int i=0; i < used.length; i++) {
+                if (!used[i] && _isEqual(role, candidates.get(i))) {
+                    used[i] = true;
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void _hash(final Hasher hasher, final Reifiable reifiable) {
         if (reifiable instanceof Association) {
-            return generateSignature((Association) reifiable);
+            final Association assoc = (Association) reifiable;
+            hasher.add(_ASSOCIATION);
+            hasher.add(assoc.getType());
+            _hashScope(hasher, assoc);
+            // The sum of the role hashes does not depend on the iteration order
+            final Hasher roleHasher = new Hasher();
+            long hi = 0;
+            long lo = 0;
+            for (Role role: assoc.getRoles()) {
+                roleHasher.reset();
+                _hashRole(roleHasher, role);
+                hi += _finish(roleHasher._hi);
+                lo += _finish(roleHasher._lo);
+            }
+            hasher.add(hi, lo);
         }
         else if (reifiable instanceof Role) {
-            return generateSignature((Role) reifiable);
+            _hashRole(hasher, (Role) reifiable);
         }
         else if (reifiable instanceof Occurrence) {
-            return generateSignature((Occurrence) reifiable);
+            final Occurrence occ = (Occurrence) reifiable;
+            hasher.add(_OCCURRENCE);
+            hasher.add(occ.getType());
+            _hashScope(hasher, occ);
+            _hashValue(hasher, occ);
         }
         else if (reifiable instanceof Name) {
-            return generateSignature((Name) reifiable);
+            final Name name = (Name) reifiable;
+            hasher.add(_NAME);
+            hasher.add(name.getType());
+            _hashScope(hasher, name);
+            hasher.add(name.getValue());
         }
         else if (reifiable instanceof Variant) {
-            return generateSignature((Variant) reifiable);
+            final Variant variant = (Variant) reifiable;
+            hasher.add(_VARIANT);
+            _hashScope(hasher, variant);
+            _hashValue(hasher, variant);
         }
         else {
             throw new RuntimeException("Internal error: Unknown class: " + reifiable);
         }
     }
 
-    private static String generateTopicSignature(Topic topic) {
-        return topic.getId();
+    private static void _hashRole(final Hasher hasher, final Role role) {
+        hasher.add(_ROLE);
+        hasher.add(role.getType());
+        hasher.add(role.getPlayer());
+    }
+
+    private static void _hashValue(final Hasher hasher, final DatatypeAware datatyped) {
+        hasher.add(datatyped.getValue());
+        hasher.add(datatyped.getDatatype().getReference());
     }
 
-    private static String generateScopeSignature(Scoped scoped) {
-        final List<Topic> scope = new ArrayList<Topic>(scoped.getScope());
-        final String[] scopeKeys = new String[scope.size()];
-        for (int i=0; i<scopeKeys.length; i++) {
-            scopeKeys[i] = generateTopicSignature(scope.get(i));
+    private static void _hashScope(final Hasher hasher, final Scoped scoped) {
+        final Collection<Topic> scope = scoped.getScope();
+        if (scope.isEmpty()) {
+            hasher.add(0);
+            return;
         }
-        Arrays.sort(scopeKeys);
-        StringBuilder sb = new StringBuilder();
-        for (int i=0; i<scopeKeys.length; i++) {
-            sb.append(scopeKeys[i]);
+        // The sum of the theme hashes does not depend on the iteration order
+        final Hasher themeHasher = new Hasher();
+        long hi = 0;
+        long lo = 0;
+        for (Topic theme: scope) {
+            themeHasher.reset();
+            themeHasher.add(theme);
+            hi += _finish(themeHasher._hi);
+            lo += _finish(themeHasher._lo);
         }
-        return sb.toString();
+        hasher.add(scope.size());
+        hasher.add(hi, lo);
     }
 
-    private static String generateTypeSignature(Typed typed) {
-        return generateTopicSignature(typed.getType());
+    /**
+     * Final avalanche step (MurmurHash3 fmix64).
+     */
+    private static long _finish(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
     }
 
-    private static String generateDatatypedSignature(DatatypeAware datatyped) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(datatyped.getValue())
-            .append('.')
-            .append(datatyped.getDatatype().toExternalForm());
-        return sb.toString();
-    }
 
-    public static String generateSignature(Association assoc) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(generateTypeSignature(assoc))
-            .append('.')
-            .append(generateScopeSignature(assoc))
-            .append('.');
-        final List<Role> roles = new ArrayList<Role>(assoc.getRoles());
-        final String[] roleKeys = new String[roles.size()];
-        for (int i=0; i<roleKeys.length; i++) {
-            roleKeys[i] = generateSignature(roles.get(i));
-        }
-        Arrays.sort(roleKeys);
-        for (int i=0; i<roleKeys.length; i++) {
-            sb.append(roleKeys[i]);
-        }
-        return sb.toString();
-    }
+    /**
+     * Computes two independent 64-bit hashes: FNV-1a and a multiply-rotate
+     * hash.
+     */
+    private static final class Hasher {
 
-    public static String generateSignature(Role role) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(generateTopicSignature(role.getType()))
-            .append('.')
-            .append(generateTopicSignature(role.getType()));
-        return sb.toString();
-    }
+        long _hi;
+        long _lo;
 
-    public static String generateSignature(Name name) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(generateTypeSignature(name))
-            .append('.')
-            .append(generateScopeSignature(name))
-            .append('.')
-            .append(name.getValue());
-        return sb.toString();
-    }
+        Hasher() {
+            reset();
+        }
 
-    public static String generateSignature(Occurrence occ) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(generateTypeSignature(occ))
-            .append('.')
-            .append(generateScopeSignature(occ))
-            .append('.')
-            .append(generateDatatypedSignature(occ));
-        return sb.toString();
-    }
+        void reset() {
+            _hi = _GOLDEN;
+            _lo = _FNV_OFFSET;
+        }
 
-    public static String generateSignature(Variant variant) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(generateScopeSignature(variant))
-            .append('.')
-            .append(generateDatatypedSignature(variant));
-        return sb.toString();
+        void add(final long value) {
+            _lo = (_lo ^ value) * _FNV_PRIME;
+            _hi = Long.rotateLeft(_hi ^ value, 31) * _MIX;
+        }
+
+        void add(final long hi, final long lo) {
+            _lo = (_lo ^ lo) * _FNV_PRIME;
+            _hi = Long.rotateLeft(_hi ^ hi, 31) * _MIX;
+        }
+
+        void add(final Topic topic) {
+            add(topic.getId());
+        }
+
+        void add(final String value) {
+            final int length = value.length();
+            long lo = _lo;
+            long hi = _hi;
+            for (int i=0; i < length; i++) {
+                final char c = value.charAt(i);
+                lo = (lo ^ c) * _FNV_PRIME;
+                hi = Long.rotateLeft(hi ^ c, 31) * _MIX;
+            }
+            _lo = lo;
+            _hi = hi;
+            // Terminate the string to avoid collisions of adjacent strings
+            add(length);
+        }
     }
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io.internal.utils;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Set;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Reifiable;
+import org.tmapi.core.Role;
+import org.tmapi.core.Scoped;
+import org.tmapi.core.Topic;
+import org.tmapi.core.Variant;
+
+/**
+ * Internal class which collects the constructs of a topic map fragment.
+ * <p>
+ * A fragment consists of the requested topics, the associations played by
+ * the requested topics and the topics which are referenced by these
+ * constructs (types, themes, reifiers and role players). The fragment
+ * operates on the live topic map, the constructs are not copied.
+ * </p>
+ * <p>
+ * If the fragment is <em>transitive</em>, the topics which are referenced
+ * by the referenced topics (i.e. the types of a type, the types of the names
+ * of a type etc.) are included as well. The associations played by
+ * referenced topics are never included.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public final class TopicMapFragment {
+
+    private final boolean _transitive;
+    private final Set<Topic> _requested;
+    private final Set<Topic> _topics;
+    private final Set<Association> _assocs;
+    private final LinkedList<Topic> _todo;
+
+    /**
+     * Creates an empty fragment.
+     *
+     * @param transitive {@code true} if the topics referenced by referenced
+     *          topics should be included, otherwise {@code false}.
+     */
+    public TopicMapFragment(final boolean transitive) {
+        _transitive = transitive;
+        _requested = new LinkedHashSet<Topic>();
+        _topics = new LinkedHashSet<Topic>();
+        _assocs = new LinkedHashSet<Association>();
+        _todo = new LinkedList<Topic>();
+    }
+
+    /**
+     * Adds a requested topic, the associations played by the topic and
+     * the topics referenced by the topic and its associations.
+     *
+     * @param topic The topic to add.
+     */
+    public void addTopic(final Topic topic) {
+        if (!_requested.add(topic)) {
+            return;
+        }
+        final boolean known = !_topics.add(topic);
+        if (!known || !_transitive) {
+            _addReferences(topic);
+        }
+        for (Role role: topic.getRolesPlayed()) {
+            _addAssociation(role.getParent());
+        }
+        _processTodo();
+    }
+
+    /**
+     * Adds a topic which is required by the fragment without adding the
+     * associations played by the topic.
+     *
+     * @param topic The topic to add, {@code null} is ignored.
+     */
+    public void addReferencedTopic(final Topic topic) {
+        _reference(topic);
+        _processTodo();
+    }
+
+    /**
+     * Returns the requested topics in the order they were added.
+     *
+     * @return An unmodifiable set of topics.
+     */
+    public Set<Topic> getRequestedTopics() {
+        return Collections.unmodifiableSet(_requested);
+    }
+
+    /**
+     * Returns all topics of the fragment (the requested topics and the
+     * referenced topics) in the order they were discovered.
+     *
+     * @return An unmodifiable set of topics.
+     */
+    public Set<Topic> getTopics() {
+        return Collections.unmodifiableSet(_topics);
+    }
+
+    /**
+     * Returns the associations of the fragment.
+     *
+     * @return An unmodifiable set of associations.
+     */
+    public Set<Association> getAssociations() {
+        return Collections.unmodifiableSet(_assocs);
+    }
+
+    private void _processTodo() {
+        while (!_todo.isEmpty()) {
+            _addReferences(_todo.removeFirst());
+        }
+    }
+
+    private void _addAssociation(final Association assoc) {
+        if (!_assocs.add(assoc)) {
+            return;
+        }
+        _reference(assoc.getType());
+        _addScopeAndReifier(assoc);
+        for (Role role: assoc.getRoles()) {
+            _reference(role.getType());
+            _reference(role.getPlayer());
+            _reference(role.getReifier());
+        }
+    }
+
+    private void _addReferences(final Topic topic) {
+        for (Topic type: topic.getTypes()) {
+            _reference(type);
+        }
+        for (Name name: topic.getNames()) {
+            _reference(name.getType());
+            _addScopeAndReifier(name);
+            for (Variant variant: name.getVariants()) {
+                _addScopeAndReifier(variant);
+            }
+        }
+        for (Occurrence occ: topic.getOccurrences()) {
+            _reference(occ.getType());
+            _addScopeAndReifier(occ);
+        }
+    }
+
+    private <T extends Scoped & Reifiable> void _addScopeAndReifier(final T construct) {
+        for (Topic theme: construct.getScope()) {
+            _reference(theme);
+        }
+        _reference(construct.getReifier());
+    }
+
+    private void _reference(final Topic topic) {
+        if (topic != null && _topics.add(topic) && _transitive) {
+            _todo.add(topic);
+        }
+    }
+
+}
@@ -93,6 +93,9 @@ public abstract class AbstractCXTMWriterTestCase {
         else if ("ctm".equalsIgnoreCase(ext)) {
             reader = new CTMTopicMapReader(tm, src);
         }
+        else if ("tmb".equalsIgnoreCase(ext)) {
+            reader = new BinaryTopicMapReader(tm, src);
+        }
         else {
             throw new IllegalArgumentException("No reader found for '" + ext + "'");
         }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.ByteArrayOutputStream;
+
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.TopicMapSystem;
+import org.tmapi.core.TopicMapSystemFactory;
+
+import junit.framework.TestCase;
+
+/**
+ * Abstract test which provides a topic map system and an empty topic map.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public abstract class AbstractTopicMapTestCase extends TestCase {
+
+    protected static final String _BASE = "http://www.example.org/map/";
+
+    protected TopicMapSystem _sys;
+    protected TopicMap _tm;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _sys = TopicMapSystemFactory.newInstance().newTopicMapSystem();
+        _tm = _sys.createTopicMap(_BASE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _sys.close();
+        super.tearDown();
+    }
+
+    /**
+     * Returns the topic with the subject identifier <tt>_BASE + name</tt>
+     * from the topic map {@link #_tm}.
+     */
+    protected Topic _topic(final String name) {
+        return _topic(_tm, name);
+    }
+
+    /**
+     * Returns the topic with the subject identifier <tt>_BASE + name</tt>
+     * from the provided topic map.
+     */
+    protected static Topic _topic(final TopicMap tm, final String name) {
+        return tm.createTopicBySubjectIdentifier(tm.createLocator(_BASE + name));
+    }
+
+    /**
+     * Returns the CXTM representation of the provided topic map.
+     */
+    protected static String _cxtm(final TopicMap tm) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CXTMTopicMapWriter(out, _BASE).write(tm);
+        return new String(out.toByteArray(), "utf-8");
+    }
+
+}
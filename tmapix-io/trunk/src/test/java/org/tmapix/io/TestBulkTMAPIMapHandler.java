@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import org.tmapi.core.TopicMap;
+
+import com.semagia.mio.DeserializerRegistry;
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.Syntax;
+
+/**
+ * Tests against the {@link BulkTMAPIMapHandler}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+@RunWith(Parameterized.class)
+public class TestBulkTMAPIMapHandler extends AbstractValidCXTMReaderTestCase {
+
+    public TestBulkTMAPIMapHandler(File file, String inputDir, String referenceDir, boolean convertToTMDM) {
+        super(file, inputDir, referenceDir, convertToTMDM);
+    }
+
+    @Parameters
+    public static Collection<Object> makeTestCases() {
+        final Collection<Object> result = new ArrayList<Object>();
+        result.addAll(CXTMTestUtils.makeXTM2TestCases());
+        result.addAll(CXTMTestUtils.makeJTMTestCases());
+        result.addAll(CXTMTestUtils.makeCTMTestCases());
+        return result;
+    }
+
+    @Override
+    protected TopicMapReader makeReader(final TopicMap tm, final String iri)
+            throws Exception {
+        final String ext = iri.substring(iri.lastIndexOf(".")+1);
+        final Syntax syntax = "xtm".equalsIgnoreCase(ext) ? Syntax.XTM
+                                : "jtm".equalsIgnoreCase(ext) ? Syntax.JTM
+                                : Syntax.CTM;
+        final IDeserializer deserializer = DeserializerRegistry.getInstance().createDeserializer(syntax);
+        deserializer.setProperty(Property.VALIDATE, Boolean.FALSE);
+        deserializer.setMapHandler(MapHandlerFactory.createBulkTMAPIMapHandler(tm));
+        return new TopicMapReader() {
+            @Override
+            public void read() throws IOException {
+                try {
+                    deserializer.parse(new Source(iri));
+                }
+                catch (MIOException ex) {
+                    throw new TMAPIXParseException(ex);
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.StringReader;
+
+import org.tmapi.core.Locator;
+import org.tmapi.core.Name;
+import org.tmapi.core.Role;
+import org.tmapi.core.Topic;
+
+import com.semagia.mio.DeserializerRegistry;
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.Syntax;
+import com.semagia.mio.helpers.Ref;
+import com.semagia.mio.voc.TMDM;
+
+/**
+ * Tests the identity handling of the {@link BulkTMAPIMapHandler}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestBulkTMAPIMapHandlerIdentities extends AbstractTopicMapTestCase {
+
+    private Locator _loc(final String iri) {
+        return _tm.createLocator(iri);
+    }
+
+    private void _parseXTM(final String xtm) throws Exception {
+        final IDeserializer deserializer = DeserializerRegistry.getInstance().createDeserializer(Syntax.XTM);
+        deserializer.setProperty(Property.VALIDATE, Boolean.FALSE);
+        deserializer.setMapHandler(MapHandlerFactory.createBulkTMAPIMapHandler(_tm));
+        deserializer.parse(new Source(new StringReader(xtm), _BASE));
+    }
+
+    private void _assertDefaultNameType() {
+        assertEquals(2, _tm.getTopics().size());
+        final Topic nameType = _tm.getTopicBySubjectIdentifier(_loc(TMDM.TOPIC_NAME));
+        assertNotNull(nameType);
+        assertEquals(nameType, _tm.getConstructByItemIdentifier(_loc(_BASE + "#x")));
+        final Topic topic = (Topic) _tm.getConstructByItemIdentifier(_loc(_BASE + "#y"));
+        assertEquals(1, topic.getNames().size());
+        assertEquals(nameType, topic.getNames().iterator().next().getType());
+    }
+
+    public void testDefaultNameTypeDeclaredBefore() throws Exception {
+        _parseXTM("<topicMap xmlns='http://www.topicmaps.org/xtm/' version='2.0'>"
+                + "<topic id='x'><subjectIdentifier href='" + TMDM.TOPIC_NAME + "'/></topic>"
+                + "<topic id='y'><name><value>Y</value></name></topic>"
+                + "</topicMap>");
+        _assertDefaultNameType();
+    }
+
+    public void testDefaultNameTypeDeclaredAfter() throws Exception {
+        _parseXTM("<topicMap xmlns='http://www.topicmaps.org/xtm/' version='2.0'>"
+                + "<topic id='y'><name><value>Y</value></name></topic>"
+                + "<topic id='x'><subjectIdentifier href='" + TMDM.TOPIC_NAME + "'/></topic>"
+                + "</topicMap>");
+        _assertDefaultNameType();
+    }
+
+    public void testDefaultNameTypeExisting() throws Exception {
+        final Topic existing = _tm.createTopicBySubjectIdentifier(_loc(TMDM.TOPIC_NAME));
+        _parseXTM("<topicMap xmlns='http://www.topicmaps.org/xtm/' version='2.0'>"
+                + "<topic id='y'><name><value>Y</value></name></topic>"
+                + "<topic id='x'><subjectIdentifier href='" + TMDM.TOPIC_NAME + "'/></topic>"
+                + "</topicMap>");
+        _assertDefaultNameType();
+        assertEquals(existing, _tm.getTopicBySubjectIdentifier(_loc(TMDM.TOPIC_NAME)));
+    }
+
+    private static void _declareDefaultNameType(final IMapHandler handler) throws Exception {
+        handler.startTopic(Ref.createItemIdentifier(_BASE + "#x"));
+        handler.subjectIdentifier(TMDM.TOPIC_NAME);
+        handler.endTopic();
+    }
+
+    private static void _untypedName(final IMapHandler handler) throws Exception {
+        handler.startTopic(Ref.createItemIdentifier(_BASE + "#y"));
+        handler.startName();
+        handler.value("Y");
+        handler.endName();
+        handler.endTopic();
+    }
+
+    /**
+     * Names without a type event get the default name type from the handler.
+     */
+    public void testUntypedNameDeclaredBefore() throws Exception {
+        final IMapHandler handler = MapHandlerFactory.createBulkTMAPIMapHandler(_tm);
+        handler.startTopicMap();
+        _declareDefaultNameType(handler);
+        _untypedName(handler);
+        handler.endTopicMap();
+        _assertDefaultNameType();
+    }
+
+    /**
+     * Names without a type event get the default name type from the handler.
+     */
+    public void testUntypedNameDeclaredAfter() throws Exception {
+        final IMapHandler handler = MapHandlerFactory.createBulkTMAPIMapHandler(_tm);
+        handler.startTopicMap();
+        _untypedName(handler);
+        _declareDefaultNameType(handler);
+        handler.endTopicMap();
+        _assertDefaultNameType();
+    }
+
+    private static void _topicRef(final IMapHandler handler, final String sid) throws Exception {
+        handler.topicRef(Ref.createSubjectIdentifier(sid));
+    }
+
+    private static void _association(final IMapHandler handler, final String reifier) throws Exception {
+        handler.startAssociation();
+        handler.startType();
+        _topicRef(handler, _BASE + "knows");
+        handler.endType();
+        handler.startRole();
+        handler.itemIdentifier(_BASE + "#role");
+        handler.startReifier();
+        _topicRef(handler, reifier);
+        handler.endReifier();
+        handler.startType();
+        _topicRef(handler, _BASE + "knower");
+        handler.endType();
+        handler.startPlayer();
+        _topicRef(handler, _BASE + "alice");
+        handler.endPlayer();
+        handler.endRole();
+        handler.endAssociation();
+    }
+
+    /**
+     * Equal constructs with different reifiers are merged while parsing,
+     * the reifier of the removed construct must not be used afterwards.
+     */
+    public void testReifierMergedWhileParsing() throws Exception {
+        final IMapHandler handler = MapHandlerFactory.createBulkTMAPIMapHandler(_tm);
+        handler.startTopicMap();
+        _association(handler, _BASE + "reifier-1");
+        _association(handler, _BASE + "reifier-2");
+        handler.startTopic(Ref.createSubjectIdentifier(_BASE + "reifier-1"));
+        handler.itemIdentifier(_BASE + "#reifier");
+        handler.startName();
+        handler.value("Reifier");
+        handler.endName();
+        handler.endTopic();
+        handler.startTopic(Ref.createItemIdentifier(_BASE + "#reifier"));
+        handler.subjectLocator(_BASE + "reifier.html");
+        handler.endTopic();
+        handler.endTopicMap();
+        assertEquals(1, _tm.getAssociations().size());
+        final Role role = _tm.getAssociations().iterator().next().getRoles().iterator().next();
+        assertEquals(role, _tm.getConstructByItemIdentifier(_loc(_BASE + "#role")));
+        final Topic reifier = role.getReifier();
+        assertNotNull(reifier);
+        assertEquals(reifier, _tm.getTopicBySubjectIdentifier(_loc(_BASE + "reifier-1")));
+        assertEquals(reifier, _tm.getTopicBySubjectIdentifier(_loc(_BASE + "reifier-2")));
+        assertEquals(reifier, _tm.getTopicBySubjectLocator(_loc(_BASE + "reifier.html")));
+        assertEquals(reifier, _tm.getConstructByItemIdentifier(_loc(_BASE + "#reifier")));
+        assertEquals(1, reifier.getNames().size());
+        final Name name = reifier.getNames().iterator().next();
+        assertEquals("Reifier", name.getValue());
+        // knows, knower, alice, reifier, default name type
+        assertEquals(5, _tm.getTopics().size());
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.ByteArrayOutputStream;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Topic;
+
+/**
+ * Tests the fragment serialization of the {@link CTMTopicMapWriter}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestCTMTopicMapWriterFragment extends AbstractTopicMapTestCase {
+
+    private static final String _HEADER = "%encoding \"utf-8\"\n%version 1.0\n";
+
+    private static final String _FOOTER = "# Thanks for using TMAPIX I/O -- http://www.tmapix.org/ :)\n";
+
+    private Topic _alice;
+    private Topic _bob;
+    private Topic _carol;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final Topic person = _topic("person");
+        _alice = _topic("alice");
+        _bob = _topic("bob");
+        _carol = _topic("carol");
+        _alice.addType(person);
+        _bob.addType(person);
+        _alice.createName("Alice", _topic("nickname"));
+        _bob.createName("Bob");
+        _carol.createName("Carol", _topic("informal"));
+        _carol.createOccurrence(_topic("homepage"), "http://www.example.org/carol");
+        final Association assoc = _tm.createAssociation(_topic("knows"), _topic("y2010"));
+        assoc.createRole(_topic("knower"), _alice);
+        assoc.createRole(_topic("known"), _bob);
+    }
+
+    private String _write(final Topic... topics) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CTMTopicMapWriter(out, _BASE).write(topics);
+        return new String(out.toByteArray(), "utf-8");
+    }
+
+    private static String _ref(final String name) {
+        return "<" + _BASE + name + ">";
+    }
+
+    /**
+     * Returns the part of the CTM document which starts with the section 
+     * <tt>name</tt> and ends in front of the next section or the footer.
+     */
+    private static String _section(final String ctm, final String name) {
+        final String header = "#-- " + name + "\n";
+        final int start = ctm.indexOf(header);
+        if (start == -1) {
+            return null;
+        }
+        int end = ctm.length() - _FOOTER.length();
+        for (String next: new String[] {"#-- Topics\n", "#-- Referenced Topics\n", "#-- Associations\n"}) {
+            final int idx = ctm.indexOf(next, start + header.length());
+            if (idx > -1 && idx < end) {
+                end = idx;
+            }
+        }
+        return ctm.substring(start, end);
+    }
+
+    private static void _assertHeaderAndFooter(final String ctm) {
+        assertTrue(ctm.startsWith(_HEADER));
+        assertTrue(ctm.endsWith(_FOOTER));
+        assertEquals(ctm.indexOf(_FOOTER), ctm.lastIndexOf(_FOOTER));
+        assertEquals(0, ctm.lastIndexOf("%encoding"));
+    }
+
+    public void testEmptyFragment() throws Exception {
+        final String ctm = _write(new Topic[0]);
+        _assertHeaderAndFooter(ctm);
+        assertEquals("#-- Topics\n\n", _section(ctm, "Topics"));
+        assertNull(_section(ctm, "Referenced Topics"));
+        assertNull(_section(ctm, "Associations"));
+        assertEquals(-1, ctm.indexOf(_BASE));
+    }
+
+    public void testFragmentWithoutReferences() throws Exception {
+        final String ctm = _write(_topic("lonely"));
+        _assertHeaderAndFooter(ctm);
+        assertTrue(_section(ctm, "Topics").indexOf(_ref("lonely") + " .") > -1);
+        assertNull(_section(ctm, "Referenced Topics"));
+        assertNull(_section(ctm, "Associations"));
+    }
+
+    public void testPlayedAssociation() throws Exception {
+        final String ctm = _write(_alice);
+        _assertHeaderAndFooter(ctm);
+        assertEquals("#-- Associations\n\n" 
+                + _ref("knows") + "(" + _ref("knower") + ": " + _ref("alice") + ", " 
+                + _ref("known") + ": " + _ref("bob") + ") @" + _ref("y2010") + "\n\n", 
+                _section(ctm, "Associations"));
+    }
+
+    public void testRequestedTopics() throws Exception {
+        final String topics = _section(_write(_alice), "Topics");
+        assertTrue(topics.indexOf(_ref("alice") + " isa " + _ref("person") + ";\n") > -1);
+        assertTrue(topics.indexOf("- \"Alice\" @" + _ref("nickname") + ".") > -1);
+        assertEquals(-1, topics.indexOf(_ref("bob")));
+    }
+
+    public void testReferencedTopics() throws Exception {
+        final String referenced = _section(_write(_alice), "Referenced Topics");
+        // Topic type, name theme, association type, role types, association theme 
+        for (String name: new String[] {"person", "nickname", "knows", "knower", "known", "y2010"}) {
+            assertTrue(name, referenced.indexOf("\n" + _ref(name) + " .\n") > -1);
+        }
+        // The role player is serialized completely
+        assertTrue(referenced.indexOf(_ref("bob") + " isa " + _ref("person") + ";\n    - \"Bob\".") > -1);
+        assertEquals(-1, referenced.indexOf(_ref("alice")));
+    }
+
+    public void testUnrelatedTopicsAreOmitted() throws Exception {
+        final String ctm = _write(_alice);
+        assertEquals(-1, ctm.indexOf(_ref("carol")));
+        assertEquals(-1, ctm.indexOf(_ref("informal")));
+        assertEquals(-1, ctm.indexOf(_ref("homepage")));
+    }
+
+    public void testReferencedTopicsWithoutAssociations() throws Exception {
+        final String ctm = _write(_carol);
+        _assertHeaderAndFooter(ctm);
+        assertTrue(_section(ctm, "Topics").indexOf(_ref("carol")) > -1);
+        final String referenced = _section(ctm, "Referenced Topics");
+        assertTrue(referenced.indexOf(_ref("informal") + " .") > -1);
+        assertTrue(referenced.indexOf(_ref("homepage") + " .") > -1);
+        assertNull(_section(ctm, "Associations"));
+    }
+
+    public void testWriterIsReusable() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CTMTopicMapWriter writer = new CTMTopicMapWriter(out, _BASE);
+        writer.write(_alice);
+        assertEquals(_write(_alice), new String(out.toByteArray(), "utf-8"));
+        out.reset();
+        writer.write(_bob);
+        assertEquals(_write(_bob), new String(out.toByteArray(), "utf-8"));
+    }
+
+}
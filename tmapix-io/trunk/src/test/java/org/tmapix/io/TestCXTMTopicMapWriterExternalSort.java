@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.TopicMapSystem;
+import org.tmapi.core.TopicMapSystemFactory;
+
+import com.semagia.mio.Source;
+
+/**
+ * Tests if the external sort of the {@link CXTMTopicMapWriter} produces
+ * the same output as the in-memory canonicalization.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+@RunWith(Parameterized.class)
+public class TestCXTMTopicMapWriterExternalSort {
+
+    private final File _file;
+    private TopicMapSystem _sys;
+
+    public TestCXTMTopicMapWriterExternalSort(File file, String inputDir, String referenceDir, boolean convertToTMDM) {
+        _file = file;
+    }
+
+    @Parameters
+    public static Collection<Object> makeTestCases() {
+        final Collection<Object> result = new ArrayList<Object>();
+        result.addAll(CXTMTestUtils.makeXTM2TestCases());
+        result.addAll(CXTMTestUtils.makeCTMTestCases());
+        return result;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        _sys = TopicMapSystemFactory.newInstance().newTopicMapSystem();
+    }
+
+    private byte[] _write(final TopicMap tm, final String iri, final long budget) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CXTMTopicMapWriter writer = new CXTMTopicMapWriter(out, iri);
+        writer.setMemoryBudget(budget);
+        writer.write(tm);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testExternalSort() throws Exception {
+        final String iri = _file.toURI().toURL().toExternalForm();
+        final TopicMap tm = _sys.createTopicMap(iri);
+        final TopicMapReader reader = iri.endsWith(".ctm") ? new CTMTopicMapReader(tm, new Source(iri))
+                                                           : new XTMTopicMapReader(tm, new Source(iri));
+        reader.read();
+        final String expected = new String(_write(tm, iri, 0), "utf-8");
+        // A tiny budget forces one run per record
+        assertEquals(iri, expected, new String(_write(tm, iri, 1), "utf-8"));
+        assertEquals(iri, expected, new String(_write(tm, iri, 1024 * 1024), "utf-8"));
+    }
+
+}
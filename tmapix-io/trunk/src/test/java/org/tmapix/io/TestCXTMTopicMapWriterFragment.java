@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.ByteArrayOutputStream;
+
+import org.tmapi.core.Topic;
+
+/**
+ * Tests the fragment serialization of the {@link CXTMTopicMapWriter}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestCXTMTopicMapWriterFragment extends AbstractTopicMapTestCase {
+
+    private Topic _person;
+    private Topic _alice;
+    private Topic _bob;
+    private Topic _carol;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _person = _topic("person");
+        _alice = _topic("alice");
+        _bob = _topic("bob");
+        _carol = _topic("carol");
+        _alice.addType(_person);
+        _bob.addType(_person);
+        _alice.createName("Alice");
+        _bob.createName("Bob");
+        _carol.createName("Carol", _topic("informal"));
+        _carol.createOccurrence(_topic("homepage"), "http://www.example.org/carol");
+        final Topic knows = _topic("knows");
+        _tm.createAssociation(knows).createRole(_topic("knower"), _alice);
+        _tm.getAssociations().iterator().next().createRole(_topic("known"), _bob);
+    }
+
+    private String _write(final Topic... topics) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CXTMTopicMapWriter(out, _BASE).write(topics);
+        return new String(out.toByteArray(), "utf-8");
+    }
+
+    private static boolean _contains(final String cxtm, final String locator) {
+        return cxtm.indexOf("<locator>" + locator + "</locator>") > -1;
+    }
+
+    private static int _count(final String cxtm, final String str) {
+        int count = 0;
+        int idx = cxtm.indexOf(str);
+        while (idx > -1) {
+            count++;
+            idx = cxtm.indexOf(str, idx + str.length());
+        }
+        return count;
+    }
+
+    public void testAllTopics() throws Exception {
+        assertEquals(_cxtm(_tm), _write(_tm.getTopics().toArray(new Topic[0])));
+    }
+
+    public void testFragment() throws Exception {
+        final String cxtm = _write(_alice);
+        assertTrue(_contains(cxtm, "alice"));
+        assertTrue(_contains(cxtm, "bob"));
+        assertTrue(_contains(cxtm, "knows"));
+        assertTrue(_contains(cxtm, "person"));
+        assertFalse(_contains(cxtm, "carol"));
+        assertFalse(_contains(cxtm, "homepage"));
+        assertTrue(cxtm.indexOf("<value>Bob</value>") > -1);
+    }
+
+    public void testEmptyFragment() throws Exception {
+        assertEquals("<topicMap>\n</topicMap>\n", _write(new Topic[0]));
+    }
+
+    public void testFragmentWithoutReferences() throws Exception {
+        final String cxtm = _write(_topic("lonely"));
+        assertEquals(1, _count(cxtm, "<topic "));
+        assertTrue(_contains(cxtm, "lonely"));
+        assertEquals(-1, cxtm.indexOf("<association"));
+    }
+
+}
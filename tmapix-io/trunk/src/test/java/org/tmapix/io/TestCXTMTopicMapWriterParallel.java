@@ -0,0 +1,80 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Topic;
+
+/**
+ * Tests if the parallel mode of the {@link CXTMTopicMapWriter} produces
+ * the same output as the sequential mode.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestCXTMTopicMapWriterParallel extends AbstractTopicMapTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final Random rnd = new Random(42);
+        final Topic[] topics = new Topic[3000];
+        for (int i=0; i < topics.length; i++) {
+            topics[i] = _tm.createTopicBySubjectIdentifier(_tm.createLocator(_BASE + i));
+        }
+        for (int i=0; i < topics.length; i++) {
+            if (rnd.nextInt(3) == 0) {
+                topics[i].addType(topics[rnd.nextInt(30)]);
+            }
+            topics[i].createName("Name " + rnd.nextInt(100));
+            topics[i].createOccurrence(topics[rnd.nextInt(30)], "Occurrence " + i);
+        }
+        for (int i=0; i < 6000; i++) {
+            final Association assoc = _tm.createAssociation(topics[rnd.nextInt(30)]);
+            assoc.createRole(topics[rnd.nextInt(30)], topics[rnd.nextInt(topics.length)]);
+            assoc.createRole(topics[rnd.nextInt(30)], topics[rnd.nextInt(topics.length)]);
+        }
+    }
+
+    private String _write(final int parallelism) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CXTMTopicMapWriter writer = new CXTMTopicMapWriter(out, _BASE);
+        writer.setParallelism(parallelism);
+        writer.write(_tm);
+        return new String(out.toByteArray(), "utf-8");
+    }
+
+    public void testParallel() throws Exception {
+        final String expected = _write(1);
+        assertEquals(expected, _write(2));
+        assertEquals(expected, _write(4));
+    }
+
+    public void testIllegalParallelism() throws Exception {
+        final CXTMTopicMapWriter writer = new CXTMTopicMapWriter(new ByteArrayOutputStream(), _BASE);
+        try {
+            writer.setParallelism(0);
+            fail("Expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Name;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+
+/**
+ * Tests against the {@link ChangeTracker} and the delta mode of the
+ * {@link XTM2TopicMapWriter} and {@link JTMTopicMapWriter}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestChangeTracker extends AbstractTopicMapTestCase {
+
+    private Topic _alice;
+    private Topic _bob;
+    private Association _assoc;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _alice = _topic("alice");
+        _bob = _topic("bob");
+        _alice.createName("Alice");
+        _bob.createName("Bob");
+        _assoc = _tm.createAssociation(_topic("knows"));
+        _assoc.createRole(_topic("knower"), _alice);
+        _assoc.createRole(_topic("known"), _bob);
+    }
+
+    public void testNoChanges() {
+        final ChangeTracker tracker = new ChangeTracker(_tm);
+        assertFalse(tracker.hasChanges());
+        assertTrue(tracker.getChangedTopics().isEmpty());
+        assertTrue(tracker.getChangedAssociations().isEmpty());
+        assertTrue(tracker.getRemovedIds().isEmpty());
+        assertFalse(tracker.isTopicMapChanged());
+    }
+
+    public void testCreatedTopic() {
+        final ChangeTracker tracker = new ChangeTracker(_tm);
+        final Topic carol = _topic("carol");
+        assertTrue(tracker.hasChanges());
+        assertEquals(1, tracker.getChangedTopics().size());
+        assertTrue(tracker.getChangedTopics().contains(carol));
+        assertTrue(tracker.getChangedAssociations().isEmpty());
+    }
+
+    public void testModifiedTopic() {
+        final ChangeTracker tracker = new ChangeTracker(_tm);
+        final Name name = _alice.getNames().iterator().next();
+        name.createVariant("alice", _topic("sort"));
+        assertTrue(tracker.getChangedTopics().contains(_alice));
+        assertFalse(tracker.getChangedTopics().contains(_bob));
+        tracker.checkpoint();
+        assertFalse(tracker.hasChanges());
+        name.setValue("Alice Liddell");
+        tracker.refresh();
+        assertEquals(1, tracker.getChangedTopics().size());
+        assertTrue(tracker.getChangedTopics().contains(_alice));
+    }
+
+    public void testModifiedAssociation() {
+        final ChangeTracker tracker = new ChangeTracker(_tm);
+        _assoc.addTheme(_topic("theme"));
+        assertEquals(1, tracker.getChangedAssociations().size());
+        assertTrue(tracker.getChangedAssociations().contains(_assoc));
+        assertFalse(tracker.getChangedTopics().contains(_alice));
+    }
+
+    public void testRemoved() {
+        final ChangeTracker tracker = new ChangeTracker(_tm);
+        final String id = _assoc.getId();
+        _assoc.remove();
+        assertTrue(tracker.getRemovedIds().contains(id));
+        assertTrue(tracker.hasChanges());
+    }
+
+    public void testTopicMapChanged() {
+        final ChangeTracker tracker = new ChangeTracker(_tm);
+        _tm.setReifier(_topic("reifier"));
+        assertTrue(tracker.isTopicMapChanged());
+    }
+
+    private void _modify() {
+        _topic("carol").createName("Carol");
+        _bob.createOccurrence(_topic("homepage"), "http://www.example.org/bob");
+        _alice.getNames().iterator().next().setValue("Alice Liddell");
+        _assoc.remove();
+        final Association assoc = _tm.createAssociation(_topic("knows"));
+        assoc.createRole(_topic("knower"), _bob);
+        assoc.createRole(_topic("known"), _topic("carol"));
+    }
+
+    public void testXTM2Delta() throws Exception {
+        final TopicMap copy = _sys.createTopicMap(_BASE + "copy");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new XTM2TopicMapWriter(out, _BASE, XTMVersion.XTM_2_0).write(_tm);
+        new XTM20TopicMapReader(copy, new ByteArrayInputStream(out.toByteArray()), _BASE).read();
+        final ChangeTracker tracker = new ChangeTracker(_tm);
+        final int topicCount = copy.getTopics().size();
+        final int assocCount = copy.getAssociations().size();
+        _modify();
+        out = new ByteArrayOutputStream();
+        new XTM2TopicMapWriter(out, _BASE, XTMVersion.XTM_2_0).writeDelta(tracker);
+        final TopicMap delta = _sys.createTopicMap(_BASE + "delta");
+        new XTM20TopicMapReader(delta, new ByteArrayInputStream(out.toByteArray()), _BASE).read();
+        TopicMapDelta.apply(delta, copy);
+        _assertDeltaApplied(copy, topicCount, assocCount);
+    }
+
+    public void testJTMDelta() throws Exception {
+        final TopicMap copy = _sys.createTopicMap(_BASE + "copy");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JTMTopicMapWriter(out, _BASE).write(_tm);
+        new JTMTopicMapReader(copy, new ByteArrayInputStream(out.toByteArray()), _BASE).read();
+        final ChangeTracker tracker = new ChangeTracker(_tm);
+        final int topicCount = copy.getTopics().size();
+        final int assocCount = copy.getAssociations().size();
+        _modify();
+        out = new ByteArrayOutputStream();
+        new JTMTopicMapWriter(out, _BASE).writeDelta(tracker);
+        final TopicMap delta = _sys.createTopicMap(_BASE + "delta");
+        new JTMTopicMapReader(delta, new ByteArrayInputStream(out.toByteArray()), _BASE).read();
+        TopicMapDelta.apply(delta, copy);
+        _assertDeltaApplied(copy, topicCount, assocCount);
+    }
+
+    private void _assertDeltaApplied(final TopicMap copy, final int topicCount,
+            final int assocCount) {
+        // carol and homepage
+        assertEquals(topicCount + 2, copy.getTopics().size());
+        // One association was removed, one was created
+        assertEquals(assocCount, copy.getAssociations().size());
+        final Topic carol = copy.getTopicBySubjectIdentifier(copy.createLocator(_BASE + "carol"));
+        assertNotNull(carol);
+        assertEquals("Carol", carol.getNames().iterator().next().getValue());
+        final Topic bob = copy.getTopicBySubjectIdentifier(copy.createLocator(_BASE + "bob"));
+        assertEquals(1, bob.getOccurrences().size());
+        assertEquals(1, bob.getNames().size());
+        assertEquals(1, bob.getRolesPlayed().size());
+        final Topic alice = copy.getTopicBySubjectIdentifier(copy.createLocator(_BASE + "alice"));
+        assertEquals(1, alice.getNames().size());
+        assertEquals("Alice Liddell", alice.getNames().iterator().next().getValue());
+        assertTrue(alice.getRolesPlayed().isEmpty());
+    }
+
+}
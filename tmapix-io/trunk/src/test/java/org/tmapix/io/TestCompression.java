@@ -0,0 +1,183 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.TopicMapSystem;
+import org.tmapi.core.TopicMapSystemFactory;
+import org.tmapix.io.internal.utils.BlockGZIPOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link Compression} class.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestCompression extends TestCase {
+
+    private static byte[] _data(final int length) {
+        final byte[] data = new byte[length];
+        final Random rnd = new Random(42);
+        for (int i=0; i < length; i++) {
+            data[i] = (byte) ('a' + rnd.nextInt(8));
+        }
+        return data;
+    }
+
+    private static byte[] _readAll(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private void _testRoundTrip(final int parallelism, final int blockSize, final int length) throws Exception {
+        final byte[] data = _data(length);
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        final OutputStream out = new BlockGZIPOutputStream(compressed, parallelism, blockSize);
+        out.write(data, 0, length / 2);
+        for (int i=length / 2; i < length; i++) {
+            out.write(data[i]);
+        }
+        out.close();
+        final byte[] bytes = compressed.toByteArray();
+        // The multi-member stream must be readable by the JDK implementation
+        assertTrue(Arrays.equals(data, _readAll(new GZIPInputStream(new ByteArrayInputStream(bytes)))));
+        assertTrue(Arrays.equals(data, _readAll(Compression.decompress(new ByteArrayInputStream(bytes)))));
+    }
+
+    public void testSequential() throws Exception {
+        _testRoundTrip(1, 1000, 10000);
+    }
+
+    public void testParallel() throws Exception {
+        _testRoundTrip(4, 1000, 100000);
+    }
+
+    public void testSingleBlock() throws Exception {
+        _testRoundTrip(4, 1 << 20, 1000);
+    }
+
+    public void testEmpty() throws Exception {
+        _testRoundTrip(2, 1000, 0);
+    }
+
+    public void testUncompressed() throws Exception {
+        final byte[] data = _data(1000);
+        assertTrue(Arrays.equals(data, _readAll(Compression.decompress(new ByteArrayInputStream(data)))));
+    }
+
+    public void testFinish() throws Exception {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        final OutputStream out = Compression.gzip(compressed, 2);
+        out.write(_data(100));
+        Compression.finish(out);
+        compressed.write(_data(10));
+        try {
+            out.write(1);
+            fail("Expected an IOException");
+        }
+        catch (IOException ex) {
+            // noop.
+        }
+    }
+
+    public void testWriter() throws Exception {
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final JSONWriter writer = new JSONWriter(expected, "utf-8");
+        writer.startDocument();
+        writer.endDocument();
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        final OutputStream out = Compression.gzip(compressed);
+        final JSONWriter gzipWriter = new JSONWriter(out, "utf-8");
+        gzipWriter.startDocument();
+        gzipWriter.endDocument();
+        out.close();
+        assertTrue(Arrays.equals(expected.toByteArray(), 
+                _readAll(Compression.decompress(new ByteArrayInputStream(compressed.toByteArray())))));
+    }
+
+    public void testWriterCompression() throws Exception {
+        final String base = "http://www.semagia.com/compression";
+        final TopicMapSystem sys = TopicMapSystemFactory.newInstance().newTopicMapSystem();
+        try {
+            final TopicMap tm = sys.createTopicMap(base);
+            tm.createTopicBySubjectIdentifier(tm.createLocator(base + "#topic"))
+                .createName("Topic");
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            new XTM10TopicMapWriter(expected, base).write(tm);
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            final XTM10TopicMapWriter writer = new XTM10TopicMapWriter(compressed, base);
+            assertEquals(0, writer.getCompression());
+            writer.setCompression(2);
+            assertEquals(2, writer.getCompression());
+            writer.write(tm);
+            final byte[] first = compressed.toByteArray();
+            assertTrue(Arrays.equals(expected.toByteArray(),
+                    _readAll(new GZIPInputStream(new ByteArrayInputStream(first)))));
+            // Each topic map is a complete gzip stream
+            writer.write(tm);
+            final ByteArrayOutputStream twice = new ByteArrayOutputStream();
+            twice.write(expected.toByteArray());
+            twice.write(expected.toByteArray());
+            assertTrue(Arrays.equals(twice.toByteArray(),
+                    _readAll(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())))));
+            writer.setCompression(0);
+            compressed.reset();
+            writer.write(tm);
+            assertTrue(Arrays.equals(expected.toByteArray(), compressed.toByteArray()));
+        }
+        finally {
+            sys.close();
+        }
+    }
+
+    public void testBinaryWriterCompression() throws Exception {
+        final String base = "http://www.semagia.com/compression";
+        final TopicMapSystem sys = TopicMapSystemFactory.newInstance().newTopicMapSystem();
+        try {
+            final TopicMap tm = sys.createTopicMap(base);
+            tm.createTopicBySubjectIdentifier(tm.createLocator(base + "#topic"))
+                .createName("Topic");
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            new BinaryTopicMapWriter(expected, base).write(tm);
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            final BinaryTopicMapWriter writer = new BinaryTopicMapWriter(compressed, base);
+            writer.setCompression(1);
+            writer.write(tm);
+            assertTrue(Arrays.equals(expected.toByteArray(),
+                    _readAll(Compression.decompress(new ByteArrayInputStream(compressed.toByteArray())))));
+        }
+        finally {
+            sys.close();
+        }
+    }
+
+}
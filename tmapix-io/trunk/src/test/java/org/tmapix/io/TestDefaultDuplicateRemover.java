@@ -0,0 +1,168 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.util.Iterator;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Name;
+import org.tmapi.core.Role;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+
+/**
+ * Tests against the {@link DefaultDuplicateRemover}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestDefaultDuplicateRemover extends AbstractTopicMapTestCase {
+
+    private DefaultDuplicateRemover _remover;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _remover = new DefaultDuplicateRemover();
+        _remover.setParallelism(1);
+    }
+
+    public void testNames() {
+        final Topic topic = _topic("topic");
+        final Topic theme = _topic("theme");
+        final Name name1 = topic.createName("Name", theme);
+        name1.createVariant("a", _topic("sort"));
+        final Name name2 = topic.createName("Name", theme);
+        name2.addItemIdentifier(_tm.createLocator(_BASE + "#name"));
+        name2.createVariant("a", _topic("sort"));
+        name2.createVariant("b", _topic("sort"));
+        topic.createName("Name");
+        _remover.removeDuplicates(_tm);
+        assertEquals(2, topic.getNames().size());
+        final Name name = (Name) _tm.getConstructByItemIdentifier(_tm.createLocator(_BASE + "#name"));
+        assertNotNull(name);
+        assertEquals(2, name.getVariants().size());
+    }
+
+    public void testVariants() {
+        final Name name = _topic("topic").createName("Name");
+        name.createVariant("a", _topic("sort"));
+        name.createVariant("a", _topic("sort"));
+        _remover.removeDuplicates(_tm);
+        assertEquals(1, name.getVariants().size());
+    }
+
+    public void testOccurrences() {
+        final Topic topic = _topic("topic");
+        topic.createOccurrence(_topic("type"), "Value");
+        topic.createOccurrence(_topic("type"), "Value").setReifier(_topic("reifier"));
+        topic.createOccurrence(_topic("type"), "Value2");
+        _remover.removeDuplicates(_tm);
+        assertEquals(2, topic.getOccurrences().size());
+        assertNotNull(_topic("reifier").getReified());
+    }
+
+    public void testRoles() {
+        final Association assoc = _tm.createAssociation(_topic("type"));
+        assoc.createRole(_topic("role-type"), _topic("player"));
+        final Role role = assoc.createRole(_topic("role-type"), _topic("player"));
+        role.addItemIdentifier(_tm.createLocator(_BASE + "#role"));
+        assoc.createRole(_topic("role-type"), _topic("player2"));
+        _remover.removeDuplicates(_tm);
+        assertEquals(2, assoc.getRoles().size());
+        assertNotNull(_tm.getConstructByItemIdentifier(_tm.createLocator(_BASE + "#role")));
+    }
+
+    public void testAssociations() {
+        final Association assoc1 = _tm.createAssociation(_topic("type"));
+        assoc1.createRole(_topic("role-type"), _topic("player"));
+        assoc1.createRole(_topic("role-type2"), _topic("player2"));
+        final Association assoc2 = _tm.createAssociation(_topic("type"));
+        assoc2.createRole(_topic("role-type2"), _topic("player2"));
+        assoc2.createRole(_topic("role-type"), _topic("player"));
+        // A duplicate once the duplicate role is removed
+        final Association assoc3 = _tm.createAssociation(_topic("type"));
+        assoc3.createRole(_topic("role-type"), _topic("player"));
+        assoc3.createRole(_topic("role-type2"), _topic("player2"));
+        assoc3.createRole(_topic("role-type2"), _topic("player2"));
+        _tm.createAssociation(_topic("type"), _topic("theme")).createRole(_topic("role-type"), _topic("player"));
+        _remover.removeDuplicates(_tm);
+        assertEquals(2, _tm.getAssociations().size());
+        assertEquals(2, _topic("player").getRolesPlayed(_topic("role-type")).size());
+    }
+
+    public void testReifiedDuplicates() {
+        final Topic topic = _topic("topic");
+        final Topic reifier1 = _topic("reifier1");
+        final Topic reifier2 = _topic("reifier2");
+        topic.createName("Name").setReifier(reifier1);
+        topic.createName("Name").setReifier(reifier2);
+        reifier1.createName("Reifier");
+        reifier2.createName("Reifier");
+        _remover.removeDuplicates(_tm);
+        assertEquals(1, topic.getNames().size());
+        final Topic reifier = topic.getNames().iterator().next().getReifier();
+        assertEquals(2, reifier.getSubjectIdentifiers().size());
+        // The duplicate names of the merged reifiers are removed as well
+        assertEquals(1, reifier.getNames().size());
+    }
+
+    public void testReifiedDuplicateAssociations() {
+        for (int i=0; i < 3; i++) {
+            _tm.createAssociation(_topic("type")).createRole(_topic("role-type"), _topic("player"));
+        }
+        final Topic reifier1 = _topic("reifier1");
+        final Topic reifier2 = _topic("reifier2");
+        reifier1.createName("Reifier");
+        reifier2.createName("Reifier");
+        final Iterator<Association> iter = _tm.getAssociations().iterator();
+        iter.next().setReifier(reifier1);
+        iter.next().setReifier(reifier2);
+        _remover.removeDuplicates(_tm);
+        assertEquals(1, _tm.getAssociations().size());
+        final Topic reifier = _tm.getAssociations().iterator().next().getReifier();
+        assertEquals(2, reifier.getSubjectIdentifiers().size());
+        assertEquals(1, reifier.getNames().size());
+    }
+
+    public void testParallel() throws Exception {
+        _populate(_tm);
+        final TopicMap tm = _sys.createTopicMap(_BASE + "parallel");
+        _populate(tm);
+        _remover.removeDuplicates(_tm);
+        final DefaultDuplicateRemover remover = new DefaultDuplicateRemover();
+        remover.setParallelism(4);
+        remover.removeDuplicates(tm);
+        assertEquals(5000, _tm.getAssociations().size());
+        assertEquals(_cxtm(_tm), _cxtm(tm));
+    }
+
+    private static void _populate(final TopicMap tm) {
+        final Topic type = tm.createTopicBySubjectIdentifier(tm.createLocator(_BASE + "type"));
+        for (int i=0; i < 5000; i++) {
+            final Topic topic = tm.createTopicBySubjectIdentifier(tm.createLocator(_BASE + "topic-" + i));
+            topic.createName("Name " + (i % 10));
+            topic.createName("Name " + (i % 10));
+            topic.createOccurrence(type, "Value " + (i % 3));
+            topic.createOccurrence(type, "Value " + (i % 2));
+            final Association assoc = tm.createAssociation(type);
+            assoc.createRole(type, topic);
+            assoc.createRole(type, topic);
+            tm.createAssociation(type).createRole(type, topic);
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.tmapi.core.TopicMap;
+
+import com.semagia.mio.DeserializerRegistry;
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.Syntax;
+
+/**
+ * Tests against the {@link EventStreamRecorder} and the
+ * {@link EventStreamTopicMapReader}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestEventStream extends AbstractTopicMapTestCase {
+
+    /**
+     * Parses the file into the topic map and records the events.
+     */
+    private static byte[] _record(final File file, final TopicMap tm) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final IDeserializer deserializer = DeserializerRegistry.getInstance().createDeserializer(Syntax.CTM);
+        deserializer.setProperty(Property.VALIDATE, Boolean.FALSE);
+        deserializer.setMapHandler(new EventStreamRecorder(out, MapHandlerFactory.createMapHandler(tm)));
+        final InputStream in = new FileInputStream(file);
+        try {
+            deserializer.parse(new Source(in, file.toURI().toURL().toString()));
+        }
+        finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    public void testRoundTrip() throws Exception {
+        int i = 0;
+        for (Object testCase: CXTMTestUtils.makeCTMTestCases()) {
+            final File file = (File) ((Object[]) testCase)[0];
+            final TopicMap parsed = _sys.createTopicMap(_BASE + "parsed" + i);
+            final TopicMap replayed = _sys.createTopicMap(_BASE + "replayed" + i);
+            i++;
+            final byte[] events;
+            try {
+                events = _record(file, parsed);
+            }
+            catch (Exception ex) {
+                // Not of interest here
+                continue;
+            }
+            new EventStreamTopicMapReader(replayed, new ByteArrayInputStream(events)).read();
+            assertEquals("Unexpected result for " + file, _cxtm(parsed), _cxtm(replayed));
+        }
+        assertTrue(i > 0);
+    }
+
+    public void testIllegalStream() throws Exception {
+        try {
+            new EventStreamTopicMapReader(_tm, new ByteArrayInputStream("<topicMap/>".getBytes("utf-8"))).read();
+            fail("Expected an IOException");
+        }
+        catch (IOException ex) {
+            // noop.
+        }
+    }
+
+    public void testTruncatedStream() throws Exception {
+        final File file = (File) ((Object[]) CXTMTestUtils.makeCTMTestCases().iterator().next())[0];
+        final byte[] events = _record(file, _sys.createTopicMap(_BASE + "parsed"));
+        final byte[] truncated = new byte[events.length - 2];
+        System.arraycopy(events, 0, truncated, 0, truncated.length);
+        try {
+            new EventStreamTopicMapReader(_tm, new ByteArrayInputStream(truncated)).read();
+            fail("Expected an IOException");
+        }
+        catch (IOException ex) {
+            // noop.
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Name;
+import org.tmapi.core.Topic;
+import org.tmapix.voc.XSD;
+
+/**
+ * Tests against the {@link FanOutTopicMapWriter}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestFanOutTopicMapWriter extends AbstractTopicMapTestCase {
+
+    /**
+     * Creates a small topic map with all kinds of constructs.
+     */
+    private void _populate() {
+        _tm.addItemIdentifier(_tm.createLocator(_BASE + "#map"));
+        _tm.setReifier(_topic("map-reifier"));
+        final Topic person = _topic("person");
+        final Topic alice = _topic("alice");
+        alice.addType(person);
+        alice.addSubjectLocator(_tm.createLocator("http://www.example.org/alice.html"));
+        final Topic english = _topic("en");
+        final Name name = alice.createName("Alice", english);
+        name.setReifier(_topic("name-reifier"));
+        name.createVariant("alice", _tm.createLocator(XSD.STRING), _topic("sort"));
+        alice.createOccurrence(_topic("homepage"), _tm.createLocator("http://www.example.org/"));
+        alice.createOccurrence(_topic("age"), "42", _tm.createLocator(XSD.INTEGER));
+        final Topic bob = _topic("bob");
+        bob.addType(person);
+        bob.createName("Bob");
+        final Association assoc = _tm.createAssociation(_topic("knows"), english);
+        assoc.setReifier(_topic("assoc-reifier"));
+        assoc.createRole(_topic("knower"), alice).addItemIdentifier(_tm.createLocator(_BASE + "#role"));
+        assoc.createRole(_topic("known"), bob);
+        _tm.createAssociation(_topic("likes")).createRole(_topic("liker"), bob);
+    }
+
+    private static String _toString(final ByteArrayOutputStream out) throws IOException {
+        return new String(out.toByteArray(), "utf-8");
+    }
+
+    private void _testWrite(final boolean copy, final int parallelism) throws Exception {
+        _populate();
+        final ByteArrayOutputStream expectedCXTM = new ByteArrayOutputStream();
+        final ByteArrayOutputStream expectedJTM = new ByteArrayOutputStream();
+        new CXTMTopicMapWriter(expectedCXTM, _BASE).write(_tm);
+        new JTMTopicMapWriter(expectedJTM, _BASE).write(_tm);
+        final ByteArrayOutputStream cxtm = new ByteArrayOutputStream();
+        final ByteArrayOutputStream jtm = new ByteArrayOutputStream();
+        final FanOutTopicMapWriter writer = new FanOutTopicMapWriter(
+                new CXTMTopicMapWriter(cxtm, _BASE), new JTMTopicMapWriter(jtm, _BASE));
+        writer.setCopy(copy);
+        writer.setParallelism(parallelism);
+        writer.write(_tm);
+        assertEquals(_toString(expectedCXTM), _toString(cxtm));
+        // JTM does not define an order of the topics and associations
+        assertEquals(expectedJTM.size(), jtm.size());
+    }
+
+    public void testWrite() throws Exception {
+        _testWrite(true, 1);
+    }
+
+    public void testWriteParallel() throws Exception {
+        _testWrite(true, 2);
+    }
+
+    public void testWriteNoCopy() throws Exception {
+        _testWrite(false, 2);
+    }
+
+    public void testTopicWithoutIdentity() throws Exception {
+        _populate();
+        final Topic topic = _tm.createTopic();
+        topic.removeItemIdentifier(topic.getItemIdentifiers().iterator().next());
+        topic.createName("No identity");
+        _tm.createAssociation(_topic("knows")).createRole(_topic("knower"), topic);
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new JTMTopicMapWriter(expected, _BASE).write(_tm);
+        final ByteArrayOutputStream jtm = new ByteArrayOutputStream();
+        new FanOutTopicMapWriter(new JTMTopicMapWriter(jtm, _BASE)).write(_tm);
+        assertEquals(_toString(expected), _toString(jtm));
+    }
+
+        public void testIndexSnapshotRestored() throws Exception {
+        _populate();
+        final IndexSnapshot snapshot = IndexSnapshot.create(_tm);
+        final JTMTopicMapWriter jtm = new JTMTopicMapWriter(new ByteArrayOutputStream(), _BASE);
+        jtm.setIndexSnapshot(snapshot);
+        new FanOutTopicMapWriter(jtm).write(_tm);
+        assertSame(snapshot, jtm.getIndexSnapshot());
+    }
+
+    public void testFragment() throws Exception {
+        _populate();
+        final Topic alice = _tm.getTopicBySubjectIdentifier(_tm.createLocator(_BASE + "alice"));
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new CXTMTopicMapWriter(expected, _BASE).write(alice);
+        final ByteArrayOutputStream out1 = new ByteArrayOutputStream();
+        final ByteArrayOutputStream out2 = new ByteArrayOutputStream();
+        new FanOutTopicMapWriter(new CXTMTopicMapWriter(out1, _BASE),
+                new CXTMTopicMapWriter(out2, _BASE)).write(alice);
+        assertEquals(_toString(expected), _toString(out1));
+        assertEquals(_toString(expected), _toString(out2));
+    }
+
+    public void testIllegalParallelism() {
+        try {
+            new FanOutTopicMapWriter().setParallelism(0);
+            fail("Expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collection;
+import java.util.HashSet;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Name;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.index.ScopedIndex;
+import org.tmapi.index.TypeInstanceIndex;
+
+/**
+ * Tests against the {@link IndexSnapshot}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestIndexSnapshot extends AbstractTopicMapTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final Topic person = _topic("person");
+        final Topic alice = _topic("alice");
+        alice.addType(person);
+        _topic("bob").addType(person);
+        _topic("bob").addType(_topic("employee"));
+        final Name name = alice.createName(_topic("nickname"), "Ally", _topic("informal"));
+        name.createVariant("ally", _topic("sort"));
+        alice.createOccurrence(_topic("homepage"), "http://www.example.org/", _topic("en"));
+        final Association assoc = _tm.createAssociation(_topic("knows"), _topic("since-2010"));
+        assoc.createRole(_topic("knower"), alice);
+        assoc.createRole(_topic("known"), _topic("bob"));
+    }
+
+    private static void _assertEquals(final Collection<?> expected, final Collection<?> actual) {
+        assertEquals(new HashSet<Object>(expected), new HashSet<Object>(actual));
+    }
+
+    public void testCollect() {
+        final IndexSnapshot snapshot = IndexSnapshot.collect(_tm);
+        final TypeInstanceIndex tiIdx = _tm.getIndex(TypeInstanceIndex.class);
+        tiIdx.open();
+        tiIdx.reindex();
+        final ScopedIndex scopedIdx = _tm.getIndex(ScopedIndex.class);
+        scopedIdx.open();
+        scopedIdx.reindex();
+        assertSame(_tm, snapshot.getTopicMap());
+        _assertEquals(tiIdx.getTopicTypes(), snapshot.getTopicTypes());
+        for (Topic type: tiIdx.getTopicTypes()) {
+            _assertEquals(tiIdx.getTopics(type), snapshot.getTopics(type));
+        }
+        assertTrue(snapshot.getTopics(_topic("alice")).isEmpty());
+        _assertEquals(tiIdx.getAssociationTypes(), snapshot.getAssociationTypes());
+        _assertEquals(tiIdx.getAssociations(_topic("knows")), snapshot.getAssociations(_topic("knows")));
+        _assertEquals(tiIdx.getRoleTypes(), snapshot.getRoleTypes());
+        _assertEquals(tiIdx.getOccurrenceTypes(), snapshot.getOccurrenceTypes());
+        _assertEquals(tiIdx.getNameTypes(), snapshot.getNameTypes());
+        _assertEquals(scopedIdx.getAssociationThemes(), snapshot.getAssociationThemes());
+        _assertEquals(scopedIdx.getOccurrenceThemes(), snapshot.getOccurrenceThemes());
+        _assertEquals(scopedIdx.getNameThemes(), snapshot.getNameThemes());
+        _assertEquals(scopedIdx.getVariantThemes(), snapshot.getVariantThemes());
+    }
+
+    public void testSharedSnapshot() throws Exception {
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new CXTMTopicMapWriter(expected, _BASE).write(_tm);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CXTMTopicMapWriter writer = new CXTMTopicMapWriter(out, _BASE);
+        writer.setIndexSnapshot(IndexSnapshot.collect(_tm));
+        writer.write(_tm);
+        assertEquals(new String(expected.toByteArray(), "utf-8"), new String(out.toByteArray(), "utf-8"));
+    }
+
+    public void testForeignSnapshot() throws Exception {
+        final TopicMap tm = _sys.createTopicMap(_BASE + "other");
+        final IndexSnapshot snapshot = IndexSnapshot.create(tm);
+        assertSame(snapshot, IndexSnapshot.get(snapshot, tm));
+        assertNotSame(snapshot, IndexSnapshot.get(snapshot, _tm));
+        assertSame(_tm, IndexSnapshot.get(snapshot, _tm).getTopicMap());
+    }
+
+}
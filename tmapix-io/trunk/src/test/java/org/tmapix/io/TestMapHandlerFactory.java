@@ -21,6 +21,7 @@ import org.tinytim.mio.TinyTimMapInputHandler;
 import org.tmapi.core.TopicMap;
 import org.tmapi.core.TopicMapSystemFactory;
 import org.tmapix.io.MapHandlerFactory;
+import org.tmapix.io.BulkTMAPIMapHandler;
 import org.tmapix.io.TMAPIChooser;
 import org.tmapix.io.TMAPIMapHandler;
 
@@ -92,4 +93,12 @@ public class TestMapHandlerFactory extends TestCase {
         assertTrue(MapHandlerFactory.createTMAPIMapHandler(makeTopicMap(TMAPIChooser.ONTOPIA_SYSTEM_FACTORY)) instanceof TMAPIMapHandler);
     }
 
+    public void testBulkTinyTim() throws Exception {
+        assertTrue(MapHandlerFactory.createBulkTMAPIMapHandler(makeTopicMap(TMAPIChooser.TINYTIM_SYSTEM_FACTORY)) instanceof BulkTMAPIMapHandler);
+    }
+
+    public void testBulkOntopia() throws Exception {
+        assertTrue(MapHandlerFactory.createBulkTMAPIMapHandler(makeTopicMap(TMAPIChooser.ONTOPIA_SYSTEM_FACTORY)) instanceof BulkTMAPIMapHandler);
+    }
+
 }
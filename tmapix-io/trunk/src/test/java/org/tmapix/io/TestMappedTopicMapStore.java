@@ -0,0 +1,194 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Construct;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Role;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapix.voc.XSD;
+
+/**
+ * Tests against the {@link MappedTopicMapStore}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestMappedTopicMapStore extends AbstractTopicMapTestCase {
+
+    private File _file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _file = File.createTempFile("tmapix", ".tmb");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _file.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Creates a small topic map with all kinds of constructs.
+     */
+    private void _populate() {
+        _tm.addItemIdentifier(_tm.createLocator(_BASE + "#map"));
+        _tm.setReifier(_topic("map-reifier"));
+        final Topic person = _topic("person");
+        final Topic alice = _topic("alice");
+        alice.addType(person);
+        alice.addSubjectLocator(_tm.createLocator("http://www.example.org/alice.html"));
+        alice.addItemIdentifier(_tm.createLocator(_BASE + "#alice"));
+        final Topic english = _topic("en");
+        final Name name = alice.createName("Alice", english);
+        name.addItemIdentifier(_tm.createLocator(_BASE + "#alice-name"));
+        name.setReifier(_topic("name-reifier"));
+        name.createVariant("alice", _tm.createLocator(XSD.STRING), _topic("sort"));
+        final Occurrence occ = alice.createOccurrence(_topic("homepage"), _tm.createLocator("http://www.example.org/"));
+        occ.addItemIdentifier(_tm.createLocator(_BASE + "#alice-homepage"));
+        alice.createOccurrence(_topic("age"), "42", _tm.createLocator(XSD.INTEGER));
+        final Topic bob = _topic("bob");
+        bob.addType(person);
+        bob.createName("Bob");
+        final Association assoc = _tm.createAssociation(_topic("knows"), english);
+        assoc.setReifier(_topic("assoc-reifier"));
+        final Role role = assoc.createRole(_topic("knower"), alice);
+        role.addItemIdentifier(_tm.createLocator(_BASE + "#role"));
+        assoc.createRole(_topic("known"), bob);
+        _tm.createAssociation(_topic("likes")).createRole(_topic("liker"), bob);
+    }
+
+    private MappedTopicMapStore _open() throws Exception {
+        final OutputStream out = new FileOutputStream(_file);
+        final BinaryTopicMapWriter writer = new BinaryTopicMapWriter(out, _BASE);
+        writer.setIndexed(true);
+        writer.write(_tm);
+        out.close();
+        return MappedTopicMapStore.open(_sys.createTopicMap(_BASE + "store"), _file);
+    }
+
+    public void testLookups() throws Exception {
+        _populate();
+        final MappedTopicMapStore store = _open();
+        assertEquals(_tm.getTopics().size(), store.getTopicCount());
+        assertEquals(2, store.getAssociationCount());
+        final TopicMap tm = store.getTopicMap();
+        // The reifier of the topic map is materialized eagerly
+        assertEquals(1, tm.getTopics().size());
+        assertNull(store.getTopicBySubjectIdentifier(_BASE + "unknown"));
+        final Topic alice = store.getTopicBySubjectIdentifier(_BASE + "alice");
+        assertNotNull(alice);
+        assertEquals(alice, store.getTopicBySubjectLocator("http://www.example.org/alice.html"));
+        assertEquals(alice, store.getConstructByItemIdentifier(_BASE + "#alice"));
+        assertEquals(1, alice.getTypes().size());
+        assertEquals(1, alice.getNames().size());
+        assertEquals(2, alice.getOccurrences().size());
+        final Name name = alice.getNames().iterator().next();
+        assertEquals("Alice", name.getValue());
+        assertEquals(2, name.getVariants().iterator().next().getScope().size());
+        assertEquals(name, store.getConstructByItemIdentifier(_BASE + "#alice-name"));
+        assertNotNull(name.getReifier());
+        final Construct occ = store.getConstructByItemIdentifier(_BASE + "#alice-homepage");
+        assertTrue(occ instanceof Occurrence);
+        assertEquals("http://www.example.org/", ((Occurrence) occ).getValue());
+        assertEquals(tm, store.getConstructByItemIdentifier(_BASE + "#map"));
+        // The referenced topics are materialized with their identities only
+        final Topic person = tm.getTopicBySubjectIdentifier(tm.createLocator(_BASE + "person"));
+        assertNotNull(person);
+        assertTrue(tm.getAssociations().isEmpty());
+        assertNull(tm.getTopicBySubjectIdentifier(tm.createLocator(_BASE + "bob")));
+    }
+
+    public void testLoadAssociations() throws Exception {
+        _populate();
+        final MappedTopicMapStore store = _open();
+        final Topic bob = store.getTopicBySubjectIdentifier(_BASE + "bob");
+        assertTrue(bob.getRolesPlayed().isEmpty());
+        store.loadAssociations(bob);
+        assertEquals(2, bob.getRolesPlayed().size());
+        assertEquals(2, store.getTopicMap().getAssociations().size());
+        final Construct role = store.getConstructByItemIdentifier(_BASE + "#role");
+        assertTrue(role instanceof Role);
+        assertNotNull(((Role) role).getParent().getReifier());
+    }
+
+    public void testLoadAll() throws Exception {
+        _populate();
+        final MappedTopicMapStore store = _open();
+        for (Topic topic: _tm.getTopics()) {
+            final Topic loaded = store.getTopicBySubjectIdentifier(topic.getSubjectIdentifiers().iterator().next().toExternalForm());
+            store.loadAssociations(loaded);
+        }
+        assertEquals(_cxtm(_tm), _cxtm(store.getTopicMap()));
+    }
+
+    public void testRolesPlayedWithoutDuplicates() throws Exception {
+        final Topic alice = _topic("alice");
+        final Topic bob = _topic("bob");
+        final Association assoc = _tm.createAssociation(_topic("meeting"));
+        for (int i=0; i < 6; i++) {
+            assoc.createRole(_topic("role-" + i), i % 2 == 0 ? alice : bob);
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final BinaryTopicMapWriter writer = new BinaryTopicMapWriter(out, _BASE);
+        writer.setIndexed(true);
+        writer.write(_tm);
+        final ByteBuffer buf = ByteBuffer.wrap(out.toByteArray());
+        int pos = BinaryTopicMapFormat.MAGIC.length + 1;
+        while (buf.get(pos) != BinaryTopicMapFormat.ROLES_PLAYED) {
+            assertFalse(buf.get(pos) == BinaryTopicMapFormat.END);
+            pos += 5 + buf.getInt(pos + 1);
+        }
+        final int topicCount = _tm.getTopics().size();
+        final int length = buf.getInt(pos + 1);
+        final int offset = pos + 5;
+        final int entries = buf.getInt(offset + topicCount * 4);
+        // One entry for Alice and one for Bob
+        assertEquals(2, entries);
+        assertEquals((topicCount + 1 + entries) * 4, length);
+        final MappedTopicMapStore store = _open();
+        final Topic loaded = store.getTopicBySubjectIdentifier(_BASE + "alice");
+        store.loadAssociations(loaded);
+        assertEquals(3, loaded.getRolesPlayed().size());
+    }
+
+    public void testNotIndexed() throws Exception {
+        _populate();
+        final OutputStream out = new FileOutputStream(_file);
+        new BinaryTopicMapWriter(out, _BASE).write(_tm);
+        out.close();
+        try {
+            MappedTopicMapStore.open(_sys.createTopicMap(_BASE + "store"), _file);
+            fail("Expected an IOException");
+        }
+        catch (IOException ex) {
+            // noop.
+        }
+    }
+
+}
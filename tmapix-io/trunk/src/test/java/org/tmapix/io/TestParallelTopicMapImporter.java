@@ -0,0 +1,200 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.tmapi.core.TopicMap;
+import org.tmapix.io.ParallelTopicMapImporter.ImportError;
+
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.Syntax;
+
+/**
+ * Tests against the {@link ParallelTopicMapImporter}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestParallelTopicMapImporter extends AbstractTopicMapTestCase {
+
+    private static File[] _files(final Collection<Object> testCases) {
+        final File[] files = new File[testCases.size()];
+        int i = 0;
+        for (Object testCase: testCases) {
+            files[i++] = (File) ((Object[]) testCase)[0];
+        }
+        return files;
+    }
+
+    private List<ImportError> _import(final TopicMap tm, final int parallelism,
+            final File... files) throws Exception {
+        final ParallelTopicMapImporter importer = new ParallelTopicMapImporter(tm);
+        importer.setParallelism(parallelism);
+        for (File file: files) {
+            importer.add(file, Syntax.CTM);
+        }
+        return importer.read();
+    }
+
+    private static List<Integer> _indexes(final List<ImportError> errors) {
+        final List<Integer> indexes = new ArrayList<Integer>(errors.size());
+        for (ImportError error: errors) {
+            indexes.add(error.getIndex());
+        }
+        return indexes;
+    }
+
+    private static Source _source(final String ltm, final String docIRI) throws Exception {
+        return new Source(new ByteArrayInputStream(ltm.getBytes("utf-8")), docIRI);
+    }
+
+    public void testSameResultAsSequentialImport() throws Exception {
+        final File[] files = _files(CXTMTestUtils.makeCTMTestCases());
+        final TopicMap sequential = _sys.createTopicMap(_BASE + "sequential");
+        final TopicMap parallel = _sys.createTopicMap(_BASE + "parallel");
+        assertEquals(_indexes(_import(sequential, 1, files)), _indexes(_import(parallel, 4, files)));
+        assertEquals(_cxtm(sequential), _cxtm(parallel));
+    }
+
+    public void testErrorsAreReported() throws Exception {
+        final File[] valid = _files(CXTMTestUtils.makeCTMTestCases());
+        final File[] invalid = _files(CXTMTestUtils.findInvalidCXTMTests("ctm", "/cxtm/ctm/"));
+        final List<ImportError> errors = _import(_tm, 4, invalid[0], valid[0], valid[1]);
+        assertEquals(1, errors.size());
+        assertEquals(0, errors.get(0).getIndex());
+        assertEquals(invalid[0].toURI().toURL().toString(), errors.get(0).getDocumentIRI());
+        assertNotNull(errors.get(0).getError());
+    }
+
+    public void testErrorsOfSameDocumentIRI() throws Exception {
+        final File[] valid = _files(CXTMTestUtils.makeCTMTestCases());
+        final File[] invalid = _files(CXTMTestUtils.findInvalidCXTMTests("ctm", "/cxtm/ctm/"));
+        for (int parallelism: new int[] {1, 4}) {
+            final ParallelTopicMapImporter importer = new ParallelTopicMapImporter(_sys.createTopicMap(_BASE + parallelism));
+            importer.setParallelism(parallelism);
+            importer.add(invalid[0], Syntax.CTM, _BASE);
+            importer.add(valid[0], Syntax.CTM);
+            importer.add(invalid[1], Syntax.CTM, _BASE);
+            final List<ImportError> errors = importer.read();
+            assertEquals(2, errors.size());
+            assertEquals(0, errors.get(0).getIndex());
+            assertEquals(2, errors.get(1).getIndex());
+            assertEquals(_BASE, errors.get(0).getDocumentIRI());
+            assertEquals(_BASE, errors.get(1).getDocumentIRI());
+        }
+    }
+
+    public void testFailedSourceContributesNothing() throws Exception {
+        final String brokenIRI = _BASE + "broken.ltm";
+        final List<String> results = new ArrayList<String>();
+        for (int parallelism: new int[] {1, 4}) {
+            final TopicMap tm = _sys.createTopicMap(_BASE + parallelism);
+            final ParallelTopicMapImporter importer = new ParallelTopicMapImporter(tm);
+            importer.setParallelism(parallelism);
+            importer.add(_source("[alice = \"Alice\"]", _BASE + "alice.ltm"), Syntax.LTM);
+            // The error is detected after the first topic was parsed
+            importer.add(_source("[partial = \"Partial\"] [broken = ", brokenIRI), Syntax.LTM);
+            importer.add(_source("[bob = \"Bob\"]", _BASE + "bob.ltm"), Syntax.LTM);
+            final List<ImportError> errors = importer.read();
+            assertEquals(1, errors.size());
+            assertEquals(1, errors.get(0).getIndex());
+            assertNull(tm.getConstructByItemIdentifier(tm.createLocator(brokenIRI + "#partial")));
+            assertNotNull(tm.getConstructByItemIdentifier(tm.createLocator(_BASE + "alice.ltm#alice")));
+            assertNotNull(tm.getConstructByItemIdentifier(tm.createLocator(_BASE + "bob.ltm#bob")));
+            results.add(_cxtm(tm));
+        }
+        assertEquals(results.get(0), results.get(1));
+    }
+
+    public void testInterrupted() throws Exception {
+        for (int parallelism: new int[] {1, 4}) {
+            final TopicMap tm = _sys.createTopicMap(_BASE + parallelism);
+            final ParallelTopicMapImporter importer = new ParallelTopicMapImporter(tm);
+            importer.setParallelism(parallelism);
+            importer.add(_source("[alice = \"Alice\"]", _BASE + "alice.ltm"), Syntax.LTM);
+            importer.add(_source("[bob = \"Bob\"]", _BASE + "bob.ltm"), Syntax.LTM);
+            Thread.currentThread().interrupt();
+            try {
+                importer.read();
+                fail("Expected an InterruptedIOException");
+            }
+            catch (InterruptedIOException ex) {
+                assertTrue(Thread.currentThread().isInterrupted());
+            }
+            finally {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    public void testProperties() throws Exception {
+        final String ltm = "[a = \"A\" ~ r]";
+        final String legacyIRI = _BASE + "legacy.ltm";
+        final String defaultIRI = _BASE + "default.ltm";
+        final TopicMap expected = _sys.createTopicMap(_BASE + "expected");
+        final LTMTopicMapReader reader = new LTMTopicMapReader(expected, 
+                new ByteArrayInputStream(ltm.getBytes("utf-8")), legacyIRI);
+        reader.setLegacyMode(true);
+        reader.read();
+        new LTMTopicMapReader(expected, new ByteArrayInputStream(ltm.getBytes("utf-8")), defaultIRI).read();
+        final Map<String, Object> legacy = Collections.<String, Object>singletonMap(Property.LTM_LEGACY, Boolean.TRUE);
+        for (int parallelism: new int[] {1, 4}) {
+            final TopicMap tm = _sys.createTopicMap(_BASE + parallelism);
+            final ParallelTopicMapImporter importer = new ParallelTopicMapImporter(tm);
+            importer.setParallelism(parallelism);
+            importer.add(_source(ltm, legacyIRI), Syntax.LTM, legacy);
+            importer.add(_source(ltm, defaultIRI), Syntax.LTM);
+            assertTrue(importer.read().isEmpty());
+            assertEquals(_cxtm(expected), _cxtm(tm));
+        }
+    }
+
+    public void testIllegalProperties() {
+        try {
+            new ParallelTopicMapImporter(_tm).add(new Source(_BASE), Syntax.LTM, null);
+            fail("Expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+        catch (Exception ex) {
+            fail("Unexpected exception: " + ex);
+        }
+    }
+
+    public void testIllegalParallelism() {
+        try {
+            new ParallelTopicMapImporter(_tm).setParallelism(0);
+            fail("Expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+        catch (Exception ex) {
+            fail("Unexpected exception: " + ex);
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.TopicMapSystem;
+import org.tmapi.core.TopicMapSystemFactory;
+import org.tmapix.io.internal.utils.CopyUtils;
+
+/**
+ * Tests against the {@link TopicMapDelta}.
+ * <p>
+ * Each test modifies the topic map after the checkpoint and applies the 
+ * delta to a copy of the topic map which was taken at the checkpoint. 
+ * The delta is applied directly and after a roundtrip through the 
+ * {@link BinaryTopicMapWriter} / {@link BinaryTopicMapReader}. Afterwards, 
+ * the CXTM of the copies must be equal to the CXTM of the topic map.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestTopicMapDelta extends AbstractTopicMapTestCase {
+
+    private TopicMapSystem _copySys;
+    private TopicMap _copy;
+    private TopicMap _serializedCopy;
+    private Topic _alice;
+    private Topic _bob;
+    private Association _assoc;
+    private ChangeTracker _tracker;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _copySys = TopicMapSystemFactory.newInstance().newTopicMapSystem();
+        _alice = _topic("alice");
+        _bob = _topic("bob");
+        _alice.addType(_topic("person"));
+        _bob.addType(_topic("person"));
+        _alice.createName("Alice");
+        _bob.createName("Bob").createVariant("bob", _topic("sort"));
+        _bob.createOccurrence(_topic("homepage"), "http://www.example.org/bob");
+        _assoc = _tm.createAssociation(_topic("knows"));
+        _assoc.createRole(_topic("knower"), _alice);
+        _assoc.createRole(_topic("known"), _bob);
+        _tm.createAssociation(_topic("likes"), _topic("y2010"))
+            .createRole(_topic("liker"), _bob);
+        _copy = _copySys.createTopicMap(_BASE);
+        _serializedCopy = _copySys.createTopicMap(_BASE + "serialized");
+        CopyUtils.copy(_tm, _copy);
+        CopyUtils.copy(_tm, _serializedCopy);
+        _tracker = new ChangeTracker(_tm);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _copySys.close();
+        super.tearDown();
+    }
+
+    /**
+     * Applies the delta to both copies and compares them with the topic map.
+     */
+    private void _assertDeltaApplied() throws Exception {
+        final TopicMapSystem sys = TopicMapSystemFactory.newInstance().newTopicMapSystem();
+        try {
+            final TopicMap delta = sys.createTopicMap(_BASE + "delta");
+            TopicMapDelta.create(_tracker, delta);
+            TopicMapDelta.apply(delta, _copy);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            TopicMapDelta.write(_tracker, new BinaryTopicMapWriter(out, _BASE));
+            final TopicMap serializedDelta = sys.createTopicMap(_BASE + "serialized-delta");
+            new BinaryTopicMapReader(serializedDelta, new ByteArrayInputStream(out.toByteArray())).read();
+            TopicMapDelta.apply(serializedDelta, _serializedCopy);
+        }
+        finally {
+            sys.close();
+        }
+        final String expected = _cxtm(_tm);
+        assertEquals(expected, _cxtm(_copy));
+        assertEquals(expected, _cxtm(_serializedCopy));
+    }
+
+    public void testNoChanges() throws Exception {
+        _assertDeltaApplied();
+    }
+
+    public void testCreated() throws Exception {
+        final Topic carol = _topic("carol");
+        carol.createName("Carol");
+        _tm.createAssociation(_topic("knows")).createRole(_topic("knower"), carol);
+        _assertDeltaApplied();
+    }
+
+    public void testModifiedName() throws Exception {
+        _alice.getNames().iterator().next().setValue("Alice Liddell");
+        _assertDeltaApplied();
+        assertEquals(1, _copy.getTopicBySubjectIdentifier(_copy.createLocator(_BASE + "alice")).getNames().size());
+    }
+
+    public void testRemovedCharacteristics() throws Exception {
+        _bob.getOccurrences().iterator().next().remove();
+        _bob.getNames().iterator().next().getVariants().iterator().next().remove();
+        _alice.removeType(_topic("person"));
+        _assertDeltaApplied();
+    }
+
+    public void testModifiedIdentities() throws Exception {
+        _alice.addSubjectIdentifier(_tm.createLocator(_BASE + "alice-liddell"));
+        _alice.removeSubjectIdentifier(_tm.createLocator(_BASE + "alice"));
+        _bob.addItemIdentifier(_tm.createLocator(_BASE + "#bob"));
+        _assertDeltaApplied();
+    }
+
+    public void testRemovedTopic() throws Exception {
+        _assoc.remove();
+        _alice.remove();
+        _assertDeltaApplied();
+        assertNull(_copy.getTopicBySubjectIdentifier(_copy.createLocator(_BASE + "alice")));
+    }
+
+    public void testRemovedAssociation() throws Exception {
+        _assoc.remove();
+        _assertDeltaApplied();
+    }
+
+    public void testModifiedAssociation() throws Exception {
+        _assoc.addTheme(_topic("y2010"));
+        _assoc.getRoles().iterator().next().setReifier(_topic("role-reifier"));
+        _assertDeltaApplied();
+        assertEquals(2, _copy.getAssociations().size());
+    }
+
+    public void testMergedTopics() throws Exception {
+        final Topic liddell = _topic("liddell");
+        liddell.createName("Liddell");
+        _assertDeltaApplied();
+        _tracker.checkpoint();
+        _alice.mergeIn(liddell);
+        _assertDeltaApplied();
+    }
+
+    public void testReifier() throws Exception {
+        final Name name = _alice.getNames().iterator().next();
+        name.setReifier(_topic("name-reifier"));
+        _tm.setReifier(_topic("map-reifier"));
+        _assertDeltaApplied();
+        _tracker.checkpoint();
+        name.setReifier(null);
+        _tm.setReifier(null);
+        _assertDeltaApplied();
+    }
+
+    public void testRemovedOccurrenceType() throws Exception {
+        final Occurrence occ = _bob.getOccurrences().iterator().next();
+        final Topic type = occ.getType();
+        occ.remove();
+        type.remove();
+        _assertDeltaApplied();
+    }
+
+}
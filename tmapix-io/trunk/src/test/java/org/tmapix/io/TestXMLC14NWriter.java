@@ -0,0 +1,273 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link XMLC14NWriter}.
+ * <p>
+ * The output is compared against the output of a char-by-char writer 
+ * which uses an {@link OutputStreamWriter}, like the previous 
+ * implementation of the XMLC14NWriter.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestXMLC14NWriter extends TestCase {
+
+    /**
+     * Larger than the internal buffer of the writer.
+     */
+    private static final int _LARGE = 40 * 1024;
+
+    private ByteArrayOutputStream _out;
+    private XMLC14NWriter _writer;
+    private ByteArrayOutputStream _expectedOut;
+    private ReferenceWriter _expected;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _out = new ByteArrayOutputStream();
+        _writer = new XMLC14NWriter(_out);
+        _expectedOut = new ByteArrayOutputStream();
+        _expected = new ReferenceWriter(_expectedOut);
+        _writer.startDocument();
+    }
+
+    private static Attributes _attrs(final String... nameValues) {
+        final AttributesImpl attrs = new AttributesImpl();
+        for (int i=0; i < nameValues.length; i+=2) {
+            attrs.addAttribute("", nameValues[i], "", "CDATA", nameValues[i+1]);
+        }
+        return attrs;
+    }
+
+    private String _result() throws IOException {
+        _writer.endDocument();
+        return new String(_out.toByteArray(), "utf-8");
+    }
+
+    private void _assertSameAsReference() throws IOException {
+        _writer.endDocument();
+        _expected.endDocument();
+        assertTrue(Arrays.equals(_expectedOut.toByteArray(), _out.toByteArray()));
+    }
+
+    private void _element(final String name, final Attributes attrs, final String text) throws IOException {
+        _writer.startElement(name, attrs);
+        _writer.characters(text);
+        _writer.endElement(name);
+        _writer.newline();
+        _expected.startElement(name, attrs);
+        _expected.characters(text);
+        _expected.endElement(name);
+        _expected.newline();
+    }
+
+    public void testEscapeTextContent() throws Exception {
+        _writer.startElement("value");
+        _writer.characters("a&b<c>d\"e\rf\tg\nh'");
+        _writer.endElement("value");
+        assertEquals("<value>a&amp;b&lt;c&gt;d\"e&#xD;f\tg\nh'</value>", _result());
+    }
+
+    public void testEscapeAttributeValue() throws Exception {
+        _writer.startElement("e", _attrs("a", "a&b<c>d\"e\rf\tg\nh'"));
+        _writer.endElement("e");
+        assertEquals("<e a=\"a&amp;b&lt;c>d&quot;e&#xD;f&#x9;g&#xA;h'\"></e>", _result());
+    }
+
+    public void testEscapeOnly() throws Exception {
+        _element("value", XMLC14NWriter.EMPTY_ATTRS, "&&<<>>\r");
+        _element("value", _attrs("x", "\t\n\r\"&<"), "");
+        _assertSameAsReference();
+    }
+
+    public void testAttributeOrder() throws Exception {
+        _writer.startElement("e", _attrs("c", "3", "a", "1", "b", "2"));
+        _writer.endElement("e");
+        assertEquals("<e a=\"1\" b=\"2\" c=\"3\"></e>", _result());
+    }
+
+    public void testAttributeOrderMany() throws Exception {
+        // More attributes than the initial size of the order array
+        _element("e", _attrs("f", "6", "e", "5", "d", "4", "c", "3", "b", "2", "a", "1"), "");
+        _element("e", _attrs("number", "1", "item", "2", "datatype", "3", "id", "4", "reifier", "5"), "");
+        _element("e", _attrs("b", "1"), "");
+        _assertSameAsReference();
+        assertTrue(new String(_out.toByteArray(), "utf-8").startsWith("<e a=\"1\" b=\"2\" c=\"3\" d=\"4\" e=\"5\" f=\"6\"></e>"));
+    }
+
+    public void testSurrogatePair() throws Exception {
+        _writer.startElement("value");
+        _writer.characters("\uD834\uDD1E");
+        _writer.endElement("value");
+        _writer.endDocument();
+        final byte[] expected = new byte[] {(byte) 0xF0, (byte) 0x9D, (byte) 0x84, (byte) 0x9E};
+        final byte[] result = _out.toByteArray();
+        assertTrue(Arrays.equals(expected, Arrays.copyOfRange(result, "<value>".length(), "<value>".length() + 4)));
+    }
+
+    public void testUnpairedSurrogates() throws Exception {
+        _writer.startElement("value");
+        _writer.characters("a\uD834b\uDD1Ec\uDD1E\uD834&\uDD1E\uD834");
+        _writer.endElement("value");
+        assertEquals("<value>a?b?c??&amp;??</value>", _result());
+    }
+
+    public void testMultiByte() throws Exception {
+        _element("value", _attrs("a", "\u00E4\u00F6\u00FC \u20AC"), "\u00E4\u00F6\u00FC \u20AC \u0800 \u07FF \uFFFF");
+        _assertSameAsReference();
+    }
+
+    public void testCachedTags() throws Exception {
+        for (int i=0; i < 3; i++) {
+            _writer.startElement("topic", _attrs("number", String.valueOf(i)));
+            _writer.startElement("value");
+            _writer.endElement("value");
+            _writer.endElement("topic");
+        }
+        assertEquals("<topic number=\"0\"><value></value></topic>"
+                    + "<topic number=\"1\"><value></value></topic>"
+                    + "<topic number=\"2\"><value></value></topic>", _result());
+    }
+
+    /**
+     * Writes runs with multi-byte characters and escapes which cross the
+     * buffer boundary at every offset.
+     */
+    public void testBufferBoundary() throws Exception {
+        final String pattern = "ab\u00E4\u20AC\uD834\uDD1E&<>\r\"\t\n";
+        final StringBuilder sb = new StringBuilder(_LARGE);
+        while (sb.length() < _LARGE) {
+            sb.append(pattern);
+        }
+        final String large = sb.toString();
+        for (int i=0; i < pattern.length() * 4; i++) {
+            _element("value", _attrs("a", large.substring(i, i + 100)), large.substring(0, i));
+            _element("value", XMLC14NWriter.EMPTY_ATTRS, large);
+            _element("value", _attrs("a", large), large.substring(i));
+        }
+        _assertSameAsReference();
+    }
+
+    public void testRandom() throws Exception {
+        final Random rnd = new Random(42);
+        final char[] special = "&<>\"\r\n\t\uD834\uDD1E\u00E4\u20AC".toCharArray();
+        for (int i=0; i < 2000; i++) {
+            final char[] ch = new char[rnd.nextInt(200)];
+            for (int j=0; j < ch.length; j++) {
+                ch[j] = rnd.nextInt(3) == 0 ? special[rnd.nextInt(special.length)]
+                                            : (char) (' ' + rnd.nextInt(95));
+            }
+            final String value = new String(ch);
+            _element("e" + rnd.nextInt(5), _attrs("z", value, "a", value, "m" + rnd.nextInt(3), value), value);
+        }
+        _assertSameAsReference();
+    }
+
+    public void testWriteRaw() throws Exception {
+        final byte[] raw = new byte[_LARGE];
+        for (int i=0; i < raw.length; i++) {
+            raw[i] = (byte) ('a' + i % 26);
+        }
+        _writer.startElement("topicMap");
+        _writer.writeRaw(new ByteArrayInputStream(raw));
+        _writer.characters("&");
+        _writer.writeRaw(new ByteArrayInputStream(new byte[0]));
+        _writer.endElement("topicMap");
+        assertEquals("<topicMap>" + new String(raw, "utf-8") + "&amp;</topicMap>", _result());
+    }
+
+
+    /**
+     * Char-by-char canonical XML writer which serves as reference.
+     */
+    private static final class ReferenceWriter {
+
+        private final OutputStreamWriter _out;
+
+        ReferenceWriter(OutputStream out) throws IOException {
+            _out = new OutputStreamWriter(out, "UTF-8");
+        }
+
+        void endDocument() throws IOException {
+            _out.flush();
+        }
+
+        void startElement(String localName, Attributes attrs) throws IOException {
+            String[] names = new String[attrs.getLength()];
+            for (int i=0; i < names.length; i++) {
+                names[i] = attrs.getLocalName(i);
+            }
+            Arrays.sort(names);
+            _out.write('<');
+            _out.write(localName);
+            for (int i=0; i < names.length; i++) {
+                _out.write(' ');
+                _out.write(names[i]);
+                _out.write("=\"");
+                _escape(attrs.getValue("", names[i]), true);
+                _out.write('"');
+            }
+            _out.write('>');
+        }
+
+        void endElement(String localName) throws IOException {
+            _out.write("</");
+            _out.write(localName);
+            _out.write('>');
+        }
+
+        void newline() throws IOException {
+            _out.write('\n');
+        }
+
+        void characters(String data) throws IOException {
+            _escape(data, false);
+        }
+
+        private void _escape(String value, boolean attr) throws IOException {
+            for (char c: value.toCharArray()) {
+                switch (c) {
+                    case '\t': _out.write(attr ? "&#x9;" : "\t"); break;
+                    case '\n': _out.write(attr ? "&#xA;" : "\n"); break;
+                    case '\r': _out.write("&#xD;"); break;
+                    case '"': _out.write(attr ? "&quot;" : "\""); break;
+                    case '>': _out.write(attr ? ">" : "&gt;"); break;
+                    case '&': _out.write("&amp;"); break;
+                    case '<': _out.write("&lt;"); break;
+                    default: _out.write(c);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+
+/**
+ * Tests against the streaming API of the {@link XTM2TopicMapWriter}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestXTM2StreamingWriter extends AbstractTopicMapTestCase {
+
+    /**
+     * Creates the topic <tt>person-i</tt> and an association between the
+     * topic and its predecessor.
+     */
+    private static void _populate(final TopicMap tm, final int i) {
+        final Topic person = _topic(tm, "person-" + i);
+        person.addType(_topic(tm, "person"));
+        person.createName("Person " + i);
+        if (i > 0) {
+            final Association assoc = tm.createAssociation(_topic(tm, "knows"));
+            assoc.createRole(_topic(tm, "knower"), person);
+            assoc.createRole(_topic(tm, "known"), _topic(tm, "person-" + (i-1)));
+        }
+    }
+
+    public void testStreaming() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final XTM2TopicMapWriter writer = new XTM2TopicMapWriter(out, _BASE, XTMVersion.XTM_2_1);
+        writer.startTopicMap();
+        final TopicMap expected = _sys.createTopicMap(_BASE + "expected");
+        for (int i=0; i < 10; i++) {
+            // Each batch lives in its own topic map which is discarded afterwards
+            final TopicMap batch = _sys.createTopicMap(_BASE + "batch-" + i);
+            _populate(batch, i);
+            _populate(expected, i);
+            for (Topic topic: batch.getTopics()) {
+                writer.writeTopic(topic);
+            }
+            for (Association assoc: batch.getAssociations()) {
+                writer.writeAssociation(assoc);
+            }
+            batch.remove();
+        }
+        writer.endTopicMap();
+        new XTMTopicMapReader(_tm, new ByteArrayInputStream(out.toByteArray()), _BASE).read();
+        assertEquals(_cxtm(expected), _cxtm(_tm));
+    }
+
+    public void testIllegalState() throws Exception {
+        final XTM2TopicMapWriter writer = new XTM2TopicMapWriter(new ByteArrayOutputStream(), _BASE, XTMVersion.XTM_2_1);
+        try {
+            writer.writeTopic(_topic("topic"));
+            fail("Expected an IllegalStateException");
+        }
+        catch (IllegalStateException ex) {
+            // noop.
+        }
+        writer.startTopicMap(_tm);
+        try {
+            writer.startTopicMap();
+            fail("Expected an IllegalStateException");
+        }
+        catch (IllegalStateException ex) {
+            // noop.
+        }
+        writer.endTopicMap();
+        try {
+            writer.endTopicMap();
+            fail("Expected an IllegalStateException");
+        }
+        catch (IllegalStateException ex) {
+            // noop.
+        }
+    }
+
+}
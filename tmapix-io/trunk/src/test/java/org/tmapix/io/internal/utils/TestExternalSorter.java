@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io.internal.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link ExternalSorter}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestExternalSorter extends TestCase {
+
+    private File _tmpDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _tmpDir = File.createTempFile("tmapix-sort-test", "");
+        _tmpDir.delete();
+        _tmpDir.mkdir();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file: _tmpDir.listFiles()) {
+            file.delete();
+        }
+        _tmpDir.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Adds <tt>count</tt> random records to the sorter and returns the
+     * records in the expected order.
+     */
+    private static List<String[]> _fill(final ExternalSorter sorter, final int count) throws IOException {
+        final Random rnd = new Random(count);
+        final List<String[]> records = new ArrayList<String[]>(count);
+        for (int i=0; i < count; i++) {
+            // Few distinct keys to test the stability, including surrogates
+            final String key = "" + (char) ('a' + rnd.nextInt(20)) + (char) (0xD800 + rnd.nextInt(3));
+            final String value = "value-" + i;
+            records.add(new String[] {key, value});
+            sorter.add(key, value);
+        }
+        Collections.sort(records, new Comparator<String[]>() {
+            @Override
+            public int compare(String[] o1, String[] o2) {
+                return o1[0].compareTo(o2[0]);
+            }
+        });
+        return records;
+    }
+
+    private void _assertSorted(final ExternalSorter sorter, final List<String[]> expected, final int fanIn) throws IOException {
+        final ExternalSorter.Cursor cursor = sorter.sort();
+        try {
+            // Only the runs of the final merge are left
+            assertTrue(_tmpDir.listFiles().length <= fanIn);
+            for (String[] record: expected) {
+                assertTrue(cursor.next());
+                assertEquals(record[0], cursor.getKey());
+                assertEquals(record[1], cursor.getValue());
+            }
+            assertFalse(cursor.next());
+        }
+        finally {
+            cursor.close();
+        }
+        assertEquals(0, _tmpDir.listFiles().length);
+    }
+
+    public void testInMemory() throws Exception {
+        final ExternalSorter sorter = new ExternalSorter(Long.MAX_VALUE, _tmpDir);
+        final List<String[]> expected = _fill(sorter, 1000);
+        assertEquals(0, _tmpDir.listFiles().length);
+        _assertSorted(sorter, expected, 0);
+    }
+
+    public void testSingleMergePass() throws Exception {
+        final ExternalSorter sorter = new ExternalSorter(10 * 1024, _tmpDir);
+        final List<String[]> expected = _fill(sorter, 1000);
+        final int runs = _tmpDir.listFiles().length;
+        assertTrue(runs > 1);
+        assertTrue(runs <= ExternalSorter.DEFAULT_FAN_IN);
+        _assertSorted(sorter, expected, ExternalSorter.DEFAULT_FAN_IN);
+    }
+
+    public void testMultipleMergePasses() throws Exception {
+        final int fanIn = 4;
+        // About 10 records per run
+        final ExternalSorter sorter = new ExternalSorter(1024, _tmpDir, fanIn);
+        final List<String[]> expected = _fill(sorter, 2000);
+        assertTrue(_tmpDir.listFiles().length > fanIn * fanIn * fanIn);
+        _assertSorted(sorter, expected, fanIn);
+    }
+
+    public void testDefaultFanIn() throws Exception {
+        // One run per record
+        final ExternalSorter sorter = new ExternalSorter(1, _tmpDir);
+        final List<String[]> expected = _fill(sorter, ExternalSorter.DEFAULT_FAN_IN * 3 + 1);
+        assertTrue(_tmpDir.listFiles().length > ExternalSorter.DEFAULT_FAN_IN);
+        _assertSorted(sorter, expected, ExternalSorter.DEFAULT_FAN_IN);
+    }
+
+    public void testIllegalFanIn() throws Exception {
+        try {
+            new ExternalSorter(1, _tmpDir, 1);
+            fail("Expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+}
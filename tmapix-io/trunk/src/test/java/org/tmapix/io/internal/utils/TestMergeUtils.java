@@ -0,0 +1,151 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io.internal.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Locator;
+import org.tmapi.core.Role;
+import org.tmapi.core.Topic;
+import org.tmapix.io.AbstractTopicMapTestCase;
+
+/**
+ * Tests against the {@link MergeUtils}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestMergeUtils extends AbstractTopicMapTestCase {
+
+    private Topic _type;
+    private Topic _roleType;
+    private Topic _player;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _type = _tm.createTopic();
+        _roleType = _tm.createTopic();
+        _player = _tm.createTopic();
+    }
+
+    private Association _createAssociation(final String iid) {
+        final Association assoc = _tm.createAssociation(_type);
+        assoc.addItemIdentifier(_tm.createLocator(_BASE + iid));
+        assoc.createRole(_roleType, _player).addItemIdentifier(_tm.createLocator(_BASE + iid + "-role"));
+        return assoc;
+    }
+
+    private void _assertItemIdentifiers(final Association assoc, final String... iids) {
+        final Role role = assoc.getRoles().iterator().next();
+        for (String iid: iids) {
+            final Locator loc = _tm.createLocator(_BASE + iid);
+            assertTrue(assoc.getItemIdentifiers().contains(loc));
+            assertTrue(role.getItemIdentifiers().contains(_tm.createLocator(_BASE + iid + "-role")));
+        }
+        assertEquals(iids.length, assoc.getItemIdentifiers().size());
+        assertEquals(iids.length, role.getItemIdentifiers().size());
+    }
+
+    public void testMergeAssociations() {
+        final Association target = _createAssociation("a");
+        final Association source1 = _createAssociation("b");
+        final Association source2 = _createAssociation("c");
+        source2.setReifier(_tm.createTopic());
+        MergeUtils.merge(new Association[] {source1, source2}, new Association[] {target, target});
+        assertEquals(1, _tm.getAssociations().size());
+        _assertItemIdentifiers(target, "a", "b", "c");
+        assertNotNull(target.getReifier());
+    }
+
+    public void testMergeAssociationsReified() {
+        final Association target = _createAssociation("a");
+        final Association source1 = _createAssociation("b");
+        final Association source2 = _createAssociation("c");
+        final Topic reifier1 = _tm.createTopic();
+        final Topic reifier2 = _tm.createTopic();
+        source1.setReifier(reifier1);
+        source2.setReifier(reifier2);
+        final List<Topic> merged = new ArrayList<Topic>();
+        MergeUtils.merge(new Association[] {source1, source2}, new Association[] {target, target}, 
+                new MergeUtils.TopicMerger() {
+                    @Override
+                    public void merge(Topic source, Topic target) {
+                        // The reifiers are merged after all sources were removed
+                        assertEquals(1, _tm.getAssociations().size());
+                        merged.add(source);
+                        merged.add(target);
+                        target.mergeIn(source);
+                    }
+                });
+        assertEquals(1, _tm.getAssociations().size());
+        _assertItemIdentifiers(target, "a", "b", "c");
+        assertEquals(Arrays.asList(reifier2, reifier1), merged);
+        assertEquals(reifier1, target.getReifier());
+    }
+
+    public void testMergeAssociationsReifiedChained() {
+        final Association assoc1 = _createAssociation("a");
+        final Association assoc2 = _createAssociation("b");
+        final Association assoc3 = _createAssociation("c");
+        final Topic reifier1 = _tm.createTopic();
+        final Topic reifier2 = _tm.createTopic();
+        final Topic reifier3 = _tm.createTopic();
+        assoc1.setReifier(reifier1);
+        assoc2.setReifier(reifier2);
+        assoc3.setReifier(reifier3);
+        final int topicCount = _tm.getTopics().size();
+        MergeUtils.merge(new Association[] {assoc1, assoc2}, new Association[] {assoc2, assoc3});
+        assertEquals(1, _tm.getAssociations().size());
+        assertEquals(topicCount - 2, _tm.getTopics().size());
+        assertEquals(reifier3, assoc3.getReifier());
+    }
+
+    public void testMergeAssociationsChained() {
+        final Association assoc1 = _createAssociation("a");
+        final Association assoc2 = _createAssociation("b");
+        final Association assoc3 = _createAssociation("c");
+        MergeUtils.merge(new Association[] {assoc1, assoc2}, new Association[] {assoc2, assoc3});
+        assertEquals(1, _tm.getAssociations().size());
+        _assertItemIdentifiers(assoc3, "a", "b", "c");
+    }
+
+    public void testMergeAssociationsCyclic() {
+        final Association assoc1 = _createAssociation("a");
+        final Association assoc2 = _createAssociation("b");
+        try {
+            MergeUtils.merge(new Association[] {assoc1, assoc2}, new Association[] {assoc2, assoc1});
+            fail("Expected an exception for a cyclic merge");
+        }
+        catch (RuntimeException ex) {
+            // noop.
+        }
+    }
+
+    public void testMergeDuplicateRoles() {
+        final Association assoc = _tm.createAssociation(_type);
+        final Role role1 = assoc.createRole(_roleType, _player);
+        final Role role2 = assoc.createRole(_roleType, _player);
+        role2.addItemIdentifier(_tm.createLocator(_BASE + "role"));
+        MergeUtils.merge(role2, role1);
+        assertEquals(1, assoc.getRoles().size());
+        assertTrue(role1.getItemIdentifiers().contains(_tm.createLocator(_BASE + "role")));
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tmapix.io.internal.utils;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Topic;
+import org.tmapix.io.AbstractTopicMapTestCase;
+import org.tmapix.voc.XSD;
+
+/**
+ * Tests against the {@link SignatureGenerator}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ * @version $Rev$ - $Date$
+ */
+public class TestSignatureGenerator extends AbstractTopicMapTestCase {
+
+    private void _assertEqual(final Signature a, final Signature b) {
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertTrue(SignatureGenerator.isEqual(a.getConstruct(), b.getConstruct()));
+    }
+
+    private void _assertNotEqual(final Signature a, final Signature b) {
+        assertFalse(a.equals(b));
+        assertFalse(SignatureGenerator.isEqual(a.getConstruct(), b.getConstruct()));
+    }
+
+    public void testName() {
+        final Topic topic = _tm.createTopic();
+        final Topic theme1 = _tm.createTopic();
+        final Topic theme2 = _tm.createTopic();
+        final Name name = topic.createName("Name", theme1, theme2);
+        _assertEqual(SignatureGenerator.signature(name),
+                SignatureGenerator.signature(_tm.createTopic().createName("Name", theme2, theme1)));
+        _assertNotEqual(SignatureGenerator.signature(name),
+                SignatureGenerator.signature(topic.createName("Name", theme1)));
+        _assertNotEqual(SignatureGenerator.signature(name),
+                SignatureGenerator.signature(topic.createName("Name2", theme1, theme2)));
+        _assertNotEqual(SignatureGenerator.signature(name),
+                SignatureGenerator.signature(topic.createName(_tm.createTopic(), "Name", theme1, theme2)));
+    }
+
+    public void testOccurrence() {
+        final Topic topic = _tm.createTopic();
+        final Topic type = _tm.createTopic();
+        final Occurrence occ = topic.createOccurrence(type, "1", _tm.createLocator(XSD.INTEGER));
+        _assertEqual(SignatureGenerator.signature(occ),
+                SignatureGenerator.signature(topic.createOccurrence(type, "1", _tm.createLocator(XSD.INTEGER))));
+        _assertNotEqual(SignatureGenerator.signature(occ),
+                SignatureGenerator.signature(topic.createOccurrence(type, "1")));
+        _assertNotEqual(SignatureGenerator.signature(occ),
+                SignatureGenerator.signature(topic.createOccurrence(type, "1", _tm.createLocator(XSD.INTEGER), _tm.createTopic())));
+    }
+
+    public void testVariant() {
+        final Name name = _tm.createTopic().createName("Name");
+        final Topic theme = _tm.createTopic();
+        _assertEqual(SignatureGenerator.signature(name.createVariant("a", theme)),
+                SignatureGenerator.signature(_tm.createTopic().createName("Name").createVariant("a", theme)));
+        _assertNotEqual(SignatureGenerator.signature(name.createVariant("a", theme)),
+                SignatureGenerator.signature(name.createVariant("b", theme)));
+    }
+
+    public void testRole() {
+        final Topic type = _tm.createTopic();
+        final Topic player1 = _tm.createTopic();
+        final Topic player2 = _tm.createTopic();
+        final Association assoc = _tm.createAssociation(_tm.createTopic());
+        _assertEqual(SignatureGenerator.signature(assoc.createRole(type, player1)),
+                SignatureGenerator.signature(assoc.createRole(type, player1)));
+        _assertNotEqual(SignatureGenerator.signature(assoc.createRole(type, player1)),
+                SignatureGenerator.signature(assoc.createRole(type, player2)));
+    }
+
+    public void testAssociation() {
+        final Topic type = _tm.createTopic();
+        final Topic roleType1 = _tm.createTopic();
+        final Topic roleType2 = _tm.createTopic();
+        final Topic player1 = _tm.createTopic();
+        final Topic player2 = _tm.createTopic();
+        final Association assoc1 = _tm.createAssociation(type);
+        assoc1.createRole(roleType1, player1);
+        assoc1.createRole(roleType2, player2);
+        final Association assoc2 = _tm.createAssociation(type);
+        assoc2.createRole(roleType2, player2);
+        assoc2.createRole(roleType1, player1);
+        _assertEqual(SignatureGenerator.signature(assoc1), SignatureGenerator.signature(assoc2));
+        final Association assoc3 = _tm.createAssociation(type);
+        assoc3.createRole(roleType1, player2);
+        assoc3.createRole(roleType2, player1);
+        _assertNotEqual(SignatureGenerator.signature(assoc1), SignatureGenerator.signature(assoc3));
+        final Association assoc4 = _tm.createAssociation(type);
+        assoc4.createRole(roleType1, player1);
+        assoc4.createRole(roleType1, player1);
+        assoc4.createRole(roleType2, player2);
+        _assertNotEqual(SignatureGenerator.signature(assoc1), SignatureGenerator.signature(assoc4));
+    }
+
+    public void testDifferentKinds() {
+        final Topic topic = _tm.createTopic();
+        final Name name = topic.createName("Value");
+        final Occurrence occ = topic.createOccurrence(name.getType(), "Value");
+        _assertNotEqual(SignatureGenerator.signature(name), SignatureGenerator.signature(occ));
+    }
+
+}